@@ -0,0 +1,166 @@
+package com.testing;
+
+import com.testing.config.Configuration;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Prepares configuration and database for benchmarks. Embedded H2 database in PostgreSQL compatibility
+ * mode is used instead of PostgreSQL server, so benchmarks run offline.
+ */
+public final class BenchmarkEnvironment
+{
+    /**
+     * The url of in-memory database shared by all connections of benchmark JVM.
+     */
+    public static final String DB_URL = "jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    private final Path workFolder;
+    private final Path monitoringFolder;
+    private final Path configurationFile;
+
+    private BenchmarkEnvironment(Path workFolder)
+    {
+        this.workFolder = workFolder;
+        this.monitoringFolder = workFolder.resolve("monitoring");
+        this.configurationFile = workFolder.resolve("config.properties");
+    }
+
+    /**
+     * Creates temporary monitoring folder, database table and configuration file and initializes
+     * {@link Configuration} with it.
+     *
+     * @param overrides the configuration properties which replace default benchmark values
+     * @return the environment
+     * @throws IOException  if files cannot be created
+     * @throws SQLException if table cannot be created
+     */
+    public static BenchmarkEnvironment init(Map<String, String> overrides) throws IOException, SQLException
+    {
+        BenchmarkEnvironment environment = new BenchmarkEnvironment(Files.createTempDirectory("xmlmonitor-jmh"));
+        Files.createDirectories(environment.monitoringFolder);
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("JDBC_DRIVER_NAME", "org.h2.Driver");
+        properties.put("DB_URL", DB_URL);
+        properties.put("DB_USER_NAME", "sa");
+        properties.put("USER_PASSWORD", "");
+        properties.put("DB_TABLE_NAME", "table_ilogos");
+        properties.put("MONITORING_FOLDER", environment.monitoringFolder.toString());
+        properties.put("FILE_NAME_PATTERN", "*");
+        properties.put("MONITORING_PERIOD", "");
+        properties.put("PROCESSED_FILES_FOLDER", "");
+        properties.put("CORRUPTED_FILES_FOLDER", "");
+        properties.putAll(overrides);
+
+        Path configFile = environment.configurationFile;
+        try (Writer writer = Files.newBufferedWriter(configFile, StandardCharsets.UTF_8))
+        {
+            for (Map.Entry<String, String> property : properties.entrySet())
+            {
+                writer.write(property.getKey() + "=" + property.getValue().replace("\\", "\\\\") + "\n");
+            }
+        }
+        if (!Configuration.initConfiguration(configFile.toString()))
+        {
+            throw new IllegalStateException("Benchmark configuration is not valid.");
+        }
+
+        try (Connection connection = DriverManager.getConnection(DB_URL, "sa", "");
+             Statement statement = connection.createStatement())
+        {
+            statement.execute("CREATE TABLE IF NOT EXISTS table_ilogos (id BIGSERIAL PRIMARY KEY, "
+                    + "timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP, content TEXT, creation_date TEXT)");
+        }
+        return environment;
+    }
+
+    /**
+     * Writes xml file with specified number of entries.
+     *
+     * @param file    the file path
+     * @param entries the number of entries
+     * @return the file path
+     * @throws IOException if file cannot be written
+     */
+    public static Path writeXmlFile(Path file, int entries) throws IOException
+    {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+        {
+            writer.write("<Entries>\n");
+            for (int i = 0; i < entries; i++)
+            {
+                writer.write("<Entry>\n    <content>Содержимое записи " + i + "</content>\n"
+                        + "    <creationDate>2014-01-01 00:00:00</creationDate>\n</Entry>\n");
+            }
+            writer.write("</Entries>\n");
+        }
+        return file;
+    }
+
+    /**
+     * Gets temporary folder for benchmark files.
+     *
+     * @return the work folder
+     */
+    public Path getWorkFolder()
+    {
+        return workFolder;
+    }
+
+    /**
+     * Gets configuration file path.
+     *
+     * @return the configuration file
+     */
+    public Path getConfigurationFile()
+    {
+        return configurationFile;
+    }
+
+    /**
+     * Gets monitoring folder from configuration.
+     *
+     * @return the monitoring folder
+     */
+    public Path getMonitoringFolder()
+    {
+        return monitoringFolder;
+    }
+
+    /**
+     * Gets processed files folder from configuration.
+     *
+     * @return the processed files folder
+     */
+    public Path getProcessedFolder()
+    {
+        return Paths.get(Configuration.getProcessedFilesFolder());
+    }
+
+    /**
+     * Removes all benchmark files.
+     *
+     * @throws IOException if files cannot be removed
+     */
+    public void cleanUp() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(workFolder))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.testing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures latency from creating a file in monitoring folder until it is recorded to database and moved
+ * to processed folder by {@link FolderMonitor} and {@link com.testing.services.SimpleDirectoryWatchService}.
+ * Files are prepared outside and moved into the monitoring folder, so they appear complete.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WatchToCommitBenchmark
+{
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Param({"BLOCKING", "SCHEDULED"})
+    public String monitoringMode;
+
+    @Param({"SINGLE", "BATCH"})
+    public String writeMode;
+
+    private BenchmarkEnvironment environment;
+    private Path sourceFile;
+    private long fileNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("MONITORING_MODE", monitoringMode);
+        properties.put("MONITORING_PERIOD", "10 MILLISECONDS");
+        properties.put("DB_WRITE_MODE", writeMode);
+        properties.put("BATCH_MAX_LINGER", "1 MILLISECONDS");
+        environment = BenchmarkEnvironment.init(properties);
+        sourceFile = BenchmarkEnvironment.writeXmlFile(environment.getWorkFolder().resolve("source.xml"), 1);
+        new FolderMonitor(environment.getConfigurationFile().toString()).startMonitor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        environment.cleanUp();
+    }
+
+    @Benchmark
+    public Path fileToCommit() throws Exception
+    {
+        String fileName = "file-" + fileNumber++ + ".xml";
+        Path prepared = Files.copy(sourceFile, environment.getWorkFolder().resolve(fileName));
+        Path processed = environment.getProcessedFolder().resolve(fileName);
+        Files.move(prepared, environment.getMonitoringFolder().resolve(fileName));
+
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (!Files.exists(processed))
+        {
+            if (System.nanoTime() > deadline)
+            {
+                throw new TimeoutException(fileName + " was not processed.");
+            }
+            LockSupport.parkNanos(50_000);
+        }
+        return processed;
+    }
+}
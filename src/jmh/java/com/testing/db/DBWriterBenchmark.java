@@ -0,0 +1,71 @@
+package com.testing.db;
+
+import com.testing.BenchmarkEnvironment;
+import com.testing.db.data.CustomXmlEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DBWriter#writeEntry} throughput against embedded database from several handler threads
+ * for every write mode. Every parameter combination runs in its own JVM, so the singleton writer
+ * is created with the benchmarked mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class DBWriterBenchmark
+{
+    @Param({"SINGLE", "BATCH", "COPY"})
+    public String writeMode;
+
+    private BenchmarkEnvironment environment;
+    private DBWriter dbWriter;
+    private CustomXmlEntry xmlEntry;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("DB_WRITE_MODE", writeMode);
+        properties.put("BATCH_MAX_LINGER", "1 MILLISECONDS");
+        environment = BenchmarkEnvironment.init(properties);
+        dbWriter = DBWriter.getInstance();
+        dbWriter.warmUp();
+        xmlEntry = new CustomXmlEntry(2);
+        xmlEntry.setValue(0, "Содержимое записи");
+        xmlEntry.setValue(1, "2014-01-01 00:00:00");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        environment.cleanUp();
+    }
+
+    @Benchmark
+    public boolean writeEntry() throws SQLException
+    {
+        return dbWriter.writeEntry(xmlEntry);
+    }
+}
@@ -0,0 +1,86 @@
+package com.testing.db.connection;
+
+import com.testing.BenchmarkEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures borrow and return of {@link ConnectionPool} connections under contention of 1 to 16 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionPoolBenchmark
+{
+    /**
+     * Maximum number of pooled connections.
+     */
+    @Param({"4"})
+    public int poolSize;
+
+    private BenchmarkEnvironment environment;
+    private ConnectionPool connectionPool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        environment = BenchmarkEnvironment.init(Collections.emptyMap());
+        connectionPool = new ConnectionPool(poolSize, poolSize);
+        connectionPool.warmUp();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        connectionPool.close();
+        environment.cleanUp();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Connection borrowReturn1() throws SQLException
+    {
+        return borrowReturn();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Connection borrowReturn4() throws SQLException
+    {
+        return borrowReturn();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Connection borrowReturn16() throws SQLException
+    {
+        return borrowReturn();
+    }
+
+    private Connection borrowReturn() throws SQLException
+    {
+        Connection connection = connectionPool.getConnectionFromPool();
+        connectionPool.returnConnectionToPool(connection);
+        return connection;
+    }
+}
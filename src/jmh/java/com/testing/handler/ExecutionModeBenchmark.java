@@ -0,0 +1,174 @@
+package com.testing.handler;
+
+import com.testing.BenchmarkEnvironment;
+import com.testing.config.ExecutionMode;
+import com.testing.db.DBWriter;
+import com.testing.listener.HandlerExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares throughput of files handled by pool of platform threads and by one virtual thread per file
+ * when handling is dominated by waiting for database. Every file is parsed and then holds one of the
+ * database connections for the simulated round trip time, so platform pool of processor count is limited
+ * by its threads while virtual threads are limited by connections only. Platform pool sized to the connection
+ * count shows how much of the difference is only the number of threads. Zero latency writes entries to the
+ * embedded database through {@link com.testing.db.DBWriter} instead of simulating the round trip.
+ * {@link ExecutionMode#VIRTUAL} needs Java 21 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark
+{
+    private static final int FILES = 512;
+
+    /**
+     * Threads which handle files: PLATFORM - pool of processor count, PLATFORM_PER_CONNECTION - pool of
+     * connection count, VIRTUAL - virtual thread per file.
+     */
+    @Param({"PLATFORM", "PLATFORM_PER_CONNECTION", "VIRTUAL"})
+    public String threads;
+
+    /**
+     * Simulated database round trip of one file in milliseconds, 0 writes to embedded database.
+     */
+    @Param({"0", "1", "10"})
+    public int latency;
+
+    /**
+     * Number of database connections.
+     */
+    @Param({"64"})
+    public int connections;
+
+    private BenchmarkEnvironment environment;
+    private String filePath;
+    private ExecutorService executor;
+    private Semaphore connectionPermits;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        ExecutionMode mode = threads.equals("VIRTUAL") ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM;
+        Map<String, String> properties = new HashMap<>();
+        properties.put("EXECUTION_MODE", mode.name());
+        properties.put("DB_POOL_MAX_SIZE", Integer.toString(connections));
+        environment = BenchmarkEnvironment.init(properties);
+        filePath = BenchmarkEnvironment.writeXmlFile(environment.getWorkFolder().resolve("file.xml"), 8).toString();
+        if (mode == ExecutionMode.VIRTUAL)
+        {
+            executor = HandlerExecutors.newVirtualThreadPerTaskExecutor();
+            if (executor == null)
+            {
+                throw new IllegalStateException("Virtual threads need Java 21 or later.");
+            }
+        }
+        else if (threads.equals("PLATFORM_PER_CONNECTION"))
+        {
+            executor = Executors.newFixedThreadPool(connections);
+        }
+        else
+        {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
+        }
+        connectionPermits = new Semaphore(connections, true);
+        if (latency == 0)
+        {
+            DBWriter.getInstance().warmUp();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        environment.cleanUp();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public void handleFiles() throws InterruptedException
+    {
+        CountDownLatch handled = new CountDownLatch(FILES);
+        for (int i = 0; i < FILES; i++)
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    XmlToDBHandler handler = latency == 0 ? new CustomXmlToDBHandler(filePath) : new SlowDatabaseHandler();
+                    new XmlFileHandler(handler, filePath, null, null).run();
+                } finally
+                {
+                    handled.countDown();
+                }
+            });
+        }
+        handled.await();
+    }
+
+    /**
+     * Handler which holds a connection permit for the simulated round trip instead of writing entries.
+     */
+    private class SlowDatabaseHandler extends XmlToDBHandler
+    {
+        private int entries;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+        {
+            if (qName.equalsIgnoreCase("Entry"))
+            {
+                entries++;
+            }
+        }
+
+        @Override
+        void writeXmlToDB()
+        {
+            connectionPermits.acquireUninterruptibly();
+            try
+            {
+                Thread.sleep(latency);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            } finally
+            {
+                connectionPermits.release();
+            }
+        }
+
+        @Override
+        boolean hasAllElements()
+        {
+            return entries > 0;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.testing.handler;
+
+import com.testing.BenchmarkEnvironment;
+import com.testing.config.InputMode;
+import com.testing.config.ParserEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parse throughput of {@link XmlFileHandler} for small and large files, every parser engine and input mode.
+ * Handler only counts parsed entries and no folders are specified, so neither database nor file moves are involved.
+ * Run with '-prof gc' to compare allocation rate of input modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlFileHandlerBenchmark
+{
+    private static final long MMAP_THRESHOLD = 16L * 1024 * 1024;
+
+    /**
+     * Number of entries in the parsed file, 8 entries make a typical 1 KB file and 4000000 entries make 500 MB file.
+     */
+    @Param({"8", "4000000"})
+    public int entries;
+
+    @Param({"SAX", "STAX", "AALTO"})
+    public ParserEngine engine;
+
+    @Param({"STREAM", "CHANNEL"})
+    public InputMode input;
+
+    private BenchmarkEnvironment environment;
+    private String filePath;
+    private XmlParser parser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        environment = BenchmarkEnvironment.init(Collections.emptyMap());
+        Path file = environment.getWorkFolder().resolve("entries-" + entries + ".xml");
+        filePath = BenchmarkEnvironment.writeXmlFile(file, entries).toString();
+        parser = XmlParsers.get(engine);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        environment.cleanUp();
+    }
+
+    @Benchmark
+    public int parse()
+    {
+        CountingHandler handler = new CountingHandler();
+        new XmlFileHandler(handler, filePath, null, null, parser, input, MMAP_THRESHOLD).run();
+        return handler.entries;
+    }
+
+    /**
+     * Handler which counts entries instead of writing them.
+     */
+    private static class CountingHandler extends XmlToDBHandler
+    {
+        private int entries;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+        {
+            if (qName.equalsIgnoreCase("Entry"))
+            {
+                entries++;
+            }
+        }
+
+        @Override
+        void writeXmlToDB()
+        {
+        }
+
+        @Override
+        boolean hasAllElements()
+        {
+            return entries > 0;
+        }
+    }
+}
@@ -1,21 +1,40 @@
 package com.testing;
 
+import com.testing.cluster.WorkClaims;
 import com.testing.config.Configuration;
+import com.testing.config.MonitoringMode;
+import com.testing.config.OverflowPolicy;
+import com.testing.db.DBWriter;
+import com.testing.dedup.DedupIndex;
 import com.testing.handler.XmlFileHandler;
+import com.testing.journal.IngestJournal;
+import com.testing.journal.JournalRecord;
 import com.testing.listener.OnFileCreateListener;
+import com.testing.mapping.EntryMapping;
+import com.testing.metrics.Metrics;
 import com.testing.services.SimpleDirectoryWatchService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Optional;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class monitoring the specified directory for the presence of files of a certain XML-format.
@@ -26,6 +45,8 @@ class FolderMonitor
 {
     private static final Logger LOGGER = LogManager.getLogger(FolderMonitor.class);
 
+    private static final long DEDUP_INDEX_FLUSH_PERIOD = 1;
+
     private String configurationFilePath;
 
     /**
@@ -48,73 +69,329 @@ class FolderMonitor
             LOGGER.error("Typos in configuration file. The program will be stopped.");
             return;
         }
+        if (!EntryMapping.initMapping(Configuration.getMappingFile()))
+        {
+            LOGGER.error("Mapping file cannot be compiled. The program will be stopped.");
+            return;
+        }
+        if (!WorkClaims.initClaims())
+        {
+            LOGGER.error("Claims of this node cannot be created. The program will be stopped.");
+            return;
+        }
+        try
+        {
+            DBWriter.getInstance().warmUp();
+        } catch (SQLException e)
+        {
+            LOGGER.error("Cannot connect to database on start, connection will be established on first file.", e);
+        }
         String watchDirectory = Configuration.getMonitoringFolderPath();
         LOGGER.debug("Watching >>" + watchDirectory + "<< directory.");
         String filePattern = Configuration.getFileNamePattern() + ".xml";
+        WorkClaims workClaims = WorkClaims.getInstance();
+        replayJournal();
+        restoreNotRecorded(Paths.get(watchDirectory));
+        if (workClaims.isEnabled())
+        {
+            restore(workClaims.getNodeFolder());
+            restoreSubdirectories(workClaims.getNodeFolder(), excludedDirectories());
+        }
+        OnFileCreateListener listener;
         SimpleDirectoryWatchService watchService;
         try
         {
-            watchService = new SimpleDirectoryWatchService(new OnFileCreateListener(), watchDirectory, filePattern);
+            listener = new OnFileCreateListener();
+            watchService = new SimpleDirectoryWatchService(listener, watchDirectory, Configuration.isMonitoringRecursive(),
+                    excludedDirectories(), filePattern);
+            Metrics.register(listener, DBWriter.getInstance());
         } catch (IOException | IllegalArgumentException e)
         {
             LOGGER.error(e);
             return;
         }
-        long delay = Configuration.getMonitoringPeriod();
-        TimeUnit timeUnit = Configuration.getMonitoringTimeUnit();
 
-        if (timeUnit != null)
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+        if (Configuration.getMonitoringMode() == MonitoringMode.BLOCKING)
         {
-            ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-            executor.scheduleWithFixedDelay(watchService, 0, delay, timeUnit);
+            Thread watchThread = new Thread(watchService::processEvents, "directory-watcher");
+            watchThread.start();
         }
         else
         {
-            LOGGER.error("Cannot start FolderMonitor, please check configuration file.");
+            long delay = Configuration.getMonitoringPeriod();
+            TimeUnit timeUnit = Configuration.getMonitoringTimeUnit();
+
+            if (timeUnit != null)
+            {
+                executor.scheduleWithFixedDelay(watchService, 0, delay, timeUnit);
+            }
+            else
+            {
+                LOGGER.error("Cannot start FolderMonitor, please check configuration file.");
+                return;
+            }
+        }
+
+        if (Configuration.getQueueOverflowPolicy() == OverflowPolicy.DEFER)
+        {
+            long rescanPeriod = Configuration.getRescanPeriod();
+            executor.scheduleWithFixedDelay(() ->
+            {
+                if (listener.takeDeferred())
+                {
+                    resumeClaimed(listener);
+                    watchService.rescan();
+                }
+            }, rescanPeriod, rescanPeriod, TimeUnit.MILLISECONDS);
+        }
+        if (workClaims.isEnabled())
+        {
+            scheduleHeartbeat(workClaims, executor, watchService, listener);
+        }
+        IngestJournal journal = IngestJournal.getInstance();
+        if (journal.isEnabled())
+        {
+            long checkpointPeriod = Configuration.getJournalCheckpointPeriod();
+            executor.scheduleWithFixedDelay(journal::checkpoint, checkpointPeriod, checkpointPeriod, TimeUnit.MILLISECONDS);
+        }
+        DedupIndex dedupIndex = DedupIndex.getInstance();
+        if (dedupIndex.isEnabled())
+        {
+            executor.scheduleWithFixedDelay(dedupIndex::force, DEDUP_INDEX_FLUSH_PERIOD, DEDUP_INDEX_FLUSH_PERIOD, TimeUnit.SECONDS);
+        }
+        drainBacklog(watchService, listener);
+    }
+
+    /**
+     * Resumes handling of files which were not finished before the last stop. Files with all entries in
+     * database are moved to processed files folder, other files are left for backlog drain which skips
+     * their committed entries. Files which were moved but the move was not recorded are forgotten.
+     */
+    private static void replayJournal()
+    {
+        IngestJournal journal = IngestJournal.getInstance();
+        if (!journal.isEnabled())
+        {
             return;
         }
-        restore(watchDirectory);
+        int completed = 0;
+        int resumed = 0;
+        for (JournalRecord unfinished : journal.getUnfinishedFiles())
+        {
+            Path file = Paths.get(unfinished.getFilePath());
+            if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS))
+            {
+                // file which replaced the recorded one gets a new record
+                JournalRecord record = journal.seen(unfinished.getFilePath());
+                if (record.isFullyCommitted())
+                {
+                    new XmlFileHandler(null, record.getFilePath(), Configuration.getProcessedFilesFolder(),
+                            Configuration.getCorruptedFilesFolder()).complete();
+                    completed++;
+                }
+                else
+                {
+                    LOGGER.debug("Handling of " + record + " will be resumed.");
+                    resumed++;
+                }
+            }
+            else if (!Files.exists(file.resolveSibling(XmlFileHandler.NOT_RECORDED_FILES_FOLDER).resolve(file.getFileName())))
+            {
+                journal.moved(unfinished.getFilePath());
+            }
+        }
+        journal.checkpoint();
+        LOGGER.info("Journal replayed: " + completed + " recorded files were moved, handling of " + resumed + " files will be resumed.");
+    }
+
+    /**
+     * Handles files which were already present in monitoring folder at startup. The directories are
+     * watched before the backlog is listed, so files created meanwhile are not lost and the listener
+     * skips files which are reported both by event and by the listing. Files are fed to the handler
+     * pool oldest first from a separate thread, as listing of a large backlog can be blocked when
+     * handler queue is full. Files claimed by this node during last run are handled first.
+     *
+     * @param watchService the started watch service
+     * @param listener     the listener of the watch service
+     */
+    private static void drainBacklog(SimpleDirectoryWatchService watchService, OnFileCreateListener listener)
+    {
+        Thread drainThread = new Thread(() ->
+        {
+            long start = System.nanoTime();
+            resumeClaimed(listener);
+            watchService.rescan();
+            LOGGER.info("Startup backlog was queued in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+        }, "backlog-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Passes files claimed by this node to the listener, files which are already handled are skipped by it.
+     *
+     * @param listener the listener
+     */
+    private static void resumeClaimed(OnFileCreateListener listener)
+    {
+        for (Path file : WorkClaims.getInstance().getClaimedFiles())
+        {
+            listener.onFileChange(file.toString());
+        }
     }
 
+    /**
+     * Updates heartbeat of this node and recovers files claimed by nodes without heartbeat in a separate thread,
+     * so heartbeat is not delayed by folder rescans. Monitoring folder is rescanned when files were recovered
+     * and, together with files claimed by this node, when the node stops fencing itself.
+     *
+     * @param workClaims   the claims of this node
+     * @param executor     the executor which rescans monitoring folder
+     * @param watchService the started watch service
+     * @param listener     the listener of claimed files
+     */
+    private static void scheduleHeartbeat(WorkClaims workClaims, ScheduledExecutorService executor,
+                                          SimpleDirectoryWatchService watchService, OnFileCreateListener listener)
+    {
+        ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "claim-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = workClaims.getHeartbeatPeriod();
+        heartbeatExecutor.scheduleAtFixedRate(() ->
+        {
+            boolean resumed = workClaims.heartbeat();
+            if (resumed)
+            {
+                executor.execute(() -> resumeClaimed(listener));
+            }
+            if (workClaims.recoverExpired() > 0 || resumed)
+            {
+                executor.execute(watchService::rescan);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
 
     /**
-     * Restores files from last unsuccessful writing to DB.
+     * Moves files which were not recorded to database during last run back to their directories,
+     * so they are handled with the rest of startup backlog.
      *
-     * @param monitoringPath the folder where to find files to restore
+     * @param monitoringPath the monitoring folder
      */
-    private void restore(String monitoringPath)
+    private static void restoreNotRecorded(Path monitoringPath)
     {
-        File monitoringFolder = new File(monitoringPath);
-        File[] monitoringFolderFiles = monitoringFolder.listFiles();
-        if (monitoringFolderFiles != null)
+        restore(monitoringPath);
+        if (Configuration.isMonitoringRecursive())
         {
-            Optional<File> optional = Arrays
-                    .stream(monitoringFolderFiles)
-                    .filter(file -> XmlFileHandler.NOT_RECORDED_FILES_FOLDER.equals(file.getName()))
-                    .findFirst();
+            restoreSubdirectories(monitoringPath, excludedDirectories());
+        }
+    }
 
-            if (optional.isPresent())
+    /**
+     * Gets directories which are not watched in recursive mode: processed, corrupted and claimed files folders
+     * and not recorded files folders of every directory.
+     *
+     * @return the predicate which tests directory path
+     */
+    private static Predicate<Path> excludedDirectories()
+    {
+        Set<Path> excluded = new HashSet<>();
+        excluded.add(Paths.get(Configuration.getProcessedFilesFolder()).toAbsolutePath().normalize());
+        excluded.add(Paths.get(Configuration.getCorruptedFilesFolder()).toAbsolutePath().normalize());
+        WorkClaims workClaims = WorkClaims.getInstance();
+        if (workClaims.isEnabled())
+        {
+            excluded.add(workClaims.getClaimFolder());
+        }
+        return dir -> XmlFileHandler.NOT_RECORDED_FILES_FOLDER.equals(String.valueOf(dir.getFileName()))
+                || excluded.contains(dir.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Restores files from last unsuccessful writing to DB in every watched subdirectory.
+     *
+     * @param monitoringPath the monitoring folder
+     * @param excluded       the directories which are not watched
+     */
+    private static void restoreSubdirectories(Path monitoringPath, Predicate<Path> excluded)
+    {
+        List<Path> directories;
+        try (Stream<Path> paths = Files.walk(monitoringPath))
+        {
+            directories = paths
+                    .filter(path -> !path.equals(monitoringPath) && Files.isDirectory(path) && !excluded.test(path)
+                            && !isExcludedSubtree(monitoringPath, path, excluded))
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e)
+        {
+            LOGGER.error("Cannot restore files of " + monitoringPath + " subdirectories.", e);
+            return;
+        }
+        directories.forEach(FolderMonitor::restore);
+    }
+
+    /**
+     * Tells if any parent of the directory up to monitoring folder is excluded.
+     *
+     * @param monitoringPath the monitoring folder
+     * @param directory      the directory
+     * @param excluded       the directories which are not watched
+     * @return true if the directory is inside excluded subtree
+     */
+    private static boolean isExcludedSubtree(Path monitoringPath, Path directory, Predicate<Path> excluded)
+    {
+        for (Path parent = directory.getParent(); parent != null && !parent.equals(monitoringPath); parent = parent.getParent())
+        {
+            if (excluded.test(parent))
             {
-                File restoreFolder = optional.get();
-                File[] restoreFolderFiles = restoreFolder.listFiles();
-                if (restoreFolderFiles != null)
-                {
-                    for (File fileToRestore : restoreFolderFiles)
-                    {
-                        try
-                        {
-                            Files.move(Paths.get(fileToRestore.toURI()), Paths.get(monitoringPath + File.separator + fileToRestore.getName()));
-                        } catch (IOException e)
-                        {
-                            e.printStackTrace();
-                        }
-                    }
-                    if (!restoreFolder.delete())
-                    {
-                        LOGGER.debug("Restore folder was not deleted.");
-                    }
-                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Restores files from last unsuccessful writing to DB. Files are moved in parallel.
+     *
+     * @param directory the folder where to find files to restore
+     */
+    private static void restore(Path directory)
+    {
+        Path restoreFolder = directory.resolve(XmlFileHandler.NOT_RECORDED_FILES_FOLDER);
+        if (!Files.isDirectory(restoreFolder, LinkOption.NOFOLLOW_LINKS))
+        {
+            return;
+        }
+        List<Path> filesToRestore = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(restoreFolder))
+        {
+            directoryStream.forEach(filesToRestore::add);
+        } catch (IOException | DirectoryIteratorException e)
+        {
+            LOGGER.error("Cannot list " + restoreFolder + " directory.", e);
+            return;
+        }
+        filesToRestore.parallelStream().forEach(fileToRestore ->
+        {
+            try
+            {
+                Files.move(fileToRestore, directory.resolve(fileToRestore.getFileName()));
+            } catch (IOException e)
+            {
+                LOGGER.error("File " + fileToRestore + " was not restored.", e);
             }
+        });
+        LOGGER.info(filesToRestore.size() + " not recorded files were restored to " + directory + " directory.");
+        try
+        {
+            Files.delete(restoreFolder);
+        } catch (IOException e)
+        {
+            LOGGER.debug("Restore folder was not deleted.", e);
         }
     }
 }
@@ -0,0 +1,251 @@
+package com.testing.archive;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts original files from {@link SegmentArchive}.
+ * <p>
+ * Usage: {@code ArchiveLookup <archive folder> <file name or path> [output folder]}. Indexes are searched from
+ * the newest segment, so the latest archived copy of the file is extracted to the output folder, the current
+ * folder by default.
+ */
+public class ArchiveLookup
+{
+    private static final Logger LOGGER = LogManager.getLogger(ArchiveLookup.class);
+
+    /**
+     * Extracts file from archive.
+     *
+     * @param args the archive folder, the file name or absolute path and optional output folder
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 2 && args.length != 3)
+        {
+            LOGGER.error("Please specify archive folder, name of archived file and optional output folder.");
+            return;
+        }
+        Path outputFolder = Paths.get(args.length == 3 ? args[2] : ".");
+        try
+        {
+            Path extracted = extract(Paths.get(args[0]), args[1], outputFolder);
+            if (extracted == null)
+            {
+                LOGGER.error("File " + args[1] + " was not found in archive " + args[0] + ".");
+            }
+            else
+            {
+                LOGGER.info("File " + args[1] + " was extracted to " + extracted + ".");
+            }
+        } catch (IOException e)
+        {
+            LOGGER.error("File " + args[1] + " was not extracted.", e);
+        }
+    }
+
+    /**
+     * Finds the latest archived copy of file and decompresses it to the output folder.
+     *
+     * @param archiveFolder the archive folder
+     * @param fileName      the file name or absolute path of the file when it was archived
+     * @param outputFolder  the folder for extracted file
+     * @return the extracted file or null if file is not in archive
+     * @throws IOException if archive cannot be read or file cannot be written
+     */
+    public static Path extract(Path archiveFolder, String fileName, Path outputFolder) throws IOException
+    {
+        List<Path> segments = listSegments(archiveFolder);
+        segments.sort(Comparator.comparingLong(ArchiveLookup::sequenceOf).reversed());
+        for (Path segment : segments)
+        {
+            IndexEntry entry = find(indexOf(segment), fileName);
+            if (entry != null)
+            {
+                Files.createDirectories(outputFolder);
+                Path target = outputFolder.resolve(Paths.get(entry.path).getFileName());
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ);
+                     InputStream input = new GZIPInputStream(new BoundedInputStream(
+                             Channels.newInputStream(channel.position(entry.offset)), entry.length)))
+                {
+                    Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the last entry of the file in index.
+     *
+     * @return the entry or null if index has no such file
+     */
+    private static IndexEntry find(Path index, String fileName) throws IOException
+    {
+        if (!Files.exists(index))
+        {
+            return null;
+        }
+        IndexEntry found = null;
+        try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8))
+        {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4)
+                {
+                    continue;
+                }
+                String path = fields[3];
+                if (path.equals(fileName) || String.valueOf(Paths.get(path).getFileName()).equals(fileName))
+                {
+                    found = new IndexEntry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), path);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets segments of the archive.
+     *
+     * @param archiveFolder the archive folder
+     * @return the segment files
+     * @throws IOException if folder cannot be read
+     */
+    static List<Path> listSegments(Path archiveFolder) throws IOException
+    {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archiveFolder, "*" + SegmentArchive.SEGMENT_SUFFIX))
+        {
+            for (Path segment : stream)
+            {
+                if (sequenceOf(segment) >= 0)
+                {
+                    segments.add(segment);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Gets sequence number of segment from its name.
+     *
+     * @param segment the segment file
+     * @return the sequence or -1 if file is not a segment
+     */
+    static long sequenceOf(Path segment)
+    {
+        String name = segment.getFileName().toString();
+        try
+        {
+            return Long.parseLong(name.substring(0, name.length() - SegmentArchive.SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets file name of segment without suffix.
+     *
+     * @param sequence the segment sequence
+     * @return the segment name
+     */
+    static String segmentName(long sequence)
+    {
+        return String.format("%020d", sequence);
+    }
+
+    private static Path indexOf(Path segment)
+    {
+        return segment.resolveSibling(segmentName(sequenceOf(segment)) + SegmentArchive.INDEX_SUFFIX);
+    }
+
+    /**
+     * Location of archived file in segment.
+     */
+    private static class IndexEntry
+    {
+        private final long offset;
+        private final long length;
+        private final String path;
+
+        IndexEntry(long offset, long length, String path)
+        {
+            this.offset = offset;
+            this.length = length;
+            this.path = path;
+        }
+    }
+
+    /**
+     * Input stream which ends after the given number of bytes.
+     */
+    private static class BoundedInputStream extends FilterInputStream
+    {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length)
+        {
+            super(in);
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0)
+            {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0)
+            {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.testing.archive;
+
+import com.testing.config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The singleton rolling archive of processed files.
+ * <p>
+ * Files are appended to segment '{sequence}.gz' in the archive folder, every file as a separate gzip member,
+ * so the segment is a valid gzip file and any file can be decompressed alone. Offset and compressed length
+ * of every file are appended to index '{sequence}.idx' as line 'offset TAB length TAB size TAB path', files whose
+ * path contains tab or line break are not archived. A file which fails while it is compressed is cut off
+ * the segment and is not indexed.
+ * One writer thread takes files of all handlers by batches, writes them, flushes segment and index to the
+ * storage once per batch and only then releases waiting handlers. A new segment is started when the current
+ * one reaches the size limit or gets older than the roll period, segments of previous runs are never appended.
+ * Archive is disabled if archive folder is not configured.
+ *
+ * @see ArchiveLookup
+ */
+public class SegmentArchive
+{
+    private static final Logger LOGGER = LogManager.getLogger(SegmentArchive.class);
+
+    static final String SEGMENT_SUFFIX = ".gz";
+    static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAX_BATCH_FILES = 256;
+    private static final long BATCH_LINGER_MILLIS = 10;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static SegmentArchive instance;
+
+    private final Path folder;
+    private final long segmentSize;
+    private final long rollPeriod;
+    private final BlockingQueue<AppendRequest> requests = new LinkedBlockingQueue<>();
+    private final byte[] copyBuffer = new byte[BUFFER_SIZE];
+    private long sequence;
+    private long segmentCreated;
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private OutputStream segmentOutput;
+
+    /**
+     * Opens archive in the folder, creates the folder if it does not exist.
+     *
+     * @param folder      the archive folder
+     * @param segmentSize the size in bytes after which the next segment is started
+     * @param rollPeriod  the age in milliseconds after which the next segment is started
+     * @throws IOException if folder cannot be created or read
+     */
+    SegmentArchive(Path folder, long segmentSize, long rollPeriod) throws IOException
+    {
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        this.rollPeriod = rollPeriod;
+        Files.createDirectories(folder);
+        for (Path segment : ArchiveLookup.listSegments(folder))
+        {
+            sequence = Math.max(sequence, ArchiveLookup.sequenceOf(segment));
+        }
+        Thread writer = new Thread(this::writeLoop, "archive-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private SegmentArchive()
+    {
+        folder = null;
+        segmentSize = 0;
+        rollPeriod = 0;
+    }
+
+    /**
+     * Gets the archive, opens it on the first call.
+     *
+     * @return the instance
+     */
+    public static synchronized SegmentArchive getInstance()
+    {
+        if (instance == null)
+        {
+            String archiveFolder = Configuration.getArchiveFolder();
+            if (archiveFolder.length() != 0)
+            {
+                try
+                {
+                    instance = new SegmentArchive(Paths.get(archiveFolder), Configuration.getArchiveSegmentSize(),
+                            Configuration.getArchiveRollPeriod());
+                } catch (IOException e)
+                {
+                    LOGGER.error("Cannot open archive " + archiveFolder + ", processed files will be moved.", e);
+                }
+            }
+            if (instance == null)
+            {
+                instance = new SegmentArchive();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Tells if processed files are archived.
+     *
+     * @return true if archive is configured and opened
+     */
+    public boolean isEnabled()
+    {
+        return folder != null;
+    }
+
+    /**
+     * Appends file to archive and waits until it is flushed to the storage. The file itself is not changed.
+     *
+     * @param file the file
+     * @throws IOException if file was not archived
+     */
+    public void append(Path file) throws IOException
+    {
+        AppendRequest request = new AppendRequest(file);
+        requests.add(request);
+        try
+        {
+            request.flushed.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for archive flush of " + file);
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("File " + file + " was not archived.", e.getCause());
+        }
+    }
+
+    /**
+     * Takes batches of requests until the thread is stopped.
+     */
+    private void writeLoop()
+    {
+        List<AppendRequest> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                AppendRequest request = requests.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_LINGER_MILLIS);
+                while (request != null)
+                {
+                    batch.add(request);
+                    if (batch.size() >= MAX_BATCH_FILES)
+                    {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    request = remaining > 0 ? requests.poll(remaining, TimeUnit.NANOSECONDS) : requests.poll();
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            } finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes files of the batch, flushes segment and index and notifies waiting handlers.
+     *
+     * @param batch the requests to write
+     */
+    private void writeBatch(List<AppendRequest> batch)
+    {
+        List<AppendRequest> written = new ArrayList<>(batch.size());
+        try
+        {
+            if (segmentChannel == null || segmentChannel.position() >= segmentSize
+                    || System.currentTimeMillis() - segmentCreated >= rollPeriod)
+            {
+                roll();
+            }
+            StringBuilder index = new StringBuilder();
+            for (AppendRequest request : batch)
+            {
+                String path = request.file.toAbsolutePath().toString();
+                if (path.indexOf('\t') >= 0 || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0)
+                {
+                    request.flushed.completeExceptionally(
+                            new IOException("File " + path + " has tab or line break in path and cannot be indexed."));
+                    continue;
+                }
+                long offset = segmentChannel.position();
+                try
+                {
+                    long size = writeMember(request.file);
+                    index.append(offset).append('\t').append(segmentChannel.position() - offset).append('\t')
+                            .append(size).append('\t').append(path).append('\n');
+                    written.add(request);
+                } catch (IOException e)
+                {
+                    segmentOutput.flush();
+                    segmentChannel.truncate(offset);
+                    request.flushed.completeExceptionally(e);
+                }
+            }
+            ByteBuffer indexBytes = ByteBuffer.wrap(index.toString().getBytes(StandardCharsets.UTF_8));
+            while (indexBytes.hasRemaining())
+            {
+                indexChannel.write(indexBytes);
+            }
+            segmentChannel.force(false);
+            indexChannel.force(false);
+            LOGGER.debug(written.size() + " files were appended to archive segment " + sequence + ".");
+        } catch (IOException | RuntimeException e)
+        {
+            LOGGER.error("Archive segment " + sequence + " was not written.", e);
+            for (AppendRequest request : batch)
+            {
+                request.flushed.completeExceptionally(e);
+            }
+            closeSegment();
+            return;
+        }
+        for (AppendRequest request : written)
+        {
+            request.flushed.complete(null);
+        }
+    }
+
+    /**
+     * Compresses file to the segment as a separate gzip member.
+     *
+     * @param file the file
+     * @return the size of the file
+     * @throws IOException if file cannot be read or segment cannot be written
+     */
+    private long writeMember(Path file) throws IOException
+    {
+        long size = 0;
+        try (InputStream input = Files.newInputStream(file);
+             GZIPOutputStream member = new GZIPOutputStream(new FilterOutputStream(segmentOutput)
+             {
+                 @Override
+                 public void write(byte[] b, int off, int len) throws IOException
+                 {
+                     out.write(b, off, len);
+                 }
+
+                 @Override
+                 public void close() throws IOException
+                 {
+                     flush();
+                 }
+             }, BUFFER_SIZE))
+        {
+            int read;
+            while ((read = input.read(copyBuffer)) > 0)
+            {
+                member.write(copyBuffer, 0, read);
+                size += read;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Closes the current segment and starts the next one.
+     *
+     * @throws IOException if segment cannot be created
+     */
+    private void roll() throws IOException
+    {
+        closeSegment();
+        sequence++;
+        segmentChannel = FileChannel.open(folder.resolve(ArchiveLookup.segmentName(sequence) + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(folder.resolve(ArchiveLookup.segmentName(sequence) + INDEX_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentOutput = new BufferedOutputStream(Channels.newOutputStream(segmentChannel), BUFFER_SIZE);
+        segmentCreated = System.currentTimeMillis();
+        LOGGER.debug("Archive segment " + sequence + " was started.");
+    }
+
+    private void closeSegment()
+    {
+        try
+        {
+            if (segmentOutput != null)
+            {
+                segmentOutput.close();
+            }
+            if (indexChannel != null)
+            {
+                indexChannel.close();
+            }
+        } catch (IOException e)
+        {
+            LOGGER.error("Archive segment " + sequence + " was not closed.", e);
+        } finally
+        {
+            segmentOutput = null;
+            segmentChannel = null;
+            indexChannel = null;
+        }
+    }
+
+    /**
+     * File waiting for archiving with the future completed after flush.
+     */
+    private static class AppendRequest
+    {
+        private final Path file;
+        private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+        AppendRequest(Path file)
+        {
+            this.file = file;
+        }
+    }
+}
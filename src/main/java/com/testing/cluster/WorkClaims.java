@@ -0,0 +1,650 @@
+package com.testing.cluster;
+
+import com.testing.config.Configuration;
+import com.testing.handler.XmlFileHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Claims of files shared by several nodes watching the same folder.
+ * <p>
+ * Before a file is handled, the node moves it to its own folder '{CLAIM_FOLDER}/{node id}' keeping the path
+ * relative to monitoring folder. The file is moved by a hard link and removal of its old name: the link never
+ * replaces an existing file, a file which name is taken by an earlier file gets a timestamp prefix, and only one of
+ * several nodes which linked the same file removes its old name, the others find it missing, remove their link and
+ * skip it. Claim folder must be on the same file system as monitoring folder, claims are not created otherwise.
+ * <p>
+ * Every node touches its heartbeat file '{CLAIM_FOLDER}/{node id}.heartbeat'. Files claimed by a node which
+ * heartbeat is older than claim timeout are moved back to monitoring folder by the first node which locks the
+ * recovery by creating '{CLAIM_FOLDER}/{node id}.recovery', and are claimed again by any node. Entries of a file
+ * which the dead node had partly recorded are recorded again unless the node is restarted with the same node id
+ * and journal before timeout. Clocks of nodes must be synchronized.
+ * <p>
+ * A node which could not update its heartbeat for three quarters of timeout fences itself: it claims no files
+ * and {@link #holds(Path)} is false for files it claimed, so it neither writes their entries nor moves them
+ * while other nodes may recover them. The node continues when its heartbeat is updated again.
+ * <p>
+ * Claims are disabled and files are handled in place if claim folder is not configured.
+ */
+public class WorkClaims
+{
+    private static final Logger LOGGER = LogManager.getLogger(WorkClaims.class);
+
+    private static final String HEARTBEAT_SUFFIX = ".heartbeat";
+    private static final String RECOVERY_SUFFIX = ".recovery";
+    private static final Pattern INVALID_NODE_ID_CHARS = Pattern.compile("[^A-Za-z0-9._-]");
+    private static final int MAX_RENAME_ATTEMPTS = 10;
+
+    private static WorkClaims instance;
+
+    private final Path claimFolder;
+    private final Path monitoringFolder;
+    private final String nodeId;
+    private final Path nodeFolder;
+    private final Path heartbeatFile;
+    private final long timeout;
+    private final long fenceNanos;
+    private final Set<Path> createdFolders = ConcurrentHashMap.newKeySet();
+    private volatile long lastHeartbeatNanos;
+
+    /**
+     * Instantiates claims of the node and writes its first heartbeat.
+     *
+     * @param claimFolder      the folder of all nodes claims
+     * @param monitoringFolder the monitoring folder
+     * @param nodeId           the node id unique among nodes
+     * @param timeout          the time in milliseconds after which claims of node without heartbeat are recovered
+     * @throws IOException if node folder or heartbeat cannot be created or claim folder is on another file system
+     */
+    WorkClaims(Path claimFolder, Path monitoringFolder, String nodeId, long timeout) throws IOException
+    {
+        if (nodeId.isEmpty() || !nodeId.equals(INVALID_NODE_ID_CHARS.matcher(nodeId).replaceAll("")))
+        {
+            throw new IllegalArgumentException("Node id '" + nodeId + "' can contain only letters, digits, '.', '_' and '-'.");
+        }
+        this.claimFolder = claimFolder.toAbsolutePath().normalize();
+        this.monitoringFolder = monitoringFolder.toAbsolutePath().normalize();
+        this.nodeId = nodeId;
+        this.nodeFolder = this.claimFolder.resolve(nodeId);
+        this.heartbeatFile = this.claimFolder.resolve(nodeId + HEARTBEAT_SUFFIX);
+        this.timeout = timeout;
+        this.fenceNanos = TimeUnit.MILLISECONDS.toNanos(timeout - getHeartbeatPeriod());
+        this.lastHeartbeatNanos = System.nanoTime() - fenceNanos - 1;
+        Files.createDirectories(this.claimFolder);
+        if (!Files.getFileStore(this.claimFolder).equals(Files.getFileStore(this.monitoringFolder)))
+        {
+            throw new IOException("Claim folder " + this.claimFolder + " is not on the file system of monitoring folder "
+                    + this.monitoringFolder + ", files cannot be claimed by atomic rename.");
+        }
+        heartbeat();
+        Files.createDirectories(nodeFolder);
+        createdFolders.add(nodeFolder);
+        LOGGER.debug("Files are claimed by node " + nodeId + " in " + nodeFolder + " folder.");
+    }
+
+    private WorkClaims()
+    {
+        claimFolder = null;
+        monitoringFolder = null;
+        nodeId = null;
+        nodeFolder = null;
+        heartbeatFile = null;
+        timeout = 0;
+        fenceNanos = 0;
+    }
+
+    /**
+     * Creates claims of this node if claim folder is configured. Node which cannot claim files must not
+     * start, as other nodes would handle the same files.
+     *
+     * @return false if claim folder is configured, but claims cannot be created
+     */
+    public static synchronized boolean initClaims()
+    {
+        instance = null;
+        if (Configuration.getClaimFolder().length() == 0)
+        {
+            instance = new WorkClaims();
+            return true;
+        }
+        return getInstance().isEnabled();
+    }
+
+    /**
+     * Gets claims of this node, creates them on the first call. Claims which cannot be created are disabled.
+     *
+     * @return the instance
+     */
+    public static synchronized WorkClaims getInstance()
+    {
+        if (instance == null)
+        {
+            String claimFolder = Configuration.getClaimFolder();
+            if (claimFolder.length() != 0)
+            {
+                String nodeId = Configuration.getNodeId();
+                if (nodeId.length() == 0)
+                {
+                    nodeId = defaultNodeId();
+                }
+                try
+                {
+                    instance = new WorkClaims(Paths.get(claimFolder), Paths.get(Configuration.getMonitoringFolderPath()),
+                            nodeId, Configuration.getClaimTimeout());
+                } catch (IOException | IllegalArgumentException e)
+                {
+                    LOGGER.error("Cannot create claims of node " + nodeId + " in " + claimFolder + ".", e);
+                }
+            }
+            if (instance == null)
+            {
+                instance = new WorkClaims();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets node id from host name and process id, which is unique but changes with every start.
+     */
+    private static String defaultNodeId()
+    {
+        String host;
+        try
+        {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e)
+        {
+            host = "localhost";
+        }
+        String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+        String pid = runtimeName.substring(0, Math.max(0, runtimeName.indexOf('@')));
+        return INVALID_NODE_ID_CHARS.matcher(host + "-" + pid).replaceAll("_");
+    }
+
+    /**
+     * Tells if files are claimed.
+     *
+     * @return true if claim folder is configured and node folder is created
+     */
+    public boolean isEnabled()
+    {
+        return nodeFolder != null;
+    }
+
+    /**
+     * Gets node id.
+     *
+     * @return the node id
+     */
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+
+    /**
+     * Gets folder of all nodes claims.
+     *
+     * @return the claim folder
+     */
+    public Path getClaimFolder()
+    {
+        return claimFolder;
+    }
+
+    /**
+     * Gets folder of files claimed by this node.
+     *
+     * @return the node folder
+     */
+    public Path getNodeFolder()
+    {
+        return nodeFolder;
+    }
+
+    /**
+     * Gets period of heartbeat which is a quarter of claim timeout.
+     *
+     * @return the heartbeat period in milliseconds
+     */
+    public long getHeartbeatPeriod()
+    {
+        return Math.max(1, timeout / 4);
+    }
+
+    /**
+     * Claims file for this node by moving it to node folder. File already in node folder stays there.
+     *
+     * @param file the file in monitoring folder
+     * @return the claimed file or null if another node claimed it first
+     * @throws IOException if file cannot be moved or node is fenced
+     */
+    public Path claim(Path file) throws IOException
+    {
+        if (!isEnabled())
+        {
+            return file;
+        }
+        if (isFenced())
+        {
+            throw new IOException("Node " + nodeId + " is fenced, its heartbeat was not updated in time.");
+        }
+        Path absolute = file.toAbsolutePath().normalize();
+        if (absolute.startsWith(nodeFolder))
+        {
+            return file;
+        }
+        Path relative = absolute.startsWith(monitoringFolder) ? monitoringFolder.relativize(absolute) : absolute.getFileName();
+        Path target = nodeFolder.resolve(relative);
+        Path parent = target.getParent();
+        if (!createdFolders.contains(parent))
+        {
+            Files.createDirectories(parent);
+            createdFolders.add(parent);
+        }
+        Path claimed;
+        try
+        {
+            claimed = moveWithoutReplace(absolute, target);
+        } catch (NoSuchFileException e)
+        {
+            if (Files.isDirectory(parent, LinkOption.NOFOLLOW_LINKS))
+            {
+                return null;
+            }
+            // node folder was removed when this node did not update heartbeat in time and its claims were recovered
+            LOGGER.warn("Claims of node " + nodeId + " were recovered by another node, node folder is created again.");
+            createdFolders.clear();
+            return claim(file);
+        }
+        return claimed;
+    }
+
+    /**
+     * Tells if file is still claimed by this node: heartbeat of node is recent and file was not recovered by another
+     * node. Handlers check it before entries are written and before file is moved.
+     *
+     * @param file the claimed file
+     * @return true if file may be handled, always true if claims are disabled
+     */
+    public boolean holds(Path file)
+    {
+        return !isEnabled() || (!isFenced() && Files.exists(file, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    /**
+     * Tells if heartbeat of this node was not updated for so long that other nodes may recover its claims soon.
+     *
+     * @return true if node must not claim or handle files
+     */
+    public boolean isFenced()
+    {
+        return isEnabled() && System.nanoTime() - lastHeartbeatNanos > fenceNanos;
+    }
+
+    /**
+     * Gets files claimed by this node, including files which were not recorded, which are left
+     * from previous run with the same node id.
+     *
+     * @return the claimed files
+     */
+    public List<Path> getClaimedFiles()
+    {
+        if (!isEnabled())
+        {
+            return Collections.emptyList();
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(nodeFolder))
+        {
+            files = paths.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)).collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e)
+        {
+            LOGGER.error("Cannot list files claimed by node " + nodeId + ".", e);
+            return Collections.emptyList();
+        }
+        files.removeIf(file -> !finishInterruptedClaim(file));
+        return files;
+    }
+
+    /**
+     * Removes name in monitoring folder of a file which claim was interrupted after the file was linked to node
+     * folder. If another node removed the name first, the file is its claim and the link of this node is removed.
+     *
+     * @param file the file in node folder
+     * @return true if the file is claimed by this node
+     */
+    private boolean finishInterruptedClaim(Path file)
+    {
+        Path source = monitoringFolder.resolve(withoutNotRecorded(nodeFolder.relativize(file)));
+        try
+        {
+            if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS) || !Files.isSameFile(source, file))
+            {
+                return true;
+            }
+            try
+            {
+                Files.delete(source);
+            } catch (NoSuchFileException e)
+            {
+                Files.deleteIfExists(file);
+                LOGGER.info("File " + source + " was claimed by another node after claim of node " + nodeId + " was interrupted.");
+                return false;
+            }
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot finish claim of file " + file + " by node " + nodeId + ".", e);
+        }
+        return true;
+    }
+
+    /**
+     * Updates modification time of heartbeat file of this node.
+     *
+     * @return true if node was fenced and the heartbeat ended fencing
+     */
+    public boolean heartbeat()
+    {
+        if (!isEnabled())
+        {
+            return false;
+        }
+        long start = System.nanoTime();
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        try
+        {
+            Files.setLastModifiedTime(heartbeatFile, now);
+        } catch (NoSuchFileException e)
+        {
+            try
+            {
+                Files.createFile(heartbeatFile);
+                Files.setLastModifiedTime(heartbeatFile, now);
+            } catch (FileAlreadyExistsException ignored)
+            {
+                // created by the previous run of this node
+            } catch (IOException createException)
+            {
+                LOGGER.error("Cannot create heartbeat of node " + nodeId + ".", createException);
+                return false;
+            }
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot update heartbeat of node " + nodeId + ".", e);
+            return false;
+        }
+        boolean wasFenced = isFenced();
+        lastHeartbeatNanos = start;
+        if (wasFenced)
+        {
+            LOGGER.warn("Heartbeat of node " + nodeId + " was updated, node handles files again.");
+        }
+        return wasFenced;
+    }
+
+    /**
+     * Moves files claimed by nodes without heartbeat back to monitoring folder.
+     *
+     * @return the number of recovered files
+     */
+    public int recoverExpired()
+    {
+        if (!isEnabled() || isFenced())
+        {
+            return 0;
+        }
+        List<Path> nodeFolders = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(claimFolder, Files::isDirectory))
+        {
+            directoryStream.forEach(nodeFolders::add);
+        } catch (IOException | DirectoryIteratorException e)
+        {
+            LOGGER.error("Cannot list claims of other nodes in " + claimFolder + ".", e);
+            return 0;
+        }
+        int recovered = 0;
+        long now = System.currentTimeMillis();
+        for (Path folder : nodeFolders)
+        {
+            String otherNodeId = String.valueOf(folder.getFileName());
+            if (!otherNodeId.equals(nodeId) && isExpired(claimFolder.resolve(otherNodeId + HEARTBEAT_SUFFIX), now)
+                    && lockRecovery(otherNodeId, now))
+            {
+                recovered += recover(otherNodeId, folder);
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * Tells if file is missing or was not modified during timeout.
+     */
+    private boolean isExpired(Path file, long now)
+    {
+        try
+        {
+            return now - Files.getLastModifiedTime(file).toMillis() > timeout;
+        } catch (NoSuchFileException e)
+        {
+            return true;
+        } catch (IOException e)
+        {
+            LOGGER.debug("Cannot read modification time of " + file + ".", e);
+            return false;
+        }
+    }
+
+    /**
+     * Locks recovery of node claims by creating recovery file. Lock of a recovering node which
+     * died itself expires after timeout.
+     *
+     * @return true if this node recovers the claims
+     */
+    private boolean lockRecovery(String otherNodeId, long now)
+    {
+        Path recoveryFile = claimFolder.resolve(otherNodeId + RECOVERY_SUFFIX);
+        try
+        {
+            Files.createFile(recoveryFile);
+            return true;
+        } catch (FileAlreadyExistsException e)
+        {
+            if (!isExpired(recoveryFile, now))
+            {
+                return false;
+            }
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot lock recovery of node " + otherNodeId + " claims.", e);
+            return false;
+        }
+        try
+        {
+            // moved files are not claimed twice, so a lock taken over by two nodes only repeats work
+            Files.setLastModifiedTime(recoveryFile, FileTime.fromMillis(now));
+            return true;
+        } catch (IOException e)
+        {
+            LOGGER.debug("Recovery of node " + otherNodeId + " claims was locked by another node.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Moves files of node folder back to monitoring folder and removes node folder, heartbeat and recovery lock.
+     * Files from 'not_recorded' folders are moved to their directories too.
+     *
+     * @return the number of recovered files
+     */
+    private int recover(String otherNodeId, Path folder)
+    {
+        List<Path> files;
+        List<Path> directories;
+        try (Stream<Path> paths = Files.walk(folder))
+        {
+            List<Path> all = paths.collect(Collectors.toList());
+            files = all.stream().filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)).collect(Collectors.toList());
+            directories = all.stream().filter(path -> Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)).collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e)
+        {
+            LOGGER.error("Cannot list files claimed by node " + otherNodeId + ".", e);
+            return 0;
+        }
+        int recovered = 0;
+        boolean complete = true;
+        for (Path file : files)
+        {
+            Path target = monitoringFolder.resolve(withoutNotRecorded(folder.relativize(file)));
+            try
+            {
+                Files.createDirectories(target.getParent());
+                moveWithoutReplace(file, target);
+                recovered++;
+            } catch (NoSuchFileException e)
+            {
+                LOGGER.debug("File " + file + " was recovered by another node.", e);
+            } catch (IOException e)
+            {
+                LOGGER.error("File " + file + " claimed by node " + otherNodeId + " was not recovered.", e);
+                complete = false;
+            }
+        }
+        if (complete)
+        {
+            // deepest directories first
+            for (int i = directories.size() - 1; i >= 0; i--)
+            {
+                deleteIfExists(directories.get(i));
+            }
+            deleteIfExists(claimFolder.resolve(otherNodeId + HEARTBEAT_SUFFIX));
+            deleteIfExists(claimFolder.resolve(otherNodeId + RECOVERY_SUFFIX));
+        }
+        if (!files.isEmpty())
+        {
+            LOGGER.warn("Node " + otherNodeId + " has no heartbeat for " + timeout + " ms, " + recovered
+                    + " files claimed by it were returned to monitoring folder.");
+        }
+        return recovered;
+    }
+
+    /**
+     * Moves file by creating hard link to it and removing its old name. Creation of the link fails if target exists,
+     * so an existing file is never replaced, the moved file gets a timestamp prefix instead. A target which is
+     * already a link to the file is left by a move interrupted before the old name was removed. Only one of
+     * concurrent moves of the same file removes the old name, the others remove their link. Falls back to atomic
+     * rename if file system cannot link the file.
+     *
+     * @param source the file
+     * @param target the new path of the file
+     * @return the path of the moved file
+     * @throws NoSuchFileException if the file was moved by another node first or target folder does not exist
+     * @throws IOException         if file cannot be moved
+     */
+    private static Path moveWithoutReplace(Path source, Path target) throws IOException
+    {
+        Path destination = target;
+        for (int attempt = 0; ; attempt++)
+        {
+            try
+            {
+                Files.createLink(destination, source);
+            } catch (FileAlreadyExistsException e)
+            {
+                if (!Files.isSameFile(source, destination))
+                {
+                    destination = renamed(target, attempt, e);
+                    continue;
+                }
+            } catch (NoSuchFileException e)
+            {
+                throw e;
+            } catch (FileSystemException | UnsupportedOperationException e)
+            {
+                if (Files.exists(destination, LinkOption.NOFOLLOW_LINKS))
+                {
+                    destination = renamed(target, attempt, new FileAlreadyExistsException(destination.toString()));
+                    continue;
+                }
+                Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+                return destination;
+            }
+            try
+            {
+                Files.delete(source);
+            } catch (NoSuchFileException e)
+            {
+                Files.deleteIfExists(destination);
+                throw e;
+            }
+            return destination;
+        }
+    }
+
+    /**
+     * Gets name with timestamp prefix for a file which name is taken.
+     */
+    private static Path renamed(Path target, int attempt, FileAlreadyExistsException collision)
+            throws FileAlreadyExistsException
+    {
+        if (attempt >= MAX_RENAME_ATTEMPTS)
+        {
+            throw collision;
+        }
+        String timestamp = Instant.now().toString().replace(":", ".");
+        return target.resolveSibling(timestamp + (attempt == 0 ? "" : "_" + attempt) + "_" + target.getFileName());
+    }
+
+    /**
+     * Removes 'not_recorded' folders from path of a claimed file.
+     */
+    private static Path withoutNotRecorded(Path relative)
+    {
+        Path result = relative.getFileName();
+        for (int i = relative.getNameCount() - 2; i >= 0; i--)
+        {
+            if (!XmlFileHandler.NOT_RECORDED_FILES_FOLDER.equals(relative.getName(i).toString()))
+            {
+                result = relative.getName(i).resolve(result);
+            }
+        }
+        return result;
+    }
+
+    private static void deleteIfExists(Path path)
+    {
+        try
+        {
+            Files.deleteIfExists(path);
+        } catch (IOException e)
+        {
+            LOGGER.debug("Cannot delete " + path + ".", e);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -32,7 +33,77 @@ public final class Configuration
         FILE_NAME_PATTERN,
         MONITORING_PERIOD,
         PROCESSED_FILES_FOLDER,
-        CORRUPTED_FILES_FOLDER
+        CORRUPTED_FILES_FOLDER,
+        DB_WRITE_MODE(false),
+        BATCH_SIZE(false),
+        BATCH_MAX_LINGER(false),
+        ENTRIES_CHUNK_SIZE(false),
+        MONITORING_MODE(false),
+        MAX_QUEUED_FILES(false),
+        MAX_QUEUED_BYTES(false),
+        QUEUE_OVERFLOW_POLICY(false),
+        RESCAN_PERIOD(false),
+        MONITORING_RECURSIVE(false),
+        WRITE_COMPLETION_MODE(false),
+        STABILIZATION_PERIOD(false),
+        IN_PROGRESS_SUFFIX(false),
+        RETRY_MAX_ATTEMPTS(false),
+        RETRY_INITIAL_DELAY(false),
+        RETRY_MAX_DELAY(false),
+        DB_POOL_MIN_SIZE(false),
+        DB_POOL_MAX_SIZE(false),
+        DB_POOL_IDLE_TIMEOUT(false),
+        DB_POOL_BORROW_TIMEOUT(false),
+        DB_POOL_LEAK_THRESHOLD(false),
+        DB_STATEMENT_CACHE_SIZE(false),
+        PARSER_ENGINE(false),
+        JOURNAL_PATH(false),
+        JOURNAL_CHECKPOINT_PERIOD(false),
+        DEDUP_INDEX_PATH(false),
+        DEDUP_INDEX_CAPACITY(false),
+        SPOOL_FOLDER(false),
+        CIRCUIT_FAILURE_THRESHOLD(false),
+        CIRCUIT_OPEN_DURATION(false),
+        INPUT_MODE(false),
+        MMAP_THRESHOLD(false),
+        SHARD_DATE_PATTERN(false),
+        SHARD_HASH_BUCKETS(false),
+        ARCHIVE_FOLDER(false),
+        ARCHIVE_SEGMENT_SIZE(false),
+        ARCHIVE_ROLL_PERIOD(false),
+        EXECUTION_MODE(false),
+        WRITE_STAGE_THREADS(false),
+        RING_BUFFER_SIZE(false),
+        MAPPING_FILE(false),
+        PARTITION_PERIOD(false),
+        PARTITION_COLUMN(false),
+        PARTITIONS_AHEAD(false),
+        PARTITION_RETENTION(false),
+        CLAIM_FOLDER(false),
+        NODE_ID(false),
+        CLAIM_TIMEOUT(false);
+
+        private final boolean required;
+
+        PropertiesEnum()
+        {
+            this(true);
+        }
+
+        PropertiesEnum(boolean required)
+        {
+            this.required = required;
+        }
+
+        /**
+         * Tells if property must be present in configuration file.
+         *
+         * @return false if property can be omitted and default value is used instead
+         */
+        boolean isRequired()
+        {
+            return required;
+        }
     }
 
     /**
@@ -98,6 +169,87 @@ public final class Configuration
         return properties.getProperty(DB_TABLE_NAME.name());
     }
 
+    /**
+     * Gets path of file which maps xml elements to table columns.
+     *
+     * @return the mapping file path or empty string if default mapping is used
+     */
+    public static String getMappingFile()
+    {
+        return getOptionalProperty(MAPPING_FILE);
+    }
+
+    /**
+     * Gets period of time covered by one partition of the table.
+     *
+     * @return the partition period, {@link PartitionPeriod#NONE} if not specified
+     */
+    public static PartitionPeriod getPartitionPeriod()
+    {
+        return getEnumProperty(PARTITION_PERIOD, PartitionPeriod.class, PartitionPeriod.NONE);
+    }
+
+    /**
+     * Gets mapped timestamp column which value selects the partition of entry.
+     *
+     * @return the partition column, 'creation_date' if not specified
+     */
+    public static String getPartitionColumn()
+    {
+        String value = getOptionalProperty(PARTITION_COLUMN);
+        return value.length() == 0 ? "creation_date" : value;
+    }
+
+    /**
+     * Gets number of partitions created ahead after the partition of the current period.
+     *
+     * @return the partitions ahead
+     */
+    public static int getPartitionsAhead()
+    {
+        return (int) getLongProperty(PARTITIONS_AHEAD, 2, 0);
+    }
+
+    /**
+     * Gets number of partitions kept including the partition of the current period, older partitions are dropped.
+     *
+     * @return the partition retention, 0 if partitions are never dropped
+     */
+    public static int getPartitionRetention()
+    {
+        return (int) getLongProperty(PARTITION_RETENTION, 0, 0);
+    }
+
+    /**
+     * Gets folder where nodes sharing monitoring folder claim files.
+     *
+     * @return the claim folder, empty if files are not claimed
+     */
+    public static String getClaimFolder()
+    {
+        return getOptionalProperty(CLAIM_FOLDER);
+    }
+
+    /**
+     * Gets id of this node among nodes sharing monitoring folder.
+     *
+     * @return the node id, empty if not specified
+     */
+    public static String getNodeId()
+    {
+        return getOptionalProperty(NODE_ID);
+    }
+
+    /**
+     * Gets time without heartbeat after which files claimed by a node are claimed again by other nodes.
+     *
+     * @return the claim timeout in milliseconds
+     */
+    public static long getClaimTimeout()
+    {
+        return getDurationProperty(CLAIM_TIMEOUT, 60, TimeUnit.SECONDS);
+    }
+
     /**
      * Gets monitoring folder path.
      *
@@ -176,6 +328,127 @@ public final class Configuration
        return defaultValue;
     }
 
+    /**
+     * Gets monitoring mode.
+     *
+     * @return the monitoring mode, {@link MonitoringMode#SCHEDULED} if not specified
+     */
+    public static MonitoringMode getMonitoringMode()
+    {
+        return getEnumProperty(MONITORING_MODE, MonitoringMode.class, MonitoringMode.SCHEDULED);
+    }
+
+    /**
+     * Gets maximum number of files queued for handling.
+     *
+     * @return the max queued files
+     */
+    public static int getMaxQueuedFiles()
+    {
+        return (int) getLongProperty(MAX_QUEUED_FILES, 10000);
+    }
+
+    /**
+     * Gets maximum total size in bytes of files queued for handling.
+     *
+     * @return the max queued bytes
+     */
+    public static long getMaxQueuedBytes()
+    {
+        return getLongProperty(MAX_QUEUED_BYTES, 256L * 1024 * 1024);
+    }
+
+    /**
+     * Gets policy applied to new files when queue limits are reached.
+     *
+     * @return the overflow policy, {@link OverflowPolicy#BLOCK} if not specified
+     */
+    public static OverflowPolicy getQueueOverflowPolicy()
+    {
+        return getEnumProperty(QUEUE_OVERFLOW_POLICY, OverflowPolicy.class, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Gets period in milliseconds of monitoring folder rescan looking for deferred files.
+     *
+     * @return the rescan period in milliseconds
+     */
+    public static long getRescanPeriod()
+    {
+        return getDurationProperty(RESCAN_PERIOD, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets how completely written files are detected.
+     *
+     * @return the write completion mode, {@link WriteCompletionMode#NONE} if not specified
+     */
+    public static WriteCompletionMode getWriteCompletionMode()
+    {
+        return getEnumProperty(WRITE_COMPLETION_MODE, WriteCompletionMode.class, WriteCompletionMode.NONE);
+    }
+
+    /**
+     * Gets time in milliseconds during which size of a new file must not change to consider it complete.
+     *
+     * @return the stabilization period in milliseconds
+     */
+    public static long getStabilizationPeriod()
+    {
+        return getDurationProperty(STABILIZATION_PERIOD, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets suffix of files which are still written by producer.
+     *
+     * @return the in-progress suffix
+     */
+    public static String getInProgressSuffix()
+    {
+        String value = getOptionalProperty(IN_PROGRESS_SUFFIX);
+        return value.length() == 0 ? ".part" : value;
+    }
+
+    /**
+     * Gets maximum number of attempts to record a file when transient database errors occur, including the first attempt.
+     *
+     * @return the maximum attempts
+     */
+    public static int getRetryMaxAttempts()
+    {
+        return (int) getLongProperty(RETRY_MAX_ATTEMPTS, 5);
+    }
+
+    /**
+     * Gets delay in milliseconds before the second attempt to record a file, every next delay is doubled.
+     *
+     * @return the initial retry delay in milliseconds
+     */
+    public static long getRetryInitialDelay()
+    {
+        return getDurationProperty(RETRY_INITIAL_DELAY, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets maximum delay in milliseconds between attempts to record a file.
+     *
+     * @return the maximum retry delay in milliseconds
+     */
+    public static long getRetryMaxDelay()
+    {
+        return getDurationProperty(RETRY_MAX_DELAY, 5, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Tells if subdirectories of monitoring folder are watched too.
+     *
+     * @return true if the whole directory tree is watched, false by default
+     */
+    public static boolean isMonitoringRecursive()
+    {
+        return getBooleanProperty(MONITORING_RECURSIVE, false);
+    }
+
     /**
      * Gets processed files folder.
      *
@@ -207,6 +480,421 @@ public final class Configuration
     }
 
 
+    /**
+     * Gets number of database connections kept open even if they are idle.
+     *
+     * @return the minimum pool size
+     */
+    public static int getDBPoolMinSize()
+    {
+        return (int) getLongProperty(DB_POOL_MIN_SIZE, 1);
+    }
+
+    /**
+     * Gets maximum number of database connections.
+     *
+     * @return the maximum pool size
+     */
+    public static int getDBPoolMaxSize()
+    {
+        return (int) getLongProperty(DB_POOL_MAX_SIZE, Runtime.getRuntime().availableProcessors() + 1);
+    }
+
+    /**
+     * Gets time in milliseconds after which idle connection above minimum pool size is closed.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public static long getDBPoolIdleTimeout()
+    {
+        return getDurationProperty(DB_POOL_IDLE_TIMEOUT, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets maximum time in milliseconds to wait for a free connection.
+     *
+     * @return the borrow timeout in milliseconds
+     */
+    public static long getDBPoolBorrowTimeout()
+    {
+        return getDurationProperty(DB_POOL_BORROW_TIMEOUT, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets time in milliseconds after which borrowed connection is reported as possible leak.
+     * <p>
+     * Detection keeps stack trace of every borrow, so it is disabled by default.
+     *
+     * @return the leak detection threshold in milliseconds, 0 if detection is disabled
+     */
+    public static long getDBPoolLeakThreshold()
+    {
+        return getDurationProperty(DB_POOL_LEAK_THRESHOLD, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets maximum number of prepared statements cached for every database connection.
+     *
+     * @return the statement cache size
+     */
+    public static int getDBStatementCacheSize()
+    {
+        return (int) getLongProperty(DB_STATEMENT_CACHE_SIZE, 32);
+    }
+
+    /**
+     * Gets XML parser implementation used for reading files.
+     *
+     * @return the parser engine, {@link ParserEngine#SAX} if not specified
+     */
+    public static ParserEngine getParserEngine()
+    {
+        return getEnumProperty(PARSER_ENGINE, ParserEngine.class, ParserEngine.SAX);
+    }
+
+    /**
+     * Gets the way bytes of xml files are read.
+     *
+     * @return the input mode, {@link InputMode#STREAM} if not specified
+     */
+    public static InputMode getInputMode()
+    {
+        return getEnumProperty(INPUT_MODE, InputMode.class, InputMode.STREAM);
+    }
+
+    /**
+     * Gets size in bytes from which files are memory-mapped in {@link InputMode#CHANNEL} mode.
+     *
+     * @return the mmap threshold in bytes
+     */
+    public static long getMmapThreshold()
+    {
+        return getLongProperty(MMAP_THRESHOLD, 16L * 1024 * 1024);
+    }
+
+    /**
+     * Gets path of ingest journal files.
+     *
+     * @return the journal path or empty string if journal is disabled
+     */
+    public static String getJournalPath()
+    {
+        return getOptionalProperty(JOURNAL_PATH);
+    }
+
+    /**
+     * Gets period in milliseconds of flushing ingest journal to storage.
+     *
+     * @return the journal checkpoint period in milliseconds
+     */
+    public static long getJournalCheckpointPeriod()
+    {
+        return getDurationProperty(JOURNAL_CHECKPOINT_PERIOD, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets path of the index of recorded files content used to skip duplicate files.
+     *
+     * @return the deduplication index path or empty string if duplicates are not detected
+     */
+    public static String getDedupIndexPath()
+    {
+        return getOptionalProperty(DEDUP_INDEX_PATH);
+    }
+
+    /**
+     * Gets number of files in one generation of deduplication index.
+     *
+     * @return the deduplication index capacity
+     */
+    public static int getDedupIndexCapacity()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, getLongProperty(DEDUP_INDEX_CAPACITY, 1000000));
+    }
+
+    /**
+     * Gets folder of spool where entries are kept while database is not available.
+     *
+     * @return the spool folder or empty string if entries are not spooled
+     */
+    public static String getSpoolFolder()
+    {
+        return getOptionalProperty(SPOOL_FOLDER);
+    }
+
+    /**
+     * Gets number of consecutive database connection failures which stops writes to database.
+     *
+     * @return the circuit failure threshold
+     */
+    public static int getCircuitFailureThreshold()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, getLongProperty(CIRCUIT_FAILURE_THRESHOLD, 5));
+    }
+
+    /**
+     * Gets time in milliseconds for which writes to database are stopped before the next probe.
+     *
+     * @return the circuit open duration in milliseconds
+     */
+    public static long getCircuitOpenDuration()
+    {
+        return getDurationProperty(CIRCUIT_OPEN_DURATION, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets date pattern of subfolders of processed and corrupted files folders, eg. 'yyyy/MM/dd/HH'.
+     *
+     * @return the date pattern or empty string if files are not spread by date
+     */
+    public static String getShardDatePattern()
+    {
+        return getOptionalProperty(SHARD_DATE_PATTERN);
+    }
+
+    /**
+     * Gets number of subfolders between which processed and corrupted files are spread by hash of name.
+     *
+     * @return the number of hash buckets, 1 if files are not spread by hash
+     */
+    public static int getShardHashBuckets()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, getLongProperty(SHARD_HASH_BUCKETS, 1));
+    }
+
+    /**
+     * Gets folder of archive where processed files are appended instead of being moved.
+     *
+     * @return the archive folder or empty string if processed files are moved
+     */
+    public static String getArchiveFolder()
+    {
+        return getOptionalProperty(ARCHIVE_FOLDER);
+    }
+
+    /**
+     * Gets size in bytes after which the next archive segment is started.
+     *
+     * @return the archive segment size in bytes
+     */
+    public static long getArchiveSegmentSize()
+    {
+        return getLongProperty(ARCHIVE_SEGMENT_SIZE, 256L * 1024 * 1024);
+    }
+
+    /**
+     * Gets time in milliseconds after which the next archive segment is started.
+     *
+     * @return the archive roll period in milliseconds
+     */
+    public static long getArchiveRollPeriod()
+    {
+        return getDurationProperty(ARCHIVE_ROLL_PERIOD, 1, TimeUnit.HOURS);
+    }
+
+    /**
+     * Gets kind of threads which handle xml files.
+     *
+     * @return the execution mode, {@link ExecutionMode#PLATFORM} if not specified
+     */
+    public static ExecutionMode getExecutionMode()
+    {
+        return getEnumProperty(EXECUTION_MODE, ExecutionMode.class, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * Gets database write mode.
+     *
+     * @return the write mode, {@link WriteMode#SINGLE} if not specified
+     */
+    public static WriteMode getWriteMode()
+    {
+        return getEnumProperty(DB_WRITE_MODE, WriteMode.class, WriteMode.SINGLE);
+    }
+
+    /**
+     * Gets maximum number of entries flushed to database by one batch.
+     *
+     * @return the batch size
+     */
+    public static int getBatchSize()
+    {
+        return (int) getLongProperty(BATCH_SIZE, 500);
+    }
+
+    /**
+     * Gets maximum time in milliseconds an entry can wait for its batch to be flushed.
+     *
+     * @return the batch max linger in milliseconds
+     */
+    public static long getBatchMaxLinger()
+    {
+        return getDurationProperty(BATCH_MAX_LINGER, 20, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets number of threads which write batches in {@link WriteMode#BATCH} and {@link WriteMode#COPY} modes.
+     *
+     * @return the write stage threads count, maximum size of connection pool if not specified
+     */
+    public static int getWriteStageThreads()
+    {
+        return (int) getLongProperty(WRITE_STAGE_THREADS, getDBPoolMaxSize());
+    }
+
+    /**
+     * Gets number of slots of ring buffer between parse and write stages, every slot keeps one chunk of entries.
+     *
+     * @return the ring buffer size
+     */
+    public static int getRingBufferSize()
+    {
+        return (int) getLongProperty(RING_BUFFER_SIZE, 1024);
+    }
+
+    /**
+     * Gets maximum number of entries of one file kept in memory before they are written to database.
+     *
+     * @return the entries chunk size
+     */
+    public static int getEntriesChunkSize()
+    {
+        return (int) getLongProperty(ENTRIES_CHUNK_SIZE, 100);
+    }
+
+    /**
+     * Returns trimmed value of optional property.
+     *
+     * @param key the property
+     * @return the property value or empty string if property is not specified
+     */
+    private static String getOptionalProperty(PropertiesEnum key)
+    {
+        String value = properties.getProperty(key.name());
+        return value == null ? "" : value.trim();
+    }
+
+    /**
+     * Returns positive number value of optional property.
+     *
+     * @param key          the property
+     * @param defaultValue the value used if property is not specified or incorrect
+     * @return the property value
+     */
+    private static long getLongProperty(PropertiesEnum key, long defaultValue)
+    {
+        return getLongProperty(key, defaultValue, 1);
+    }
+
+    /**
+     * Returns number value of optional property which is not less than minimum.
+     *
+     * @param key          the property
+     * @param defaultValue the value used if property is not specified or incorrect
+     * @param minValue     the minimum value
+     * @return the property value
+     */
+    private static long getLongProperty(PropertiesEnum key, long defaultValue, long minValue)
+    {
+        String value = getOptionalProperty(key);
+        if (value.length() == 0)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            long number = Long.parseLong(value);
+            if (number >= minValue)
+            {
+                return number;
+            }
+        } catch (NumberFormatException e)
+        {
+            LOGGER.debug(e);
+        }
+        LOGGER.error("Cannot read " + key.name() + " value from configuration. It must be integer number not less than "
+                + minValue + ". Will set to " + defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * Returns value of optional boolean property, 'true' or 'false' ignoring case.
+     *
+     * @param key          the property
+     * @param defaultValue the value used if property is not specified or incorrect
+     * @return the property value
+     */
+    private static boolean getBooleanProperty(PropertiesEnum key, boolean defaultValue)
+    {
+        String value = getOptionalProperty(key);
+        if (value.length() == 0)
+        {
+            return defaultValue;
+        }
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value))
+        {
+            return Boolean.parseBoolean(value);
+        }
+        LOGGER.error("Cannot read " + key.name() + " value from configuration. Supported values are true and false. Will set to " + defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * Returns value of optional enum property. Case of the value is ignored.
+     *
+     * @param key          the property
+     * @param enumClass    the enum class of the property value
+     * @param defaultValue the value used if property is not specified or incorrect
+     * @param <E>          the enum type
+     * @return the property value
+     */
+    private static <E extends Enum<E>> E getEnumProperty(PropertiesEnum key, Class<E> enumClass, E defaultValue)
+    {
+        String value = getOptionalProperty(key);
+        if (value.length() == 0)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Enum.valueOf(enumClass, value.toUpperCase());
+        } catch (IllegalArgumentException e)
+        {
+            LOGGER.error("Cannot read " + key.name() + " value from configuration. Supported values are "
+                    + Arrays.toString(enumClass.getEnumConstants()) + ". Will set to " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns value of optional duration property in format '{number} {time unit}', eg. '20 MILLISECONDS'.
+     *
+     * @param key          the property
+     * @param defaultValue the value used if property is not specified or incorrect
+     * @param defaultUnit  the time unit of default value
+     * @return the duration in milliseconds
+     */
+    private static long getDurationProperty(PropertiesEnum key, long defaultValue, TimeUnit defaultUnit)
+    {
+        String value = getOptionalProperty(key);
+        if (value.length() != 0)
+        {
+            String[] values = value.split("\\s+");
+            try
+            {
+                if (values.length == 2)
+                {
+                    return TimeUnit.valueOf(values[1].toUpperCase()).toMillis(Long.parseLong(values[0]));
+                }
+            } catch (IllegalArgumentException e)
+            {
+                LOGGER.debug(e);
+            }
+            LOGGER.error("Cannot read " + key.name() + " property from configuration. Will set to " + defaultValue + " " + defaultUnit);
+        }
+        return defaultUnit.toMillis(defaultValue);
+    }
+
     /**
      * Validate configuration file properties for containing all values from {@link PropertiesEnum}
      *
@@ -217,7 +905,7 @@ public final class Configuration
         Set<String> propertiesNames = properties.stringPropertyNames();
         for (PropertiesEnum key : PropertiesEnum.values())
         {
-            if (!propertiesNames.contains(key.name()))
+            if (key.isRequired() && !propertiesNames.contains(key.name()))
             {
                 LOGGER.error("Cannot find " + key.name() + " property in configuration file.");
                 return false;
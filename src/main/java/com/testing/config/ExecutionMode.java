@@ -0,0 +1,18 @@
+package com.testing.config;
+
+/**
+ * The kind of threads which handle xml files.
+ */
+public enum ExecutionMode
+{
+    /**
+     * Fixed pool of platform threads, one thread per processor.
+     */
+    PLATFORM,
+
+    /**
+     * One virtual thread per file, available on Java 21 and later. Concurrency is limited by queued files
+     * and bytes and by database connections instead of number of threads.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,18 @@
+package com.testing.config;
+
+/**
+ * The way bytes of xml files are read before they are passed to parser.
+ */
+public enum InputMode
+{
+    /**
+     * Buffered file input stream.
+     */
+    STREAM,
+
+    /**
+     * File channel read into pooled direct buffer which is reused for all files,
+     * files not smaller than mmap threshold are memory-mapped.
+     */
+    CHANNEL
+}
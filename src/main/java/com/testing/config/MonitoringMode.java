@@ -0,0 +1,17 @@
+package com.testing.config;
+
+/**
+ * The way monitoring folder events are received.
+ */
+public enum MonitoringMode
+{
+    /**
+     * Pending events are checked once per monitoring period.
+     */
+    SCHEDULED,
+
+    /**
+     * Dedicated thread waits for events and handles all of them as soon as they arrive.
+     */
+    BLOCKING
+}
@@ -0,0 +1,17 @@
+package com.testing.config;
+
+/**
+ * What to do with a newly created file when the queue of files waiting for handling is full.
+ */
+public enum OverflowPolicy
+{
+    /**
+     * Watching thread waits until queued files are handled.
+     */
+    BLOCK,
+
+    /**
+     * File is left in monitoring folder and picked up by a later rescan.
+     */
+    DEFER
+}
@@ -0,0 +1,22 @@
+package com.testing.config;
+
+/**
+ * The XML parser implementation used for reading files.
+ */
+public enum ParserEngine
+{
+    /**
+     * JDK SAX parser.
+     */
+    SAX,
+
+    /**
+     * JDK StAX stream reader.
+     */
+    STAX,
+
+    /**
+     * Aalto non-blocking parser which is fed by chunks of bytes.
+     */
+    AALTO
+}
@@ -0,0 +1,22 @@
+package com.testing.config;
+
+/**
+ * The period of time covered by one partition of the table.
+ */
+public enum PartitionPeriod
+{
+    /**
+     * Table is not partitioned, all entries are inserted to the table itself.
+     */
+    NONE,
+
+    /**
+     * Every day has its own partition '{table}_pyyyyMMdd'.
+     */
+    DAY,
+
+    /**
+     * Every month has its own partition '{table}_pyyyyMM'.
+     */
+    MONTH
+}
@@ -0,0 +1,23 @@
+package com.testing.config;
+
+/**
+ * How to find out that a new file is completely written by its producer.
+ */
+public enum WriteCompletionMode
+{
+    /**
+     * File is handled as soon as it is created.
+     */
+    NONE,
+
+    /**
+     * File is handled when its size and modification time have not changed for stabilization period.
+     */
+    STABLE_SIZE,
+
+    /**
+     * Producer writes file under a name with in-progress suffix and renames it when it is complete,
+     * files with the suffix are ignored.
+     */
+    RENAME
+}
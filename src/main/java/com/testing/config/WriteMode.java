@@ -0,0 +1,23 @@
+package com.testing.config;
+
+/**
+ * The way parsed xml entries are written to database.
+ */
+public enum WriteMode
+{
+    /**
+     * Every entry is inserted by its own statement, entries of one chunk of a file are committed together.
+     */
+    SINGLE,
+
+    /**
+     * Entries from all handler threads are grouped and committed by one JDBC batch.
+     */
+    BATCH,
+
+    /**
+     * Entries are grouped like in {@link #BATCH} mode and streamed by PostgreSQL 'COPY ... FROM STDIN'.
+     * Batched INSERT is used for other JDBC drivers.
+     */
+    COPY
+}
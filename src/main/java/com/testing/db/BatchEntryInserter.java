@@ -0,0 +1,50 @@
+package com.testing.db;
+
+import com.testing.db.connection.ConnectionPool;
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.EntryMapping;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Inserts entries by one JDBC batch of INSERT statements. Works with any JDBC driver.
+ * The statement is taken from the statement cache of the pooled connection.
+ */
+class BatchEntryInserter implements EntryInserter
+{
+    private final ConnectionPool connectionPool;
+    private final EntryMapping mapping;
+
+    /**
+     * Instantiates a new batch entry inserter.
+     *
+     * @param connectionPool the pool which connections are used for inserting
+     * @param mapping        the mapping of inserted columns
+     */
+    BatchEntryInserter(ConnectionPool connectionPool, EntryMapping mapping)
+    {
+        this.connectionPool = connectionPool;
+        this.mapping = mapping;
+    }
+
+    @Override
+    public void insert(Connection conn, String table, List<XmlEntry> entries) throws SQLException
+    {
+        PreparedStatement stmt = connectionPool.prepareStatement(conn, mapping.getInsertSQL(table));
+        try
+        {
+            for (XmlEntry xmlEntry : entries)
+            {
+                mapping.bind(stmt, xmlEntry);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } finally
+        {
+            stmt.clearBatch();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.testing.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Circuit breaker which stops writes to database after several consecutive connection failures.
+ * <p>
+ * While the circuit is closed all writes go to database. When the failure threshold is reached the
+ * circuit opens and writers do not touch database for the open duration. After that the circuit is
+ * half open and lets exactly one write through to probe database, success closes the circuit and
+ * failure opens it again. Errors of statements are not connection failures, they prove that database
+ * is reachable.
+ */
+class CircuitBreaker
+{
+    private static final Logger LOGGER = LogManager.getLogger(CircuitBreaker.class);
+
+    private static final String CONNECTION_ERROR_STATE_CLASS = "08";
+
+    /**
+     * The circuit state.
+     */
+    enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * Instantiates a new circuit breaker.
+     *
+     * @param failureThreshold   the number of consecutive connection failures which opens the circuit
+     * @param openDurationMillis the time in milliseconds before the next probe of database
+     */
+    CircuitBreaker(int failureThreshold, long openDurationMillis)
+    {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * Tells if write may go to database. Makes open circuit half open when the open duration has passed,
+     * the caller which gets true in this case is the probe and must report its result.
+     *
+     * @return true if database should be used
+     */
+    synchronized boolean allowRequest()
+    {
+        switch (state)
+        {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= openDurationMillis)
+                {
+                    state = State.HALF_OPEN;
+                    LOGGER.info("Database circuit is half open, probing database.");
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Records write which reached database and closes the circuit.
+     */
+    synchronized void recordSuccess()
+    {
+        if (state != State.CLOSED)
+        {
+            LOGGER.info("Database circuit is closed, database is available again.");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records connection failure and opens the circuit if threshold is reached or the probe failed.
+     */
+    synchronized void recordFailure()
+    {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold))
+        {
+            if (state == State.CLOSED)
+            {
+                LOGGER.warn("Database circuit is open after " + consecutiveFailures + " connection failures.");
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Gets the state.
+     *
+     * @return the state
+     */
+    synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Tells if the exception means that database cannot be reached, as opposed to an error of statement.
+     *
+     * @param e the exception
+     * @return true if exception or any of its causes is a connection failure
+     */
+    static boolean isConnectionFailure(SQLException e)
+    {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException)
+            {
+                return true;
+            }
+            if (cause instanceof SQLException)
+            {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && sqlState.startsWith(CONNECTION_ERROR_STATE_CLASS))
+                {
+                    return true;
+                }
+            }
+            if (cause == cause.getCause())
+            {
+                break;
+            }
+        }
+        return false;
+    }
+}
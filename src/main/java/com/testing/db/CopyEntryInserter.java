@@ -0,0 +1,214 @@
+package com.testing.db;
+
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.ColumnMapping;
+import com.testing.mapping.EntryMapping;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Inserts entries using PostgreSQL 'COPY ... FROM STDIN' protocol. Rows are encoded in COPY text format
+ * into a reusable in-memory buffer and streamed to the server in chunks, so no intermediate strings or
+ * streams are created for text columns. Connections of other JDBC drivers are served by fallback inserter.
+ * <p>
+ * Every insert takes a buffer from the pool of buffers and returns it when rows are streamed, so the inserter
+ * is shared by all writer threads.
+ */
+class CopyEntryInserter implements EntryInserter
+{
+    private static final Logger LOGGER = LogManager.getLogger(CopyEntryInserter.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final EntryMapping mapping;
+    private final ColumnMapping[] columns;
+    private final EntryInserter fallbackInserter;
+    private final Queue<CopyBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private volatile boolean fallbackLogged;
+
+    /**
+     * Instantiates a new copy entry inserter.
+     *
+     * @param mapping          the mapping which columns are copied
+     * @param fallbackInserter the inserter used for non PostgreSQL connections
+     */
+    CopyEntryInserter(EntryMapping mapping, EntryInserter fallbackInserter)
+    {
+        this.mapping = mapping;
+        this.columns = mapping.getColumns().toArray(new ColumnMapping[0]);
+        this.fallbackInserter = fallbackInserter;
+    }
+
+    @Override
+    public void insert(Connection conn, String table, List<XmlEntry> entries) throws SQLException
+    {
+        if (!conn.isWrapperFor(PGConnection.class))
+        {
+            if (!fallbackLogged)
+            {
+                LOGGER.info("COPY is supported by PostgreSQL driver only, batched INSERT will be used instead.");
+                fallbackLogged = true;
+            }
+            fallbackInserter.insert(conn, table, entries);
+            return;
+        }
+
+        CopyBuffer buffer = buffers.poll();
+        if (buffer == null)
+        {
+            buffer = new CopyBuffer();
+        }
+        CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(mapping.getCopySQL(table));
+        try
+        {
+            buffer.position = 0;
+            for (XmlEntry xmlEntry : entries)
+            {
+                buffer.appendRow(columns, xmlEntry);
+                if (buffer.position >= CHUNK_SIZE)
+                {
+                    copyIn.writeToCopy(buffer.bytes, 0, buffer.position);
+                    buffer.position = 0;
+                }
+            }
+            if (buffer.position > 0)
+            {
+                copyIn.writeToCopy(buffer.bytes, 0, buffer.position);
+            }
+            copyIn.endCopy();
+        } finally
+        {
+            buffer.position = 0;
+            buffers.offer(buffer);
+            if (copyIn.isActive())
+            {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Growing buffer of rows encoded in COPY text format.
+     */
+    static class CopyBuffer
+    {
+        private byte[] bytes = new byte[CHUNK_SIZE * 2];
+        private int position;
+
+        /**
+         * Appends entry as one row of tab separated fields ended by new line.
+         *
+         * @param columns  the copied columns
+         * @param xmlEntry the entry
+         */
+        void appendRow(ColumnMapping[] columns, XmlEntry xmlEntry)
+        {
+            for (int i = 0; i < columns.length; i++)
+            {
+                if (i > 0)
+                {
+                    appendByte('\t');
+                }
+                appendField(columns[i].getType().format(xmlEntry.getValue(i)));
+            }
+            appendByte('\n');
+        }
+
+        /**
+         * Gets encoded rows.
+         *
+         * @return the copy of buffer content
+         */
+        byte[] toByteArray()
+        {
+            return Arrays.copyOf(bytes, position);
+        }
+
+        /**
+         * Appends value in COPY text format: UTF-8 encoded, with escaped delimiters and '\N' for null.
+         *
+         * @param value the column value
+         */
+        private void appendField(String value)
+        {
+            if (value == null)
+            {
+                appendByte('\\');
+                appendByte('N');
+                return;
+            }
+            for (int i = 0; i < value.length(); i++)
+            {
+                char ch = value.charAt(i);
+                switch (ch)
+                {
+                    case '\\':
+                        appendByte('\\');
+                        appendByte('\\');
+                        break;
+                    case '\t':
+                        appendByte('\\');
+                        appendByte('t');
+                        break;
+                    case '\n':
+                        appendByte('\\');
+                        appendByte('n');
+                        break;
+                    case '\r':
+                        appendByte('\\');
+                        appendByte('r');
+                        break;
+                    default:
+                        if (ch < 0x80)
+                        {
+                            appendByte(ch);
+                        }
+                        else if (ch < 0x800)
+                        {
+                            appendByte(0xC0 | (ch >> 6));
+                            appendByte(0x80 | (ch & 0x3F));
+                        }
+                        else if (Character.isHighSurrogate(ch) && i + 1 < value.length()
+                                && Character.isLowSurrogate(value.charAt(i + 1)))
+                        {
+                            int codePoint = Character.toCodePoint(ch, value.charAt(++i));
+                            appendByte(0xF0 | (codePoint >> 18));
+                            appendByte(0x80 | ((codePoint >> 12) & 0x3F));
+                            appendByte(0x80 | ((codePoint >> 6) & 0x3F));
+                            appendByte(0x80 | (codePoint & 0x3F));
+                        }
+                        else if (Character.isSurrogate(ch))
+                        {
+                            appendByte('?');
+                        }
+                        else
+                        {
+                            appendByte(0xE0 | (ch >> 12));
+                            appendByte(0x80 | ((ch >> 6) & 0x3F));
+                            appendByte(0x80 | (ch & 0x3F));
+                        }
+                }
+            }
+        }
+
+        private void appendByte(int b)
+        {
+            if (position == bytes.length)
+            {
+                byte[] newBytes = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, newBytes, 0, position);
+                bytes = newBytes;
+            }
+            bytes[position++] = (byte) b;
+        }
+    }
+}
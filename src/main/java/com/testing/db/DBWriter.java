@@ -1,32 +1,157 @@
 package com.testing.db;
 
 import com.testing.config.Configuration;
+import com.testing.config.ExecutionMode;
+import com.testing.config.PartitionPeriod;
+import com.testing.config.WriteMode;
 import com.testing.db.connection.ConnectionPool;
+import com.testing.db.connection.DBConnection;
 import com.testing.db.data.XmlEntry;
+import com.testing.mapping.EntryMapping;
+import com.testing.metrics.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The singleton class that writes XmlEntries to database using connection pool
+ * <p>
+ * In {@link ExecutionMode#VIRTUAL} mode writers which borrow connections directly wait for one of maximum pool
+ * size permits first, so any number of handler threads (one virtual thread per file) queue fairly for connections
+ * instead of failing by borrow timeout of the pool. Fixed pool of platform threads borrows from the pool directly.
  */
 public class DBWriter
 {
     private static final Logger LOGGER = LogManager.getLogger(DBWriter.class);
 
+    private static final long SPOOL_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final long SPOOL_REPLAY_PERIOD = 1000;
+    private static final long PARTITION_MAINTENANCE_PERIOD = TimeUnit.HOURS.toMillis(1);
+
     private static final DBWriter instance = new DBWriter();
     private ConnectionPool connectionPool;
+    private GroupCommitWriter groupCommitWriter;
+    private final EntryMapping mapping;
+    private final EntryInserter bulkInserter;
+    private PartitionRouter partitionRouter;
+    private final int batchSize;
+    private final CircuitBreaker circuitBreaker;
+    private final Semaphore connectionPermits;
+    private EntrySpool spool;
+    private final Object spoolReplayLock = new Object();
 
     private DBWriter()
     {
-        connectionPool = new ConnectionPool(Runtime.getRuntime().availableProcessors() + 1);
+        connectionPool = new ConnectionPool(Configuration.getDBPoolMinSize(), Configuration.getDBPoolMaxSize());
+        connectionPermits = Configuration.getExecutionMode() == ExecutionMode.VIRTUAL
+                ? new Semaphore(Configuration.getDBPoolMaxSize(), true) : null;
+        mapping = EntryMapping.getInstance();
+        batchSize = Configuration.getBatchSize();
+        WriteMode writeMode = Configuration.getWriteMode();
+        EntryInserter entryInserter = new BatchEntryInserter(connectionPool, mapping);
+        if (writeMode == WriteMode.COPY)
+        {
+            entryInserter = new CopyEntryInserter(mapping, entryInserter);
+        }
+        PartitionPeriod partitionPeriod = Configuration.getPartitionPeriod();
+        if (partitionPeriod != PartitionPeriod.NONE)
+        {
+            partitionRouter = new PartitionRouter(mapping, mapping.indexOfTimestamp(Configuration.getPartitionColumn()),
+                    partitionPeriod, Configuration.getPartitionsAhead(), Configuration.getPartitionRetention(), entryInserter,
+                    new DBConnection(Configuration.getJDBCDriverName(), Configuration.getDBurl(),
+                            Configuration.getDBUserName(), Configuration.getPassword()));
+            entryInserter = partitionRouter;
+        }
+        bulkInserter = entryInserter;
+        if (writeMode != WriteMode.SINGLE)
+        {
+            int writers = Math.max(1, Configuration.getWriteStageThreads());
+            groupCommitWriter = new GroupCommitWriter(connectionPool, entryInserter, mapping.getTable(),
+                    batchSize, Configuration.getBatchMaxLinger(), writers, Configuration.getRingBufferSize());
+            LOGGER.debug("Entries will be written to database in " + writeMode + " mode by batches up to "
+                    + batchSize + " entries by " + writers + " writers.");
+        }
+        circuitBreaker = new CircuitBreaker(Configuration.getCircuitFailureThreshold(), Configuration.getCircuitOpenDuration());
+        openSpool();
+        if (partitionRouter != null)
+        {
+            ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                Thread thread = new Thread(runnable, "partition-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maintainer.scheduleWithFixedDelay(this::maintainPartitions, 0, PARTITION_MAINTENANCE_PERIOD, TimeUnit.MILLISECONDS);
+            LOGGER.debug("Entries will be written to " + partitionPeriod + " partitions of " + mapping.getTable() + ".");
+        }
     }
 
     /**
-     * Write XmlEntry to database.
+     * Creates partitions ahead and drops expired partitions. Failure is logged and maintenance is tried again
+     * next period, missing partitions are created by inserts meanwhile.
+     */
+    private void maintainPartitions()
+    {
+        try
+        {
+            Connection conn = borrowConnection();
+            try
+            {
+                partitionRouter.maintain(conn);
+            } finally
+            {
+                returnConnection(conn);
+            }
+        } catch (SQLException | RuntimeException e)
+        {
+            LOGGER.error("Partitions of " + mapping.getTable() + " were not maintained.", e);
+        }
+    }
+
+    /**
+     * Opens spool if it is configured and starts replaying it to database.
+     */
+    private void openSpool()
+    {
+        String spoolFolder = Configuration.getSpoolFolder();
+        if (spoolFolder.length() == 0)
+        {
+            return;
+        }
+        try
+        {
+            spool = new EntrySpool(Paths.get(spoolFolder), SPOOL_SEGMENT_SIZE, mapping);
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot open spool " + spoolFolder + ", entries will not be spooled.", e);
+            return;
+        }
+        ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "spool-replayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayer.scheduleWithFixedDelay(this::replaySpool, SPOOL_REPLAY_PERIOD, SPOOL_REPLAY_PERIOD, TimeUnit.MILLISECONDS);
+        LOGGER.debug("Entries will be spooled to " + spoolFolder + " while database is not available.");
+    }
+
+    /**
+     * Write XmlEntry to database. In {@link WriteMode#BATCH} and {@link WriteMode#COPY} modes the entry is written together with entries
+     * of other threads and the method returns after the whole batch is committed.
      *
      * @param xmlEntry that represents some data and creation date
      * @return the true if recorded successfully
@@ -35,37 +160,546 @@ public class DBWriter
      */
     public boolean writeEntry(XmlEntry xmlEntry) throws SQLException
     {
-        PreparedStatement stmt = null;
-        Connection conn = connectionPool.getConnectionFromPool();
+        if (groupCommitWriter != null)
+        {
+            writeGrouped(Collections.singletonList(xmlEntry));
+            LOGGER.debug("Entry was successfully written to database");
+            return true;
+        }
 
-        String insertTableSQL = "INSERT INTO " + Configuration.getDBTable() + "(content, creation_date) VALUES" + "(?,?)";
+        long start = System.nanoTime();
+        Connection conn;
+        try
+        {
+            conn = borrowConnection();
+        } catch (SQLException e)
+        {
+            Metrics.WRITTEN.recordError();
+            throw e;
+        }
 
         try
         {
-            stmt = conn.prepareStatement(insertTableSQL);
-            stmt.setString(1, xmlEntry.getContent());
-            stmt.setString(2, xmlEntry.getCreationDate());
-            stmt.executeUpdate();
+            insertSingle(conn, xmlEntry);
         } catch (SQLException e)
         {
             LOGGER.error(e);
+            Metrics.WRITTEN.recordError();
             return false;
         } finally
         {
-            if (stmt != null)
+            returnConnection(conn);
+        }
+        Metrics.WRITTEN.record(start);
+        LOGGER.debug("Entry was successfully written to database");
+        return true;
+    }
+
+    /**
+     * Write several XmlEntries to database. In {@link WriteMode#BATCH} and {@link WriteMode#COPY} modes all
+     * entries are committed by the same batch, otherwise they are inserted one by one in one transaction.
+     * Either all entries are committed or none of them, so a caller which counts committed entries can skip
+     * them when the rest is written again.
+     * <p>
+     * Writes pass through circuit breaker. While the circuit is open database is not used: entries are
+     * appended to spool and written to database later, or the method fails immediately if spool is not
+     * configured. Entries which failed because database cannot be reached are spooled too once the circuit
+     * opens, so the method returns normally whenever entries are recorded either in database or in spool.
+     * After the circuit closes spooled entries are replayed before new entries are written, new entries are
+     * spooled behind them while the spool cannot be drained, so entries reach database in order of writes.
+     *
+     * @param xmlEntries the entries to write
+     * @throws SQLException if any of entries was not recorded
+     */
+    public void writeEntries(List<? extends XmlEntry> xmlEntries) throws SQLException
+    {
+        if (!circuitBreaker.allowRequest() || !drainSpool())
+        {
+            spoolEntries(xmlEntries, null);
+            return;
+        }
+        try
+        {
+            if (groupCommitWriter != null)
+            {
+                writeGrouped(xmlEntries);
+            }
+            else
             {
+                writeSingle(xmlEntries);
+            }
+        } catch (SQLException e)
+        {
+            recoverFailedEntries(xmlEntries, e);
+            return;
+        } catch (RuntimeException e)
+        {
+            throw rejectEntries(e);
+        }
+        circuitBreaker.recordSuccess();
+        LOGGER.debug(xmlEntries.size() + " entries were successfully written to database");
+    }
+
+    /**
+     * Tells if entries can be passed to the write stage by {@link #submitEntries(List)}.
+     *
+     * @return true in {@link WriteMode#BATCH} and {@link WriteMode#COPY} modes
+     */
+    public boolean isWriteStageEnabled()
+    {
+        return groupCommitWriter != null;
+    }
+
+    /**
+     * Passes entries to the write stage and returns without waiting for commit. Entries pass through circuit
+     * breaker and are spooled the same way as by {@link #writeEntries(List)}. The list must not be changed until
+     * the returned future is completed.
+     *
+     * @param xmlEntries the entries to write
+     * @return the future completed when entries are recorded either in database or in spool, or completed
+     * exceptionally with {@link SQLException} if they were not recorded
+     */
+    public CompletableFuture<Void> submitEntries(List<? extends XmlEntry> xmlEntries)
+    {
+        CompletableFuture<Void> recorded = new CompletableFuture<>();
+        try
+        {
+            if (!circuitBreaker.allowRequest() || !drainSpool())
+            {
+                spoolEntries(xmlEntries, null);
+                recorded.complete(null);
+                return recorded;
+            }
+            long start = System.nanoTime();
+            CompletableFuture<Void> committed;
+            try
+            {
+                committed = groupCommitWriter.submit(xmlEntries);
+            } catch (SQLException e)
+            {
+                recoverFailedEntries(xmlEntries, e);
+                recorded.complete(null);
+                return recorded;
+            } catch (RuntimeException e)
+            {
+                throw rejectEntries(e);
+            }
+            committed.whenComplete((ignored, failure) ->
+            {
+                if (failure == null)
+                {
+                    Metrics.WRITTEN.record(start);
+                    circuitBreaker.recordSuccess();
+                    recorded.complete(null);
+                    return;
+                }
+                Metrics.WRITTEN.recordError();
                 try
                 {
-                    stmt.close();
+                    recoverFailedEntries(xmlEntries, failure instanceof SQLException ? (SQLException) failure
+                            : new SQLException("Batch was not committed.", failure));
+                    recorded.complete(null);
                 } catch (SQLException e)
                 {
-                    LOGGER.error(e);
+                    recorded.completeExceptionally(e);
                 }
+            });
+        } catch (SQLException e)
+        {
+            recorded.completeExceptionally(e);
+        }
+        return recorded;
+    }
+
+    /**
+     * Records write which failed before reaching database as a result of circuit breaker, so a failed probe
+     * does not keep the circuit half open. The failure is not caused by connection, entries are not spooled.
+     *
+     * @param failure the error of mapping or conversion of entries
+     * @return the database error to throw
+     */
+    private SQLException rejectEntries(RuntimeException failure)
+    {
+        circuitBreaker.recordSuccess();
+        return new SQLException("Entries cannot be written to database.", failure);
+    }
+
+    /**
+     * Records result of failed write in circuit breaker and spools entries if the failure opened circuit.
+     *
+     * @param xmlEntries the entries which were not written
+     * @param failure    the database error
+     * @throws SQLException the failure if entries were not spooled
+     */
+    private void recoverFailedEntries(List<? extends XmlEntry> xmlEntries, SQLException failure) throws SQLException
+    {
+        if (!CircuitBreaker.isConnectionFailure(failure))
+        {
+            circuitBreaker.recordSuccess();
+            throw failure;
+        }
+        circuitBreaker.recordFailure();
+        if (spool == null || circuitBreaker.getState() != CircuitBreaker.State.OPEN)
+        {
+            throw failure;
+        }
+        spoolEntries(xmlEntries, failure);
+    }
+
+    /**
+     * Appends entries to spool while circuit is open.
+     *
+     * @param xmlEntries the entries
+     * @param failure    the connection failure which opened circuit or null
+     * @throws SQLException if spool is not configured or entries cannot be appended to it
+     */
+    private void spoolEntries(List<? extends XmlEntry> xmlEntries, SQLException failure) throws SQLException
+    {
+        if (spool == null)
+        {
+            throw new SQLTransientConnectionException("Database circuit is open, entries were not written.");
+        }
+        try
+        {
+            spool.append(xmlEntries);
+        } catch (IOException e)
+        {
+            SQLException spoolFailure = new SQLException("Entries were neither written to database nor spooled.", e);
+            if (failure != null)
+            {
+                spoolFailure.addSuppressed(failure);
             }
+            throw spoolFailure;
         }
-        LOGGER.debug("Entry was successfully written to database");
-        connectionPool.returnConnectionToPool(conn);
-        return true;
+        LOGGER.debug(xmlEntries.size() + " entries were spooled");
+    }
+
+    /**
+     * Inserts entries one by one in one transaction, any failure rolls back all of them and is thrown.
+     *
+     * @param xmlEntries the entries
+     * @throws SQLException if entries were not committed
+     */
+    private void writeSingle(List<? extends XmlEntry> xmlEntries) throws SQLException
+    {
+        long start = System.nanoTime();
+        Connection conn;
+        try
+        {
+            conn = borrowConnection();
+        } catch (SQLException e)
+        {
+            Metrics.WRITTEN.recordError();
+            throw e;
+        }
+        try
+        {
+            conn.setAutoCommit(false);
+            try
+            {
+                for (XmlEntry xmlEntry : xmlEntries)
+                {
+                    insertSingle(conn, xmlEntry);
+                }
+                conn.commit();
+            } catch (SQLException e)
+            {
+                try
+                {
+                    conn.rollback();
+                } catch (SQLException rollbackFailure)
+                {
+                    e.addSuppressed(rollbackFailure);
+                }
+                throw e;
+            } finally
+            {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e)
+        {
+            LOGGER.error(e);
+            Metrics.WRITTEN.recordError();
+            throw e;
+        } finally
+        {
+            returnConnection(conn);
+        }
+        Metrics.WRITTEN.record(start);
+    }
+
+    /**
+     * Takes connection permit if writers queue for connections and borrows connection from pool.
+     *
+     * @return the connection
+     * @throws SQLException if thread was interrupted or connection cannot be borrowed
+     */
+    private Connection borrowConnection() throws SQLException
+    {
+        if (connectionPermits == null)
+        {
+            return connectionPool.getConnectionFromPool();
+        }
+        try
+        {
+            connectionPermits.acquire();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for database connection.", e);
+        }
+        try
+        {
+            return connectionPool.getConnectionFromPool();
+        } catch (SQLException | RuntimeException e)
+        {
+            connectionPermits.release();
+            throw e;
+        }
+    }
+
+    private void returnConnection(Connection conn) throws SQLException
+    {
+        try
+        {
+            connectionPool.returnConnectionToPool(conn);
+        } finally
+        {
+            if (connectionPermits != null)
+            {
+                connectionPermits.release();
+            }
+        }
+    }
+
+    private void insertSingle(Connection conn, XmlEntry xmlEntry) throws SQLException
+    {
+        if (partitionRouter != null)
+        {
+            partitionRouter.insert(conn, mapping.getTable(), Collections.singletonList(xmlEntry));
+            return;
+        }
+        PreparedStatement stmt = connectionPool.prepareStatement(conn, mapping.getInsertSQL());
+        mapping.bind(stmt, xmlEntry);
+        stmt.executeUpdate();
+    }
+
+    /**
+     * Replays spooled entries to database if circuit lets writes through.
+     */
+    private void replaySpool()
+    {
+        if (spool.isEmpty() || !circuitBreaker.allowRequest())
+        {
+            return;
+        }
+        drainSpool();
+    }
+
+    /**
+     * Replays spooled entries to database, the caller must have been let through by circuit breaker. Writers
+     * which come while spool is replayed wait for it. Connection failure opens circuit again, segment rejected
+     * by database for other reasons or which record cannot be read is moved aside, so it does not block the
+     * spool. Spool folder which cannot be read does not stop writes either, order of entries is not kept in this case.
+     *
+     * @return true if new entries may be written to database, false if they must be spooled behind spooled ones
+     */
+    private boolean drainSpool()
+    {
+        if (spool == null || spool.isEmpty())
+        {
+            return true;
+        }
+        synchronized (spoolReplayLock)
+        {
+            if (spool.isEmpty())
+            {
+                return true;
+            }
+            try
+            {
+                long replayed = spool.replay(this::insertBulk, batchSize);
+                circuitBreaker.recordSuccess();
+                if (replayed > 0)
+                {
+                    LOGGER.info(replayed + " spooled entries were written to database.");
+                }
+            } catch (SQLException e)
+            {
+                if (CircuitBreaker.isConnectionFailure(e))
+                {
+                    circuitBreaker.recordFailure();
+                    LOGGER.debug("Spool was not replayed, database is not available.", e);
+                    return false;
+                }
+                circuitBreaker.recordSuccess();
+                LOGGER.error("Spooled entries were rejected by database.", e);
+                if (e instanceof EntrySpool.SpoolReplayException)
+                {
+                    moveToFailed(((EntrySpool.SpoolReplayException) e).getSequence());
+                }
+            } catch (EntrySpool.SpoolReadException e)
+            {
+                LOGGER.error("Spooled entries cannot be read.", e);
+                moveToFailed(e.getSequence());
+            } catch (IOException | RuntimeException e)
+            {
+                LOGGER.error("Cannot replay spool.", e);
+                return true;
+            }
+            return spool.isEmpty();
+        }
+    }
+
+    private void moveToFailed(long sequence)
+    {
+        try
+        {
+            spool.moveToFailed(sequence);
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot move aside spool segment " + sequence + ".", e);
+        }
+    }
+
+    /**
+     * Commits entries in one transaction by bulk inserter of the configured write mode.
+     *
+     * @param xmlEntries the entries
+     * @throws SQLException if transaction was rolled back
+     */
+    private void insertBulk(List<XmlEntry> xmlEntries) throws SQLException
+    {
+        long start = System.nanoTime();
+        Connection conn = borrowConnection();
+        try
+        {
+            conn.setAutoCommit(false);
+            try
+            {
+                bulkInserter.insert(conn, mapping.getTable(), xmlEntries);
+                conn.commit();
+            } catch (SQLException e)
+            {
+                try
+                {
+                    conn.rollback();
+                } catch (SQLException rollbackFailure)
+                {
+                    e.addSuppressed(rollbackFailure);
+                }
+                Metrics.WRITTEN.recordError();
+                throw e;
+            } finally
+            {
+                conn.setAutoCommit(true);
+            }
+        } finally
+        {
+            returnConnection(conn);
+        }
+        Metrics.WRITTEN.record(start);
+    }
+
+    /**
+     * Writes entries by group commit writer and records the latency.
+     *
+     * @param xmlEntries the entries to write
+     * @throws SQLException if batch with entries was not committed
+     */
+    private void writeGrouped(List<? extends XmlEntry> xmlEntries) throws SQLException
+    {
+        long start = System.nanoTime();
+        try
+        {
+            groupCommitWriter.write(xmlEntries);
+        } catch (SQLException e)
+        {
+            Metrics.WRITTEN.recordError();
+            throw e;
+        }
+        Metrics.WRITTEN.record(start);
+    }
+
+    /**
+     * Gets number of database connections currently used.
+     *
+     * @return the borrowed connections count
+     */
+    public int getBorrowedConnections()
+    {
+        return connectionPool.getBorrowedCount();
+    }
+
+    /**
+     * Gets number of open database connections waiting in pool.
+     *
+     * @return the idle connections count
+     */
+    public int getIdleConnections()
+    {
+        return connectionPool.getIdleCount();
+    }
+
+    /**
+     * Gets number of insert statements taken from per connection statement cache.
+     *
+     * @return the statement cache hits
+     */
+    public long getStatementCacheHits()
+    {
+        return connectionPool.getStatementCacheHits();
+    }
+
+    /**
+     * Gets number of insert statements prepared because they were not cached for the connection yet.
+     *
+     * @return the statement cache misses
+     */
+    public long getStatementCacheMisses()
+    {
+        return connectionPool.getStatementCacheMisses();
+    }
+
+    /**
+     * Gets number of chunks of entries waiting in ring buffer for the write stage.
+     *
+     * @return the buffered chunks count, 0 if write stage is not used
+     */
+    public int getBufferedChunks()
+    {
+        return groupCommitWriter == null ? 0 : groupCommitWriter.getBufferedRequests();
+    }
+
+    /**
+     * Gets number of write stage threads which are collecting or writing a batch.
+     *
+     * @return the active writers count, 0 if write stage is not used
+     */
+    public int getActiveWriters()
+    {
+        return groupCommitWriter == null ? 0 : groupCommitWriter.getActiveWriters();
+    }
+
+    /**
+     * Gets number of entries waiting in spool for database.
+     *
+     * @return the spooled entries count
+     */
+    public long getSpooledEntries()
+    {
+        return spool == null ? 0 : spool.getPendingEntries();
+    }
+
+    /**
+     * Establishes minimum number of database connections before the first file is handled.
+     *
+     * @throws SQLException the sql exception on a database access
+     * error or other errors.
+     */
+    public void warmUp() throws SQLException
+    {
+        connectionPool.warmUp();
     }
 
     /**
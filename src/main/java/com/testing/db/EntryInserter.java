@@ -0,0 +1,25 @@
+package com.testing.db;
+
+import com.testing.db.data.XmlEntry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Strategy of inserting a group of entries to database using already opened transaction.
+ */
+interface EntryInserter
+{
+    /**
+     * Inserts entries to the table using specified connection. Transaction is committed or rolled back by the caller.
+     * Implementations may be called by several threads at once.
+     *
+     * @param conn    the connection with disabled autocommit
+     * @param table   the table or its partition
+     * @param entries the entries to insert
+     * @throws SQLException that provides information on a database access
+     * error or other errors.
+     */
+    void insert(Connection conn, String table, List<XmlEntry> entries) throws SQLException;
+}
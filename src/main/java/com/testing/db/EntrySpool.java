@@ -0,0 +1,535 @@
+package com.testing.db;
+
+import com.testing.db.data.CustomXmlEntry;
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.ColumnMapping;
+import com.testing.mapping.EntryMapping;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only spool of entries which could not be written to database.
+ * <p>
+ * Spool consists of segment files '{sequence}.spool' in the spool folder. Entries are appended to the
+ * active segment and flushed to the storage before {@link #append(List)} returns, the segment is sealed
+ * when it reaches the size limit or when replay needs it. Sealed segments are replayed oldest first, the
+ * offset of the last replayed record is kept in '{sequence}.offset' file and the segment is deleted when
+ * all its records are replayed. Entries of a batch committed just before a crash may be replayed twice.
+ * <p>
+ * Record layout: payload length (int), entries count (int), payload, CRC32 of payload (int). Payload holds
+ * number of columns (int) and column values of every entry formatted as text, every value is UTF-8 length
+ * (int, -1 for null) and bytes. Values are parsed back by column types of {@link EntryMapping}, so the
+ * mapping must not be changed while spool has entries.
+ */
+class EntrySpool
+{
+    private static final Logger LOGGER = LogManager.getLogger(EntrySpool.class);
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String OFFSET_SUFFIX = ".offset";
+    private static final String FAILED_FOLDER = "failed";
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = Integer.MAX_VALUE / 2;
+
+    private final Path folder;
+    private final long segmentSize;
+    private final ColumnMapping[] columns;
+    private final AtomicLong pendingEntries = new AtomicLong();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final DataOutputStream payloadOutput = new DataOutputStream(payload);
+    private final CRC32 crc = new CRC32();
+    private long activeSequence;
+    private FileChannel activeChannel;
+
+    /**
+     * Opens spool, creates the folder if it does not exist. Segments left by previous run are kept for replay.
+     *
+     * @param folder      the spool folder
+     * @param segmentSize the size in bytes after which the active segment is sealed
+     * @param mapping     the mapping of spooled entries
+     * @throws IOException if the folder cannot be read
+     */
+    EntrySpool(Path folder, long segmentSize, EntryMapping mapping) throws IOException
+    {
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        this.columns = mapping.getColumns().toArray(new ColumnMapping[0]);
+        Files.createDirectories(folder);
+        long lastSequence = 0;
+        for (long sequence : listSegments())
+        {
+            pendingEntries.addAndGet(countEntries(sequence));
+            lastSequence = sequence;
+        }
+        activeSequence = lastSequence + 1;
+        if (pendingEntries.get() > 0)
+        {
+            LOGGER.info(pendingEntries.get() + " spooled entries were found in " + folder + ".");
+        }
+    }
+
+    /**
+     * Appends entries to the active segment and flushes them to the storage.
+     *
+     * @param xmlEntries the entries
+     * @throws IOException if entries cannot be written
+     */
+    synchronized void append(List<? extends XmlEntry> xmlEntries) throws IOException
+    {
+        if (xmlEntries.isEmpty())
+        {
+            return;
+        }
+        payload.reset();
+        for (XmlEntry xmlEntry : xmlEntries)
+        {
+            payloadOutput.writeInt(xmlEntry.getColumnCount());
+            for (int i = 0; i < xmlEntry.getColumnCount(); i++)
+            {
+                writeString(columns[i].getType().format(xmlEntry.getValue(i)));
+            }
+        }
+        if (payload.size() > MAX_PAYLOAD_SIZE)
+        {
+            throw new IOException("Entries are too large for spool: " + payload.size() + " bytes.");
+        }
+        crc.reset();
+        crc.update(payload.toByteArray(), 0, payload.size());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.size() + 4);
+        record.putInt(payload.size());
+        record.putInt(xmlEntries.size());
+        record.put(payload.toByteArray(), 0, payload.size());
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        if (activeChannel == null)
+        {
+            activeChannel = FileChannel.open(segmentPath(activeSequence), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        while (record.hasRemaining())
+        {
+            activeChannel.write(record);
+        }
+        activeChannel.force(false);
+        pendingEntries.addAndGet(xmlEntries.size());
+        if (activeChannel.size() >= segmentSize)
+        {
+            seal();
+        }
+    }
+
+    /**
+     * Writes spooled entries to the consumer by batches, oldest first. The active segment is sealed first,
+     * so entries appended during replay wait for the next call.
+     *
+     * @param consumer  the consumer which commits every batch to database
+     * @param batchSize the number of entries after which a batch is passed to the consumer
+     * @return the number of replayed entries
+     * @throws SQLException if consumer failed, the failed batch stays in spool
+     * @throws IOException  if segment cannot be read, {@link SpoolReadException} if its record cannot be parsed
+     */
+    long replay(BatchConsumer consumer, int batchSize) throws SQLException, IOException
+    {
+        long sealedBefore;
+        synchronized (this)
+        {
+            if (activeChannel != null)
+            {
+                seal();
+            }
+            sealedBefore = activeSequence;
+        }
+        long replayed = 0;
+        for (long sequence : listSegments())
+        {
+            if (sequence >= sealedBefore)
+            {
+                break;
+            }
+            replayed += replaySegment(sequence, consumer, batchSize);
+        }
+        return replayed;
+    }
+
+    /**
+     * Moves segment which contains entries rejected by database to the failed folder.
+     *
+     * @param sequence the segment sequence
+     * @throws IOException if segment cannot be moved
+     */
+    void moveToFailed(long sequence) throws IOException
+    {
+        Path failedFolder = Files.createDirectories(folder.resolve(FAILED_FOLDER));
+        long offset = readOffset(sequence);
+        pendingEntries.addAndGet(-countEntries(sequence));
+        Files.move(segmentPath(sequence), failedFolder.resolve(segmentPath(sequence).getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(offsetPath(sequence));
+        LOGGER.error("Spool segment " + sequence + " was moved to " + failedFolder + ", entries before offset " + offset
+                + " were already written to database.");
+    }
+
+    /**
+     * Tells if there are entries waiting for replay.
+     *
+     * @return true if spool is empty
+     */
+    boolean isEmpty()
+    {
+        return pendingEntries.get() == 0;
+    }
+
+    /**
+     * Gets number of entries waiting for replay.
+     *
+     * @return the spooled entries count
+     */
+    long getPendingEntries()
+    {
+        return pendingEntries.get();
+    }
+
+    private long replaySegment(long sequence, BatchConsumer consumer, int batchSize) throws SQLException, IOException
+    {
+        long replayed = 0;
+        try (FileChannel channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.READ))
+        {
+            long offset = readOffset(sequence);
+            List<XmlEntry> batch = new ArrayList<>();
+            while (true)
+            {
+                long next;
+                try
+                {
+                    next = readRecord(channel, offset, batch);
+                } catch (IOException e)
+                {
+                    throw new SpoolReadException(sequence, offset, e);
+                }
+                if (next >= 0)
+                {
+                    offset = next;
+                }
+                if ((next < 0 && !batch.isEmpty()) || batch.size() >= batchSize)
+                {
+                    try
+                    {
+                        consumer.accept(batch);
+                    } catch (SQLException e)
+                    {
+                        throw new SpoolReplayException(sequence, e);
+                    }
+                    pendingEntries.addAndGet(-batch.size());
+                    replayed += batch.size();
+                    batch.clear();
+                    writeOffset(sequence, offset);
+                }
+                if (next < 0)
+                {
+                    break;
+                }
+            }
+            if (offset < channel.size())
+            {
+                pendingEntries.addAndGet(-countEntries(channel, offset));
+                LOGGER.error("Spool segment " + sequence + " is damaged at offset " + offset + ", the rest of it is skipped.");
+            }
+        }
+        Files.delete(segmentPath(sequence));
+        Files.deleteIfExists(offsetPath(sequence));
+        LOGGER.debug(replayed + " entries were replayed from spool segment " + sequence + ".");
+        return replayed;
+    }
+
+    /**
+     * Reads record at offset and adds its entries to the batch.
+     *
+     * @return offset of the next record or -1 if there is no valid record at the offset
+     */
+    private long readRecord(FileChannel channel, long offset, List<XmlEntry> batch) throws IOException
+    {
+        if (offset + RECORD_HEADER_SIZE > channel.size())
+        {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(channel, header, offset);
+        int length = header.getInt(0);
+        int count = header.getInt(4);
+        if (length < 0 || length > MAX_PAYLOAD_SIZE || count <= 0 || offset + RECORD_HEADER_SIZE + length + 4 > channel.size())
+        {
+            return -1;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length + 4);
+        readFully(channel, record, offset + RECORD_HEADER_SIZE);
+        CRC32 recordCrc = new CRC32();
+        recordCrc.update(record.array(), 0, length);
+        if (record.getInt(length) != (int) recordCrc.getValue())
+        {
+            return -1;
+        }
+        record.position(0).limit(length);
+        for (int i = 0; i < count; i++)
+        {
+            batch.add(readEntry(record));
+        }
+        return offset + RECORD_HEADER_SIZE + length + 4;
+    }
+
+    /**
+     * Reads values of entry and converts them to column types.
+     */
+    private XmlEntry readEntry(ByteBuffer record) throws IOException
+    {
+        if (record.remaining() < 4)
+        {
+            throw new EOFException("Spool record is shorter than its entries.");
+        }
+        int columnCount = record.getInt();
+        if (columnCount != columns.length)
+        {
+            throw new IOException("Spooled entry has " + columnCount + " columns, but " + columns.length + " columns are mapped.");
+        }
+        CustomXmlEntry xmlEntry = new CustomXmlEntry(columnCount);
+        for (int i = 0; i < columnCount; i++)
+        {
+            String value = readString(record);
+            try
+            {
+                xmlEntry.setValue(i, value == null ? null : columns[i].getType().parse(value));
+            } catch (IllegalArgumentException e)
+            {
+                throw new IOException("Spooled value " + value + " is not " + columns[i].getType() + ".", e);
+            }
+        }
+        return xmlEntry;
+    }
+
+    private void seal() throws IOException
+    {
+        activeChannel.close();
+        activeChannel = null;
+        activeSequence++;
+    }
+
+    private long countEntries(long sequence) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(segmentPath(sequence), StandardOpenOption.READ))
+        {
+            return countEntries(channel, readOffset(sequence));
+        }
+    }
+
+    /**
+     * Counts entries of records from offset to the end of segment or to the first torn record. Records with
+     * wrong checksum are counted, replay takes their entries off the pending count when it skips them.
+     */
+    private long countEntries(FileChannel channel, long offset) throws IOException
+    {
+        long entries = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (offset + RECORD_HEADER_SIZE <= channel.size())
+        {
+            header.clear();
+            readFully(channel, header, offset);
+            int length = header.getInt(0);
+            int count = header.getInt(4);
+            if (length < 0 || length > MAX_PAYLOAD_SIZE || count <= 0
+                    || offset + RECORD_HEADER_SIZE + length + 4 > channel.size())
+            {
+                break;
+            }
+            entries += count;
+            offset += RECORD_HEADER_SIZE + length + 4;
+        }
+        return entries;
+    }
+
+    private List<Long> listSegments() throws IOException
+    {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + SEGMENT_SUFFIX))
+        {
+            for (Path path : stream)
+            {
+                String name = path.getFileName().toString();
+                try
+                {
+                    sequences.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e)
+                {
+                    LOGGER.warn("Unknown file " + path + " in spool folder is ignored.");
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    private long readOffset(long sequence) throws IOException
+    {
+        Path offsetPath = offsetPath(sequence);
+        if (!Files.exists(offsetPath))
+        {
+            return 0;
+        }
+        try
+        {
+            return Long.parseLong(new String(Files.readAllBytes(offsetPath), StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e)
+        {
+            throw new IOException("Damaged offset file " + offsetPath, e);
+        }
+    }
+
+    private void writeOffset(long sequence, long offset) throws IOException
+    {
+        Path offsetPath = offsetPath(sequence);
+        Path temporaryPath = folder.resolve(offsetPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            channel.write(ByteBuffer.wrap(Long.toString(offset).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(false);
+        }
+        Files.move(temporaryPath, offsetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentPath(long sequence)
+    {
+        return folder.resolve(String.format("%020d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    private Path offsetPath(long sequence)
+    {
+        return folder.resolve(String.format("%020d", sequence) + OFFSET_SUFFIX);
+    }
+
+    private void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            payloadOutput.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        payloadOutput.writeInt(bytes.length);
+        payloadOutput.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException
+    {
+        if (buffer.remaining() < 4)
+        {
+            throw new EOFException("Spool record is shorter than its entries.");
+        }
+        int length = buffer.getInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        if (length > buffer.remaining())
+        {
+            throw new EOFException("Spool record is shorter than its entries.");
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new EOFException("Unexpected end of spool segment.");
+            }
+        }
+    }
+
+    /**
+     * Commits batch of spooled entries.
+     */
+    interface BatchConsumer
+    {
+        /**
+         * Commits entries to database.
+         *
+         * @param xmlEntries the entries
+         * @throws SQLException if entries were not committed
+         */
+        void accept(List<XmlEntry> xmlEntries) throws SQLException;
+    }
+
+    /**
+     * Failure of replay with the segment which record cannot be read, eg. because mapping was changed.
+     */
+    static class SpoolReadException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+
+        SpoolReadException(long sequence, long offset, IOException cause)
+        {
+            super("Spool segment " + sequence + " cannot be read at offset " + offset + ".", cause);
+            this.sequence = sequence;
+        }
+
+        /**
+         * Gets sequence of the segment.
+         *
+         * @return the segment sequence
+         */
+        long getSequence()
+        {
+            return sequence;
+        }
+    }
+
+    /**
+     * Failure of replay with the segment which could not be written to database.
+     */
+    static class SpoolReplayException extends SQLException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+
+        SpoolReplayException(long sequence, SQLException cause)
+        {
+            super("Spool segment " + sequence + " was not written to database.", cause.getSQLState(), cause);
+            this.sequence = sequence;
+        }
+
+        /**
+         * Gets sequence of the segment.
+         *
+         * @return the segment sequence
+         */
+        long getSequence()
+        {
+            return sequence;
+        }
+    }
+}
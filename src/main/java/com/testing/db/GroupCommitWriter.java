@@ -0,0 +1,303 @@
+package com.testing.db;
+
+import com.testing.db.connection.ConnectionPool;
+import com.testing.db.data.XmlEntry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The write stage of the pipeline. Collects entries of all handler threads and flushes them to database
+ * by one JDBC batch in a single transaction when either the batch size limit or the maximum linger time
+ * is reached. Handlers pass entries through a bounded {@link RingBuffer}, so a handler waits only when
+ * the write stage is behind by the whole buffer. Several writer threads take batches from the buffer,
+ * each of them holds one connection while its batch is written.
+ * <p>
+ * Every submitted part of entries gets a future completed when the batch containing them is committed
+ * or rolled back, so every file still gets its own outcome. When a batch is rejected for other reason than
+ * a connection failure, its parts are written again one by one, so only the part with the bad entry fails.
+ * Any failure of a batch completes its futures and the writer thread goes on with the next batch.
+ */
+class GroupCommitWriter
+{
+    private static final Logger LOGGER = LogManager.getLogger(GroupCommitWriter.class);
+
+    private final ConnectionPool connectionPool;
+    private final EntryInserter entryInserter;
+    private final String table;
+    private final int batchSize;
+    private final long maxLingerNanos;
+    private final RingBuffer<WriteRequest> requests;
+    private final AtomicInteger activeWriters = new AtomicInteger();
+
+    /**
+     * Instantiates a new group commit writer and starts the writer threads.
+     *
+     * @param connectionPool  the connection pool
+     * @param entryInserter   the strategy of inserting collected entries
+     * @param table           the table which entries are inserted to
+     * @param batchSize       the maximum number of entries in one batch
+     * @param maxLingerMillis the maximum time in milliseconds the first entry of a batch waits for others
+     * @param writers         the number of writer threads
+     * @param bufferSize      the minimum number of submitted parts of entries waiting for writers
+     */
+    GroupCommitWriter(ConnectionPool connectionPool, EntryInserter entryInserter, String table, int batchSize,
+                      long maxLingerMillis, int writers, int bufferSize)
+    {
+        this.connectionPool = connectionPool;
+        this.entryInserter = entryInserter;
+        this.table = table;
+        this.batchSize = batchSize;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+        this.requests = new RingBuffer<>(bufferSize);
+
+        for (int i = 0; i < writers; i++)
+        {
+            Thread flusher = new Thread(this::flushLoop, "db-group-commit-" + i);
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Passes entries to the write stage without waiting for commit. The list must not be changed until
+     * the returned future is completed.
+     *
+     * @param entries the entries to write
+     * @return the future completed when the batch containing entries is committed, or completed
+     * exceptionally with {@link SQLException} if it is rolled back
+     * @throws SQLException if thread was interrupted while buffer was full
+     */
+    CompletableFuture<Void> submit(List<? extends XmlEntry> entries) throws SQLException
+    {
+        WriteRequest request = new WriteRequest(entries);
+        if (entries.isEmpty())
+        {
+            request.committed.complete(null);
+            return request.committed;
+        }
+        try
+        {
+            requests.put(request);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for write stage.", e);
+        }
+        return request.committed;
+    }
+
+    /**
+     * Enqueues entries to the next batch and waits until the batch is committed.
+     *
+     * @param entries the entries to write
+     * @throws SQLException if the batch containing entries was not committed
+     */
+    void write(List<? extends XmlEntry> entries) throws SQLException
+    {
+        CompletableFuture<Void> committed = submit(entries);
+        try
+        {
+            committed.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for batch commit.", e);
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof SQLException)
+            {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Batch was not committed.", e.getCause());
+        }
+    }
+
+    /**
+     * Takes requests from the queue until batch is full or linger time is over and flushes them.
+     */
+    private void flushLoop()
+    {
+        List<WriteRequest> batch = new ArrayList<>();
+        List<XmlEntry> batchEntries = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                WriteRequest request = requests.take();
+                activeWriters.incrementAndGet();
+                long deadline = System.nanoTime() + maxLingerNanos;
+                int entriesCount = 0;
+                while (request != null)
+                {
+                    batch.add(request);
+                    entriesCount += request.entries.size();
+                    if (entriesCount >= batchSize)
+                    {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    request = remaining > 0 ? requests.poll(remaining, TimeUnit.NANOSECONDS) : requests.poll();
+                }
+                flush(batch, batchEntries, entriesCount);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            } finally
+            {
+                if (!batch.isEmpty())
+                {
+                    activeWriters.decrementAndGet();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes batch to database and notifies waiting threads about result.
+     *
+     * @param batch        the requests to write
+     * @param batchEntries the reused list for entries of all requests
+     * @param entriesCount the total number of entries in requests
+     */
+    private void flush(List<WriteRequest> batch, List<XmlEntry> batchEntries, int entriesCount)
+    {
+        Exception failure;
+        try
+        {
+            insertBatch(batch, batchEntries);
+            LOGGER.debug("Batch of " + entriesCount + " entries from " + batch.size() + " writers was committed.");
+            failure = null;
+        } catch (SQLException | RuntimeException e)
+        {
+            failure = e;
+        }
+        if (failure != null && batch.size() > 1 && !isConnectionFailure(failure))
+        {
+            LOGGER.warn("Batch of " + entriesCount + " entries was not committed, its " + batch.size()
+                    + " parts will be written one by one.", failure);
+            for (WriteRequest request : batch)
+            {
+                flush(Collections.singletonList(request), batchEntries, request.entries.size());
+            }
+            return;
+        }
+        if (failure != null)
+        {
+            LOGGER.error("Batch of " + entriesCount + " entries was not committed.", failure);
+        }
+        for (WriteRequest request : batch)
+        {
+            if (failure == null)
+            {
+                request.committed.complete(null);
+            }
+            else
+            {
+                request.committed.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static boolean isConnectionFailure(Exception failure)
+    {
+        return failure instanceof SQLException && CircuitBreaker.isConnectionFailure((SQLException) failure);
+    }
+
+    /**
+     * Inserts all entries of requests in one transaction.
+     *
+     * @param batch        the requests to write
+     * @param batchEntries the reused list for entries of all requests
+     * @throws SQLException if the transaction was rolled back
+     * @throws RuntimeException if entries cannot be bound, the transaction is rolled back too
+     */
+    private void insertBatch(List<WriteRequest> batch, List<XmlEntry> batchEntries) throws SQLException
+    {
+        Connection conn = connectionPool.getConnectionFromPool();
+        try
+        {
+            conn.setAutoCommit(false);
+            try
+            {
+                for (WriteRequest request : batch)
+                {
+                    batchEntries.addAll(request.entries);
+                }
+                entryInserter.insert(conn, table, batchEntries);
+                conn.commit();
+            } catch (SQLException | RuntimeException e)
+            {
+                rollback(conn);
+                throw e;
+            } finally
+            {
+                conn.setAutoCommit(true);
+            }
+        } finally
+        {
+            batchEntries.clear();
+            connectionPool.returnConnectionToPool(conn);
+        }
+    }
+
+    /**
+     * Gets number of submitted parts of entries waiting for writers.
+     *
+     * @return the buffered requests count
+     */
+    int getBufferedRequests()
+    {
+        return requests.size();
+    }
+
+    /**
+     * Gets number of writer threads which are collecting or writing a batch.
+     *
+     * @return the active writers count
+     */
+    int getActiveWriters()
+    {
+        return activeWriters.get();
+    }
+
+    /**
+     * Rolls back current transaction, errors are only logged because original failure is more important.
+     *
+     * @param conn the connection
+     */
+    private static void rollback(Connection conn)
+    {
+        try
+        {
+            conn.rollback();
+        } catch (SQLException e)
+        {
+            LOGGER.error(e);
+        }
+    }
+
+    /**
+     * Entries of one writer and the future completed when they are committed.
+     */
+    private static class WriteRequest
+    {
+        private final List<? extends XmlEntry> entries;
+        private final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        WriteRequest(List<? extends XmlEntry> entries)
+        {
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.testing.db;
+
+import com.testing.config.PartitionPeriod;
+import com.testing.db.connection.DBConnection;
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.EntryMapping;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inserts entries directly to time partitions of the table.
+ * <p>
+ * Partition of an entry is selected by the timestamp of partition column, every day or month has its own
+ * partition '{table}_pyyyyMMdd' or '{table}_pyyyyMM'. Entries of a batch are grouped by partitions and every
+ * group is passed to the wrapped inserter, so each insert touches indexes of one partition only. Entries without
+ * timestamp are inserted to the table itself.
+ * <p>
+ * Only partitions from the oldest kept by retention to the last one created ahead receive entries. Entries
+ * with timestamp out of this range would create partitions which are dropped by the next maintenance or which
+ * are far in the future, they are inserted to the overflow table '{table}_overflow' instead.
+ * <p>
+ * Partitions are created ahead by {@link #maintain(Connection)}, a missing partition is created by the first
+ * insert to it on a separate connection in autocommit mode, so creation is never rolled back with entries and
+ * does not hold the catalog lock of the table until the transaction of entries ends. On PostgreSQL partitions
+ * are created as 'PARTITION OF' the table which must be partitioned by range of the partition column, other
+ * databases get tables with columns of the table. Partitions older than retention are dropped as whole tables.
+ */
+class PartitionRouter implements EntryInserter
+{
+    private static final Logger LOGGER = LogManager.getLogger(PartitionRouter.class);
+
+    private static final String PARTITION_INFIX = "_p";
+    private static final String OVERFLOW_SUFFIX = "_overflow";
+    private static final LocalDateTime OVERFLOW = LocalDateTime.MIN;
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String table;
+    private final int partitionColumn;
+    private final PartitionPeriod period;
+    private final int partitionsAhead;
+    private final int retention;
+    private final EntryInserter entryInserter;
+    private final DBConnection dbConnection;
+    private final DateTimeFormatter suffixFormat;
+    private final Set<LocalDateTime> createdPartitions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Instantiates a new partition router.
+     *
+     * @param mapping         the mapping of inserted entries
+     * @param partitionColumn the index of timestamp column which selects partition
+     * @param period          the period of one partition, not {@link PartitionPeriod#NONE}
+     * @param partitionsAhead the number of partitions created after the partition of the current period
+     * @param retention       the number of kept partitions including the current one, 0 if partitions are not dropped
+     * @param entryInserter   the inserter of every group of entries
+     * @param dbConnection    the factory of connections which create missing partitions
+     */
+    PartitionRouter(EntryMapping mapping, int partitionColumn, PartitionPeriod period, int partitionsAhead, int retention,
+                    EntryInserter entryInserter, DBConnection dbConnection)
+    {
+        this.table = mapping.getTable();
+        this.partitionColumn = partitionColumn;
+        this.period = period;
+        this.partitionsAhead = Math.max(0, partitionsAhead);
+        this.retention = Math.max(0, retention);
+        this.entryInserter = entryInserter;
+        this.dbConnection = dbConnection;
+        this.suffixFormat = DateTimeFormatter.ofPattern(period == PartitionPeriod.DAY ? "yyyyMMdd" : "yyyyMM");
+    }
+
+    @Override
+    public void insert(Connection conn, String table, List<XmlEntry> entries) throws SQLException
+    {
+        Map<LocalDateTime, List<XmlEntry>> groups = group(entries);
+        createMissingPartitions(groups.keySet());
+        for (Map.Entry<LocalDateTime, List<XmlEntry>> group : groups.entrySet())
+        {
+            LocalDateTime start = group.getKey();
+            if (start == null)
+            {
+                entryInserter.insert(conn, table, group.getValue());
+            }
+            else if (start == OVERFLOW)
+            {
+                LOGGER.warn(group.getValue().size() + " entries out of kept partitions were inserted to " + overflowName() + ".");
+                entryInserter.insert(conn, overflowName(), group.getValue());
+            }
+            else
+            {
+                entryInserter.insert(conn, partitionName(start), group.getValue());
+            }
+        }
+    }
+
+    /**
+     * Creates partitions of the current period and of the periods ahead, drops partitions older than retention.
+     *
+     * @param conn the connection in autocommit mode
+     * @throws SQLException if partitions cannot be created or dropped
+     */
+    void maintain(Connection conn) throws SQLException
+    {
+        LocalDateTime current = currentPeriod();
+        for (int i = 0; i <= partitionsAhead; i++)
+        {
+            createPartition(conn, nextPeriod(current, i));
+        }
+        if (retention > 0)
+        {
+            dropPartitionsBefore(conn, nextPeriod(current, 1 - retention));
+        }
+    }
+
+    /**
+     * Splits entries by partitions keeping their order. Entries are not copied if they all are in one partition.
+     *
+     * @return the entries by start of partition period, null key for entries without timestamp
+     */
+    private Map<LocalDateTime, List<XmlEntry>> group(List<XmlEntry> entries)
+    {
+        Map<LocalDateTime, List<XmlEntry>> groups = new LinkedHashMap<>();
+        LocalDateTime current = currentPeriod();
+        LocalDateTime oldest = retention > 0 ? nextPeriod(current, 1 - retention) : null;
+        LocalDateTime latest = nextPeriod(current, partitionsAhead);
+        LocalDateTime first = entries.isEmpty() ? null : periodOf(entries.get(0), oldest, latest);
+        int sameAsFirst = 1;
+        while (sameAsFirst < entries.size() && same(first, periodOf(entries.get(sameAsFirst), oldest, latest)))
+        {
+            sameAsFirst++;
+        }
+        if (sameAsFirst >= entries.size())
+        {
+            groups.put(first, entries);
+            return groups;
+        }
+        for (XmlEntry xmlEntry : entries)
+        {
+            groups.computeIfAbsent(periodOf(xmlEntry, oldest, latest), start -> new ArrayList<>()).add(xmlEntry);
+        }
+        return groups;
+    }
+
+    private static boolean same(LocalDateTime start, LocalDateTime other)
+    {
+        return start == null ? other == null : start.equals(other);
+    }
+
+    /**
+     * Gets partition period of entry.
+     *
+     * @return the period start, null if entry has no timestamp or {@link #OVERFLOW} if period is out of range
+     */
+    private LocalDateTime periodOf(XmlEntry xmlEntry, LocalDateTime oldest, LocalDateTime latest)
+    {
+        Timestamp timestamp = (Timestamp) xmlEntry.getValue(partitionColumn);
+        if (timestamp == null)
+        {
+            return null;
+        }
+        LocalDateTime start = periodStart(timestamp.toLocalDateTime());
+        if ((oldest != null && start.isBefore(oldest)) || start.isAfter(latest))
+        {
+            return OVERFLOW;
+        }
+        return start;
+    }
+
+    private LocalDateTime currentPeriod()
+    {
+        return periodStart(LocalDate.now().atStartOfDay());
+    }
+
+    private LocalDateTime periodStart(LocalDateTime time)
+    {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return period == PartitionPeriod.DAY ? day : day.withDayOfMonth(1);
+    }
+
+    private LocalDateTime nextPeriod(LocalDateTime start, int periods)
+    {
+        return period == PartitionPeriod.DAY ? start.plusDays(periods) : start.plusMonths(periods);
+    }
+
+    private String partitionName(LocalDateTime start)
+    {
+        return table + PARTITION_INFIX + suffixFormat.format(start);
+    }
+
+    private String overflowName()
+    {
+        return table + OVERFLOW_SUFFIX;
+    }
+
+    /**
+     * Creates partitions of groups and overflow table which were not created by this router yet on a new
+     * connection in autocommit mode.
+     */
+    private void createMissingPartitions(Set<LocalDateTime> starts) throws SQLException
+    {
+        List<LocalDateTime> missing = new ArrayList<>();
+        for (LocalDateTime start : starts)
+        {
+            if (start != null && !createdPartitions.contains(start))
+            {
+                missing.add(start);
+            }
+        }
+        if (missing.isEmpty())
+        {
+            return;
+        }
+        try (Connection conn = dbConnection.getConnection())
+        {
+            conn.setAutoCommit(true);
+            for (LocalDateTime start : missing)
+            {
+                createPartition(conn, start);
+            }
+        }
+    }
+
+    /**
+     * Creates partition of the period or overflow table if it was not created by this router yet.
+     */
+    private void createPartition(Connection conn, LocalDateTime start) throws SQLException
+    {
+        if (createdPartitions.contains(start))
+        {
+            return;
+        }
+        String partition = start == OVERFLOW ? overflowName() : partitionName(start);
+        String sql;
+        if (start == OVERFLOW)
+        {
+            sql = conn.isWrapperFor(PGConnection.class)
+                    ? "CREATE TABLE IF NOT EXISTS " + partition + " (LIKE " + table + " INCLUDING DEFAULTS)"
+                    : "CREATE TABLE IF NOT EXISTS " + partition + " AS SELECT * FROM " + table + " WHERE 1 = 0";
+        }
+        else if (conn.isWrapperFor(PGConnection.class))
+        {
+            sql = "CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + table + " FOR VALUES FROM ('"
+                    + BOUND_FORMAT.format(start) + "') TO ('" + BOUND_FORMAT.format(nextPeriod(start, 1)) + "')";
+        }
+        else
+        {
+            sql = "CREATE TABLE IF NOT EXISTS " + partition + " AS SELECT * FROM " + table + " WHERE 1 = 0";
+        }
+        try (Statement stmt = conn.createStatement())
+        {
+            stmt.execute(sql);
+        }
+        createdPartitions.add(start);
+        LOGGER.debug("Partition " + partition + " is ready.");
+    }
+
+    /**
+     * Drops partitions which period starts before the cutoff. Partitions are found by database metadata,
+     * so partitions created by previous runs or other nodes are dropped too.
+     */
+    private void dropPartitionsBefore(Connection conn, LocalDateTime cutoff) throws SQLException
+    {
+        DatabaseMetaData metaData = conn.getMetaData();
+        int schemaEnd = table.lastIndexOf('.');
+        String schema = schemaEnd < 0 ? null : table.substring(0, schemaEnd);
+        String prefix = table.substring(schemaEnd + 1) + PARTITION_INFIX;
+        String escape = metaData.getSearchStringEscape();
+        String pattern = prefix.replace("_", escape + "_").replace("%", escape + "%") + "%";
+        if (metaData.storesUpperCaseIdentifiers())
+        {
+            pattern = pattern.toUpperCase(Locale.ROOT);
+            schema = schema == null ? null : schema.toUpperCase(Locale.ROOT);
+        }
+        else if (metaData.storesLowerCaseIdentifiers())
+        {
+            pattern = pattern.toLowerCase(Locale.ROOT);
+            schema = schema == null ? null : schema.toLowerCase(Locale.ROOT);
+        }
+
+        List<String> expired = new ArrayList<>();
+        try (ResultSet tables = metaData.getTables(null, schema, pattern, new String[]{"TABLE"}))
+        {
+            while (tables.next())
+            {
+                String name = tables.getString("TABLE_NAME");
+                LocalDateTime start = parseSuffix(name.substring(prefix.length()));
+                if (start != null && start.isBefore(cutoff))
+                {
+                    expired.add(name);
+                }
+            }
+        }
+        for (String name : expired)
+        {
+            String partition = schemaEnd < 0 ? name : table.substring(0, schemaEnd + 1) + name;
+            try (Statement stmt = conn.createStatement())
+            {
+                stmt.execute("DROP TABLE IF EXISTS " + partition);
+            }
+            createdPartitions.remove(parseSuffix(name.substring(prefix.length())));
+            LOGGER.info("Partition " + partition + " older than " + retention + " periods was dropped.");
+        }
+    }
+
+    /**
+     * Parses period start from partition name suffix.
+     *
+     * @return the period start or null if suffix is not a period of this router
+     */
+    private LocalDateTime parseSuffix(String suffix)
+    {
+        if (suffix.length() != (period == PartitionPeriod.DAY ? 8 : 6))
+        {
+            return null;
+        }
+        try
+        {
+            if (period == PartitionPeriod.DAY)
+            {
+                return LocalDate.parse(suffix, suffixFormat).atStartOfDay();
+            }
+            return LocalDate.parse(suffix + "01", DateTimeFormatter.ofPattern("yyyyMMdd")).atStartOfDay();
+        } catch (DateTimeParseException e)
+        {
+            return null;
+        }
+    }
+}
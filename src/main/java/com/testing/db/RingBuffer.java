@@ -0,0 +1,257 @@
+package com.testing.db;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded multi-producer multi-consumer ring buffer.
+ * <p>
+ * Every slot has a sequence number which tells whether the slot is free for the producer of the current
+ * lap or holds an element for the consumer of the current lap, so producers and consumers claim slots
+ * by a single compare-and-set of their position and never take a lock while the buffer is neither full
+ * nor empty. Capacity is rounded up to a power of two, at least two, as a freed slot of one slot buffer
+ * would have the same sequence as a filled one. Blocking methods retry a few times and park the thread
+ * only when the buffer stays full or empty, a thread which frees or fills a slot takes the lock to wake
+ * parked threads only if there are any.
+ *
+ * @param <E> the type of elements
+ */
+class RingBuffer<E>
+{
+    private static final int SPIN_TRIES = 64;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger parkedProducers = new AtomicInteger();
+    private final AtomicInteger parkedConsumers = new AtomicInteger();
+
+    /**
+     * Instantiates a new ring buffer.
+     *
+     * @param minCapacity the minimum number of elements
+     */
+    RingBuffer(int minCapacity)
+    {
+        int size = 2;
+        while (size < minCapacity && size < (1 << 30))
+        {
+            size <<= 1;
+        }
+        capacity = size;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds element if buffer is not full.
+     *
+     * @param element the element
+     * @return false if buffer is full
+     */
+    boolean offer(E element)
+    {
+        while (true)
+        {
+            long position = producerPosition.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position)
+            {
+                if (producerPosition.compareAndSet(position, position + 1))
+                {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    wakeUp(parkedConsumers, notEmpty);
+                    return true;
+                }
+            }
+            else if (sequence < position)
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds element, waits while buffer is full.
+     *
+     * @param element the element
+     * @throws InterruptedException if thread was interrupted while waiting
+     */
+    void put(E element) throws InterruptedException
+    {
+        for (int i = 0; i < SPIN_TRIES; i++)
+        {
+            if (offer(element))
+            {
+                return;
+            }
+        }
+        lock.lockInterruptibly();
+        try
+        {
+            parkedProducers.incrementAndGet();
+            try
+            {
+                while (!offer(element))
+                {
+                    notFull.await();
+                }
+            } finally
+            {
+                parkedProducers.decrementAndGet();
+            }
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the oldest element if buffer is not empty.
+     *
+     * @return the element or null if buffer is empty
+     */
+    E poll()
+    {
+        while (true)
+        {
+            long position = consumerPosition.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position + 1)
+            {
+                if (consumerPosition.compareAndSet(position, position + 1))
+                {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + capacity);
+                    wakeUp(parkedProducers, notFull);
+                    return element;
+                }
+            }
+            else if (sequence < position + 1)
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest element, waits while buffer is empty.
+     *
+     * @return the element
+     * @throws InterruptedException if thread was interrupted while waiting
+     */
+    E take() throws InterruptedException
+    {
+        E element = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        while (element == null)
+        {
+            element = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return element;
+    }
+
+    /**
+     * Takes the oldest element, waits while buffer is empty.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of timeout
+     * @return the element or null if buffer is still empty after timeout
+     * @throws InterruptedException if thread was interrupted while waiting
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        for (int i = 0; i < SPIN_TRIES; i++)
+        {
+            E element = poll();
+            if (element != null)
+            {
+                return element;
+            }
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try
+        {
+            parkedConsumers.incrementAndGet();
+            try
+            {
+                E element;
+                while ((element = poll()) == null)
+                {
+                    if (nanos <= 0)
+                    {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return element;
+            } finally
+            {
+                parkedConsumers.decrementAndGet();
+            }
+        } finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets number of elements in buffer.
+     *
+     * @return the size
+     */
+    int size()
+    {
+        long size = producerPosition.get() - consumerPosition.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    /**
+     * Gets maximum number of elements in buffer.
+     *
+     * @return the capacity
+     */
+    int capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Wakes one parked thread after a slot was freed or filled. The parked thread counts itself before it
+     * checks the buffer for the last time, so either it sees the slot or the count is seen here.
+     */
+    private void wakeUp(AtomicInteger parkedThreads, Condition condition)
+    {
+        if (parkedThreads.get() > 0)
+        {
+            lock.lock();
+            try
+            {
+                condition.signal();
+            } finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
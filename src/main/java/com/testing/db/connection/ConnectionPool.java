@@ -5,158 +5,388 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * This is connection pool class that contains specified number of connections to database
+ * This is connection pool class that keeps from minimum to maximum number of connections to database.
+ * <p>
+ * Minimum number of connections is established by {@link #warmUp()} and kept open. Connections above
+ * the minimum are closed one by one when they are idle longer than idle timeout, so there is no reconnect
+ * spike after a quiet period. Idle connections are reused in LIFO order which lets rarely used ones expire.
+ * Connection idle for a while is validated before it is given out. Single housekeeping thread evicts idle
+ * connections, restores the minimum and reports connections which are borrowed for too long.
  */
 public class ConnectionPool
 {
     private static final Logger LOGGER = LogManager.getLogger(ConnectionPool.class);
 
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final long MAX_WAIT_SLICE_MILLIS = 1000;
+
     private final String DB_URL;
     private final String USER_NAME;
     private final String PASSWORD;
     private final String DB_DRIVER;
-    private final int POOL_SIZE;
-    private final BlockingQueue<Connection> connectionPool;
-    private AtomicBoolean isCleared;
+    private final int MIN_POOL_SIZE;
+    private final int MAX_POOL_SIZE;
+    private final long IDLE_TIMEOUT;
+    private final long BORROW_TIMEOUT;
+    private final long LEAK_THRESHOLD;
+    private final int STATEMENT_CACHE_SIZE;
+    private final BlockingDeque<PooledConnection> idleConnections;
+    private final ConcurrentMap<Connection, PooledConnection> borrowedConnections;
+    private final AtomicInteger totalConnections;
+    private final ScheduledExecutorService housekeeper;
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
 
     /**
      * Instantiates a new database connection pool. Using {@link com.testing.config.Configuration} properties to
      * establish DB connection.
+     *
+     * @param minSize the number of connections kept open even if they are idle
+     * @param maxSize the maximum number of connections
      */
-    public ConnectionPool(int size)
+    public ConnectionPool(int minSize, int maxSize)
     {
-        this.POOL_SIZE = size;
+        this.MAX_POOL_SIZE = Math.max(1, maxSize);
+        this.MIN_POOL_SIZE = Math.min(minSize, MAX_POOL_SIZE);
         this.DB_DRIVER = Configuration.getJDBCDriverName();
         this.DB_URL = Configuration.getDBurl();
         this.USER_NAME = Configuration.getDBUserName();
         this.PASSWORD = Configuration.getPassword();
-        connectionPool = new ArrayBlockingQueue<>(POOL_SIZE);
-        isCleared = new AtomicBoolean(true);
+        this.IDLE_TIMEOUT = Configuration.getDBPoolIdleTimeout();
+        this.BORROW_TIMEOUT = Configuration.getDBPoolBorrowTimeout();
+        this.LEAK_THRESHOLD = Configuration.getDBPoolLeakThreshold();
+        this.STATEMENT_CACHE_SIZE = Configuration.getDBStatementCacheSize();
+        idleConnections = new LinkedBlockingDeque<>();
+        borrowedConnections = new ConcurrentHashMap<>();
+        totalConnections = new AtomicInteger();
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "db-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(IDLE_TIMEOUT / 4, 30000));
+        housekeeper.scheduleWithFixedDelay(this::houseKeeping, period, period, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Init connection pool.
+     * Establishes minimum number of connections, so the first files do not wait for connecting.
      *
      * @throws SQLException the sql exception on a database access
      * error or other errors.
      */
-    private void initConnectionPool() throws SQLException
+    public void warmUp() throws SQLException
+    {
+        fillToMinimum();
+        LOGGER.debug("Connection pool was warmed up with " + totalConnections.get() + " connections.");
+    }
+
+    /**
+     * Gets connection from pool. Creates new connection if there are no idle ones and maximum is not reached,
+     * otherwise waits for returned connection.
+     *
+     * @return the connection from pool
+     * @throws SQLException the sql exception on a database access
+     * error or other errors, or if no connection is available in borrow timeout.
+     */
+    public Connection getConnectionFromPool() throws SQLException
     {
-        while (!checkIfConnectionPoolIsFull())
+        long deadline = System.currentTimeMillis() + BORROW_TIMEOUT;
+        while (true)
         {
-            createNewConnection();
+            PooledConnection pooled = idleConnections.pollFirst();
+            if (pooled == null)
+            {
+                pooled = tryCreateConnection();
+            }
+            if (pooled == null)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    throw new SQLTransientConnectionException("Cannot get connection from connection pool in " + BORROW_TIMEOUT + " ms, "
+                            + borrowedConnections.size() + " connections are in use.");
+                }
+                try
+                {
+                    pooled = idleConnections.pollFirst(Math.min(remaining, MAX_WAIT_SLICE_MILLIS), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Cannot get connection from connection pool.", e);
+                }
+                if (pooled == null)
+                {
+                    continue;
+                }
+            }
+            if (isValid(pooled))
+            {
+                pooled.borrow(LEAK_THRESHOLD > 0);
+                borrowedConnections.put(pooled.getConnection(), pooled);
+                return pooled.getConnection();
+            }
+            discard(pooled);
         }
-        isCleared.compareAndSet(true, false);
     }
 
+    /**
+     * Return connection to pool if not needed anymore
+     *
+     * @param connection the connection to database
+     * @throws SQLException if cannot check connection state
+     */
+    public void returnConnectionToPool(Connection connection) throws SQLException
+    {
+        if (connection == null)
+        {
+            return;
+        }
+        PooledConnection pooled = borrowedConnections.remove(connection);
+        if (pooled == null)
+        {
+            LOGGER.error("Returned connection does not belong to connection pool.");
+            return;
+        }
+        if (connection.isClosed())
+        {
+            discard(pooled);
+            return;
+        }
+        pooled.release();
+        idleConnections.offerFirst(pooled);
+    }
 
     /**
-     * Check if the connection pool is full
+     * Returns prepared statement cached for the borrowed connection, the statement is prepared
+     * only on the first request for this connection.
      *
-     * @return true if pool size equals maximum pool size
+     * @param connection the connection borrowed from this pool
+     * @param sql        the statement sql
+     * @return the prepared statement, it must not be closed by caller
+     * @throws SQLException if connection is not borrowed from this pool or the statement cannot be prepared
      */
-    private synchronized boolean checkIfConnectionPoolIsFull()
+    public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException
     {
-        return connectionPool.size() >= POOL_SIZE;
+        PooledConnection pooled = borrowedConnections.get(connection);
+        if (pooled == null)
+        {
+            throw new SQLException("Connection does not belong to connection pool.");
+        }
+        StatementCache statementCache = pooled.getStatementCache();
+        if (statementCache.contains(sql))
+        {
+            statementCacheHits.increment();
+        }
+        else
+        {
+            statementCacheMisses.increment();
+        }
+        return statementCache.get(sql);
     }
 
+    /**
+     * Gets number of prepared statements taken from cache.
+     *
+     * @return the statement cache hits
+     */
+    public long getStatementCacheHits()
+    {
+        return statementCacheHits.sum();
+    }
 
     /**
-     * Creates new connection to database and add it to connection pool
+     * Gets number of prepared statements which were not cached and had to be prepared.
      *
-     * @throws SQLException the sql exception on a database access
-     * error or other errors.
+     * @return the statement cache misses
      */
-    private void createNewConnection() throws SQLException
+    public long getStatementCacheMisses()
     {
-        Connection connection = new DBConnection(DB_DRIVER, DB_URL, USER_NAME, PASSWORD).getConnection();
-        connectionPool.add(connection);
+        return statementCacheMisses.sum();
     }
 
     /**
-     * Gets connection from pool.
+     * Gets number of connections currently borrowed from pool.
      *
-     * @return the connection from pool
+     * @return the borrowed connections count
+     */
+    public int getBorrowedCount()
+    {
+        return borrowedConnections.size();
+    }
+
+    /**
+     * Gets number of open connections waiting in pool.
+     *
+     * @return the idle connections count
+     */
+    public int getIdleCount()
+    {
+        return idleConnections.size();
+    }
+
+    /**
+     * Stops housekeeping and closes idle connections. Borrowed connections are closed when returned.
+     */
+    public void close()
+    {
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null)
+        {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Creates new connection if maximum pool size is not reached.
+     *
+     * @return the new pooled connection or null if pool is full
      * @throws SQLException the sql exception on a database access
      * error or other errors.
      */
-    public Connection getConnectionFromPool() throws SQLException
+    private PooledConnection tryCreateConnection() throws SQLException
     {
-        if (isCleared.get())
+        while (true)
         {
-            initConnectionPool();
+            int total = totalConnections.get();
+            if (total >= MAX_POOL_SIZE)
+            {
+                return null;
+            }
+            if (totalConnections.compareAndSet(total, total + 1))
+            {
+                break;
+            }
         }
         try
         {
-            return connectionPool.take();
-        } catch (InterruptedException e)
+            Connection connection = new DBConnection(DB_DRIVER, DB_URL, USER_NAME, PASSWORD).getConnection();
+            return new PooledConnection(connection, STATEMENT_CACHE_SIZE);
+        } catch (SQLException | RuntimeException e)
         {
-            throw new SQLException("Cannot get connection from connection pool.");
+            totalConnections.decrementAndGet();
+            throw e;
         }
     }
 
     /**
-     * Return connection to pool if not needed anymore
+     * Checks connection which was idle for a while before giving it out.
      *
-     * @param connection the connection to database
-     * @throws SQLException connection parameter is null and cannot create new one connection instead last one
+     * @param pooled the pooled connection
+     * @return true if connection can be used
      */
-    public void returnConnectionToPool(Connection connection) throws SQLException
+    private boolean isValid(PooledConnection pooled)
     {
-        if (connection != null)
+        if (System.currentTimeMillis() - pooled.getLastAccessed() < VALIDATION_BYPASS_MILLIS)
         {
-            connectionPool.add(connection);
+            return true;
         }
-        else
+        try
+        {
+            return pooled.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e)
+        {
+            LOGGER.debug("Connection validation failed.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Closes connection and removes it from pool.
+     *
+     * @param pooled the pooled connection
+     */
+    private void discard(PooledConnection pooled)
+    {
+        totalConnections.decrementAndGet();
+        try
+        {
+            pooled.getStatementCache().clear();
+            if (!pooled.getConnection().isClosed())
+            {
+                pooled.getConnection().close();
+            }
+        } catch (SQLException e)
         {
-            createNewConnection();
+            LOGGER.error(e);
         }
+    }
 
-        if (connectionPool.remainingCapacity() == 0)
+    /**
+     * Creates connections until minimum pool size is reached.
+     *
+     * @throws SQLException the sql exception on a database access
+     * error or other errors.
+     */
+    private void fillToMinimum() throws SQLException
+    {
+        while (totalConnections.get() < MIN_POOL_SIZE)
         {
-            new Thread(() ->
+            PooledConnection pooled = tryCreateConnection();
+            if (pooled == null)
             {
-                try
-                {
-                    Thread.sleep(5000);
-                } catch (InterruptedException e)
-                {
-                    LOGGER.error(e);
-                }
-                clearIfNoConnectionsUses();
-            }).start();
+                return;
+            }
+            idleConnections.offerLast(pooled);
         }
     }
 
     /**
-     * Close and clear connection pool if no one uses by timeout
+     * Closes connections idle longer than idle timeout above minimum pool size, restores minimum pool size
+     * and reports leaked connections.
      */
-    private synchronized void clearIfNoConnectionsUses()
+    private void houseKeeping()
     {
-        if (!isCleared.get() && connectionPool.remainingCapacity() == 0)
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+        while (iterator.hasNext() && totalConnections.get() > MIN_POOL_SIZE)
         {
-            LOGGER.debug("Close all unused connections to DB by timeout");
-            for (Connection con : connectionPool)
+            PooledConnection pooled = iterator.next();
+            if (now - pooled.getLastAccessed() > IDLE_TIMEOUT && idleConnections.removeLastOccurrence(pooled))
             {
-                try
-                {
-                    if (!con.isClosed())
-                    {
-                        con.close();
-                    }
-                } catch (SQLException e)
+                LOGGER.debug("Close connection to DB unused for " + (now - pooled.getLastAccessed()) + " ms.");
+                discard(pooled);
+            }
+        }
+
+        try
+        {
+            fillToMinimum();
+        } catch (SQLException e)
+        {
+            LOGGER.error("Cannot restore minimum number of connections to DB.", e);
+        }
+
+        if (LEAK_THRESHOLD > 0)
+        {
+            for (PooledConnection pooled : borrowedConnections.values())
+            {
+                Thread borrower = pooled.getBorrower();
+                if (!pooled.isLeakReported() && borrower != null && now - pooled.getBorrowedAt() > LEAK_THRESHOLD)
                 {
-                    LOGGER.error(e);
+                    pooled.setLeakReported(true);
+                    LOGGER.warn("Connection is held by " + borrower.getName() + " for " + (now - pooled.getBorrowedAt())
+                            + " ms, possible connection leak.", pooled.getBorrowTrace());
                 }
             }
-            connectionPool.clear();
-            isCleared.compareAndSet(false, true);
         }
     }
 }
@@ -6,6 +6,7 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
 
 /**
  * That class for establishing connection (session) with a specific database.
@@ -28,7 +29,7 @@ public class DBConnection
      * @param userName       the user name
      * @param password       the password
      */
-    public DBConnection(String jdbcDriverName, String dbURL, String userName, String password) throws SQLException
+    public DBConnection(String jdbcDriverName, String dbURL, String userName, String password)
     {
         this.jdbcDriverName = jdbcDriverName;
         this.dbURL = dbURL;
@@ -62,7 +63,7 @@ public class DBConnection
         }
         else
         {
-            throw new SQLException("Failed to make connection! Please check configuration parameters and DB availability.");
+            throw new SQLNonTransientConnectionException("Failed to make connection! Please check configuration parameters and DB availability.", "08001");
         }
         return connection;
     }
@@ -0,0 +1,93 @@
+package com.testing.db.connection;
+
+import java.sql.Connection;
+
+/**
+ * Connection kept by {@link ConnectionPool} together with its usage timestamps.
+ */
+class PooledConnection
+{
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private volatile long lastAccessed;
+    private volatile long borrowedAt;
+    private volatile Thread borrower;
+    private volatile Exception borrowTrace;
+    private volatile boolean leakReported;
+
+    /**
+     * Instantiates a new pooled connection.
+     *
+     * @param connection         the established connection
+     * @param statementCacheSize the maximum number of cached prepared statements
+     */
+    PooledConnection(Connection connection, int statementCacheSize)
+    {
+        this.connection = connection;
+        this.statementCache = new StatementCache(connection, statementCacheSize);
+        this.lastAccessed = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks connection as borrowed by current thread.
+     *
+     * @param captureTrace if borrowing stack trace should be kept for leak report
+     */
+    void borrow(boolean captureTrace)
+    {
+        borrowedAt = System.currentTimeMillis();
+        borrower = Thread.currentThread();
+        borrowTrace = captureTrace ? new Exception("Connection was borrowed here") : null;
+        leakReported = false;
+    }
+
+    /**
+     * Marks connection as returned to pool.
+     */
+    void release()
+    {
+        lastAccessed = System.currentTimeMillis();
+        borrower = null;
+        borrowTrace = null;
+    }
+
+    Connection getConnection()
+    {
+        return connection;
+    }
+
+    StatementCache getStatementCache()
+    {
+        return statementCache;
+    }
+
+    long getLastAccessed()
+    {
+        return lastAccessed;
+    }
+
+    long getBorrowedAt()
+    {
+        return borrowedAt;
+    }
+
+    Thread getBorrower()
+    {
+        return borrower;
+    }
+
+    Exception getBorrowTrace()
+    {
+        return borrowTrace;
+    }
+
+    boolean isLeakReported()
+    {
+        return leakReported;
+    }
+
+    void setLeakReported(boolean leakReported)
+    {
+        this.leakReported = leakReported;
+    }
+}
@@ -0,0 +1,97 @@
+package com.testing.db.connection;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of prepared statements of one connection, so every statement is parsed
+ * and planned by database once per connection. Cache is used only by the thread that borrowed
+ * the connection, so it is not synchronized.
+ */
+class StatementCache
+{
+    private static final Logger LOGGER = LogManager.getLogger(StatementCache.class);
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    /**
+     * Instantiates a new statement cache.
+     *
+     * @param connection the connection which prepares statements
+     * @param maxSize    the maximum number of cached statements
+     */
+    StatementCache(Connection connection, int maxSize)
+    {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+            {
+                if (size() > maxSize)
+                {
+                    closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns cached statement or prepares a new one.
+     *
+     * @param sql the statement sql
+     * @return the prepared statement, it must not be closed by caller
+     * @throws SQLException the sql exception on a database access
+     * error or other errors.
+     */
+    PreparedStatement get(String sql) throws SQLException
+    {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null || statement.isClosed())
+        {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Tells if statement is cached.
+     *
+     * @param sql the statement sql
+     * @return true if cache contains statement
+     */
+    boolean contains(String sql)
+    {
+        return statements.containsKey(sql);
+    }
+
+    /**
+     * Closes all cached statements.
+     */
+    void clear()
+    {
+        statements.values().forEach(StatementCache::closeStatement);
+        statements.clear();
+    }
+
+    private static void closeStatement(PreparedStatement statement)
+    {
+        try
+        {
+            statement.close();
+        } catch (SQLException e)
+        {
+            LOGGER.error(e);
+        }
+    }
+}
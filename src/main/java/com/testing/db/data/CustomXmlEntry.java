@@ -1,5 +1,6 @@
 package com.testing.db.data;
 
+import java.util.Arrays;
 
 /**
  * The custom xml entry implementation
@@ -7,36 +8,39 @@ package com.testing.db.data;
 public class CustomXmlEntry implements XmlEntry
 {
 
-    private String content;
-    private String creationDate;
+    private final Object[] values;
 
-    @Override
-    public String getContent()
+    /**
+     * Instantiates a new entry without values.
+     *
+     * @param columnCount the number of columns
+     */
+    public CustomXmlEntry(int columnCount)
     {
-        return content;
+        this.values = new Object[columnCount];
     }
 
     @Override
-    public void setContent(String content)
+    public int getColumnCount()
     {
-        this.content = content;
+        return values.length;
     }
 
     @Override
-    public String getCreationDate()
+    public Object getValue(int column)
     {
-        return creationDate;
+        return values[column];
     }
 
     @Override
-    public void setCreationDate(String creationDate)
+    public void setValue(int column, Object value)
     {
-        this.creationDate = creationDate;
+        values[column] = value;
     }
 
     @Override
     public String toString()
     {
-        return "CustomXmlEntry{" + ", content=" + content + ", creationDate=" + creationDate + '}';
+        return "CustomXmlEntry{" + "values=" + Arrays.toString(values) + '}';
     }
 }
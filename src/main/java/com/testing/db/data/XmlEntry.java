@@ -1,36 +1,33 @@
 package com.testing.db.data;
 
 /**
- * The basic interface for implementing Xml entry with some content and creation date
+ * The basic interface for implementing Xml entry with values of mapped table columns
+ *
+ * @see com.testing.mapping.EntryMapping
  */
 public interface XmlEntry
 {
     /**
-     * Gets content.
+     * Gets number of columns.
      *
-     * @return the content
+     * @return the column count
      */
-    String getContent();
+    int getColumnCount();
 
     /**
-     * Sets content.
+     * Gets value of column.
      *
-     * @param content the content
+     * @param column the column index
+     * @return the value or null if entry has no value of the column
      */
-    void setContent(String content);
+    Object getValue(int column);
 
     /**
-     * Gets creation date.
+     * Sets value of column.
      *
-     * @return the creation date
+     * @param column the column index
+     * @param value  the value
      */
-    String getCreationDate();
-
-    /**
-     * Sets creation date.
-     *
-     * @param creationDate the creation date
-     */
-    void setCreationDate(String creationDate);
+    void setValue(int column, Object value);
 
 }
@@ -0,0 +1,273 @@
+package com.testing.dedup;
+
+import com.testing.config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The singleton persistent index of content hashes of files recorded to database.
+ * <p>
+ * Index consists of two memory-mapped open addressing hash tables, '{path}.0' and '{path}.1', every slot
+ * holds content hash, length and checksum of one file. New files are added to the current table and when it
+ * is filled by half the older table becomes current, so the index remembers at least the last 'capacity / 2'
+ * files and takes fixed '2 * 24 * capacity' bytes of memory and disk. Lookup checks both tables and a file
+ * is known only if its 64-bit hash, length and independent 32-bit checksum all match.
+ * <p>
+ * Every slot is stamped with generation of its table, so the older table is cleared by raising its generation
+ * and rotation does not touch the slots. The index is disabled and knows no files if index path is not configured.
+ */
+public class DedupIndex
+{
+    private static final Logger LOGGER = LogManager.getLogger(DedupIndex.class);
+
+    private static final int MAGIC = 0x44445550;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 24;
+    private static final double MAX_LOAD = 0.5;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+
+    private static DedupIndex instance;
+
+    private final MappedByteBuffer[] tables;
+    private final int capacity;
+    private final int[] counts = new int[2];
+    private final long[] generations = new long[2];
+    private int current;
+
+    /**
+     * Opens index files, creates them if they do not exist.
+     *
+     * @param path     the index path without table suffix
+     * @param capacity the number of slots in one table
+     * @throws IOException if files cannot be opened or mapped
+     */
+    DedupIndex(Path path, int capacity) throws IOException
+    {
+        this.capacity = Math.min(capacity, MAX_CAPACITY);
+        tables = new MappedByteBuffer[2];
+        for (int table = 0; table < 2; table++)
+        {
+            tables[table] = map(Paths.get(path.toString() + "." + table), offset(this.capacity));
+            MappedByteBuffer buffer = tables[table];
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != this.capacity)
+            {
+                clear(table, 0);
+            }
+            else
+            {
+                counts[table] = buffer.getInt(12);
+                generations[table] = buffer.getLong(16);
+            }
+        }
+        current = generations[1] > generations[0] ? 1 : 0;
+        LOGGER.debug("Deduplication index " + path + " knows " + (counts[0] + counts[1]) + " files.");
+    }
+
+    private DedupIndex()
+    {
+        tables = null;
+        capacity = 0;
+    }
+
+    /**
+     * Gets the index, opens it on the first call.
+     *
+     * @return the instance
+     */
+    public static synchronized DedupIndex getInstance()
+    {
+        if (instance == null)
+        {
+            String indexPath = Configuration.getDedupIndexPath();
+            if (indexPath.length() != 0)
+            {
+                try
+                {
+                    instance = new DedupIndex(Paths.get(indexPath), Configuration.getDedupIndexCapacity());
+                } catch (IOException e)
+                {
+                    LOGGER.error("Cannot open deduplication index " + indexPath + ", duplicates will not be detected.", e);
+                }
+            }
+            if (instance == null)
+            {
+                instance = new DedupIndex();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Tells if the index is used.
+     *
+     * @return true if index is configured and opened
+     */
+    public boolean isEnabled()
+    {
+        return tables != null;
+    }
+
+    /**
+     * Tells if file with the same content was added to the index.
+     *
+     * @param hash     the content hash
+     * @param length   the content length
+     * @param checksum the content checksum independent from the hash
+     * @return true if file is known
+     */
+    public synchronized boolean contains(long hash, long length, int checksum)
+    {
+        if (tables == null)
+        {
+            return false;
+        }
+        long key = key(hash);
+        return find(current, key, length, checksum) >= 0 || find(1 - current, key, length, checksum) >= 0;
+    }
+
+    /**
+     * Adds file content to the index.
+     *
+     * @param hash     the content hash
+     * @param length   the content length
+     * @param checksum the content checksum independent from the hash
+     */
+    public synchronized void add(long hash, long length, int checksum)
+    {
+        if (tables == null)
+        {
+            return;
+        }
+        long key = key(hash);
+        if (find(current, key, length, checksum) >= 0)
+        {
+            return;
+        }
+        if (counts[current] >= capacity * MAX_LOAD)
+        {
+            int older = 1 - current;
+            writeHeader(older, generations[current] + 1, 0);
+            current = older;
+            LOGGER.debug("Deduplication index was rotated, the last " + counts[1 - current] + " files are kept.");
+        }
+        MappedByteBuffer table = tables[current];
+        int slot = slot(key);
+        while (isOccupied(current, slot))
+        {
+            slot = (slot + 1) % capacity;
+        }
+        table.putLong(offset(slot) + 8, length);
+        table.putLong(offset(slot), key);
+        table.putLong(offset(slot) + 16, (generations[current] << 32) | (checksum & 0xFFFFFFFFL));
+        table.putInt(12, ++counts[current]);
+    }
+
+    /**
+     * Flushes the index to the storage. Pages are flushed without holding the index lock.
+     */
+    public void force()
+    {
+        if (tables != null)
+        {
+            tables[0].force();
+            tables[1].force();
+        }
+    }
+
+    /**
+     * Finds slot holding the content.
+     *
+     * @return the slot or -1 if content is not in the table
+     */
+    private int find(int table, long key, long length, int checksum)
+    {
+        MappedByteBuffer buffer = tables[table];
+        int slot = slot(key);
+        for (int probes = 0; probes < capacity; probes++)
+        {
+            if (!isOccupied(table, slot))
+            {
+                return -1;
+            }
+            if (buffer.getLong(offset(slot)) == key && buffer.getLong(offset(slot) + 8) == length
+                    && (int) buffer.getLong(offset(slot) + 16) == checksum)
+            {
+                return slot;
+            }
+            slot = (slot + 1) % capacity;
+        }
+        return -1;
+    }
+
+    /**
+     * Tells if slot holds a file added in the current generation of the table. Slots left from previous
+     * generations are free.
+     */
+    private boolean isOccupied(int table, int slot)
+    {
+        MappedByteBuffer buffer = tables[table];
+        return buffer.getLong(offset(slot)) != 0
+                && (int) (buffer.getLong(offset(slot) + 16) >>> 32) == (int) generations[table];
+    }
+
+    /**
+     * Zeroes all slots of the table, used only when the index is opened with a table of other format.
+     */
+    private void clear(int table, long generation)
+    {
+        MappedByteBuffer buffer = tables[table];
+        buffer.putInt(0, 0);
+        for (int offset = HEADER_SIZE; offset < buffer.capacity(); offset += 8)
+        {
+            buffer.putLong(offset, 0);
+        }
+        writeHeader(table, generation, 0);
+    }
+
+    private void writeHeader(int table, long generation, int count)
+    {
+        MappedByteBuffer buffer = tables[table];
+        buffer.putInt(0, 0);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, count);
+        buffer.putLong(16, generation);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(0, MAGIC);
+        counts[table] = count;
+        generations[table] = generation;
+    }
+
+    private int slot(long key)
+    {
+        return (int) ((key & Long.MAX_VALUE) % capacity);
+    }
+
+    private static int offset(int slot)
+    {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Zero marks empty slot, so zero hash is stored as another value.
+     */
+    private static long key(long hash)
+    {
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static MappedByteBuffer map(Path path, long size) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.testing.handler;
+
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Aalto non-blocking parser backend. The parser never blocks on input: it is fed with chunks read into
+ * a pooled buffer and reports {@link AsyncXMLStreamReader#EVENT_INCOMPLETE} when it needs more bytes.
+ * <p>
+ * Async reader cannot be reset for another document, so a new reader is created for every file. The factory
+ * is shared by all threads instead, so readers take its configuration and shared symbol table and only
+ * the small reader state is allocated per file.
+ */
+class AaltoXmlParser implements XmlParser
+{
+    private static final Logger LOGGER = LogManager.getLogger(AaltoXmlParser.class);
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_IDLE_OBJECTS = 64;
+
+    private final AsyncXMLInputFactory factory = new InputFactoryImpl();
+    private final ObjectPool<StaxEventDispatcher> dispatchers = new ObjectPool<>(StaxEventDispatcher::new, MAX_IDLE_OBJECTS);
+    private final ObjectPool<byte[]> buffers = new ObjectPool<>(() -> new byte[BUFFER_SIZE], MAX_IDLE_OBJECTS);
+
+    @Override
+    public void parse(InputStream input, DefaultHandler handler) throws IOException, SAXException
+    {
+        StaxEventDispatcher dispatcher = dispatchers.take();
+        dispatcher.reset();
+        byte[] buffer = buffers.take();
+        AsyncXMLStreamReader<AsyncByteArrayFeeder> reader = factory.createAsyncForByteArray();
+        try
+        {
+            boolean endOfInput = false;
+            while (true)
+            {
+                int event = reader.next();
+                if (event == AsyncXMLStreamReader.EVENT_INCOMPLETE)
+                {
+                    if (endOfInput)
+                    {
+                        throw new SAXException("Unexpected end of document.");
+                    }
+                    int read = input.read(buffer);
+                    if (read < 0)
+                    {
+                        endOfInput = true;
+                        reader.getInputFeeder().endOfInput();
+                    }
+                    else
+                    {
+                        reader.getInputFeeder().feedInput(buffer, 0, read);
+                    }
+                }
+                else if (dispatcher.dispatch(reader, event, handler))
+                {
+                    return;
+                }
+            }
+        } catch (XMLStreamException e)
+        {
+            throw new SAXException(e.getMessage(), e);
+        } finally
+        {
+            try
+            {
+                reader.close();
+            } catch (XMLStreamException e)
+            {
+                LOGGER.error(e);
+            }
+            dispatchers.release(dispatcher);
+            buffers.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.testing.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Input stream which reads file through {@link FileChannel}.
+ * <p>
+ * Small files are read into a direct buffer of the stream, every read system call fills the whole buffer.
+ * Files not smaller than mmap threshold are memory-mapped by windows, so their pages are copied straight
+ * from page cache without read system calls. Mapped files are read up to the size they had when opened.
+ * <p>
+ * Mappings are released only when the garbage collector frees them, so the number of mappings which are not
+ * released yet is limited by {@link #MAX_LIVE_MAPPINGS} for all streams, it keeps the process below the
+ * kernel limit of mappings (vm.max_map_count) when many large files are read between collections. A stream
+ * which cannot map the next window reads the rest of file by system calls.
+ * <p>
+ * A mapped file truncated by another process faults on access to the lost pages, the fault is reported as
+ * {@link IOException}. Java 8 cannot recover from a fault of bulk copy, so bulk reads of a mapping check first
+ * that the file still covers the mapped window. Compiled code may report the fault of a single byte read after
+ * the read returned, {@link XmlFileHandler} converts such late faults as well.
+ * <p>
+ * Direct buffers are pooled and shared by all threads, a stream which reads by system calls takes a buffer
+ * when it starts reading and returns it when closed, so reading allocates no buffers. Mapped streams take no buffer.
+ */
+class ChannelInputStream extends InputStream
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+    private static final int MAX_IDLE_BUFFERS = 64;
+    private static final int MAX_LIVE_MAPPINGS = 4096;
+    private static final ObjectPool<ByteBuffer> BUFFERS =
+            new ObjectPool<>(() -> ByteBuffer.allocateDirect(BUFFER_SIZE), MAX_IDLE_BUFFERS);
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final ReferenceQueue<ByteBuffer> RELEASED_MAPPINGS = new ReferenceQueue<>();
+    private static final Set<Reference<ByteBuffer>> LIVE_MAPPINGS = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger LIVE_MAPPINGS_COUNT = new AtomicInteger();
+
+    private final long mapWindow;
+    private ByteBuffer directBuffer;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private boolean mapped;
+    private long size;
+    private long position;
+
+    private ChannelInputStream(long mapWindow)
+    {
+        this.mapWindow = mapWindow;
+    }
+
+    /**
+     * Opens file for reading by system calls or by mapping according to its size.
+     *
+     * @param path          the file path
+     * @param mmapThreshold the size in bytes from which file is memory-mapped
+     * @return the opened stream, it must be closed to return its buffer to the pool
+     * @throws IOException if file cannot be opened
+     */
+    static ChannelInputStream open(Path path, long mmapThreshold) throws IOException
+    {
+        return open(path, mmapThreshold, MAP_WINDOW);
+    }
+
+    /**
+     * Opens file for reading by system calls or by mapping windows of given size.
+     *
+     * @param path          the file path
+     * @param mmapThreshold the size in bytes from which file is memory-mapped
+     * @param mapWindow     the size in bytes of mapped windows
+     * @return the opened stream, it must be closed to return its buffer to the pool
+     * @throws IOException if file cannot be opened
+     */
+    static ChannelInputStream open(Path path, long mmapThreshold, long mapWindow) throws IOException
+    {
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        ChannelInputStream stream = new ChannelInputStream(mapWindow);
+        stream.init(fileChannel, mmapThreshold);
+        return stream;
+    }
+
+    private void init(FileChannel fileChannel, long mmapThreshold) throws IOException
+    {
+        channel = fileChannel;
+        try
+        {
+            size = channel.size();
+        } catch (IOException e)
+        {
+            close();
+            throw e;
+        }
+        position = 0;
+        mapped = size >= mmapThreshold;
+        buffer = EMPTY;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!buffer.hasRemaining() && !fill())
+        {
+            return -1;
+        }
+        try
+        {
+            return buffer.get() & 0xff;
+        } catch (InternalError e)
+        {
+            throw mappingFault(e);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        if (!buffer.hasRemaining() && !fill())
+        {
+            return -1;
+        }
+        int read = Math.min(len, buffer.remaining());
+        if (mapped && channel.size() < position)
+        {
+            throw new IOException("Mapped file was truncated before it was read.");
+        }
+        try
+        {
+            buffer.get(b, off, read);
+        } catch (InternalError e)
+        {
+            throw mappingFault(e);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0)
+        {
+            return 0;
+        }
+        long skipped = Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + (int) skipped);
+        if (skipped < n)
+        {
+            long inFile = mapped ? Math.min(n - skipped, size - position) : n - skipped;
+            position += inFile;
+            skipped += inFile;
+        }
+        return skipped;
+    }
+
+    /**
+     * Tells if the next part of file is read by mapping.
+     *
+     * @return false if file is read by system calls
+     */
+    boolean isMapped()
+    {
+        return mapped;
+    }
+
+    @Override
+    public int available()
+    {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (channel != null)
+        {
+            FileChannel fileChannel = channel;
+            channel = null;
+            buffer = EMPTY;
+            if (directBuffer != null)
+            {
+                BUFFERS.release(directBuffer);
+                directBuffer = null;
+            }
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Reads the next part of file to the direct buffer or maps the next window of file.
+     *
+     * @return false at the end of file
+     */
+    private boolean fill() throws IOException
+    {
+        if (channel == null)
+        {
+            throw new IOException("Stream is closed.");
+        }
+        if (mapped)
+        {
+            if (position >= size)
+            {
+                return false;
+            }
+            if (reserveMapping())
+            {
+                long length = Math.min(mapWindow, size - position);
+                try
+                {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                } catch (IOException | RuntimeException e)
+                {
+                    releaseMapping();
+                    throw e;
+                }
+                LIVE_MAPPINGS.add(new PhantomReference<>(buffer, RELEASED_MAPPINGS));
+                position += length;
+                return true;
+            }
+            mapped = false;
+        }
+        if (directBuffer == null)
+        {
+            directBuffer = BUFFERS.take();
+            buffer = directBuffer;
+        }
+        directBuffer.clear();
+        int read;
+        do
+        {
+            read = channel.read(directBuffer, position);
+        } while (read == 0);
+        directBuffer.flip();
+        if (read < 0)
+        {
+            return false;
+        }
+        position += read;
+        return true;
+    }
+
+    /**
+     * Converts fault of access to a page of mapped file which was truncated meanwhile.
+     */
+    private IOException mappingFault(InternalError e)
+    {
+        if (!mapped)
+        {
+            throw e;
+        }
+        return new IOException("Mapped file was truncated while it was read.", e);
+    }
+
+    /**
+     * Counts mappings freed by the garbage collector out and takes a place for a new mapping.
+     *
+     * @return false if the limit of live mappings is reached
+     */
+    static boolean reserveMapping()
+    {
+        Reference<? extends ByteBuffer> released;
+        while ((released = RELEASED_MAPPINGS.poll()) != null)
+        {
+            LIVE_MAPPINGS.remove(released);
+            LIVE_MAPPINGS_COUNT.decrementAndGet();
+        }
+        int live;
+        do
+        {
+            live = LIVE_MAPPINGS_COUNT.get();
+            if (live >= MAX_LIVE_MAPPINGS)
+            {
+                return false;
+            }
+        } while (!LIVE_MAPPINGS_COUNT.compareAndSet(live, live + 1));
+        return true;
+    }
+
+    /**
+     * Gives back a place taken by {@link #reserveMapping()} for a mapping which was not created.
+     */
+    static void releaseMapping()
+    {
+        LIVE_MAPPINGS_COUNT.decrementAndGet();
+    }
+}
@@ -0,0 +1,14 @@
+package com.testing.handler;
+
+/**
+ * Check that a file is still claimed by this node.
+ */
+interface ClaimCheck
+{
+    /**
+     * Tells if this node may still write entries of the file.
+     *
+     * @return true if file is claimed by this node
+     */
+    boolean isClaimed();
+}
@@ -0,0 +1,21 @@
+package com.testing.handler;
+
+import java.sql.SQLException;
+
+/**
+ * Stops writing of a file which is not claimed by this node any more.
+ */
+class ClaimLostException extends SQLException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new claim lost exception.
+     *
+     * @param message the detail message
+     */
+    ClaimLostException(String message)
+    {
+        super(message);
+    }
+}
@@ -1,69 +1,378 @@
 package com.testing.handler;
 
+import com.testing.config.Configuration;
 import com.testing.db.data.CustomXmlEntry;
 import com.testing.db.DBWriter;
+import com.testing.db.data.XmlEntry;
+import com.testing.journal.IngestJournal;
+import com.testing.mapping.ColumnMapping;
+import com.testing.mapping.EntryMapping;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
- * The custom xml handler
+ * The custom xml handler. File can contain any number of record elements of {@link EntryMapping}, every entry
+ * is passed to the writer as soon as its closing tag is parsed and entries are written to database by chunks of
+ * limited size, so memory usage does not depend on file size.
+ * <p>
+ * Inside a record the handler keeps the stack of mapping nodes of open elements, so the column of an element is
+ * found by one lookup of its name in the compiled mapping and closing tags are not compared at all. Text of
+ * a mapped element is collected to a reusable character buffer and converted to the column type once.
+ * <p>
+ * Every chunk is committed in its own transaction. If handler is created for a file, committed chunks are
+ * recorded to {@link IngestJournal} and a handler created for the same file again skips them, so another attempt
+ * after a write failure, or after a crash if the journal is configured, does not insert them twice. Chunks
+ * committed before a parse error are not rolled back: entries of a file moved to corrupted files folder stay
+ * in database up to the last committed chunk. Nothing is written if the file is a duplicate of a recorded file.
+ * <p>
+ * If {@link DBWriter} has the write stage, a full chunk is passed to it and parsing goes on while the chunk
+ * is written. At most one chunk of a file is in the write stage at a time, so committed entries are always
+ * the beginning of the file as the journal expects.
  */
 public class CustomXmlToDBHandler extends XmlToDBHandler
 {
-    private boolean content;
-    private boolean creationDate;
-    private boolean rootEntry;
+    private static final Logger LOGGER = LogManager.getLogger(CustomXmlToDBHandler.class);
+
+    private static final int NOT_MAPPED = -1;
+
+    private final EntryMapping mapping = EntryMapping.getInstance();
+    private final ColumnMapping[] columns = mapping.getColumns().toArray(new ColumnMapping[0]);
+    private int[] nodes = new int[16];
+    private int recordDepth;
+    private int textColumn = NOT_MAPPED;
+    private char[] text = new char[256];
+    private int textLength;
+    private long presentColumns;
     private DBWriter dbWriter = DBWriter.getInstance();
-    private CustomXmlEntry xmlEntry = new CustomXmlEntry();
+    private CustomXmlEntry xmlEntry;
+    private List<XmlEntry> chunk;
+    private List<XmlEntry> submittedChunk;
+    private CompletableFuture<Void> pendingWrite;
+    private final int chunkSize;
+    private long writtenEntries;
+    private long parsedEntries;
+    private final String filePath;
+    private final IngestJournal journal;
+
+    /**
+     * Instantiates a new custom xml handler with chunk size from {@link Configuration}.
+     */
+    public CustomXmlToDBHandler()
+    {
+        this(Configuration.getEntriesChunkSize());
+    }
+
+    /**
+     * Instantiates a new custom xml handler.
+     *
+     * @param chunkSize the maximum number of parsed entries kept in memory before writing
+     */
+    public CustomXmlToDBHandler(int chunkSize)
+    {
+        this(chunkSize, null);
+    }
+
+    /**
+     * Instantiates a new custom xml handler of the file which progress is recorded to {@link IngestJournal},
+     * chunk size is taken from {@link Configuration}.
+     *
+     * @param filePath the handled file path
+     */
+    public CustomXmlToDBHandler(String filePath)
+    {
+        this(Configuration.getEntriesChunkSize(), filePath);
+    }
+
+    /**
+     * Instantiates a new custom xml handler.
+     *
+     * @param chunkSize the maximum number of parsed entries kept in memory before writing
+     * @param filePath  the handled file path, null if progress is not recorded
+     */
+    public CustomXmlToDBHandler(int chunkSize, String filePath)
+    {
+        this.chunkSize = chunkSize;
+        this.chunk = new ArrayList<>(chunkSize);
+        this.filePath = filePath;
+        this.journal = filePath == null ? null : IngestJournal.getInstance();
+        if (journal != null)
+        {
+            writtenEntries = journal.getCommittedEntries(filePath);
+            if (writtenEntries > 0)
+            {
+                LOGGER.info(writtenEntries + " entries of " + filePath + " were already written to database and will be skipped.");
+            }
+        }
+    }
 
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
     {
-        if (qName.equalsIgnoreCase("Entry"))
+        if (recordDepth == 0)
         {
-            rootEntry = true;
+            if (mapping.isRecord(qName))
+            {
+                nodes[recordDepth++] = EntryMapping.RECORD_NODE;
+                presentColumns = 0;
+                xmlEntry = new CustomXmlEntry(columns.length);
+            }
+            return;
         }
-        else if (qName.equalsIgnoreCase("content"))
+        int parent = nodes[recordDepth - 1];
+        int node = parent == NOT_MAPPED ? NOT_MAPPED : mapping.childNode(parent, qName);
+        if (recordDepth == nodes.length)
         {
-            content = true;
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
         }
-        else if (qName.equalsIgnoreCase("creationDate"))
+        nodes[recordDepth++] = node;
+        if (node != NOT_MAPPED && mapping.columnOf(node) != NOT_MAPPED)
         {
-            creationDate = true;
+            textColumn = mapping.columnOf(node);
+            textLength = 0;
         }
     }
 
     @Override
     public void characters(char ch[], int start, int length) throws SAXException
     {
-        if (content)
+        if (textColumn != NOT_MAPPED)
+        {
+            int maxLength = columns[textColumn].getMaxLength();
+            if (maxLength > 0 && textLength + length > maxLength)
+            {
+                throw new SAXException("Length of " + columns[textColumn].getPath() + " cant be more than " + maxLength
+                        + " symbols. File will replace to corrupted folder.");
+            }
+            if (textLength + length > text.length)
+            {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+            }
+            System.arraycopy(ch, start, text, textLength, length);
+            textLength += length;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException
+    {
+        if (recordDepth == 0)
+        {
+            return;
+        }
+        int node = nodes[--recordDepth];
+        if (recordDepth > 0)
+        {
+            if (textColumn != NOT_MAPPED && node != NOT_MAPPED && mapping.columnOf(node) == textColumn)
+            {
+                ColumnMapping column = columns[textColumn];
+                try
+                {
+                    xmlEntry.setValue(textColumn, column.getType().parse(text, textLength));
+                } catch (IllegalArgumentException e)
+                {
+                    throw new SAXException("Value of " + column.getPath() + " is not " + column.getType()
+                            + ". File will replace to corrupted folder.", e);
+                }
+                presentColumns |= 1L << textColumn;
+                textColumn = NOT_MAPPED;
+            }
+            return;
+        }
+        if (hasAllElements(mapping.getRequiredColumns()))
         {
-            if (length > 1024)
+            if (++parsedEntries > writtenEntries)
             {
-                throw new SAXException("Content length cant be more than 1024 symbols. File will replace to corrupted folder.");
+                chunk.add(xmlEntry);
+                if (chunk.size() >= chunkSize)
+                {
+                    writeChunk();
+                }
             }
-            xmlEntry.setContent(new String(ch, start, length));
         }
-        else if (creationDate)
+        else
         {
-            xmlEntry.setCreationDate(new String(ch, start, length));
+            LOGGER.error("Entry without " + missingColumn().getPath() + " was skipped.");
+        }
+        xmlEntry = null;
+    }
+
+    @Override
+    public void endDocument()
+    {
+        if (journal != null)
+        {
+            journal.parsed(filePath, parsedEntries);
         }
     }
 
     @Override
     boolean hasAllElements()
     {
-        return rootEntry && content && creationDate;
+        return recordDepth > 0 && hasAllElements(mapping.getRequiredColumns());
+    }
+
+    private boolean hasAllElements(long requiredColumns)
+    {
+        return (presentColumns & requiredColumns) == requiredColumns;
+    }
+
+    /**
+     * Gets the first required column which element was not found in the current entry.
+     */
+    private ColumnMapping missingColumn()
+    {
+        long missing = mapping.getRequiredColumns() & ~presentColumns;
+        return columns[Long.numberOfTrailingZeros(missing)];
     }
 
     @Override
     void writeXmlToDB() throws SQLException
     {
-        if (hasAllElements())
+        writeEntries();
+        awaitPendingWrite();
+        LOGGER.debug(writtenEntries + " entries were written to database.");
+    }
+
+    @Override
+    CompletableFuture<Void> writeXmlToDBAsync()
+    {
+        if (!dbWriter.isWriteStageEnabled())
+        {
+            return super.writeXmlToDBAsync();
+        }
+        try
+        {
+            writeEntries();
+        } catch (SQLException e)
+        {
+            CompletableFuture<Void> written = new CompletableFuture<>();
+            written.completeExceptionally(e);
+            return written;
+        }
+        if (pendingWrite == null)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        return pendingWrite.thenRun(this::pendingWriteCommitted);
+    }
+
+    /**
+     * Writes full chunk in the middle of parsing. Database error is wrapped because SAX callbacks
+     * can throw only {@link SAXException}.
+     *
+     * @throws SAXException wrapping the sql exception
+     */
+    private void writeChunk() throws SAXException
+    {
+        if (isDuplicate())
+        {
+            throw new DuplicateFileException("File content was already recorded to database.");
+        }
+        try
+        {
+            writeEntries();
+        } catch (SQLException e)
+        {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Writes parsed entries to database and clears the chunk.
+     *
+     * @throws SQLException that provides information on a database access
+     * error or other errors.
+     */
+    private void writeEntries() throws SQLException
+    {
+        if (!chunk.isEmpty())
+        {
+            if (isDuplicate())
+            {
+                chunk.clear();
+                return;
+            }
+            checkClaim();
+            if (dbWriter.isWriteStageEnabled())
+            {
+                submitChunk();
+                return;
+            }
+            dbWriter.writeEntries(chunk);
+            writtenEntries += chunk.size();
+            chunk.clear();
+            if (journal != null)
+            {
+                journal.committed(filePath, writtenEntries);
+            }
+        }
+    }
+
+    /**
+     * Waits until the previous chunk is committed and passes the current chunk to the write stage.
+     * The submitted list is kept unchanged until it is committed and then reused for the next chunk.
+     *
+     * @throws SQLException if the previous chunk was not committed
+     */
+    private void submitChunk() throws SQLException
+    {
+        awaitPendingWrite();
+        List<XmlEntry> submitted = chunk;
+        chunk = submittedChunk == null ? new ArrayList<>(chunkSize) : submittedChunk;
+        submittedChunk = submitted;
+        pendingWrite = dbWriter.submitEntries(submitted);
+    }
+
+    /**
+     * Waits until the chunk in the write stage is committed.
+     *
+     * @throws SQLException if the chunk was not committed
+     */
+    private void awaitPendingWrite() throws SQLException
+    {
+        if (pendingWrite == null)
+        {
+            return;
+        }
+        try
+        {
+            pendingWrite.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for commit.", e);
+        } catch (ExecutionException e)
+        {
+            pendingWrite = null;
+            if (e.getCause() instanceof SQLException)
+            {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Entries were not committed.", e.getCause());
+        }
+        pendingWriteCommitted();
+    }
+
+    /**
+     * Counts entries of the committed chunk and records them to the journal.
+     */
+    private void pendingWriteCommitted()
+    {
+        pendingWrite = null;
+        writtenEntries += submittedChunk.size();
+        submittedChunk.clear();
+        if (journal != null)
         {
-            dbWriter.writeEntry(xmlEntry);
+            journal.committed(filePath, writtenEntries);
         }
     }
 }
@@ -0,0 +1,14 @@
+package com.testing.handler;
+
+/**
+ * Check of a file against content of already recorded files.
+ */
+interface DuplicateCheck
+{
+    /**
+     * Tells if the same content was already recorded to database.
+     *
+     * @return true if file is a duplicate
+     */
+    boolean isDuplicate();
+}
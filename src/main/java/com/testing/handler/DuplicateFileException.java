@@ -0,0 +1,21 @@
+package com.testing.handler;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Stops parsing of a file which content was already recorded to database.
+ */
+class DuplicateFileException extends SAXException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new duplicate file exception.
+     *
+     * @param message the detail message
+     */
+    DuplicateFileException(String message)
+    {
+        super(message);
+    }
+}
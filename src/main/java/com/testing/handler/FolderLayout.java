@@ -0,0 +1,143 @@
+package com.testing.handler;
+
+import com.testing.config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Layout of subfolders of processed and corrupted files folders.
+ * <p>
+ * Files are spread by the time they are moved, formatted by configured date pattern, eg. 'yyyy/MM/dd/HH',
+ * and by hash of file name between configured number of bucket folders, so no folder grows to millions
+ * of files. Without pattern and buckets files are moved directly to the folder. Created folders are
+ * remembered, so a folder is created only for the first file moved to it.
+ */
+class FolderLayout
+{
+    private static final Logger LOGGER = LogManager.getLogger(FolderLayout.class);
+
+    private static final int MAX_CACHED_DIRECTORIES = 10000;
+
+    private static FolderLayout instance;
+
+    private final DateTimeFormatter dateFormatter;
+    private final int hashBuckets;
+    private final int bucketDigits;
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Instantiates a new folder layout.
+     *
+     * @param datePattern the pattern of date subfolders or empty string
+     * @param hashBuckets the number of hash bucket subfolders, 1 disables buckets
+     */
+    FolderLayout(String datePattern, int hashBuckets)
+    {
+        DateTimeFormatter formatter = null;
+        if (datePattern.length() != 0)
+        {
+            try
+            {
+                formatter = DateTimeFormatter.ofPattern(datePattern).withZone(ZoneId.systemDefault());
+            } catch (IllegalArgumentException e)
+            {
+                LOGGER.error("Invalid date pattern " + datePattern + " of folder layout, date subfolders are not used.", e);
+            }
+        }
+        dateFormatter = formatter;
+        this.hashBuckets = Math.max(1, hashBuckets);
+        bucketDigits = Integer.toHexString(this.hashBuckets - 1).length();
+    }
+
+    /**
+     * Gets layout of the configuration.
+     *
+     * @return the instance
+     */
+    static synchronized FolderLayout getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new FolderLayout(Configuration.getShardDatePattern(), Configuration.getShardHashBuckets());
+        }
+        return instance;
+    }
+
+    /**
+     * Gets subfolder of the folder for the file and creates it if it was not created yet.
+     *
+     * @param folder   the processed or corrupted files folder
+     * @param fileName the name of moved file
+     * @return the existing folder where file should be moved
+     * @throws IOException if folder cannot be created
+     */
+    Path getDirectory(Path folder, Path fileName) throws IOException
+    {
+        return createDirectory(resolveDirectory(folder, fileName, Instant.now()));
+    }
+
+    /**
+     * Gets subfolder of the folder for the file moved at the time, the subfolder may not exist.
+     *
+     * @param folder   the processed or corrupted files folder
+     * @param fileName the name of moved file
+     * @param time     the time of move
+     * @return the folder where file is moved at the time
+     */
+    Path resolveDirectory(Path folder, Path fileName, Instant time)
+    {
+        Path directory = folder;
+        if (dateFormatter != null)
+        {
+            directory = directory.resolve(Paths.get(dateFormatter.format(time)));
+        }
+        if (hashBuckets > 1)
+        {
+            int hash = fileName.toString().hashCode();
+            int bucket = Math.floorMod(hash ^ (hash >>> 16), hashBuckets);
+            directory = directory.resolve(String.format("%0" + bucketDigits + "x", bucket));
+        }
+        return directory;
+    }
+
+    /**
+     * Creates folder if it was not created yet.
+     *
+     * @param directory the folder
+     * @return the folder
+     * @throws IOException if folder cannot be created
+     */
+    Path createDirectory(Path directory) throws IOException
+    {
+        if (!createdDirectories.contains(directory))
+        {
+            Files.createDirectories(directory);
+            if (createdDirectories.size() >= MAX_CACHED_DIRECTORIES)
+            {
+                createdDirectories.clear();
+            }
+            createdDirectories.add(directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Forgets folder which was removed, so it is created again.
+     *
+     * @param directory the folder
+     */
+    void forget(Path directory)
+    {
+        createdDirectories.remove(directory);
+    }
+}
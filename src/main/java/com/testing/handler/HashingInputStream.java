@@ -0,0 +1,176 @@
+package com.testing.handler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Input stream which computes 64-bit FNV-1a hash and independent CRC32 checksum of all bytes read through it,
+ * so two different contents are taken as equal only if both of them collide.
+ */
+class HashingInputStream extends FilterInputStream
+{
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private long hash = FNV_OFFSET_BASIS;
+    private final CRC32 checksum = new CRC32();
+    private long length;
+    private boolean complete;
+
+    /**
+     * Instantiates a new hashing input stream.
+     *
+     * @param in the underlying input stream
+     */
+    HashingInputStream(InputStream in)
+    {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = in.read();
+        if (b < 0)
+        {
+            complete = true;
+        }
+        else
+        {
+            hash = (hash ^ b) * FNV_PRIME;
+            checksum.update(b);
+            length++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int read = in.read(b, off, len);
+        if (read < 0)
+        {
+            complete = true;
+        }
+        else
+        {
+            hash = update(hash, b, off, read);
+            checksum.update(b, off, read);
+            length += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n)
+        {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0)
+            {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit)
+    {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException
+    {
+        throw new IOException("Mark is not supported.");
+    }
+
+    /**
+     * Reads the rest of the stream, so the hash covers the whole content.
+     *
+     * @throws IOException if stream cannot be read
+     */
+    void readToEnd() throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!complete)
+        {
+            read(buffer, 0, buffer.length);
+        }
+    }
+
+    /**
+     * Tells if the end of stream was reached.
+     *
+     * @return true if hash covers the whole content
+     */
+    boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Gets hash of bytes read so far.
+     *
+     * @return the content hash
+     */
+    long getHash()
+    {
+        return finish(hash);
+    }
+
+    /**
+     * Gets CRC32 checksum of bytes read so far.
+     *
+     * @return the content checksum
+     */
+    int getChecksum()
+    {
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Gets number of bytes read so far.
+     *
+     * @return the content length
+     */
+    long getLength()
+    {
+        return length;
+    }
+
+    private static long update(long hash, byte[] b, int off, int len)
+    {
+        for (int i = off; i < off + len; i++)
+        {
+            hash = (hash ^ (b[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes bits of FNV hash, so every bit of the result depends on the whole content.
+     */
+    private static long finish(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
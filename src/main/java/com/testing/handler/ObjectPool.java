@@ -0,0 +1,76 @@
+package com.testing.handler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free pool of reusable objects shared by all threads. Unlike thread local caches it keeps objects
+ * reused when every file is handled by its own short-lived virtual thread. At most the given number of
+ * idle objects is kept, objects created during a burst above it are left to the garbage collector.
+ *
+ * @param <T> the type of pooled objects
+ */
+class ObjectPool<T>
+{
+    private final Queue<T> idleObjects = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final Supplier<T> factory;
+    private final int maxIdle;
+
+    /**
+     * Instantiates a new object pool.
+     *
+     * @param factory the factory of new objects
+     * @param maxIdle the maximum number of kept idle objects
+     */
+    ObjectPool(Supplier<T> factory, int maxIdle)
+    {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Instantiates a new object pool without factory, objects are created by the caller.
+     *
+     * @param maxIdle the maximum number of kept idle objects
+     */
+    ObjectPool(int maxIdle)
+    {
+        this(() -> null, maxIdle);
+    }
+
+    /**
+     * Takes idle object or creates a new one.
+     *
+     * @return the object or null if pool is empty and has no factory
+     */
+    T take()
+    {
+        T object = idleObjects.poll();
+        if (object == null)
+        {
+            return factory.get();
+        }
+        idleCount.decrementAndGet();
+        return object;
+    }
+
+    /**
+     * Returns object to the pool.
+     *
+     * @param object the object which is not used anymore
+     */
+    void release(T object)
+    {
+        if (idleCount.incrementAndGet() <= maxIdle)
+        {
+            idleObjects.add(object);
+        }
+        else
+        {
+            idleCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.testing.handler;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JDK SAX parser backend. Parsers are pooled and reset after each document.
+ */
+class SaxXmlParser implements XmlParser
+{
+    private static final SAXParserFactory factory = SAXParserFactory.newInstance();
+    private static final int MAX_IDLE_PARSERS = 64;
+
+    private final ObjectPool<SAXParser> parsers = new ObjectPool<>(MAX_IDLE_PARSERS);
+
+    @Override
+    public void parse(InputStream input, DefaultHandler handler) throws IOException, SAXException
+    {
+        SAXParser saxParser = parsers.take();
+        if (saxParser == null)
+        {
+            try
+            {
+                saxParser = factory.newSAXParser();
+            } catch (ParserConfigurationException e)
+            {
+                throw new SAXException(e);
+            }
+        }
+        try
+        {
+            saxParser.parse(input, handler);
+        } finally
+        {
+            saxParser.reset();
+            parsers.release(saxParser);
+        }
+    }
+}
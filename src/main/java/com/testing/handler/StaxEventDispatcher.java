@@ -0,0 +1,101 @@
+package com.testing.handler;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reports StAX reader events to SAX handler, so the same handler works with every parser backend.
+ * Text is passed as reader's own character array and attributes object is reused, so dispatching
+ * does not create objects for elements without namespace prefix. Instances are used by one thread.
+ */
+class StaxEventDispatcher
+{
+    private final AttributesImpl attributes = new AttributesImpl();
+    private boolean documentStarted;
+
+    /**
+     * Prepares dispatcher for a new document.
+     */
+    void reset()
+    {
+        documentStarted = false;
+        attributes.clear();
+    }
+
+    /**
+     * Reports current event of the reader to the handler.
+     *
+     * @param reader  the reader positioned on the event
+     * @param event   the event type
+     * @param handler the SAX handler
+     * @return true if the event was the end of document
+     * @throws SAXException if handler stopped parsing
+     */
+    boolean dispatch(XMLStreamReader reader, int event, DefaultHandler handler) throws SAXException
+    {
+        switch (event)
+        {
+            case XMLStreamConstants.START_DOCUMENT:
+                startDocument(handler);
+                break;
+            case XMLStreamConstants.START_ELEMENT:
+                startDocument(handler);
+                attributes.clear();
+                for (int i = 0; i < reader.getAttributeCount(); i++)
+                {
+                    String attributeUri = reader.getAttributeNamespace(i);
+                    attributes.addAttribute(attributeUri == null ? "" : attributeUri, reader.getAttributeLocalName(i),
+                            qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                            reader.getAttributeType(i), reader.getAttributeValue(i));
+                }
+                handler.startElement(namespace(reader), reader.getLocalName(),
+                        qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes);
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                handler.endElement(namespace(reader), reader.getLocalName(),
+                        qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                handler.endDocument();
+                return true;
+            default:
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Reports start of document if it was not reported yet.
+     *
+     * @param handler the SAX handler
+     * @throws SAXException if handler stopped parsing
+     */
+    void startDocument(DefaultHandler handler) throws SAXException
+    {
+        if (!documentStarted)
+        {
+            documentStarted = true;
+            handler.startDocument();
+        }
+    }
+
+    private static String namespace(XMLStreamReader reader)
+    {
+        String uri = reader.getNamespaceURI();
+        return uri == null ? "" : uri;
+    }
+
+    private static String qualifiedName(String prefix, String localName)
+    {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+}
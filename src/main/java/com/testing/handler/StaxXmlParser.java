@@ -0,0 +1,107 @@
+package com.testing.handler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JDK StAX stream reader backend. Input factories and event dispatchers are pooled. Every pooled factory
+ * reuses its stream reader for the next file once the previous reader is closed, so a reader with its
+ * buffers and symbol table is not created for every file. The factory is used by one thread at a time
+ * because reuse of its reader is not thread safe.
+ */
+class StaxXmlParser implements XmlParser
+{
+    private static final Logger LOGGER = LogManager.getLogger(StaxXmlParser.class);
+
+    private static final int MAX_IDLE_OBJECTS = 64;
+    private static final String REUSE_INSTANCE = "reuse-instance";
+
+    private final ObjectPool<XMLInputFactory> factories = new ObjectPool<>(StaxXmlParser::createJdkFactory, MAX_IDLE_OBJECTS);
+    private final ObjectPool<StaxEventDispatcher> dispatchers = new ObjectPool<>(StaxEventDispatcher::new, MAX_IDLE_OBJECTS);
+
+    @Override
+    public void parse(InputStream input, DefaultHandler handler) throws IOException, SAXException
+    {
+        StaxEventDispatcher dispatcher = dispatchers.take();
+        dispatcher.reset();
+        XMLInputFactory factory = factories.take();
+        XMLStreamReader reader = null;
+        try
+        {
+            reader = factory.createXMLStreamReader(input);
+            dispatcher.startDocument(handler);
+            while (reader.hasNext())
+            {
+                if (dispatcher.dispatch(reader, reader.next(), handler))
+                {
+                    break;
+                }
+            }
+        } catch (XMLStreamException e)
+        {
+            if (e.getNestedException() instanceof IOException)
+            {
+                throw (IOException) e.getNestedException();
+            }
+            throw new SAXException(e.getMessage(), e);
+        } finally
+        {
+            dispatchers.release(dispatcher);
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                } catch (XMLStreamException e)
+                {
+                    LOGGER.error(e);
+                }
+            }
+            factories.release(factory);
+        }
+    }
+
+    /**
+     * Creates JDK built-in input factory even if other StAX implementation (eg. Aalto) is on class path.
+     * Factory of other implementation creates a new reader for every file.
+     *
+     * @return the input factory
+     */
+    private static XMLInputFactory createJdkFactory()
+    {
+        XMLInputFactory inputFactory;
+        try
+        {
+            // Java 9+
+            inputFactory = (XMLInputFactory) XMLInputFactory.class.getMethod("newDefaultFactory").invoke(null);
+        } catch (ReflectiveOperationException e)
+        {
+            try
+            {
+                inputFactory = (XMLInputFactory) Class.forName("com.sun.xml.internal.stream.XMLInputFactoryImpl")
+                        .getConstructor().newInstance();
+            } catch (ReflectiveOperationException | RuntimeException e1)
+            {
+                inputFactory = XMLInputFactory.newInstance();
+            }
+        }
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try
+        {
+            inputFactory.setProperty(REUSE_INSTANCE, true);
+        } catch (IllegalArgumentException e)
+        {
+            LOGGER.debug(inputFactory.getClass().getName() + " cannot reuse stream readers.", e);
+        }
+        LOGGER.debug("StAX parser uses " + inputFactory.getClass().getName());
+        return inputFactory;
+    }
+}
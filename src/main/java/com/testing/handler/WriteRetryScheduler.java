@@ -0,0 +1,18 @@
+package com.testing.handler;
+
+/**
+ * Schedules another attempt to record a file which was not written to database because of database error
+ * or because the file could not be read.
+ * The file is left in place while it waits for the attempt.
+ */
+public interface WriteRetryScheduler
+{
+    /**
+     * Schedules another attempt to handle the file.
+     *
+     * @param filePath the file path
+     * @param attempt  the number of scheduled attempt, the first attempt has number 1
+     * @return false if no more attempts are allowed and file should be moved to not recorded files folder
+     */
+    boolean scheduleRetry(String filePath, int attempt);
+}
@@ -1,22 +1,41 @@
 package com.testing.handler;
 
+import com.testing.archive.SegmentArchive;
+import com.testing.cluster.WorkClaims;
+import com.testing.config.Configuration;
+import com.testing.config.InputMode;
+import com.testing.dedup.DedupIndex;
+import com.testing.journal.IngestJournal;
+import com.testing.metrics.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * The Xml file handler that read and parse xml file using dedicated thread.
@@ -30,13 +49,29 @@ public class XmlFileHandler implements Runnable
     private XmlToDBHandler handler;
     private String processedFilesFolder;
     private String corruptedFilesFolder;
-    private static final SAXParserFactory factory = SAXParserFactory.newInstance();
+    private XmlParser parser;
+    private InputMode inputMode;
+    private long mmapThreshold;
+    private WriteRetryScheduler retryScheduler;
+    private int attempt = 1;
+    private final DedupIndex dedupIndex = DedupIndex.getInstance();
+    private final FolderLayout folderLayout = FolderLayout.getInstance();
+    private final SegmentArchive archive = SegmentArchive.getInstance();
+    private final WorkClaims workClaims = WorkClaims.getInstance();
+    private HashingInputStream hashingInputStream;
+    private Long contentHash;
+    private long contentLength;
+    private int contentChecksum;
 
     /**
      * The constant NOT_RECORDED_FILES_FOLDER.
      */
     public static final String NOT_RECORDED_FILES_FOLDER = "not_recorded";
 
+    private static final int MAX_RENAME_ATTEMPTS = 10;
+    private static final String CONNECTION_ERROR_STATE_CLASS = "08";
+    private static final Duration LINK_TIME_TOLERANCE = Duration.ofSeconds(1);
+
     /**
      * Instantiates a new Xml file handler with specified handler and folders for proceeded or corrupted files.
      *
@@ -47,6 +82,61 @@ public class XmlFileHandler implements Runnable
      */
     public XmlFileHandler(XmlToDBHandler handler, String filePath, String processedFilesFolder, String corruptedFilesFolder)
     {
+        this(handler, filePath, processedFilesFolder, corruptedFilesFolder, XmlParsers.get(Configuration.getParserEngine()));
+    }
+
+    /**
+     * Instantiates a new Xml file handler which leaves the file in place and asks the scheduler for another
+     * attempt when database or read error occurs.
+     *
+     * @param handler              the handler
+     * @param filePath             the file path
+     * @param processedFilesFolder the processed files folder
+     * @param corruptedFilesFolder the corrupted files folder
+     * @param retryScheduler       the retry scheduler
+     * @param attempt              the number of this attempt, the first attempt has number 1
+     */
+    public XmlFileHandler(XmlToDBHandler handler, String filePath, String processedFilesFolder, String corruptedFilesFolder,
+                          WriteRetryScheduler retryScheduler, int attempt)
+    {
+        this(handler, filePath, processedFilesFolder, corruptedFilesFolder);
+        this.retryScheduler = retryScheduler;
+        this.attempt = attempt;
+    }
+
+    /**
+     * Instantiates a new Xml file handler which uses specified parser backend.
+     *
+     * @param handler              the handler
+     * @param filePath             the file path
+     * @param processedFilesFolder the processed files folder
+     * @param corruptedFilesFolder the corrupted files folder
+     * @param parser               the parser backend
+     */
+    XmlFileHandler(XmlToDBHandler handler, String filePath, String processedFilesFolder, String corruptedFilesFolder,
+                   XmlParser parser)
+    {
+        this(handler, filePath, processedFilesFolder, corruptedFilesFolder, parser,
+                Configuration.getInputMode(), Configuration.getMmapThreshold());
+    }
+
+    /**
+     * Instantiates a new Xml file handler which uses specified parser backend and way of reading the file.
+     *
+     * @param handler              the handler
+     * @param filePath             the file path
+     * @param processedFilesFolder the processed files folder
+     * @param corruptedFilesFolder the corrupted files folder
+     * @param parser               the parser backend
+     * @param inputMode            the input mode
+     * @param mmapThreshold        the size in bytes from which file is memory-mapped in {@link InputMode#CHANNEL} mode
+     */
+    XmlFileHandler(XmlToDBHandler handler, String filePath, String processedFilesFolder, String corruptedFilesFolder,
+                   XmlParser parser, InputMode inputMode, long mmapThreshold)
+    {
+        this.parser = parser;
+        this.inputMode = inputMode;
+        this.mmapThreshold = mmapThreshold;
         this.filePath = filePath;
         this.handler = handler;
         this.processedFilesFolder = processedFilesFolder;
@@ -55,84 +145,585 @@ public class XmlFileHandler implements Runnable
 
     @Override
     public void run()
+    {
+        CompletableFuture<Void> written = parseAndSubmit();
+        if (written != null)
+        {
+            awaitAndFinish(written);
+        }
+    }
+
+    /**
+     * Parses file on the current thread and moves it by the executor once all entries are committed, so
+     * the thread is not blocked while the write stage of {@link com.testing.db.DBWriter} commits the last
+     * entries. If entries were written synchronously, the file is moved on the current thread.
+     *
+     * @param executor the executor which moves file after commit
+     * @return the future completed when file is handled
+     */
+    public CompletableFuture<Void> runAsync(Executor executor)
+    {
+        CompletableFuture<Void> written = parseAndSubmit();
+        if (written == null)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (written.isDone())
+        {
+            awaitAndFinish(written);
+            return CompletableFuture.completedFuture(null);
+        }
+        return written.handleAsync((ignored, failure) ->
+        {
+            finish(failure);
+            return null;
+        }, executor);
+    }
+
+    /**
+     * Waits until entries are written and finishes handling of file on the current thread.
+     *
+     * @param written the future completed when entries are committed
+     */
+    private void awaitAndFinish(CompletableFuture<Void> written)
+    {
+        Throwable failure = null;
+        try
+        {
+            written.join();
+        } catch (CompletionException | CancellationException e)
+        {
+            failure = e;
+        }
+        finish(failure);
+    }
+
+    /**
+     * Parses file and passes its entries to database. The file is moved only after its stream is closed.
+     *
+     * @return the future completed when entries are committed or null if file handling is already finished
+     */
+    private CompletableFuture<Void> parseAndSubmit()
     {
         InputStream fileInputStream = null;
+        boolean duplicate = false;
+        boolean corrupted = false;
+        SQLException writeFailure = null;
+        IOException readFailure = null;
 
+        if (finishInterruptedMove())
+        {
+            return null;
+        }
         try
         {
-            fileInputStream = new FileInputStream(filePath);
-            SAXParser saxParser = factory.newSAXParser();
-            saxParser.parse(fileInputStream, handler);
-            handler.writeXmlToDB();
-        } catch (ParserConfigurationException | IOException e)
+            fileInputStream = openInput();
+            if (workClaims.isEnabled())
+            {
+                handler.setClaimCheck(this::isClaimed);
+            }
+            if (dedupIndex.isEnabled())
+            {
+                hashingInputStream = new HashingInputStream(fileInputStream);
+                fileInputStream = hashingInputStream;
+                handler.setDuplicateCheck(this::isDuplicate);
+            }
+            if (inputMode == InputMode.STREAM)
+            {
+                fileInputStream = new BufferedInputStream(fileInputStream);
+            }
+            long parseStart = System.nanoTime();
+            parser.parse(fileInputStream, handler);
+            Metrics.PARSED.record(parseStart);
+            if (hashingInputStream != null)
+            {
+                hashingInputStream.readToEnd();
+            }
+            return handler.writeXmlToDBAsync();
+        } catch (IOException e)
+        {
+            readFailure = e;
+        } catch (InternalError e)
         {
-            LOGGER.error(e);
+            // compiled code reports fault of a truncated mapping at the next safepoint, outside of the stream
+            if (inputMode != InputMode.CHANNEL)
+            {
+                throw e;
+            }
+            readFailure = new IOException("File " + filePath + " was truncated while it was mapped.", e);
+        } catch (DuplicateFileException e)
+        {
+            duplicate = true;
         } catch (SAXException e)
         {
-            LOGGER.error(e);
-            if (corruptedFilesFolder != null)
+            if (e.getException() instanceof SQLException)
             {
-                try
+                writeFailure = (SQLException) e.getException();
+            }
+            else
+            {
+                LOGGER.error(e);
+                Metrics.PARSED.recordError();
+                corrupted = true;
+            }
+        } finally
+        {
+            closeQuietly(fileInputStream);
+        }
+
+        if (duplicate)
+        {
+            LOGGER.info("File " + filePath + " is a duplicate of already recorded file.");
+            if (processedFilesFolder != null)
+            {
+                moveToProcessed();
+            }
+        }
+        else if (writeFailure != null)
+        {
+            handleWriteFailure(writeFailure);
+        }
+        else if (readFailure != null)
+        {
+            handleReadFailure(readFailure);
+        }
+        else if (corrupted && corruptedFilesFolder != null)
+        {
+            moveOut(corruptedFilesFolder);
+        }
+        else
+        {
+            moveRecordedFile();
+        }
+        return null;
+    }
+
+    /**
+     * Finishes handling of file after its entries were written.
+     *
+     * @param failure the write failure or null if all entries were committed
+     */
+    private void finish(Throwable failure)
+    {
+        if (failure != null)
+        {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            handleWriteFailure(cause instanceof SQLException ? (SQLException) cause
+                    : new SQLException("Entries were not written.", cause));
+            return;
+        }
+        if (dedupIndex.isEnabled())
+        {
+            if (handler.isDuplicate())
+            {
+                LOGGER.info("File " + filePath + " is a duplicate of already recorded file.");
+            }
+            else if (contentHash != null)
+            {
+                dedupIndex.add(contentHash, contentLength, contentChecksum);
+            }
+        }
+        moveRecordedFile();
+    }
+
+    /**
+     * Moves file which entries were recorded to database to processed files folder.
+     */
+    private void moveRecordedFile()
+    {
+        if (processedFilesFolder != null)
+        {
+            moveToProcessed();
+            LOGGER.info("File " + filePath + " was successfully parsed and recorded to database.");
+        }
+    }
+
+    /**
+     * Opens the file in configured input mode.
+     *
+     * @return the unbuffered stream in {@link InputMode#STREAM} mode, otherwise the pooled channel stream
+     * @throws IOException if file cannot be opened
+     */
+    private InputStream openInput() throws IOException
+    {
+        if (inputMode == InputMode.CHANNEL)
+        {
+            try
+            {
+                return ChannelInputStream.open(Paths.get(filePath), mmapThreshold);
+            } catch (InvalidPathException e)
+            {
+                throw new IOException("Invalid file path " + filePath, e);
+            }
+        }
+        return new FileInputStream(filePath);
+    }
+
+    /**
+     * Tells if the file is still claimed by this node, always true if claims are disabled.
+     *
+     * @return false if another node may have recovered the file
+     */
+    private boolean isClaimed()
+    {
+        try
+        {
+            return workClaims.holds(Paths.get(filePath));
+        } catch (InvalidPathException e)
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Checks content of the file against deduplication index. Hash computed while file is parsed is used
+     * if the whole file was already read, otherwise the rest of the file is hashed by a separate read.
+     *
+     * @return true if the same content was already recorded
+     */
+    private boolean isDuplicate()
+    {
+        if (hashingInputStream.isComplete())
+        {
+            contentHash = hashingInputStream.getHash();
+            contentLength = hashingInputStream.getLength();
+            contentChecksum = hashingInputStream.getChecksum();
+        }
+        else
+        {
+            try (HashingInputStream inputStream = new HashingInputStream(new FileInputStream(filePath)))
+            {
+                inputStream.readToEnd();
+                contentHash = inputStream.getHash();
+                contentLength = inputStream.getLength();
+                contentChecksum = inputStream.getChecksum();
+            } catch (IOException e)
+            {
+                LOGGER.error("Cannot check " + filePath + " for duplicate.", e);
+                return false;
+            }
+        }
+        return dedupIndex.contains(contentHash, contentLength, contentChecksum);
+    }
+
+    /**
+     * Moves file which is already recorded to database to the processed files folder without parsing it.
+     */
+    public void complete()
+    {
+        if (processedFilesFolder != null && !finishInterruptedMove())
+        {
+            moveToProcessed();
+            LOGGER.info("File " + filePath + " was already recorded to database and moved to processed files.");
+        }
+    }
+
+    /**
+     * Finishes move of file which was linked to processed files folder, but kept its name in monitoring folder
+     * because the process stopped before the name was removed (see {@link #linkOrMove(Path, Path)}). Such file
+     * has another hard link, and link creation set its change time, so the processed subfolder of that time
+     * is checked for the same file. File moved under a timestamped name or on a file system without unix
+     * attributes is not found and is handled again.
+     *
+     * @return true if file was already in processed files folder and its old name was removed
+     */
+    private boolean finishInterruptedMove()
+    {
+        if (processedFilesFolder == null || archive.isEnabled())
+        {
+            return false;
+        }
+        try
+        {
+            Path file = Paths.get(filePath);
+            Map<String, Object> attributes = Files.readAttributes(file, "unix:nlink,ctime", LinkOption.NOFOLLOW_LINKS);
+            if ((Integer) attributes.get("nlink") < 2)
+            {
+                return false;
+            }
+            Instant linked = ((FileTime) attributes.get("ctime")).toInstant();
+            Path processedFolder = Paths.get(processedFilesFolder);
+            Path previousDirectory = null;
+            for (Instant time : new Instant[]{linked, linked.minus(LINK_TIME_TOLERANCE)})
+            {
+                Path directory = folderLayout.resolveDirectory(processedFolder, file.getFileName(), time);
+                if (directory.equals(previousDirectory))
                 {
-                    fileInputStream.close();
-                } catch (IOException e1)
+                    continue;
+                }
+                previousDirectory = directory;
+                Path processed = directory.resolve(file.getFileName());
+                if (Files.exists(processed, LinkOption.NOFOLLOW_LINKS) && Files.isSameFile(file, processed))
                 {
-                    LOGGER.error(e);
+                    Files.delete(file);
+                    IngestJournal.getInstance().moved(filePath);
+                    LOGGER.info("File " + filePath + " was already moved to " + processed + ", its old name was removed.");
+                    return true;
                 }
-                moveFileTo(corruptedFilesFolder);
             }
-        } catch (SQLException e)
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e)
+        {
+            LOGGER.debug("Interrupted move of " + filePath + " was not checked.", e);
+        }
+        return false;
+    }
+
+    /**
+     * Appends current xml file to archive and deletes it if archive is enabled, otherwise moves it to
+     * processed files folder. File which cannot be archived is moved.
+     */
+    private void moveToProcessed()
+    {
+        if (archive.isEnabled() && isClaimed())
         {
-            LOGGER.error(e);
-            File file = new File(filePath);
-            String notRecordedInBDPath = file.getParent() + File.separator + NOT_RECORDED_FILES_FOLDER;
-            File notRecordedInBDFile = new File(notRecordedInBDPath);
-            if (!notRecordedInBDFile.exists() && !notRecordedInBDFile.mkdirs())
+            long start = System.nanoTime();
+            try
             {
-                LOGGER.error("The directory " + notRecordedInBDPath + " was not created.");
+                Path file = Paths.get(filePath);
+                archive.append(file);
+                Files.delete(file);
+                Metrics.MOVED.record(start);
+                IngestJournal.getInstance().moved(filePath);
+                return;
+            } catch (IOException | InvalidPathException e)
+            {
+                LOGGER.error("File " + filePath + " was not archived and will be moved.", e);
+                Metrics.MOVED.recordError();
             }
-            moveFileTo(notRecordedInBDPath);
         }
+        moveOut(processedFilesFolder);
+    }
 
-        if (processedFilesFolder != null)
+    /**
+     * Moves current xml file out of monitoring folder and records that its handling is finished.
+     *
+     * @param folderName where to move
+     */
+    private void moveOut(String folderName)
+    {
+        if (moveFileTo(folderName, true))
         {
-            moveFileTo(processedFilesFolder);
-            LOGGER.info("File " + filePath + " was successfully parsed and recorded to database.");
+            IngestJournal.getInstance().moved(filePath);
         }
     }
 
+    /**
+     * Schedules another attempt to record the file if the error is transient or, if attempts are exhausted
+     * or the error will repeat (eg. constraint violation), moves it to the folder of files which were not
+     * recorded to database.
+     *
+     * @param e the database error
+     */
+    private void handleWriteFailure(SQLException e)
+    {
+        if (e instanceof ClaimLostException)
+        {
+            LOGGER.warn("File " + filePath + " is not claimed by this node any more, it is left to the node"
+                    + " which recovers it.");
+            return;
+        }
+        if (retryScheduler != null && isTransient(e) && retryScheduler.scheduleRetry(filePath, attempt + 1))
+        {
+            LOGGER.warn("File " + filePath + " was not recorded to database, attempt " + (attempt + 1)
+                    + " will be made later: " + e.getMessage());
+            return;
+        }
+        moveToNotRecorded(e);
+    }
 
     /**
-     * Moves current xml file to specified folder
+     * Schedules another attempt to record a file which could not be read or, if attempts are exhausted, moves it
+     * to the folder of files which were not recorded to database. Entries committed before the error stay in
+     * database and the journal keeps their count, so the next attempt skips them.
+     *
+     * @param e the read error
+     */
+    private void handleReadFailure(IOException e)
+    {
+        Metrics.PARSED.recordError();
+        if (e instanceof NoSuchFileException)
+        {
+            LOGGER.error("File " + filePath + " was removed before it was read.", e);
+            return;
+        }
+        if (retryScheduler != null && retryScheduler.scheduleRetry(filePath, attempt + 1))
+        {
+            LOGGER.warn("File " + filePath + " was not read, attempt " + (attempt + 1) + " will be made later: "
+                    + e.getMessage());
+            return;
+        }
+        moveToNotRecorded(e);
+    }
+
+    /**
+     * Tells if another attempt can succeed: the error or any of its causes is transient, recoverable
+     * or a connection failure.
+     *
+     * @param e the database error
+     * @return true if the write should be retried
+     */
+    static boolean isTransient(SQLException e)
+    {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException
+                    || cause instanceof SQLNonTransientConnectionException)
+            {
+                return true;
+            }
+            if (cause instanceof SQLException)
+            {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && sqlState.startsWith(CONNECTION_ERROR_STATE_CLASS))
+                {
+                    return true;
+                }
+            }
+            if (cause == cause.getCause())
+            {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves current xml file to the folder of files which were not recorded to database
+     * to restore them on next start.
+     *
+     * @param e the database or read error
+     */
+    private void moveToNotRecorded(Exception e)
+    {
+        LOGGER.error(e);
+        File file = new File(filePath);
+        String notRecordedInBDPath = file.getParent() + File.separator + NOT_RECORDED_FILES_FOLDER;
+        moveFileTo(notRecordedInBDPath, false);
+    }
+
+    /**
+     * Closes input stream before moving the file, errors are only logged.
+     *
+     * @param inputStream the file input stream, can be null
+     */
+    private static void closeQuietly(InputStream inputStream)
+    {
+        if (inputStream != null)
+        {
+            try
+            {
+                inputStream.close();
+            } catch (IOException e)
+            {
+                LOGGER.error(e);
+            }
+        }
+    }
+
+    /**
+     * Moves current xml file to specified folder. Existing file with the same name is never replaced, the moved
+     * file gets a timestamp prefix instead.
      *
      * @param folderName where to move
+     * @param sharded    true if file goes to a subfolder of configured {@link FolderLayout}
+     * @return true if file was moved
      */
-    private void moveFileTo(String folderName)
+    private boolean moveFileTo(String folderName, boolean sharded)
     {
-        Path inputFilePath = Paths.get(filePath);
-        String fullDestinationPathName = folderName + File.separator + inputFilePath.getFileName();
-        Path destinationPath = Paths.get(fullDestinationPathName);
-        File file = new File(folderName);
-        if (!file.exists() && !file.mkdirs())
+        if (!isClaimed())
         {
-            LOGGER.error("The directory " + folderName + " was not created.");
+            LOGGER.warn("File " + filePath + " is not claimed by this node any more and was not moved to "
+                    + folderName + ".");
+            return false;
         }
+        long start = System.nanoTime();
+        Path directory = null;
         try
         {
-            if (Files.exists(destinationPath))
+            Path inputFilePath = Paths.get(filePath);
+            Path folder = Paths.get(folderName);
+            for (int attempt = 0; ; attempt++)
             {
+                directory = sharded ? folderLayout.getDirectory(folder, inputFilePath.getFileName())
+                        : folderLayout.createDirectory(folder);
+                try
+                {
+                    moveWithoutReplace(inputFilePath, directory);
+                    break;
+                } catch (NoSuchFileException e)
+                {
+                    if (attempt > 0 || !Files.exists(inputFilePath))
+                    {
+                        throw e;
+                    }
+                    folderLayout.forget(directory);
+                }
+            }
+            Metrics.MOVED.record(start);
+            return true;
+        } catch (IOException | InvalidPathException e)
+        {
+            LOGGER.error("File " + filePath + " was not moved to " + (directory == null ? folderName : directory) + ".", e);
+            Metrics.MOVED.recordError();
+            return false;
+        }
+    }
+
+    /**
+     * Moves file to the folder keeping its name if no file with the name exists there.
+     *
+     * @param source    the file
+     * @param directory the folder
+     * @throws IOException if file was not moved
+     */
+    private static void moveWithoutReplace(Path source, Path directory) throws IOException
+    {
+        Path destination = directory.resolve(source.getFileName());
+        for (int attempt = 0; ; attempt++)
+        {
+            try
+            {
+                linkOrMove(source, destination);
+                return;
+            } catch (FileAlreadyExistsException e)
+            {
+                if (attempt >= MAX_RENAME_ATTEMPTS)
+                {
+                    throw e;
+                }
                 String timestamp = Instant.now().toString().replace(":", ".");
-                String fullNewDestinationPath = folderName + File.separator + timestamp + "_" + inputFilePath.getFileName();
-                Path newDestinationPath = Paths.get(fullNewDestinationPath);
-                Files.move(inputFilePath, newDestinationPath);
+                destination = directory.resolve(timestamp + (attempt == 0 ? "" : "_" + attempt) + "_" + source.getFileName());
             }
-            else
+        }
+    }
+
+    /**
+     * Creates hard link to the file and removes the old name. Creation of the link fails if destination
+     * exists, so two files can never take the same name. Falls back to move if file system cannot link the file.
+     * <p>
+     * If the process stops between the two steps, file stays under both names. Destination which is already
+     * a link to the file is taken as the move finished except the removal of the old name, and
+     * {@link #finishInterruptedMove()} finds such files before they are parsed again after restart.
+     */
+    private static void linkOrMove(Path source, Path destination) throws IOException
+    {
+        try
+        {
+            Files.createLink(destination, source);
+        } catch (FileAlreadyExistsException e)
+        {
+            if (!Files.isSameFile(source, destination))
             {
-                Files.move(inputFilePath, destinationPath);
+                throw e;
             }
-        } catch (IOException | InvalidPathException e)
+        } catch (NoSuchFileException e)
+        {
+            throw e;
+        } catch (FileSystemException | UnsupportedOperationException e)
         {
-            LOGGER.error(e);
+            Files.move(source, destination);
+            return;
         }
+        Files.delete(source);
     }
 }
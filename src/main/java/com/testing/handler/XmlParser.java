@@ -0,0 +1,24 @@
+package com.testing.handler;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parser backend which reads xml document and reports it to SAX handler. Implementations are thread safe
+ * and reuse parser state per thread.
+ */
+interface XmlParser
+{
+    /**
+     * Parses the document and reports its content to the handler.
+     *
+     * @param input   the document input
+     * @param handler the SAX handler
+     * @throws IOException  if input cannot be read
+     * @throws SAXException if document is not well-formed or handler stopped parsing
+     */
+    void parse(InputStream input, DefaultHandler handler) throws IOException, SAXException;
+}
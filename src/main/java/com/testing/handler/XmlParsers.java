@@ -0,0 +1,36 @@
+package com.testing.handler;
+
+import com.testing.config.ParserEngine;
+
+/**
+ * Shared instances of parser backends.
+ */
+final class XmlParsers
+{
+    private static final XmlParser SAX = new SaxXmlParser();
+    private static final XmlParser STAX = new StaxXmlParser();
+    private static final XmlParser AALTO = new AaltoXmlParser();
+
+    private XmlParsers()
+    {
+    }
+
+    /**
+     * Gets parser backend for specified engine.
+     *
+     * @param engine the parser engine
+     * @return the parser
+     */
+    static XmlParser get(ParserEngine engine)
+    {
+        switch (engine)
+        {
+            case STAX:
+                return STAX;
+            case AALTO:
+                return AALTO;
+            default:
+                return SAX;
+        }
+    }
+}
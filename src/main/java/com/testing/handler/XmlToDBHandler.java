@@ -3,12 +3,65 @@ package com.testing.handler;
 import org.xml.sax.helpers.DefaultHandler;
 
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The abstract base class for parsing and writing to database xml file.
  */
 abstract class XmlToDBHandler extends DefaultHandler
 {
+    private DuplicateCheck duplicateCheck;
+    private Boolean duplicate;
+    private ClaimCheck claimCheck;
+
+    /**
+     * Sets check of file content against already recorded files.
+     *
+     * @param duplicateCheck the duplicate check
+     */
+    void setDuplicateCheck(DuplicateCheck duplicateCheck)
+    {
+        this.duplicateCheck = duplicateCheck;
+    }
+
+    /**
+     * Tells if file content was already recorded. Implementations call it before every write to database,
+     * the file is checked only once.
+     *
+     * @return true if entries must not be written
+     */
+    boolean isDuplicate()
+    {
+        if (duplicate == null)
+        {
+            duplicate = duplicateCheck != null && duplicateCheck.isDuplicate();
+        }
+        return duplicate;
+    }
+
+    /**
+     * Sets check that file is still claimed by this node.
+     *
+     * @param claimCheck the claim check
+     */
+    void setClaimCheck(ClaimCheck claimCheck)
+    {
+        this.claimCheck = claimCheck;
+    }
+
+    /**
+     * Checks that file is still claimed by this node. Implementations call it before every write to database.
+     *
+     * @throws ClaimLostException if another node may have recovered the file
+     */
+    void checkClaim() throws ClaimLostException
+    {
+        if (claimCheck != null && !claimCheck.isClaimed())
+        {
+            throw new ClaimLostException("File is not claimed by this node any more.");
+        }
+    }
+
     /**
      * Write xml to db.
      *
@@ -16,6 +69,27 @@ abstract class XmlToDBHandler extends DefaultHandler
      */
     abstract void writeXmlToDB() throws SQLException;
 
+    /**
+     * Writes the rest of entries without waiting for their commit. By default entries are written
+     * synchronously by {@link #writeXmlToDB()} and the returned future is already completed.
+     *
+     * @return the future completed when all entries are committed, or completed exceptionally with
+     * {@link SQLException} if they were not
+     */
+    CompletableFuture<Void> writeXmlToDBAsync()
+    {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        try
+        {
+            writeXmlToDB();
+            written.complete(null);
+        } catch (SQLException e)
+        {
+            written.completeExceptionally(e);
+        }
+        return written;
+    }
+
     /**
      * Has all elements boolean.
      *
@@ -0,0 +1,278 @@
+package com.testing.journal;
+
+import com.testing.config.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The singleton journal of file handling transitions used to resume handling after a crash.
+ * <p>
+ * Every transition is appended to memory-mapped {@link JournalFile} and applied to in-memory state of
+ * unfinished files. Appended records reach the file system page cache immediately, so they survive a crash
+ * of the application, and {@link #checkpoint()} flushes them to the storage and compacts the journal.
+ * If journal path is not configured, the journal is disabled: transitions are applied to in-memory state only,
+ * so a file handled again after a write failure still skips its committed entries, but nothing survives a restart.
+ * <p>
+ * Files are known by path, so the record of a file keeps identity of its content: size, modification time and
+ * file key (inode). A file which reuses the path of an unfinished file, eg. one moved to not recorded files
+ * folder or left to another node, gets a new record instead of the committed entries of the previous file.
+ */
+public class IngestJournal
+{
+    private static final Logger LOGGER = LogManager.getLogger(IngestJournal.class);
+
+    private static final double COMPACTION_USAGE = 0.5;
+    private static final long UNKNOWN_IDENTITY = 0;
+    private static final long IDENTITY_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static IngestJournal instance;
+
+    private final JournalFile journalFile;
+    private final ConcurrentMap<String, JournalRecord> unfinishedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new ingest journal and applies records of the journal file.
+     *
+     * @param journalFile the journal file or null if journal is disabled
+     */
+    IngestJournal(JournalFile journalFile)
+    {
+        this.journalFile = journalFile;
+        if (journalFile != null)
+        {
+            journalFile.replay(this::apply);
+        }
+    }
+
+    /**
+     * Gets the journal, opens it on the first call.
+     *
+     * @return the instance
+     */
+    public static synchronized IngestJournal getInstance()
+    {
+        if (instance == null)
+        {
+            String journalPath = Configuration.getJournalPath();
+            JournalFile journalFile = null;
+            if (journalPath.length() != 0)
+            {
+                try
+                {
+                    journalFile = new JournalFile(Paths.get(journalPath));
+                } catch (IOException e)
+                {
+                    LOGGER.error("Cannot open journal " + journalPath + ", files will be handled without journal.", e);
+                }
+            }
+            instance = new IngestJournal(journalFile);
+        }
+        return instance;
+    }
+
+    /**
+     * Tells if transitions are recorded.
+     *
+     * @return true if journal is configured and opened
+     */
+    public boolean isEnabled()
+    {
+        return journalFile != null;
+    }
+
+    /**
+     * Records that file was admitted for handling. Known state of the same file is kept, so a file returned
+     * from not recorded files folder keeps its committed entries, state of another file with the same path is reset.
+     *
+     * @param filePath the file path
+     * @return the state of the file
+     */
+    public JournalRecord seen(String filePath)
+    {
+        append(JournalState.SEEN, filePath, identify(filePath));
+        JournalRecord record = unfinishedFiles.get(filePath);
+        return record == null ? new JournalRecord(filePath, UNKNOWN_IDENTITY, -1, 0) : record;
+    }
+
+    /**
+     * Records that file was completely parsed.
+     *
+     * @param filePath the file path
+     * @param entries  the number of parsed entries
+     */
+    public void parsed(String filePath, long entries)
+    {
+        append(JournalState.PARSED, filePath, entries);
+    }
+
+    /**
+     * Records that entries of the file were committed to database.
+     *
+     * @param filePath the file path
+     * @param entries  the number of committed entries counted from the beginning of the file
+     */
+    public void committed(String filePath, long entries)
+    {
+        append(JournalState.COMMITTED, filePath, entries);
+    }
+
+    /**
+     * Records that file was moved out of monitoring folder and forgets it.
+     *
+     * @param filePath the file path
+     */
+    public void moved(String filePath)
+    {
+        append(JournalState.MOVED, filePath, 0);
+    }
+
+    /**
+     * Gets number of entries of the file which are already in database.
+     *
+     * @param filePath the file path
+     * @return the committed entries counted from the beginning of the file
+     */
+    public long getCommittedEntries(String filePath)
+    {
+        JournalRecord record = unfinishedFiles.get(filePath);
+        return record == null ? 0 : record.getCommittedEntries();
+    }
+
+    /**
+     * Gets files which handling was not finished.
+     *
+     * @return the unfinished files
+     */
+    public Collection<JournalRecord> getUnfinishedFiles()
+    {
+        return new ArrayList<>(unfinishedFiles.values());
+    }
+
+    /**
+     * Flushes recorded transitions to the storage and compacts the journal if it is filled more than by half.
+     */
+    public synchronized void checkpoint()
+    {
+        if (journalFile == null)
+        {
+            return;
+        }
+        journalFile.force();
+        if (journalFile.getUsage() > COMPACTION_USAGE)
+        {
+            compact();
+        }
+    }
+
+    private synchronized void append(JournalState state, String filePath, long value)
+    {
+        apply(state, filePath, value);
+        if (journalFile == null)
+        {
+            return;
+        }
+        if (!journalFile.append(state, filePath, value) && (!compact() || !journalFile.append(state, filePath, value)))
+        {
+            LOGGER.error("Cannot record " + state + " state of " + filePath + " to journal.");
+        }
+    }
+
+    private boolean compact()
+    {
+        try
+        {
+            journalFile.compact(unfinishedFiles.values());
+            return true;
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot compact journal.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Keeps record of the same file, replaces record of another file with the same path. Record without identity,
+     * written before identities were recorded, takes the identity of the file.
+     */
+    private static JournalRecord see(String filePath, JournalRecord record, long identity)
+    {
+        if (record == null)
+        {
+            return new JournalRecord(filePath, identity, -1, 0);
+        }
+        if (record.getIdentity() == UNKNOWN_IDENTITY)
+        {
+            return new JournalRecord(filePath, identity, record.getParsedEntries(), record.getCommittedEntries());
+        }
+        if (record.getIdentity() == identity)
+        {
+            return record;
+        }
+        if (record.getCommittedEntries() > 0)
+        {
+            LOGGER.warn("File " + filePath + " is not the file which " + record.getCommittedEntries()
+                    + " committed entries belong to, it is handled from the beginning.");
+        }
+        return new JournalRecord(filePath, identity, -1, 0);
+    }
+
+    /**
+     * Gets identity of file content from its size, modification time and file key. Links and renames
+     * on the same file system keep it.
+     *
+     * @param filePath the file path
+     * @return the identity, never {@link #UNKNOWN_IDENTITY} unless file cannot be read
+     */
+    static long identify(String filePath)
+    {
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            Object fileKey = attributes.fileKey();
+            long identity = attributes.size() * IDENTITY_MULTIPLIER + attributes.lastModifiedTime().toMillis();
+            identity = identity * IDENTITY_MULTIPLIER + (fileKey == null ? 0 : fileKey.hashCode());
+            return identity == UNKNOWN_IDENTITY ? 1 : identity;
+        } catch (IOException | InvalidPathException e)
+        {
+            LOGGER.debug("Cannot read attributes of " + filePath + ".", e);
+            return UNKNOWN_IDENTITY;
+        }
+    }
+
+    private void apply(JournalState state, String filePath, long value)
+    {
+        switch (state)
+        {
+            case SEEN:
+                unfinishedFiles.compute(filePath, (path, record) -> see(path, record, value));
+                break;
+            case PARSED:
+                unfinishedFiles.compute(filePath, (path, record) -> record == null
+                        ? new JournalRecord(path, UNKNOWN_IDENTITY, value, 0)
+                        : new JournalRecord(path, record.getIdentity(), value, record.getCommittedEntries()));
+                break;
+            case COMMITTED:
+                unfinishedFiles.compute(filePath, (path, record) -> record == null
+                        ? new JournalRecord(path, UNKNOWN_IDENTITY, -1, value)
+                        : new JournalRecord(path, record.getIdentity(), record.getParsedEntries(), value));
+                break;
+            case MOVED:
+                unfinishedFiles.remove(filePath);
+                break;
+            default:
+                break;
+        }
+    }
+}
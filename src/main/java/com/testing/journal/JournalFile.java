@@ -0,0 +1,298 @@
+package com.testing.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only memory-mapped log of journal records.
+ * <p>
+ * Journal is kept in two files, '{path}.0' and '{path}.1'. Header of each file holds its generation and
+ * the file with greater valid generation is active. Compaction writes live records to the other file and
+ * only then raises its generation, so a crash during compaction leaves the previous file active. Files are
+ * mapped once and never truncated.
+ * <p>
+ * Record layout: payload length (int), state (byte), value (long), file path (UTF-8), CRC32 of state, value
+ * and path (int). Every append also writes zero length after the record, so reading stops at the end of the
+ * log even if the file contains records of older generations. Reading also stops at a torn record left by
+ * a crash. Not thread safe, callers synchronize.
+ */
+class JournalFile
+{
+    private static final Logger LOGGER = LogManager.getLogger(JournalFile.class);
+
+    private static final int MAGIC = 0x494A4E4C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 4;
+    private static final int MAX_PATH_LENGTH = 64 * 1024;
+    private static final long INITIAL_CAPACITY = 8 * 1024 * 1024;
+
+    private final Path[] paths = new Path[2];
+    private final MappedByteBuffer[] buffers = new MappedByteBuffer[2];
+    private final CRC32 crc = new CRC32();
+    private int active;
+    private long generation;
+    private long capacity;
+    private int position;
+
+    /**
+     * Opens journal files, creates them if they do not exist.
+     *
+     * @param path the journal path without slot suffix
+     * @throws IOException if files cannot be opened or mapped
+     */
+    JournalFile(Path path) throws IOException
+    {
+        long[] generations = new long[2];
+        for (int slot = 0; slot < 2; slot++)
+        {
+            paths[slot] = Paths.get(path.toString() + "." + slot);
+            buffers[slot] = map(paths[slot], INITIAL_CAPACITY);
+            generations[slot] = readGeneration(buffers[slot]);
+        }
+        if (generations[0] <= 0 && generations[1] <= 0)
+        {
+            writeHeader(buffers[0], 1);
+            buffers[0].putInt(HEADER_SIZE, 0);
+            buffers[0].force();
+            generations[0] = 1;
+        }
+        active = generations[1] > generations[0] ? 1 : 0;
+        generation = generations[active];
+        capacity = Math.max(buffers[active].capacity(), buffers[1 - active].capacity());
+    }
+
+    /**
+     * Reads all valid records of the active file and sets append position after the last one.
+     *
+     * @param visitor receives every record in order of appending
+     */
+    void replay(RecordVisitor visitor)
+    {
+        MappedByteBuffer buffer = buffers[active];
+        int offset = HEADER_SIZE;
+        int records = 0;
+        while (true)
+        {
+            int next = readRecord(buffer, offset, visitor);
+            if (next < 0)
+            {
+                break;
+            }
+            offset = next;
+            records++;
+        }
+        position = offset;
+        LOGGER.debug(records + " journal records were read from " + paths[active] + ".");
+    }
+
+    /**
+     * Appends record to the active file.
+     *
+     * @param state    the state
+     * @param filePath the file path
+     * @param value    the state value
+     * @return false if the record does not fit to the file and journal should be compacted
+     */
+    boolean append(JournalState state, String filePath, long value)
+    {
+        byte[] path = filePath.getBytes(StandardCharsets.UTF_8);
+        if (path.length > MAX_PATH_LENGTH)
+        {
+            throw new IllegalArgumentException("Path is too long for journal: " + filePath);
+        }
+        if (position + RECORD_OVERHEAD + path.length + 4 > buffers[active].capacity())
+        {
+            return false;
+        }
+        position = writeRecord(buffers[active], position, state, path, value);
+        return true;
+    }
+
+    /**
+     * Writes live records to the inactive file and makes it active. The file grows if live records take
+     * more than half of it.
+     *
+     * @param liveRecords the records describing state of all unfinished files
+     * @throws IOException if the file cannot be grown
+     */
+    void compact(Collection<JournalRecord> liveRecords) throws IOException
+    {
+        int target = 1 - active;
+        long required = HEADER_SIZE + 4;
+        for (JournalRecord record : liveRecords)
+        {
+            required += 3L * (RECORD_OVERHEAD + record.getFilePath().length() * 3L);
+        }
+        while (required * 2 > capacity)
+        {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE)
+        {
+            throw new IOException("Journal is too large: " + liveRecords.size() + " unfinished files.");
+        }
+        if (buffers[target].capacity() < capacity)
+        {
+            buffers[target] = map(paths[target], capacity);
+        }
+        MappedByteBuffer buffer = buffers[target];
+        int offset = HEADER_SIZE;
+        buffer.putInt(offset, 0);
+        for (JournalRecord record : liveRecords)
+        {
+            byte[] path = record.getFilePath().getBytes(StandardCharsets.UTF_8);
+            offset = writeRecord(buffer, offset, JournalState.SEEN, path, record.getIdentity());
+            if (record.getCommittedEntries() > 0)
+            {
+                offset = writeRecord(buffer, offset, JournalState.COMMITTED, path, record.getCommittedEntries());
+            }
+            if (record.getParsedEntries() >= 0)
+            {
+                offset = writeRecord(buffer, offset, JournalState.PARSED, path, record.getParsedEntries());
+            }
+        }
+        buffer.force();
+        writeHeader(buffer, generation + 1);
+        buffer.force();
+        generation++;
+        active = target;
+        position = offset;
+        LOGGER.debug("Journal was compacted to " + liveRecords.size() + " unfinished files in " + paths[active] + ".");
+    }
+
+    /**
+     * Flushes appended records to the storage.
+     */
+    void force()
+    {
+        buffers[active].force();
+    }
+
+    /**
+     * Gets part of the active file taken by records.
+     *
+     * @return the used part from 0 to 1
+     */
+    double getUsage()
+    {
+        return (double) position / buffers[active].capacity();
+    }
+
+    private int writeRecord(MappedByteBuffer buffer, int offset, JournalState state, byte[] path, long value)
+    {
+        int length = 1 + 8 + path.length;
+        int end = offset + 4 + length + 4;
+        if (end + 4 <= buffer.capacity())
+        {
+            buffer.putInt(end, 0);
+        }
+        crc.reset();
+        crc.update(state.ordinal());
+        for (int i = 0; i < 8; i++)
+        {
+            crc.update((int) (value >>> (i * 8)));
+        }
+        crc.update(path, 0, path.length);
+        buffer.put(offset + 4, (byte) state.ordinal());
+        buffer.putLong(offset + 5, value);
+        for (int i = 0; i < path.length; i++)
+        {
+            buffer.put(offset + 13 + i, path[i]);
+        }
+        buffer.putInt(offset + 4 + length, (int) crc.getValue());
+        buffer.putInt(offset, length);
+        return end;
+    }
+
+    /**
+     * Reads record at offset.
+     *
+     * @return offset of the next record or -1 if there is no valid record at the offset
+     */
+    private int readRecord(MappedByteBuffer buffer, int offset, RecordVisitor visitor)
+    {
+        if (offset + 4 > buffer.capacity())
+        {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length < 9 || length > 9 + MAX_PATH_LENGTH || (long) offset + 4 + length + 4 > buffer.capacity())
+        {
+            return -1;
+        }
+        int stateOrdinal = buffer.get(offset + 4);
+        if (stateOrdinal < 0 || stateOrdinal >= JournalState.values().length)
+        {
+            return -1;
+        }
+        long value = buffer.getLong(offset + 5);
+        byte[] path = new byte[length - 9];
+        for (int i = 0; i < path.length; i++)
+        {
+            path[i] = buffer.get(offset + 13 + i);
+        }
+        crc.reset();
+        crc.update(stateOrdinal);
+        for (int i = 0; i < 8; i++)
+        {
+            crc.update((int) (value >>> (i * 8)));
+        }
+        crc.update(path, 0, path.length);
+        if (buffer.getInt(offset + 4 + length) != (int) crc.getValue())
+        {
+            return -1;
+        }
+        visitor.visit(JournalState.values()[stateOrdinal], new String(path, StandardCharsets.UTF_8), value);
+        return offset + 4 + length + 4;
+    }
+
+    private static long readGeneration(MappedByteBuffer buffer)
+    {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+        {
+            return 0;
+        }
+        return buffer.getLong(8);
+    }
+
+    private static void writeHeader(MappedByteBuffer buffer, long generation)
+    {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, generation);
+    }
+
+    private static MappedByteBuffer map(Path path, long minCapacity) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(minCapacity, channel.size()));
+        }
+    }
+
+    /**
+     * Receives records read from journal.
+     */
+    interface RecordVisitor
+    {
+        /**
+         * Receives record.
+         *
+         * @param state    the state
+         * @param filePath the file path
+         * @param value    the state value
+         */
+        void visit(JournalState state, String filePath, long value);
+    }
+}
@@ -0,0 +1,84 @@
+package com.testing.journal;
+
+/**
+ * Last known state of a file which handling is not finished.
+ */
+public class JournalRecord
+{
+    private final String filePath;
+    private final long identity;
+    private final long parsedEntries;
+    private final long committedEntries;
+
+    /**
+     * Instantiates a new journal record.
+     *
+     * @param filePath         the file path
+     * @param identity         the identity of the file content, 0 if unknown
+     * @param parsedEntries    the number of entries in completely parsed file, -1 if parsing was not finished
+     * @param committedEntries the number of entries committed to database
+     */
+    JournalRecord(String filePath, long identity, long parsedEntries, long committedEntries)
+    {
+        this.filePath = filePath;
+        this.identity = identity;
+        this.parsedEntries = parsedEntries;
+        this.committedEntries = committedEntries;
+    }
+
+    /**
+     * Gets file path.
+     *
+     * @return the file path
+     */
+    public String getFilePath()
+    {
+        return filePath;
+    }
+
+    /**
+     * Gets identity of the file content, so a new file which reuses the path does not inherit the record.
+     *
+     * @return the identity, 0 if unknown
+     */
+    public long getIdentity()
+    {
+        return identity;
+    }
+
+    /**
+     * Gets number of entries in completely parsed file.
+     *
+     * @return the parsed entries, -1 if parsing was not finished
+     */
+    public long getParsedEntries()
+    {
+        return parsedEntries;
+    }
+
+    /**
+     * Gets number of entries committed to database, counted from the beginning of the file.
+     *
+     * @return the committed entries
+     */
+    public long getCommittedEntries()
+    {
+        return committedEntries;
+    }
+
+    /**
+     * Tells if all entries of the file are in database and only moving of the file is left.
+     *
+     * @return true if file was completely parsed and committed
+     */
+    public boolean isFullyCommitted()
+    {
+        return parsedEntries >= 0 && committedEntries >= parsedEntries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return filePath + " (parsed " + parsedEntries + ", committed " + committedEntries + ")";
+    }
+}
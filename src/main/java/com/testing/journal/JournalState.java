@@ -0,0 +1,29 @@
+package com.testing.journal;
+
+/**
+ * Lifecycle transitions of a file recorded by {@link IngestJournal}.
+ */
+enum JournalState
+{
+    /**
+     * File was admitted for handling, record value is identity of the file content. Record of a file with
+     * other identity is reset.
+     */
+    SEEN,
+
+    /**
+     * File was completely parsed, record value is the number of parsed entries.
+     */
+    PARSED,
+
+    /**
+     * Entries of the file were committed to database, record value is the number of committed entries
+     * counted from the beginning of the file.
+     */
+    COMMITTED,
+
+    /**
+     * File was moved out of monitoring folder, its handling is finished.
+     */
+    MOVED
+}
@@ -0,0 +1,95 @@
+package com.testing.listener;
+
+/**
+ * Limits number and total size of files queued for handling. A file is always admitted when
+ * the queue is empty, so a single file bigger than the limit cannot block the queue forever.
+ */
+class AdmissionControl
+{
+    private final int maxFiles;
+    private final long maxBytes;
+    private int queuedFiles;
+    private long queuedBytes;
+
+    /**
+     * Instantiates a new admission control.
+     *
+     * @param maxFiles the maximum number of queued files
+     * @param maxBytes the maximum total size of queued files in bytes
+     */
+    AdmissionControl(int maxFiles, long maxBytes)
+    {
+        this.maxFiles = maxFiles;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Admits file if it fits into the limits.
+     *
+     * @param fileSize the file size in bytes
+     * @return true if file was admitted
+     */
+    synchronized boolean tryAcquire(long fileSize)
+    {
+        if (!fits(fileSize))
+        {
+            return false;
+        }
+        queuedFiles++;
+        queuedBytes += fileSize;
+        return true;
+    }
+
+    /**
+     * Waits until file fits into the limits and admits it.
+     *
+     * @param fileSize the file size in bytes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void acquire(long fileSize) throws InterruptedException
+    {
+        while (!fits(fileSize))
+        {
+            wait();
+        }
+        queuedFiles++;
+        queuedBytes += fileSize;
+    }
+
+    /**
+     * Releases admitted file when its handling is finished.
+     *
+     * @param fileSize the file size in bytes passed on admission
+     */
+    synchronized void release(long fileSize)
+    {
+        queuedFiles--;
+        queuedBytes -= fileSize;
+        notifyAll();
+    }
+
+    /**
+     * Gets number of admitted files which are not handled yet.
+     *
+     * @return the queued files count
+     */
+    synchronized int getQueuedFiles()
+    {
+        return queuedFiles;
+    }
+
+    /**
+     * Gets total size of admitted files which are not handled yet.
+     *
+     * @return the queued files size in bytes
+     */
+    synchronized long getQueuedBytes()
+    {
+        return queuedBytes;
+    }
+
+    private boolean fits(long fileSize)
+    {
+        return queuedFiles == 0 || (queuedFiles < maxFiles && queuedBytes + fileSize <= maxBytes);
+    }
+}
@@ -0,0 +1,40 @@
+package com.testing.listener;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory of executors which run file handlers. The code is compiled for Java 8, so virtual threads
+ * of Java 21 are created by reflection.
+ */
+public final class HandlerExecutors
+{
+    private static final Logger LOGGER = LogManager.getLogger(HandlerExecutors.class);
+
+    private HandlerExecutors()
+    {
+    }
+
+    /**
+     * Creates executor which starts a new virtual thread for every task.
+     *
+     * @return the executor or null if the runtime has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e)
+        {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e)
+        {
+            LOGGER.warn("Cannot create virtual thread executor.", e);
+            return null;
+        }
+    }
+}
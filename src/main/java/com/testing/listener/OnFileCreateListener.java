@@ -1,18 +1,81 @@
 package com.testing.listener;
 
+import com.testing.cluster.WorkClaims;
 import com.testing.config.Configuration;
+import com.testing.config.ExecutionMode;
+import com.testing.config.OverflowPolicy;
+import com.testing.config.WriteCompletionMode;
+import com.testing.handler.WriteRetryScheduler;
 import com.testing.handler.XmlFileHandler;
 import com.testing.handler.CustomXmlToDBHandler;
+import com.testing.journal.IngestJournal;
+import com.testing.metrics.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * The listener which handle newly created file using thread pool
+ * The listener which handle newly created file using thread pool. The same file reported again
+ * while it is still handled (eg. by directory rescan) is ignored.
+ * <p>
+ * Number and total size of queued files are limited by {@link Configuration}. When the limits are reached
+ * the reporting thread is blocked or the file is deferred to a later rescan according to {@link OverflowPolicy}.
+ * Handler objects are created only for admitted files.
+ * <p>
+ * Files which may still be written by producer are held according to {@link WriteCompletionMode}
+ * before they are admitted. A held file which cannot be admitted yet stays held instead of blocking
+ * the timer thread.
+ * <p>
+ * Files which were not recorded because of database error are handled again in place with exponential
+ * backoff. A file keeps its place in the queue limits and is not reported again while it waits.
+ * <p>
+ * Handler threads are the parse stage of the pipeline. When database writer has the write stage, a thread
+ * passes parsed entries to it and takes the next file, the file is moved after the write stage commits them.
+ * <p>
+ * In {@link ExecutionMode#VIRTUAL} mode every admitted file is handled by its own virtual thread and
+ * the thread pool only runs stabilization and retry timers.
+ * <p>
+ * When monitoring folder is shared by several nodes, an admitted file is claimed by {@link WorkClaims} before
+ * it is handled, a file claimed by another node is skipped.
  */
-public class OnFileCreateListener implements OnFileChangeListener
+public class OnFileCreateListener implements OnFileChangeListener, WriteRetryScheduler
 {
-    private ScheduledExecutorService executor;
+    private static final Logger LOGGER = LogManager.getLogger(OnFileCreateListener.class);
+
+    private static final int TIMER_THREADS = 2;
+
+    private ScheduledThreadPoolExecutor executor;
+    private final ExecutorService handlerExecutor;
+    private final Set<String> filesInProgress = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AdmissionControl admissionControl;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicBoolean deferred = new AtomicBoolean();
+    private final WriteCompletionMode writeCompletionMode;
+    private final String inProgressSuffix;
+    private final StabilizationWheel stabilizationWheel;
+    private final ConcurrentMap<String, Integer> requestedRetries = new ConcurrentHashMap<>();
+    private final AtomicInteger retryingFiles = new AtomicInteger();
+    private final AtomicInteger parsingFiles = new AtomicInteger();
+    private final AtomicInteger committingFiles = new AtomicInteger();
+    private final int retryMaxAttempts;
+    private final RetryBackoff retryBackoff;
+    private final WorkClaims workClaims;
 
     /**
      * Instantiates a new On file create listener with a thread pool that can schedule XmlFileHandler
@@ -20,12 +83,357 @@ public class OnFileCreateListener implements OnFileChangeListener
      */
     public OnFileCreateListener()
     {
-        executor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors() + 1);
+        ExecutorService virtualExecutor = null;
+        if (Configuration.getExecutionMode() == ExecutionMode.VIRTUAL)
+        {
+            virtualExecutor = HandlerExecutors.newVirtualThreadPerTaskExecutor();
+            if (virtualExecutor == null)
+            {
+                LOGGER.warn("Virtual threads need Java 21 or later, files will be handled by platform threads.");
+            }
+        }
+        if (virtualExecutor != null)
+        {
+            executor = new ScheduledThreadPoolExecutor(TIMER_THREADS);
+            handlerExecutor = virtualExecutor;
+            LOGGER.debug("Every file will be handled by its own virtual thread.");
+        }
+        else
+        {
+            executor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors() + 1);
+            handlerExecutor = executor;
+        }
+        admissionControl = new AdmissionControl(Configuration.getMaxQueuedFiles(), Configuration.getMaxQueuedBytes());
+        overflowPolicy = Configuration.getQueueOverflowPolicy();
+        writeCompletionMode = Configuration.getWriteCompletionMode();
+        inProgressSuffix = Configuration.getInProgressSuffix();
+        retryMaxAttempts = Configuration.getRetryMaxAttempts();
+        retryBackoff = new RetryBackoff(Configuration.getRetryInitialDelay(), Configuration.getRetryMaxDelay());
+        workClaims = WorkClaims.getInstance();
+        stabilizationWheel = writeCompletionMode == WriteCompletionMode.STABLE_SIZE
+                ? new StabilizationWheel(executor, Configuration.getStabilizationPeriod(), this::tryHandOff, filesInProgress::remove)
+                : null;
     }
 
     @Override
     public void onFileChange(String filePath)
     {
-        executor.submit(new XmlFileHandler(new CustomXmlToDBHandler(), filePath, Configuration.getProcessedFilesFolder(), Configuration.getCorruptedFilesFolder()));
+        if (writeCompletionMode == WriteCompletionMode.RENAME && filePath.endsWith(inProgressSuffix))
+        {
+            return;
+        }
+        if (!filesInProgress.add(filePath))
+        {
+            return;
+        }
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isRegularFile())
+            {
+                filesInProgress.remove(filePath);
+                return;
+            }
+        } catch (IOException e)
+        {
+            LOGGER.debug("File " + filePath + " is not available anymore.", e);
+            filesInProgress.remove(filePath);
+            return;
+        }
+
+        if (stabilizationWheel != null)
+        {
+            stabilizationWheel.add(filePath, attributes.size(), attributes.lastModifiedTime().toMillis());
+            return;
+        }
+        handOff(filePath, attributes.size());
+    }
+
+    /**
+     * Admits completely written file and queues it for handling.
+     *
+     * @param filePath the file path
+     * @param fileSize the file size
+     */
+    private void handOff(String filePath, long fileSize)
+    {
+        if (!admit(fileSize))
+        {
+            filesInProgress.remove(filePath);
+            return;
+        }
+        queue(filePath, fileSize);
+    }
+
+    /**
+     * Hands off file which stopped changing without blocking the stabilization wheel. When queue is full
+     * and {@link OverflowPolicy#BLOCK} is used, the file is left in the wheel and offered again later.
+     *
+     * @param filePath the file path
+     * @param fileSize the file size
+     * @return false if file was not taken and should be offered again
+     */
+    private boolean tryHandOff(String filePath, long fileSize)
+    {
+        if (overflowPolicy != OverflowPolicy.BLOCK)
+        {
+            handOff(filePath, fileSize);
+            return true;
+        }
+        if (!admissionControl.tryAcquire(fileSize))
+        {
+            return false;
+        }
+        queue(filePath, fileSize);
+        return true;
+    }
+
+    /**
+     * Queues admitted file for handling.
+     *
+     * @param filePath the file path
+     * @param fileSize the file size
+     */
+    private void queue(String filePath, long fileSize)
+    {
+        long queuedAt = System.nanoTime();
+        handlerExecutor.execute(() ->
+        {
+            Metrics.QUEUED.record(queuedAt);
+            String claimedPath = claim(filePath);
+            if (claimedPath == null)
+            {
+                admissionControl.release(fileSize);
+                return;
+            }
+            IngestJournal.getInstance().seen(claimedPath);
+            handle(claimedPath, fileSize, 1);
+        });
+    }
+
+    /**
+     * Claims admitted file for this node. Claimed file is in progress under its new path.
+     *
+     * @param filePath the file path
+     * @return the path of claimed file or null if file was claimed by another node or cannot be claimed
+     */
+    private String claim(String filePath)
+    {
+        Path claimed;
+        try
+        {
+            claimed = workClaims.claim(Paths.get(filePath));
+        } catch (IOException e)
+        {
+            LOGGER.error("File " + filePath + " was not claimed.", e);
+            filesInProgress.remove(filePath);
+            return null;
+        }
+        if (claimed == null)
+        {
+            LOGGER.debug("File " + filePath + " was claimed by another node.");
+            filesInProgress.remove(filePath);
+            return null;
+        }
+        String claimedPath = claimed.toString();
+        if (!claimedPath.equals(filePath))
+        {
+            filesInProgress.add(claimedPath);
+            filesInProgress.remove(filePath);
+        }
+        return claimedPath;
+    }
+
+    /**
+     * Parses admitted file. The file is finished when its entries are committed, the thread is not blocked
+     * while the write stage commits them.
+     *
+     * @param filePath the file path
+     * @param fileSize the file size
+     * @param attempt  the number of the attempt
+     */
+    private void handle(String filePath, long fileSize, int attempt)
+    {
+        CompletableFuture<Void> handled = null;
+        parsingFiles.incrementAndGet();
+        try
+        {
+            handled = new XmlFileHandler(new CustomXmlToDBHandler(filePath), filePath, Configuration.getProcessedFilesFolder(),
+                    Configuration.getCorruptedFilesFolder(), this, attempt).runAsync(handlerExecutor);
+        } finally
+        {
+            parsingFiles.decrementAndGet();
+            if (handled == null)
+            {
+                finishHandling(filePath, fileSize);
+            }
+        }
+        if (handled.isDone())
+        {
+            finishHandling(filePath, fileSize);
+            return;
+        }
+        committingFiles.incrementAndGet();
+        handled.whenComplete((ignored, failure) ->
+        {
+            committingFiles.decrementAndGet();
+            if (failure != null)
+            {
+                LOGGER.error("File " + filePath + " was not handled.", failure);
+            }
+            finishHandling(filePath, fileSize);
+        });
+    }
+
+    /**
+     * Releases handled file or schedules another attempt if handler requested it. The file stays admitted
+     * and in progress until the attempt is made.
+     *
+     * @param filePath the file path
+     * @param fileSize the file size
+     */
+    private void finishHandling(String filePath, long fileSize)
+    {
+        Integer nextAttempt = requestedRetries.remove(filePath);
+        if (nextAttempt == null)
+        {
+            admissionControl.release(fileSize);
+            filesInProgress.remove(filePath);
+        }
+        else
+        {
+            retryingFiles.incrementAndGet();
+            executor.schedule(() -> handlerExecutor.execute(() ->
+            {
+                retryingFiles.decrementAndGet();
+                handle(filePath, fileSize, nextAttempt);
+            }), retryBackoff.delay(nextAttempt), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public boolean scheduleRetry(String filePath, int attempt)
+    {
+        if (attempt > retryMaxAttempts)
+        {
+            return false;
+        }
+        requestedRetries.put(filePath, attempt);
+        return true;
+    }
+
+    /**
+     * Admits file to the queue according to overflow policy.
+     *
+     * @param fileSize the file size
+     * @return true if file can be queued
+     */
+    private boolean admit(long fileSize)
+    {
+        if (admissionControl.tryAcquire(fileSize))
+        {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.DEFER)
+        {
+            if (!deferred.getAndSet(true))
+            {
+                LOGGER.debug("Queue is full (" + getQueuedFiles() + " files, " + getQueuedBytes() + " bytes), files are deferred to rescan.");
+            }
+            return false;
+        }
+        LOGGER.debug("Queue is full (" + getQueuedFiles() + " files, " + getQueuedBytes() + " bytes), waiting for handled files.");
+        try
+        {
+            admissionControl.acquire(fileSize);
+            return true;
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Tells if any file was deferred since the last call, resets the flag.
+     *
+     * @return true if folder should be rescanned
+     */
+    public boolean takeDeferred()
+    {
+        return deferred.getAndSet(false);
+    }
+
+    /**
+     * Gets number of tasks waiting in executor queue. Virtual threads start immediately, so in
+     * {@link ExecutionMode#VIRTUAL} mode only waiting timer tasks are counted.
+     *
+     * @return the executor queue size
+     */
+    public int getExecutorQueueSize()
+    {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets number of files which are parsed by handler threads.
+     *
+     * @return the parsing files count
+     */
+    public int getParsingFiles()
+    {
+        return parsingFiles.get();
+    }
+
+    /**
+     * Gets number of parsed files waiting until the write stage commits their entries.
+     *
+     * @return the committing files count
+     */
+    public int getCommittingFiles()
+    {
+        return committingFiles.get();
+    }
+
+    /**
+     * Gets number of files waiting until producer completes writing them, including stable files which
+     * wait for a place in the full queue.
+     *
+     * @return the stabilizing files count
+     */
+    public int getStabilizingFiles()
+    {
+        return stabilizationWheel == null ? 0 : stabilizationWheel.getPendingFiles();
+    }
+
+    /**
+     * Gets number of files waiting for another attempt to record them.
+     *
+     * @return the retrying files count
+     */
+    public int getRetryingFiles()
+    {
+        return retryingFiles.get();
+    }
+
+    /**
+     * Gets number of files queued or being handled.
+     *
+     * @return the queued files count
+     */
+    public int getQueuedFiles()
+    {
+        return admissionControl.getQueuedFiles();
+    }
+
+    /**
+     * Gets total size of files queued or being handled.
+     *
+     * @return the queued files size in bytes
+     */
+    public long getQueuedBytes()
+    {
+        return admissionControl.getQueuedBytes();
     }
 }
@@ -0,0 +1,38 @@
+package com.testing.listener;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff of attempts to record a file. The delay is doubled for every next attempt up to
+ * the maximum and randomized between its half and its whole, so files failed together do not retry together.
+ */
+class RetryBackoff
+{
+    private final long initialDelay;
+    private final long maxDelay;
+
+    /**
+     * Instantiates a new retry backoff.
+     *
+     * @param initialDelay the delay in milliseconds before the second attempt
+     * @param maxDelay     the maximum delay in milliseconds
+     */
+    RetryBackoff(long initialDelay, long maxDelay)
+    {
+        this.initialDelay = Math.max(0, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+    }
+
+    /**
+     * Gets randomized delay before attempt.
+     *
+     * @param attempt the number of the attempt, at least 2
+     * @return the delay in milliseconds
+     */
+    long delay(int attempt)
+    {
+        int doublings = Math.min(Math.max(attempt - 2, 0), 62);
+        long delay = initialDelay > maxDelay >> doublings ? maxDelay : initialDelay << doublings;
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
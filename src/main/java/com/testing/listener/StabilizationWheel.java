@@ -0,0 +1,172 @@
+package com.testing.listener;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel which holds new files until their size and modification time stop changing.
+ * <p>
+ * Pending files are kept in buckets of the wheel and one periodic task of the given executor advances
+ * the wheel, so any number of files waits without holding a thread. Every file is checked once per
+ * stabilization period and handed to the consumer when it has not changed since the previous check.
+ * The consumer must not block the wheel: a file it cannot take yet stays in the wheel and is checked
+ * and offered again after the next period.
+ */
+class StabilizationWheel
+{
+    private static final Logger LOGGER = LogManager.getLogger(StabilizationWheel.class);
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int TICKS_PER_PERIOD = 10;
+    private static final long MIN_TICK_MILLIS = 10;
+
+    private final List<Queue<PendingFile>> buckets = new ArrayList<>(WHEEL_SIZE);
+    private final int ticksPerPeriod;
+    private final BiPredicate<String, Long> stableFileConsumer;
+    private final Consumer<String> missingFileConsumer;
+    private final AtomicInteger pendingFiles = new AtomicInteger();
+    private volatile long currentTick;
+
+    /**
+     * Instantiates a new stabilization wheel and starts advancing it.
+     *
+     * @param executor            the executor which advances the wheel
+     * @param periodMillis        the stabilization period in milliseconds
+     * @param stableFileConsumer  receives path and size of file which stopped changing, returns false
+     *                            without blocking if it cannot take the file yet
+     * @param missingFileConsumer receives path of file which was removed while waiting
+     */
+    StabilizationWheel(ScheduledExecutorService executor, long periodMillis,
+                       BiPredicate<String, Long> stableFileConsumer, Consumer<String> missingFileConsumer)
+    {
+        this.stableFileConsumer = stableFileConsumer;
+        this.missingFileConsumer = missingFileConsumer;
+        long tickMillis = Math.max(MIN_TICK_MILLIS, periodMillis / TICKS_PER_PERIOD);
+        ticksPerPeriod = (int) Math.max(1, (periodMillis + tickMillis - 1) / tickMillis);
+        for (int i = 0; i < WHEEL_SIZE; i++)
+        {
+            buckets.add(new ConcurrentLinkedQueue<>());
+        }
+        executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Puts file to the wheel.
+     *
+     * @param filePath     the file path
+     * @param size         the file size when it was reported
+     * @param lastModified the file modification time when it was reported
+     */
+    void add(String filePath, long size, long lastModified)
+    {
+        pendingFiles.incrementAndGet();
+        schedule(new PendingFile(filePath, size, lastModified));
+    }
+
+    /**
+     * Gets number of files waiting in the wheel, including stable files which the consumer could not take yet.
+     *
+     * @return the pending files count
+     */
+    int getPendingFiles()
+    {
+        return pendingFiles.get();
+    }
+
+    private void schedule(PendingFile pendingFile)
+    {
+        pendingFile.deadlineTick = currentTick + ticksPerPeriod;
+        buckets.get((int) (pendingFile.deadlineTick % WHEEL_SIZE)).add(pendingFile);
+    }
+
+    /**
+     * Advances the wheel by one tick and checks files which are due. Only the executor calls it
+     * and never concurrently.
+     */
+    private void tick()
+    {
+        try
+        {
+            long tick = ++currentTick;
+            Queue<PendingFile> bucket = buckets.get((int) (tick % WHEEL_SIZE));
+            List<PendingFile> dueFiles = new ArrayList<>();
+            for (PendingFile pendingFile = bucket.poll(); pendingFile != null; pendingFile = bucket.poll())
+            {
+                dueFiles.add(pendingFile);
+            }
+            for (PendingFile pendingFile : dueFiles)
+            {
+                if (pendingFile.deadlineTick > tick)
+                {
+                    bucket.add(pendingFile);
+                }
+                else
+                {
+                    check(pendingFile);
+                }
+            }
+        } catch (RuntimeException e)
+        {
+            LOGGER.error("Cannot check files waiting for write completion.", e);
+        }
+    }
+
+    private void check(PendingFile pendingFile)
+    {
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes(Paths.get(pendingFile.filePath), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e)
+        {
+            LOGGER.debug("File " + pendingFile.filePath + " is not available anymore.", e);
+            pendingFiles.decrementAndGet();
+            missingFileConsumer.accept(pendingFile.filePath);
+            return;
+        }
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (size == pendingFile.size && lastModified == pendingFile.lastModified
+                && stableFileConsumer.test(pendingFile.filePath, size))
+        {
+            pendingFiles.decrementAndGet();
+            return;
+        }
+        pendingFile.size = size;
+        pendingFile.lastModified = lastModified;
+        schedule(pendingFile);
+    }
+
+    /**
+     * File waiting in the wheel with its last observed state.
+     */
+    private static class PendingFile
+    {
+        private final String filePath;
+        private long size;
+        private long lastModified;
+        private long deadlineTick;
+
+        PendingFile(String filePath, long size, long lastModified)
+        {
+            this.filePath = filePath;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.testing.mapping;
+
+/**
+ * Mapping of one element path to a table column.
+ */
+public final class ColumnMapping
+{
+    private final int index;
+    private final String path;
+    private final String column;
+    private final ColumnType type;
+    private final boolean required;
+    private final int maxLength;
+
+    /**
+     * Instantiates a new column mapping.
+     *
+     * @param index     the index of column in the entry and in the insert statement starting from 0
+     * @param path      the element path starting with the record element, eg. 'Entry/content'
+     * @param column    the column name
+     * @param type      the column type
+     * @param required  true if entry without the element is skipped
+     * @param maxLength the maximum number of characters in the element, 0 if not limited
+     */
+    ColumnMapping(int index, String path, String column, ColumnType type, boolean required, int maxLength)
+    {
+        this.index = index;
+        this.path = path;
+        this.column = column;
+        this.type = type;
+        this.required = required;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Gets index of column in the entry and in the insert statement starting from 0.
+     *
+     * @return the index
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Gets element path.
+     *
+     * @return the path
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Gets column name.
+     *
+     * @return the column name
+     */
+    public String getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * Gets column type.
+     *
+     * @return the type
+     */
+    public ColumnType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Tells if entry without the element is skipped.
+     *
+     * @return true if element is required
+     */
+    public boolean isRequired()
+    {
+        return required;
+    }
+
+    /**
+     * Gets maximum number of characters in the element.
+     *
+     * @return the maximum length, 0 if not limited
+     */
+    public int getMaxLength()
+    {
+        return maxLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return path + "=" + column + " " + type + (required ? " REQUIRED" : "")
+                + (maxLength > 0 ? " MAX_LENGTH " + maxLength : "");
+    }
+}
@@ -0,0 +1,263 @@
+package com.testing.mapping;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * The enum of column types which element values are converted to before they are written to database.
+ * Values of all types except {@link #TEXT} may be surrounded by whitespace.
+ */
+public enum ColumnType
+{
+    /**
+     * Text kept exactly as it is in the element.
+     */
+    TEXT(Types.VARCHAR)
+            {
+                @Override
+                public Object parse(String value)
+                {
+                    return value;
+                }
+
+                @Override
+                void bind(PreparedStatement stmt, int index, Object value) throws SQLException
+                {
+                    stmt.setString(index, (String) value);
+                }
+            },
+    /**
+     * 32-bit integer.
+     */
+    INTEGER(Types.INTEGER)
+            {
+                @Override
+                public Object parse(String value)
+                {
+                    return Integer.valueOf(value.trim());
+                }
+
+                @Override
+                public Object parse(char[] chars, int length)
+                {
+                    long value = parseLong(chars, length);
+                    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+                    {
+                        throw new NumberFormatException("Value is out of integer range: " + value);
+                    }
+                    return (int) value;
+                }
+
+                @Override
+                void bind(PreparedStatement stmt, int index, Object value) throws SQLException
+                {
+                    stmt.setInt(index, (Integer) value);
+                }
+            },
+    /**
+     * 64-bit integer.
+     */
+    BIGINT(Types.BIGINT)
+            {
+                @Override
+                public Object parse(String value)
+                {
+                    return Long.valueOf(value.trim());
+                }
+
+                @Override
+                public Object parse(char[] chars, int length)
+                {
+                    return parseLong(chars, length);
+                }
+
+                @Override
+                void bind(PreparedStatement stmt, int index, Object value) throws SQLException
+                {
+                    stmt.setLong(index, (Long) value);
+                }
+            },
+    /**
+     * Exact decimal number.
+     */
+    NUMERIC(Types.NUMERIC)
+            {
+                @Override
+                public Object parse(String value)
+                {
+                    return new BigDecimal(value.trim());
+                }
+
+                @Override
+                void bind(PreparedStatement stmt, int index, Object value) throws SQLException
+                {
+                    stmt.setBigDecimal(index, (BigDecimal) value);
+                }
+            },
+    /**
+     * Boolean written as 'true', 'false', '1' or '0'.
+     */
+    BOOLEAN(Types.BOOLEAN)
+            {
+                @Override
+                public Object parse(String value)
+                {
+                    String trimmed = value.trim();
+                    if (trimmed.equalsIgnoreCase("true") || trimmed.equals("1"))
+                    {
+                        return Boolean.TRUE;
+                    }
+                    if (trimmed.equalsIgnoreCase("false") || trimmed.equals("0"))
+                    {
+                        return Boolean.FALSE;
+                    }
+                    throw new IllegalArgumentException("Value is not boolean: " + trimmed);
+                }
+
+                @Override
+                void bind(PreparedStatement stmt, int index, Object value) throws SQLException
+                {
+                    stmt.setBoolean(index, (Boolean) value);
+                }
+            },
+    /**
+     * Timestamp without time zone written as 'yyyy-MM-dd HH:mm:ss[.fffffffff]', 'T' is accepted instead of space.
+     */
+    TIMESTAMP(Types.TIMESTAMP)
+            {
+                @Override
+                public Object parse(String value)
+                {
+                    return Timestamp.valueOf(value.trim().replace('T', ' '));
+                }
+
+                @Override
+                void bind(PreparedStatement stmt, int index, Object value) throws SQLException
+                {
+                    stmt.setTimestamp(index, (Timestamp) value);
+                }
+            };
+
+    private final int sqlType;
+
+    ColumnType(int sqlType)
+    {
+        this.sqlType = sqlType;
+    }
+
+    /**
+     * Converts text to the value of column.
+     *
+     * @param value the text
+     * @return the value
+     * @throws IllegalArgumentException if text is not a value of the type
+     */
+    public abstract Object parse(String value);
+
+    /**
+     * Converts characters collected from element to the value of column. Integer types are parsed
+     * from characters directly, other types are parsed from the string of characters.
+     *
+     * @param chars  the characters buffer
+     * @param length the number of characters in buffer
+     * @return the value
+     * @throws IllegalArgumentException if characters are not a value of the type
+     */
+    public Object parse(char[] chars, int length)
+    {
+        return parse(new String(chars, 0, length));
+    }
+
+    /**
+     * Sets value of statement parameter.
+     *
+     * @param stmt  the statement
+     * @param index the parameter index
+     * @param value the not null value
+     * @throws SQLException if parameter cannot be set
+     */
+    abstract void bind(PreparedStatement stmt, int index, Object value) throws SQLException;
+
+    /**
+     * Sets statement parameter to the value or to null.
+     *
+     * @param stmt  the statement
+     * @param index the parameter index
+     * @param value the value or null
+     * @throws SQLException if parameter cannot be set
+     */
+    void bindNullable(PreparedStatement stmt, int index, Object value) throws SQLException
+    {
+        if (value == null)
+        {
+            stmt.setNull(index, sqlType);
+        }
+        else
+        {
+            bind(stmt, index, value);
+        }
+    }
+
+    /**
+     * Converts value to text which is parsed back by {@link #parse(String)} and accepted by database.
+     *
+     * @param value the value or null
+     * @return the text or null
+     */
+    public String format(Object value)
+    {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Parses decimal integer skipping surrounding whitespace.
+     */
+    private static long parseLong(char[] chars, int length)
+    {
+        int start = 0;
+        int end = length;
+        while (start < end && Character.isWhitespace(chars[start]))
+        {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(chars[end - 1]))
+        {
+            end--;
+        }
+        boolean negative = start < end && chars[start] == '-';
+        if (start < end && (chars[start] == '-' || chars[start] == '+'))
+        {
+            start++;
+        }
+        if (start == end)
+        {
+            throw new NumberFormatException("Value is not a number: " + new String(chars, 0, length));
+        }
+        long value = 0;
+        for (int i = start; i < end; i++)
+        {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9)
+            {
+                throw new NumberFormatException("Value is not a number: " + new String(chars, 0, length));
+            }
+            if (value < (Long.MIN_VALUE + digit) / 10)
+            {
+                throw new NumberFormatException("Value is out of bigint range: " + new String(chars, 0, length));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative)
+        {
+            if (value == Long.MIN_VALUE)
+            {
+                throw new NumberFormatException("Value is out of bigint range: " + new String(chars, 0, length));
+            }
+            value = -value;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,79 @@
+package com.testing.mapping;
+
+import java.util.List;
+
+/**
+ * Open addressing hash table of element names compared ignoring case. Names are looked up by the
+ * hash of their characters, so an element name is compared at most with names of the same hash
+ * and no lower case copy of the name is created.
+ */
+final class ElementTable
+{
+    private final String[] names;
+    private final int[] hashes;
+    private final int[] symbols;
+    private final int mask;
+
+    /**
+     * Instantiates a new element table.
+     *
+     * @param elementNames the distinct element names, symbol of a name is its index in the list
+     */
+    ElementTable(List<String> elementNames)
+    {
+        int size = 2;
+        while (size < elementNames.size() * 2)
+        {
+            size <<= 1;
+        }
+        names = new String[size];
+        hashes = new int[size];
+        symbols = new int[size];
+        mask = size - 1;
+        for (int symbol = 0; symbol < elementNames.size(); symbol++)
+        {
+            String name = elementNames.get(symbol);
+            int hash = hash(name);
+            int slot = hash & mask;
+            while (names[slot] != null)
+            {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            hashes[slot] = hash;
+            symbols[slot] = symbol;
+        }
+    }
+
+    /**
+     * Gets symbol of element name.
+     *
+     * @param name the element name
+     * @return the symbol or -1 if name is not in the table
+     */
+    int lookup(String name)
+    {
+        int hash = hash(name);
+        for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (hashes[slot] == hash && names[slot].equalsIgnoreCase(name))
+            {
+                return symbols[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calculates hash of name which is the same for names equal ignoring case.
+     */
+    private static int hash(String name)
+    {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++)
+        {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
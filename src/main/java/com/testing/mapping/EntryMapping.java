@@ -0,0 +1,535 @@
+package com.testing.mapping;
+
+import com.testing.config.Configuration;
+import com.testing.config.PartitionPeriod;
+import com.testing.db.data.XmlEntry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Mapping of xml elements to columns of the table, compiled from mapping file at startup.
+ * <p>
+ * Every line of mapping file 'path=column TYPE [REQUIRED] [MAX_LENGTH n]' maps the text of element path,
+ * eg. 'Entry/content', to the column of type {@link ColumnType}. The first element of all paths is the record
+ * element, every record element found at any depth of the file is one row of the table. Optional line
+ * 'TABLE=name' sets the table, {@link Configuration#getDBTable()} is used by default. Element names are
+ * compared ignoring case, lines starting with '#' are comments. Without mapping file 'content' and
+ * 'creationDate' elements of 'Entry' are written to 'content' and 'creation_date' text columns, creation date
+ * is written as timestamp if table is partitioned.
+ * <p>
+ * Paths are compiled into a tree of nodes. Element names are translated to symbols by a hash table and the child
+ * of a node is found by the symbol in the transitions array of the node, so the handler finds the column of an
+ * element by one hash lookup without comparing the name with every mapped name.
+ */
+public final class EntryMapping
+{
+    private static final Logger LOGGER = LogManager.getLogger(EntryMapping.class);
+
+    /**
+     * The node of record element.
+     */
+    public static final int RECORD_NODE = 0;
+
+    /**
+     * The maximum number of mapped columns.
+     */
+    public static final int MAX_COLUMNS = 64;
+
+    private static final String TABLE_KEY = "TABLE";
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final List<String> DEFAULT_MAPPING = Arrays.asList(
+            "Entry/content=content TEXT REQUIRED MAX_LENGTH 1024",
+            "Entry/creationDate=creation_date TEXT REQUIRED");
+    private static final List<String> DEFAULT_PARTITIONED_MAPPING = Arrays.asList(
+            "Entry/content=content TEXT REQUIRED MAX_LENGTH 1024",
+            "Entry/creationDate=creation_date TIMESTAMP REQUIRED");
+
+    private static EntryMapping instance;
+
+    private final String table;
+    private final List<ColumnMapping> columns;
+    private final long requiredColumns;
+    private final ElementTable elements;
+    private final int recordSymbol;
+    private final int[][] transitions;
+    private final int[] nodeColumns;
+    private final String columnNames;
+    private final String parameters;
+    private final Map<String, String> insertStatements = new ConcurrentHashMap<>();
+    private final Map<String, String> copyStatements = new ConcurrentHashMap<>();
+
+    private EntryMapping(String table, List<ColumnMapping> columns)
+    {
+        this.table = table;
+        this.columns = Collections.unmodifiableList(columns);
+
+        List<String> symbols = new ArrayList<>();
+        List<String[]> paths = new ArrayList<>();
+        long required = 0;
+        for (ColumnMapping column : columns)
+        {
+            String[] path = column.getPath().split("/");
+            for (String name : path)
+            {
+                if (symbolOf(symbols, name) < 0)
+                {
+                    symbols.add(name);
+                }
+            }
+            paths.add(path);
+            if (column.isRequired())
+            {
+                required |= 1L << column.getIndex();
+            }
+        }
+        requiredColumns = required;
+        elements = new ElementTable(symbols);
+        recordSymbol = symbolOf(symbols, paths.get(0)[0]);
+
+        List<int[]> nodeTransitions = new ArrayList<>();
+        List<Integer> columnsOfNodes = new ArrayList<>();
+        nodeTransitions.add(newTransitions(symbols.size()));
+        columnsOfNodes.add(-1);
+        for (int i = 0; i < paths.size(); i++)
+        {
+            String[] path = paths.get(i);
+            int node = RECORD_NODE;
+            for (int depth = 1; depth < path.length; depth++)
+            {
+                int symbol = symbolOf(symbols, path[depth]);
+                int child = nodeTransitions.get(node)[symbol];
+                if (child < 0)
+                {
+                    child = nodeTransitions.size();
+                    nodeTransitions.add(newTransitions(symbols.size()));
+                    columnsOfNodes.add(-1);
+                    nodeTransitions.get(node)[symbol] = child;
+                }
+                node = child;
+            }
+            columnsOfNodes.set(node, i);
+        }
+        transitions = nodeTransitions.toArray(new int[0][]);
+        nodeColumns = new int[columnsOfNodes.size()];
+        for (int node = 0; node < nodeColumns.length; node++)
+        {
+            nodeColumns[node] = columnsOfNodes.get(node);
+        }
+
+        StringBuilder names = new StringBuilder();
+        StringBuilder parameters = new StringBuilder();
+        for (ColumnMapping column : columns)
+        {
+            names.append(names.length() == 0 ? "" : ", ").append(column.getColumn());
+            parameters.append(parameters.length() == 0 ? "?" : ",?");
+        }
+        this.columnNames = names.toString();
+        this.parameters = parameters.toString();
+    }
+
+    /**
+     * Loads mapping file and compiles it, the mapping is used by all handlers and writers.
+     *
+     * @param mappingFilePath the mapping file path, default mapping is used if path is empty
+     * @return false if mapping file cannot be read or it is not valid
+     */
+    public static synchronized boolean initMapping(String mappingFilePath)
+    {
+        try
+        {
+            List<String> lines = mappingFilePath.length() == 0 ? defaultMapping()
+                    : Files.readAllLines(Paths.get(mappingFilePath), StandardCharsets.UTF_8);
+            EntryMapping mapping = parse(lines, Configuration.getDBTable());
+            mapping.checkPartitionColumn();
+            instance = mapping;
+            LOGGER.info("Entries are written by '" + instance.getInsertSQL() + "'.");
+            return true;
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot read the mapping file " + mappingFilePath + ".", e);
+        } catch (IllegalArgumentException e)
+        {
+            LOGGER.error("Invalid mapping file " + mappingFilePath + ". " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Gets the mapping, default mapping is compiled if {@link #initMapping(String)} was not called.
+     *
+     * @return the instance
+     */
+    public static synchronized EntryMapping getInstance()
+    {
+        if (instance == null)
+        {
+            instance = parse(defaultMapping(), Configuration.getDBTable());
+        }
+        return instance;
+    }
+
+    private static List<String> defaultMapping()
+    {
+        return Configuration.getPartitionPeriod() == PartitionPeriod.NONE ? DEFAULT_MAPPING : DEFAULT_PARTITIONED_MAPPING;
+    }
+
+    /**
+     * Checks that partition column is a mapped timestamp if table is partitioned.
+     *
+     * @throws IllegalArgumentException if partition column is not mapped or it is not a timestamp
+     */
+    private void checkPartitionColumn()
+    {
+        if (Configuration.getPartitionPeriod() != PartitionPeriod.NONE)
+        {
+            indexOfTimestamp(Configuration.getPartitionColumn());
+        }
+    }
+
+    /**
+     * Gets index of a column which values are timestamps.
+     *
+     * @param column the column name
+     * @return the column index
+     * @throws IllegalArgumentException if column is not mapped or it is not a timestamp
+     */
+    public int indexOfTimestamp(String column)
+    {
+        int index = indexOf(column);
+        if (index < 0 || columns.get(index).getType() != ColumnType.TIMESTAMP)
+        {
+            throw new IllegalArgumentException("Partition column " + column + " must be mapped as " + ColumnType.TIMESTAMP + ".");
+        }
+        return index;
+    }
+
+    /**
+     * Parses and compiles lines of mapping file.
+     *
+     * @param lines        the lines
+     * @param defaultTable the table used if mapping has no table line
+     * @return the mapping
+     * @throws IllegalArgumentException if mapping is not valid
+     */
+    static EntryMapping parse(List<String> lines, String defaultTable)
+    {
+        String table = defaultTable;
+        List<ColumnMapping> columns = new ArrayList<>();
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++)
+        {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.length() == 0 || line.startsWith("#"))
+            {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            if (separator <= 0)
+            {
+                throw new IllegalArgumentException("Line " + lineNumber + " is not 'path=column TYPE'.");
+            }
+            String key = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            if (key.equals(TABLE_KEY))
+            {
+                if (value.length() == 0)
+                {
+                    throw new IllegalArgumentException("Table of line " + lineNumber + " is empty.");
+                }
+                table = value;
+                continue;
+            }
+            try
+            {
+                columns.add(parseColumn(columns, key, value));
+            } catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (columns.isEmpty())
+        {
+            throw new IllegalArgumentException("No columns are mapped.");
+        }
+        return new EntryMapping(table, columns);
+    }
+
+    private static ColumnMapping parseColumn(List<ColumnMapping> columns, String path, String value)
+    {
+        String[] segments = path.split("/", -1);
+        if (segments.length < 2)
+        {
+            throw new IllegalArgumentException("Path " + path + " must start with the record element, eg. 'Entry/content'.");
+        }
+        for (String segment : segments)
+        {
+            if (segment.length() == 0 || segment.trim().length() != segment.length())
+            {
+                throw new IllegalArgumentException("Path " + path + " has empty element name.");
+            }
+        }
+        String[] tokens = value.split("\\s+");
+        if (tokens.length < 2)
+        {
+            throw new IllegalArgumentException("Column and type of " + path + " are not specified.");
+        }
+        String column = tokens[0];
+        if (!COLUMN_NAME.matcher(column).matches())
+        {
+            throw new IllegalArgumentException("Invalid column name " + column + ".");
+        }
+        ColumnType type;
+        try
+        {
+            type = ColumnType.valueOf(tokens[1].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown type " + tokens[1] + ", one of " + Arrays.toString(ColumnType.values())
+                    + " is expected.");
+        }
+        boolean required = false;
+        int maxLength = 0;
+        for (int i = 2; i < tokens.length; i++)
+        {
+            String option = tokens[i].toUpperCase(Locale.ROOT);
+            if (option.equals("REQUIRED"))
+            {
+                required = true;
+            }
+            else if (option.equals("MAX_LENGTH") && i + 1 < tokens.length)
+            {
+                try
+                {
+                    maxLength = Integer.parseInt(tokens[++i]);
+                } catch (NumberFormatException e)
+                {
+                    maxLength = -1;
+                }
+                if (maxLength <= 0)
+                {
+                    throw new IllegalArgumentException("Invalid MAX_LENGTH " + tokens[i] + ".");
+                }
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + tokens[i] + ".");
+            }
+        }
+
+        if (columns.size() == MAX_COLUMNS)
+        {
+            throw new IllegalArgumentException("More than " + MAX_COLUMNS + " columns are mapped.");
+        }
+        for (ColumnMapping mapped : columns)
+        {
+            String mappedPath = mapped.getPath();
+            if (!segments[0].equalsIgnoreCase(mappedPath.substring(0, mappedPath.indexOf('/'))))
+            {
+                throw new IllegalArgumentException("Path " + path + " does not start with the record element of "
+                        + mappedPath + ".");
+            }
+            if (isPrefix(mappedPath, path) || isPrefix(path, mappedPath))
+            {
+                throw new IllegalArgumentException("Path " + path + " overlaps with " + mappedPath + ".");
+            }
+            if (mapped.getColumn().equalsIgnoreCase(column))
+            {
+                throw new IllegalArgumentException("Column " + column + " is mapped twice.");
+            }
+        }
+        return new ColumnMapping(columns.size(), path, column, type, required, maxLength);
+    }
+
+    /**
+     * Tells if path is the same or an ancestor of other path ignoring case.
+     */
+    private static boolean isPrefix(String path, String other)
+    {
+        return other.regionMatches(true, 0, path, 0, path.length())
+                && (other.length() == path.length() || other.charAt(path.length()) == '/');
+    }
+
+    private static int symbolOf(List<String> symbols, String name)
+    {
+        for (int symbol = 0; symbol < symbols.size(); symbol++)
+        {
+            if (symbols.get(symbol).equalsIgnoreCase(name))
+            {
+                return symbol;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] newTransitions(int symbols)
+    {
+        int[] nodeTransitions = new int[symbols];
+        Arrays.fill(nodeTransitions, -1);
+        return nodeTransitions;
+    }
+
+    /**
+     * Tells if element is the record element.
+     *
+     * @param elementName the element name
+     * @return true if element starts a new entry
+     */
+    public boolean isRecord(String elementName)
+    {
+        return elements.lookup(elementName) == recordSymbol;
+    }
+
+    /**
+     * Gets node of element opened inside element of the node.
+     *
+     * @param node        the parent node, {@link #RECORD_NODE} for children of record element
+     * @param elementName the element name
+     * @return the node or -1 if element is not on any mapped path
+     */
+    public int childNode(int node, String elementName)
+    {
+        int symbol = elements.lookup(elementName);
+        return symbol < 0 ? -1 : transitions[node][symbol];
+    }
+
+    /**
+     * Gets column of node.
+     *
+     * @param node the node
+     * @return the column index or -1 if node is not the end of a mapped path
+     */
+    public int columnOf(int node)
+    {
+        return nodeColumns[node];
+    }
+
+    /**
+     * Sets parameters of insert statement to the values of entry.
+     *
+     * @param stmt     the statement prepared from {@link #getInsertSQL()}
+     * @param xmlEntry the entry
+     * @throws SQLException if parameter cannot be set
+     */
+    public void bind(PreparedStatement stmt, XmlEntry xmlEntry) throws SQLException
+    {
+        for (int i = 0; i < columns.size(); i++)
+        {
+            columns.get(i).getType().bindNullable(stmt, i + 1, xmlEntry.getValue(i));
+        }
+    }
+
+    /**
+     * Gets table.
+     *
+     * @return the table name
+     */
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * Gets mapped columns in order of insert statement parameters.
+     *
+     * @return the columns
+     */
+    public List<ColumnMapping> getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Gets number of mapped columns.
+     *
+     * @return the column count
+     */
+    public int getColumnCount()
+    {
+        return columns.size();
+    }
+
+    /**
+     * Gets bit mask of required columns, bit 'i' is set if column 'i' is required.
+     *
+     * @return the required columns mask
+     */
+    public long getRequiredColumns()
+    {
+        return requiredColumns;
+    }
+
+    /**
+     * Gets index of column.
+     *
+     * @param column the column name
+     * @return the index or -1 if column is not mapped
+     */
+    public int indexOf(String column)
+    {
+        for (ColumnMapping mapped : columns)
+        {
+            if (mapped.getColumn().equalsIgnoreCase(column))
+            {
+                return mapped.getIndex();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets insert statement of the table with one parameter per column.
+     *
+     * @return the insert statement
+     */
+    public String getInsertSQL()
+    {
+        return getInsertSQL(table);
+    }
+
+    /**
+     * Gets insert statement of another table with the same columns, eg. of a partition.
+     *
+     * @param tableName the table name
+     * @return the insert statement
+     */
+    public String getInsertSQL(String tableName)
+    {
+        return insertStatements.computeIfAbsent(tableName,
+                name -> "INSERT INTO " + name + "(" + columnNames + ") VALUES(" + parameters + ")");
+    }
+
+    /**
+     * Gets 'COPY ... FROM STDIN' statement of the table with all columns.
+     *
+     * @return the copy statement
+     */
+    public String getCopySQL()
+    {
+        return getCopySQL(table);
+    }
+
+    /**
+     * Gets 'COPY ... FROM STDIN' statement of another table with the same columns, eg. of a partition.
+     *
+     * @param tableName the table name
+     * @return the copy statement
+     */
+    public String getCopySQL(String tableName)
+    {
+        return copyStatements.computeIfAbsent(tableName, name -> "COPY " + name + "(" + columnNames + ") FROM STDIN");
+    }
+}
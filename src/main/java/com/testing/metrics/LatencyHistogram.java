@@ -0,0 +1,101 @@
+package com.testing.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power of two buckets of nanoseconds. Recording only increments
+ * preallocated counters, so it does not allocate and can stay enabled in production. Percentiles are
+ * reported as upper bound of the bucket, so they are accurate within factor of two.
+ */
+class LatencyHistogram
+{
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one measured duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void record(long nanos)
+    {
+        if (nanos < 0)
+        {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos | 1));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+        {
+            max = maxNanos.get();
+        }
+    }
+
+    long getCount()
+    {
+        return count.get();
+    }
+
+    long getTotalNanos()
+    {
+        return totalNanos.get();
+    }
+
+    long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns duration which is not exceeded by specified part of recorded durations.
+     *
+     * @param percentile the percentile from 0 to 1
+     * @return the upper bound of the percentile bucket in nanoseconds, 0 if nothing was recorded
+     */
+    long getPercentileNanos(double percentile)
+    {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile);
+        long accumulated = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            accumulated += snapshot[i];
+            if (accumulated >= threshold)
+            {
+                return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+}
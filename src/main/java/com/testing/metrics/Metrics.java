@@ -0,0 +1,82 @@
+package com.testing.metrics;
+
+import com.testing.db.DBWriter;
+import com.testing.listener.OnFileCreateListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Metrics of pipeline stages which a file passes through and their registration as JMX MBeans
+ * under 'com.testing.xmlmonitor' domain.
+ */
+public final class Metrics
+{
+    private static final Logger LOGGER = LogManager.getLogger(Metrics.class);
+
+    private static final String DOMAIN = "com.testing.xmlmonitor";
+
+    /**
+     * Notifying listeners about file system event.
+     */
+    public static final StageMetrics DETECTED = new StageMetrics("detected");
+
+    /**
+     * Waiting in the file handlers queue, from admission until handling is started.
+     */
+    public static final StageMetrics QUEUED = new StageMetrics("queued");
+
+    /**
+     * Parsing the file.
+     */
+    public static final StageMetrics PARSED = new StageMetrics("parsed");
+
+    /**
+     * Writing entries to database.
+     */
+    public static final StageMetrics WRITTEN = new StageMetrics("written");
+
+    /**
+     * Moving the file to processed, corrupted or not recorded folder.
+     */
+    public static final StageMetrics MOVED = new StageMetrics("moved");
+
+    private Metrics()
+    {
+    }
+
+    /**
+     * Registers stage metrics and live pipeline gauges in platform MBean server.
+     *
+     * @param listener the listener which queues files for handling
+     * @param dbWriter the database writer
+     */
+    public static void register(OnFileCreateListener listener, DBWriter dbWriter)
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            for (StageMetrics stage : new StageMetrics[]{DETECTED, QUEUED, PARSED, WRITTEN, MOVED})
+            {
+                register(server, new ObjectName(DOMAIN + ":type=Stage,name=" + stage.getName()), stage);
+            }
+            register(server, new ObjectName(DOMAIN + ":type=Gauges"), new PipelineGauges(listener, dbWriter));
+        } catch (JMException e)
+        {
+            LOGGER.error("Cannot register metrics MBeans.", e);
+        }
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object mbean) throws JMException
+    {
+        if (server.isRegistered(name))
+        {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+    }
+}
@@ -0,0 +1,109 @@
+package com.testing.metrics;
+
+import com.testing.db.DBWriter;
+import com.testing.listener.OnFileCreateListener;
+
+/**
+ * Live gauges read from pipeline components when JMX client asks for them.
+ */
+class PipelineGauges implements PipelineGaugesMBean
+{
+    private final OnFileCreateListener listener;
+    private final DBWriter dbWriter;
+
+    /**
+     * Instantiates a new pipeline gauges.
+     *
+     * @param listener the listener which queues files for handling
+     * @param dbWriter the database writer
+     */
+    PipelineGauges(OnFileCreateListener listener, DBWriter dbWriter)
+    {
+        this.listener = listener;
+        this.dbWriter = dbWriter;
+    }
+
+    @Override
+    public long getExecutorQueueSize()
+    {
+        return listener.getExecutorQueueSize();
+    }
+
+    @Override
+    public long getStabilizingFiles()
+    {
+        return listener.getStabilizingFiles();
+    }
+
+    @Override
+    public long getRetryingFiles()
+    {
+        return listener.getRetryingFiles();
+    }
+
+    @Override
+    public long getQueuedFiles()
+    {
+        return listener.getQueuedFiles();
+    }
+
+    @Override
+    public long getQueuedBytes()
+    {
+        return listener.getQueuedBytes();
+    }
+
+    @Override
+    public long getParsingFiles()
+    {
+        return listener.getParsingFiles();
+    }
+
+    @Override
+    public long getCommittingFiles()
+    {
+        return listener.getCommittingFiles();
+    }
+
+    @Override
+    public long getBufferedChunks()
+    {
+        return dbWriter.getBufferedChunks();
+    }
+
+    @Override
+    public long getActiveWriters()
+    {
+        return dbWriter.getActiveWriters();
+    }
+
+    @Override
+    public long getSpooledEntries()
+    {
+        return dbWriter.getSpooledEntries();
+    }
+
+    @Override
+    public long getBorrowedConnections()
+    {
+        return dbWriter.getBorrowedConnections();
+    }
+
+    @Override
+    public long getIdleConnections()
+    {
+        return dbWriter.getIdleConnections();
+    }
+
+    @Override
+    public long getStatementCacheHits()
+    {
+        return dbWriter.getStatementCacheHits();
+    }
+
+    @Override
+    public long getStatementCacheMisses()
+    {
+        return dbWriter.getStatementCacheMisses();
+    }
+}
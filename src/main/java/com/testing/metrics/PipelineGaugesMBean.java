@@ -0,0 +1,105 @@
+package com.testing.metrics;
+
+/**
+ * JMX view of live pipeline state.
+ */
+public interface PipelineGaugesMBean
+{
+    /**
+     * Gets number of tasks waiting in file handlers executor queue.
+     *
+     * @return the executor queue size
+     */
+    long getExecutorQueueSize();
+
+    /**
+     * Gets number of files waiting until producer completes writing them.
+     *
+     * @return the stabilizing files count
+     */
+    long getStabilizingFiles();
+
+    /**
+     * Gets number of files waiting for another attempt to record them to database.
+     *
+     * @return the retrying files count
+     */
+    long getRetryingFiles();
+
+    /**
+     * Gets number of files admitted for handling and not finished yet.
+     *
+     * @return the queued files count
+     */
+    long getQueuedFiles();
+
+    /**
+     * Gets total size of files admitted for handling and not finished yet.
+     *
+     * @return the queued files size in bytes
+     */
+    long getQueuedBytes();
+
+    /**
+     * Gets number of files which are parsed by the parse stage.
+     *
+     * @return the parsing files count
+     */
+    long getParsingFiles();
+
+    /**
+     * Gets number of parsed files waiting until the write stage commits their entries.
+     *
+     * @return the committing files count
+     */
+    long getCommittingFiles();
+
+    /**
+     * Gets number of chunks of entries waiting in ring buffer between parse and write stages.
+     *
+     * @return the buffered chunks count
+     */
+    long getBufferedChunks();
+
+    /**
+     * Gets number of write stage threads which are collecting or writing a batch.
+     *
+     * @return the active writers count
+     */
+    long getActiveWriters();
+
+    /**
+     * Gets number of entries waiting in spool until database is available.
+     *
+     * @return the spooled entries count
+     */
+    long getSpooledEntries();
+
+    /**
+     * Gets number of database connections borrowed from pool.
+     *
+     * @return the borrowed connections count
+     */
+    long getBorrowedConnections();
+
+    /**
+     * Gets number of open database connections waiting in pool.
+     *
+     * @return the idle connections count
+     */
+    long getIdleConnections();
+
+    /**
+     * Gets number of prepared statements taken from statement cache.
+     *
+     * @return the statement cache hits
+     */
+    long getStatementCacheHits();
+
+    /**
+     * Gets number of prepared statements which were not cached.
+     *
+     * @return the statement cache misses
+     */
+    long getStatementCacheMisses();
+}
@@ -0,0 +1,107 @@
+package com.testing.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histogram of one pipeline stage. Typical usage on the hot path:
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * Metrics.PARSED.record(start);
+ * </pre>
+ */
+public class StageMetrics implements StageMetricsMBean
+{
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Instantiates a new stage metrics.
+     *
+     * @param name the stage name used in JMX object name
+     */
+    StageMetrics(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Records stage passed successfully.
+     *
+     * @param startNanos the {@link System#nanoTime()} value when the stage was started
+     */
+    public void record(long startNanos)
+    {
+        histogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records stage failure.
+     */
+    public void recordError()
+    {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Gets stage name.
+     *
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return histogram.getCount();
+    }
+
+    @Override
+    public long getErrorCount()
+    {
+        return errors.get();
+    }
+
+    @Override
+    public double getMeanMicros()
+    {
+        long count = histogram.getCount();
+        return count == 0 ? 0 : histogram.getTotalNanos() / 1000.0 / count;
+    }
+
+    @Override
+    public long getMaxMicros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getMaxNanos());
+    }
+
+    @Override
+    public long getP50Micros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getPercentileNanos(0.5));
+    }
+
+    @Override
+    public long getP99Micros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getPercentileNanos(0.99));
+    }
+
+    @Override
+    public long getP999Micros()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getPercentileNanos(0.999));
+    }
+
+    @Override
+    public void reset()
+    {
+        histogram.reset();
+        errors.set(0);
+    }
+}
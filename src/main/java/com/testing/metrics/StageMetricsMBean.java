@@ -0,0 +1,61 @@
+package com.testing.metrics;
+
+/**
+ * JMX view of counters and latency of one pipeline stage.
+ */
+public interface StageMetricsMBean
+{
+    /**
+     * Gets number of files or entries passed the stage.
+     *
+     * @return the count
+     */
+    long getCount();
+
+    /**
+     * Gets number of failures at the stage.
+     *
+     * @return the error count
+     */
+    long getErrorCount();
+
+    /**
+     * Gets mean stage latency.
+     *
+     * @return the mean latency in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * Gets maximum stage latency.
+     *
+     * @return the max latency in microseconds
+     */
+    long getMaxMicros();
+
+    /**
+     * Gets median stage latency.
+     *
+     * @return the 50th percentile in microseconds
+     */
+    long getP50Micros();
+
+    /**
+     * Gets 99th percentile of stage latency.
+     *
+     * @return the 99th percentile in microseconds
+     */
+    long getP99Micros();
+
+    /**
+     * Gets 99.9th percentile of stage latency.
+     *
+     * @return the 99.9th percentile in microseconds
+     */
+    long getP999Micros();
+
+    /**
+     * Clears all counters.
+     */
+    void reset();
+}
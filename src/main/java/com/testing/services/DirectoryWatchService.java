@@ -8,5 +8,16 @@ package com.testing.services;
  */
 interface DirectoryWatchService extends Runnable
 {
+    /**
+     * Blocks the calling thread and notifies listeners about every pending event as soon as it arrives
+     * until the thread is interrupted. Used instead of periodical {@link #run()} calls.
+     */
+    void processEvents();
 
+    /**
+     * Notifies listeners about every matching file currently present in watched directories,
+     * used to recover events lost by the file system. Files are reported from the oldest to the newest
+     * by modification time across all watched directories.
+     */
+    void rescan();
 }
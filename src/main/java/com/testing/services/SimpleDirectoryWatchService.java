@@ -1,24 +1,34 @@
 package com.testing.services;
 
 import com.testing.listener.OnFileChangeListener;
+import com.testing.metrics.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 /**
  * A simple class which can monitor files and notify interested parties
- * listeners of file changes.
+ * listeners of file changes. In recursive mode the whole directory tree is registered
+ * with the same watch service, so one thread serves any number of directories.
  */
 public class SimpleDirectoryWatchService implements DirectoryWatchService
 {
@@ -28,6 +38,9 @@ public class SimpleDirectoryWatchService implements DirectoryWatchService
     private final ConcurrentMap<WatchKey, Path> watchKeyPathConcurrentMap;
     private final ConcurrentMap<Path, Set<OnFileChangeListener>> pathSetConcurrentMap;
     private final ConcurrentMap<OnFileChangeListener, Set<PathMatcher>> onFileChangeListenerSetConcurrentMap;
+    private final Path rootDirectory;
+    private final boolean recursive;
+    private final Predicate<Path> excludedDirectories;
 
     /**
      * Notifies the implementation of <em>OnFileChangeListener</em> interface that
@@ -41,6 +54,27 @@ public class SimpleDirectoryWatchService implements DirectoryWatchService
      */
     public SimpleDirectoryWatchService(OnFileChangeListener listener, String dirPath, String... globPatterns) throws IOException
     {
+        this(listener, dirPath, false, directory -> false, globPatterns);
+    }
+
+    /**
+     * Notifies the implementation of <em>OnFileChangeListener</em> interface that
+     * should be monitored for file system events in the directory and, if <code>recursive</code>
+     * is set, in all its subdirectories except excluded ones. Subdirectories inherit listeners
+     * of the directory where they were created.
+     *
+     * @param listener            the on file change listener
+     * @param dirPath             the monitoring dir path
+     * @param recursive           true if subdirectories should be watched
+     * @param excludedDirectories the subdirectories which are not watched with their subtrees
+     * @param globPatterns        the glob patterns
+     * @throws IOException If an I/O error occurs.
+     */
+    public SimpleDirectoryWatchService(OnFileChangeListener listener, String dirPath, boolean recursive,
+                                       Predicate<Path> excludedDirectories, String... globPatterns) throws IOException
+    {
+        this.recursive = recursive;
+        this.excludedDirectories = excludedDirectories;
         watchService = FileSystems.getDefault().newWatchService();
         watchKeyPathConcurrentMap = new ConcurrentHashMap<>();
         pathSetConcurrentMap = new ConcurrentHashMap<>();
@@ -57,13 +91,8 @@ public class SimpleDirectoryWatchService implements DirectoryWatchService
             throw new IllegalArgumentException(dirPath + " symbolic links is not supported.");
         }
 
-        if (!pathSetConcurrentMap.containsKey(dir))
-        {
-            WatchKey key = dir.register(watchService, ENTRY_CREATE);
-            watchKeyPathConcurrentMap.put(key, dir);
-            pathSetConcurrentMap.put(dir, Collections.newSetFromMap(new ConcurrentHashMap<>()));
-        }
-
+        rootDirectory = dir;
+        register(dir, Collections.newSetFromMap(new ConcurrentHashMap<>()));
         pathSetConcurrentMap.get(dir).add(listener);
 
         Set<PathMatcher> patterns = Collections.newSetFromMap(new ConcurrentHashMap<>());
@@ -80,7 +109,96 @@ public class SimpleDirectoryWatchService implements DirectoryWatchService
 
         onFileChangeListenerSetConcurrentMap.put(listener, patterns);
 
-        LOGGER.info("Watching files matching " + Arrays.toString(globPatterns) + " under " + dirPath + " for changes.");
+        if (recursive)
+        {
+            registerTree(dir, pathSetConcurrentMap.get(dir), false);
+        }
+
+        LOGGER.info("Watching files matching " + Arrays.toString(globPatterns) + " under " + dirPath
+                + (recursive ? " and " + (watchKeyPathConcurrentMap.size() - 1) + " subdirectories" : "") + " for changes.");
+    }
+
+    /**
+     * Registers directory with the watch service if it is not registered yet.
+     *
+     * @param dir       the directory
+     * @param listeners the listeners of the directory
+     * @return true if directory was registered by this call
+     * @throws IOException If an I/O error occurs.
+     */
+    private boolean register(Path dir, Set<OnFileChangeListener> listeners) throws IOException
+    {
+        if (pathSetConcurrentMap.putIfAbsent(dir, listeners) != null)
+        {
+            return false;
+        }
+        try
+        {
+            WatchKey key = dir.register(watchService, ENTRY_CREATE);
+            watchKeyPathConcurrentMap.put(key, dir);
+            return true;
+        } catch (IOException e)
+        {
+            pathSetConcurrentMap.remove(dir);
+            throw e;
+        }
+    }
+
+    /**
+     * Registers directory and all its not excluded subdirectories which are not registered yet.
+     * Directories are registered before they are scanned, so a file created concurrently is
+     * reported either by the scan or by the watch service. Files found by the scan are reported
+     * from the oldest to the newest across the whole tree. A directory which cannot be registered
+     * is skipped with its subtree and the rest of the tree is still watched.
+     *
+     * @param start     the top directory of the tree
+     * @param listeners the listeners of the tree
+     * @param scan      true if listeners should be notified of files already present in the tree
+     */
+    private void registerTree(Path start, Set<OnFileChangeListener> listeners, boolean scan)
+    {
+        List<Map.Entry<Path, FileTime>> files = new ArrayList<>();
+        try
+        {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                {
+                    if (!dir.equals(rootDirectory) && excludedDirectories.test(dir))
+                    {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    try
+                    {
+                        if (register(dir, listeners))
+                        {
+                            LOGGER.debug("Watching " + dir + " directory.");
+                        }
+                    } catch (IOException e)
+                    {
+                        LOGGER.error("Cannot watch " + dir + " directory, its subtree is skipped.", e);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (scan)
+                    {
+                        collectFiles(dir, files);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e)
+                {
+                    LOGGER.error("Cannot watch " + file + " directory.", e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e)
+        {
+            LOGGER.error("Cannot watch " + start + " directory tree.", e);
+        }
+        notifyOldestFirst(files);
     }
 
     /**
@@ -115,54 +233,233 @@ public class SimpleDirectoryWatchService implements DirectoryWatchService
 
     private Set<OnFileChangeListener> matchedListeners(Path dir, Path file)
     {
-        return pathSetConcurrentMap.get(dir)
+        Set<OnFileChangeListener> listeners = pathSetConcurrentMap.get(dir);
+        if (listeners == null)
+        {
+            return Collections.emptySet();
+        }
+        return listeners
                 .stream()
                 .filter(listener -> matchesAny(file, onFileChangeListenerSetConcurrentMap.get(listener)))
                 .collect(Collectors.toSet());
     }
 
-    private void notifyListeners(WatchKey key)
+    /**
+     * Notifies listeners of events of the key. Lost events are not rescanned here, as the watch service
+     * may signal overflow to every key at once.
+     *
+     * @param key the signalled watch key
+     * @return true if events of the key were lost
+     */
+    private boolean notifyListeners(WatchKey key)
     {
+        Path dir = watchKeyPathConcurrentMap.get(key);
+        boolean overflow = false;
         for (WatchEvent<?> event : key.pollEvents())
         {
             WatchEvent.Kind eventKind = event.kind();
+
+            if (eventKind.equals(OVERFLOW))
+            {
+                LOGGER.debug("Events were lost for " + dir + ".");
+                overflow = true;
+                continue;
+            }
+
             Path file = (Path) event.context();
 
             if (file != null)
             {
-                String absoluteFilePath =  watchKeyPathConcurrentMap.get(key).toString() + File.separator + file.toString();
-                if (eventKind.equals(ENTRY_CREATE))
+                String absoluteFilePath = dir.toString() + File.separator + file.toString();
+                if (eventKind.equals(ENTRY_CREATE) && recursive && isDirectory(dir.resolve(file)))
+                {
+                    registerTree(dir.resolve(file), pathSetConcurrentMap.get(dir), true);
+                }
+                else if (eventKind.equals(ENTRY_CREATE))
                 {
-                    matchedListeners(watchKeyPathConcurrentMap.get(key), file).forEach(listener -> listener.onFileChange(absoluteFilePath));
+                    long start = System.nanoTime();
+                    matchedListeners(dir, file).forEach(listener -> listener.onFileChange(absoluteFilePath));
+                    Metrics.DETECTED.record(start);
                 }
             }
         }
+        return overflow;
     }
 
-    @Override
-    public void run()
+    /**
+     * Tells if path is a directory, symbolic links are not followed.
+     *
+     * @param path the path
+     * @return true if path is an existing directory
+     */
+    private static boolean isDirectory(Path path)
     {
-        WatchKey key = watchService.poll();
-
-        if (key == null)
+        try
         {
-            LOGGER.info("No changes was registered in file");
-            return;
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+        } catch (IOException e)
+        {
+            return false;
         }
+    }
 
+    /**
+     * Notifies listeners of all events of the key and resets the key.
+     *
+     * @param key the signalled watch key
+     * @return true if events of the key were lost
+     */
+    private boolean processKey(WatchKey key)
+    {
         if (watchKeyPathConcurrentMap.get(key) == null)
         {
             LOGGER.error("Watch key not recognized.");
-            return;
+            return false;
         }
 
-        notifyListeners(key);
+        boolean overflow = notifyListeners(key);
 
         // Reset key to allow further events for this key to be processed.
         boolean valid = key.reset();
         if (!valid)
         {
-            watchKeyPathConcurrentMap.remove(key);
+            Path dir = watchKeyPathConcurrentMap.remove(key);
+            if (dir != null)
+            {
+                pathSetConcurrentMap.remove(dir);
+            }
+        }
+        return overflow;
+    }
+
+    @Override
+    public void rescan()
+    {
+        if (recursive)
+        {
+            Set<OnFileChangeListener> listeners = pathSetConcurrentMap.get(rootDirectory);
+            if (listeners != null)
+            {
+                registerTree(rootDirectory, listeners, true);
+            }
+        }
+        else
+        {
+            List<Map.Entry<Path, FileTime>> files = new ArrayList<>();
+            watchKeyPathConcurrentMap.values().forEach(dir -> collectFiles(dir, files));
+            notifyOldestFirst(files);
+        }
+    }
+
+    /**
+     * Adds every regular file of directory with its modification time to the list.
+     *
+     * @param dir   the watched directory
+     * @param files the found files
+     */
+    private void collectFiles(Path dir, List<Map.Entry<Path, FileTime>> files)
+    {
+        int found = files.size();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dir))
+        {
+            for (Path path : directoryStream)
+            {
+                BasicFileAttributes attributes;
+                try
+                {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e)
+                {
+                    continue;
+                } catch (IOException e)
+                {
+                    LOGGER.error("Cannot read attributes of " + path + ".", e);
+                    continue;
+                }
+                if (attributes.isRegularFile())
+                {
+                    files.add(new AbstractMap.SimpleImmutableEntry<>(path, attributes.lastModifiedTime()));
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e)
+        {
+            LOGGER.error("Cannot rescan " + dir + " directory.", e);
+        }
+        if (files.size() > found)
+        {
+            LOGGER.debug("Found " + (files.size() - found) + " files in " + dir + " directory.");
+        }
+    }
+
+    /**
+     * Notifies listeners of found files from the oldest to the newest by modification time.
+     *
+     * @param files the found files
+     */
+    private void notifyOldestFirst(List<Map.Entry<Path, FileTime>> files)
+    {
+        files.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<Path, FileTime> entry : files)
+        {
+            Path path = entry.getKey();
+            matchedListeners(path.getParent(), path.getFileName()).forEach(listener -> listener.onFileChange(path.toString()));
+        }
+    }
+
+    @Override
+    public void processEvents()
+    {
+        LOGGER.info("Waiting for file system events.");
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                processKeys(watchService.take());
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e)
+            {
+                LOGGER.error("Watch service was closed.", e);
+                return;
+            }
+        }
+        LOGGER.info("Waiting for file system events was interrupted.");
+    }
+
+    @Override
+    public void run()
+    {
+        WatchKey key = watchService.poll();
+
+        if (key == null)
+        {
+            LOGGER.info("No changes was registered in file");
+            return;
+        }
+
+        processKeys(key);
+    }
+
+    /**
+     * Processes the key and all keys signalled meanwhile. If events of any of them were lost, the whole
+     * tree is rescanned once after all keys are processed.
+     *
+     * @param key the first signalled key
+     */
+    private void processKeys(WatchKey key)
+    {
+        boolean overflow = false;
+        do
+        {
+            overflow |= processKey(key);
+            key = watchService.poll();
+        }
+        while (key != null);
+        if (overflow)
+        {
+            LOGGER.info("Events were lost, " + rootDirectory + " will be rescanned.");
+            rescan();
         }
     }
 }
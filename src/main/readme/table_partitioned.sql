@@ -0,0 +1,7 @@
+CREATE TABLE public.table_ilogos (
+  id BIGSERIAL NOT NULL,
+  timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT now(),
+  content TEXT,
+  creation_date TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  PRIMARY KEY (id, creation_date)
+) PARTITION BY RANGE (creation_date);
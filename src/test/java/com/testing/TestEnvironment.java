@@ -0,0 +1,94 @@
+package com.testing;
+
+import com.testing.config.Configuration;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Initializes {@link Configuration} for tests with a new embedded H2 database in PostgreSQL compatibility mode.
+ */
+public final class TestEnvironment
+{
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private TestEnvironment()
+    {
+    }
+
+    /**
+     * Creates monitoring folder, configuration file and table 'table_ilogos' in a new in-memory database.
+     *
+     * @param folder    the folder of test files
+     * @param overrides the configuration properties which replace default test values
+     * @return the url of the database
+     * @throws IOException  if files cannot be created
+     * @throws SQLException if table cannot be created
+     */
+    public static String init(Path folder, Map<String, String> overrides) throws IOException, SQLException
+    {
+        String dbUrl = "jdbc:h2:mem:test" + DATABASES.incrementAndGet() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        Path monitoringFolder = Files.createDirectories(folder.resolve("monitoring"));
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("JDBC_DRIVER_NAME", "org.h2.Driver");
+        properties.put("DB_URL", dbUrl);
+        properties.put("DB_USER_NAME", "sa");
+        properties.put("USER_PASSWORD", "");
+        properties.put("DB_TABLE_NAME", "table_ilogos");
+        properties.put("MONITORING_FOLDER", monitoringFolder.toString());
+        properties.put("FILE_NAME_PATTERN", "*");
+        properties.put("MONITORING_PERIOD", "");
+        properties.put("PROCESSED_FILES_FOLDER", "");
+        properties.put("CORRUPTED_FILES_FOLDER", "");
+        properties.putAll(overrides);
+
+        Path configurationFile = folder.resolve("config.properties");
+        try (Writer writer = Files.newBufferedWriter(configurationFile, StandardCharsets.UTF_8))
+        {
+            for (Map.Entry<String, String> property : properties.entrySet())
+            {
+                writer.write(property.getKey() + "=" + property.getValue().replace("\\", "\\\\") + "\n");
+            }
+        }
+        if (!Configuration.initConfiguration(configurationFile.toString()))
+        {
+            throw new IllegalStateException("Test configuration is not valid.");
+        }
+        try (Connection connection = DriverManager.getConnection(dbUrl, "sa", "");
+             Statement statement = connection.createStatement())
+        {
+            statement.execute("CREATE TABLE table_ilogos (id BIGSERIAL PRIMARY KEY, content VARCHAR(1024), "
+                    + "creation_date VARCHAR(100))");
+        }
+        return dbUrl;
+    }
+
+    /**
+     * Counts rows of 'table_ilogos'.
+     *
+     * @param dbUrl the url of the database
+     * @return the rows count
+     * @throws SQLException if rows cannot be counted
+     */
+    public static int countRows(String dbUrl) throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(dbUrl, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM table_ilogos"))
+        {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
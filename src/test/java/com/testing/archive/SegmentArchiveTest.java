@@ -0,0 +1,180 @@
+package com.testing.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SegmentArchiveTest
+{
+    private static final long LARGE_SEGMENT = 1024 * 1024;
+    private static final long LONG_PERIOD = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void extractsAppendedFiles() throws Exception
+    {
+        Path archiveFolder = temporaryFolder.newFolder("archive").toPath();
+        SegmentArchive archive = new SegmentArchive(archiveFolder, LARGE_SEGMENT, LONG_PERIOD);
+        Path first = file("first.xml", content(100_000, 1));
+        Path second = file("second.xml", content(10, 2));
+
+        archive.append(first);
+        archive.append(second);
+
+        assertEquals(1, ArchiveLookup.listSegments(archiveFolder).size());
+        assertArrayEquals(Files.readAllBytes(first), extract(archiveFolder, "first.xml"));
+        assertArrayEquals(Files.readAllBytes(second), extract(archiveFolder, second.toAbsolutePath().toString()));
+        assertNull(ArchiveLookup.extract(archiveFolder, "missing.xml", temporaryFolder.newFolder().toPath()));
+    }
+
+    @Test
+    public void extractsLatestCopyFromRolledSegments() throws Exception
+    {
+        Path archiveFolder = temporaryFolder.newFolder("archive").toPath();
+        SegmentArchive archive = new SegmentArchive(archiveFolder, 1, LONG_PERIOD);
+        Path file = file("entries.xml", content(1000, 1));
+
+        archive.append(file);
+        archive.append(file("other.xml", content(1000, 2)));
+        Files.write(file, content(2000, 3));
+        archive.append(file);
+
+        assertEquals(3, ArchiveLookup.listSegments(archiveFolder).size());
+        assertArrayEquals(content(2000, 3), extract(archiveFolder, "entries.xml"));
+        assertArrayEquals(content(1000, 2), extract(archiveFolder, "other.xml"));
+    }
+
+    @Test
+    public void rollsSegmentAfterPeriod() throws Exception
+    {
+        Path archiveFolder = temporaryFolder.newFolder("archive").toPath();
+        SegmentArchive archive = new SegmentArchive(archiveFolder, LARGE_SEGMENT, 50);
+
+        archive.append(file("first.xml", content(10, 1)));
+        Thread.sleep(100);
+        archive.append(file("second.xml", content(10, 2)));
+
+        assertEquals(2, ArchiveLookup.listSegments(archiveFolder).size());
+        assertArrayEquals(content(10, 1), extract(archiveFolder, "first.xml"));
+        assertArrayEquals(content(10, 2), extract(archiveFolder, "second.xml"));
+    }
+
+    @Test
+    public void continuesAfterSegmentsOfPreviousRun() throws Exception
+    {
+        Path archiveFolder = temporaryFolder.newFolder("archive").toPath();
+        new SegmentArchive(archiveFolder, LARGE_SEGMENT, LONG_PERIOD).append(file("first.xml", content(10, 1)));
+
+        new SegmentArchive(archiveFolder, LARGE_SEGMENT, LONG_PERIOD).append(file("second.xml", content(10, 2)));
+
+        assertEquals(2, ArchiveLookup.listSegments(archiveFolder).size());
+        assertArrayEquals(content(10, 1), extract(archiveFolder, "first.xml"));
+        assertArrayEquals(content(10, 2), extract(archiveFolder, "second.xml"));
+    }
+
+    @Test
+    public void cutsOffMemberWhichFailedMidWrite() throws Exception
+    {
+        Path archiveFolder = temporaryFolder.newFolder("archive").toPath();
+        SegmentArchive archive = new SegmentArchive(archiveFolder, LARGE_SEGMENT, LONG_PERIOD);
+        Path first = file("first.xml", content(1000, 1));
+        Path unreadable = temporaryFolder.newFolder("unreadable.xml").toPath();
+        Path second = file("second.xml", content(1000, 2));
+
+        archive.append(first);
+        assertNotArchived(archive, unreadable);
+        archive.append(second);
+
+        assertNull(ArchiveLookup.extract(archiveFolder, "unreadable.xml", temporaryFolder.newFolder().toPath()));
+        assertArrayEquals(content(1000, 2), extract(archiveFolder, "second.xml"));
+        List<Path> segments = ArchiveLookup.listSegments(archiveFolder);
+        assertEquals(1, segments.size());
+        List<String> index = Files.readAllLines(segments.get(0).resolveSibling(
+                ArchiveLookup.segmentName(ArchiveLookup.sequenceOf(segments.get(0))) + SegmentArchive.INDEX_SUFFIX));
+        assertEquals(2, index.size());
+        String[] firstEntry = index.get(0).split("\t");
+        long firstEnd = Long.parseLong(firstEntry[0]) + Long.parseLong(firstEntry[1]);
+        assertEquals(firstEnd, Long.parseLong(index.get(1).split("\t")[0]));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(content(1000, 1));
+        expected.write(content(1000, 2));
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(segments.get(0))))
+        {
+            assertArrayEquals(expected.toByteArray(), readAll(input));
+        }
+    }
+
+    @Test
+    public void rejectsPathWhichBreaksIndexLine() throws Exception
+    {
+        Path archiveFolder = temporaryFolder.newFolder("archive").toPath();
+        SegmentArchive archive = new SegmentArchive(archiveFolder, LARGE_SEGMENT, LONG_PERIOD);
+
+        assertNotArchived(archive, file("tab\tname.xml", content(10, 1)));
+        assertNotArchived(archive, file("line\nname.xml", content(10, 2)));
+        archive.append(file("name.xml", content(10, 3)));
+
+        assertNull(ArchiveLookup.extract(archiveFolder, "tab\tname.xml", temporaryFolder.newFolder().toPath()));
+        assertArrayEquals(content(10, 3), extract(archiveFolder, "name.xml"));
+    }
+
+    private static void assertNotArchived(SegmentArchive archive, Path file)
+    {
+        try
+        {
+            archive.append(file);
+            fail("File " + file + " must not be archived.");
+        } catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    private byte[] extract(Path archiveFolder, String fileName) throws IOException
+    {
+        return Files.readAllBytes(ArchiveLookup.extract(archiveFolder, fileName, temporaryFolder.newFolder().toPath()));
+    }
+
+    private Path file(String name, byte[] content) throws IOException
+    {
+        return Files.write(temporaryFolder.getRoot().toPath().resolve(name), content);
+    }
+
+    private static byte[] content(int length, int seed)
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) ('a' + (i * seed + i / 7) % 26);
+        }
+        return content;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = input.read(chunk)) != -1)
+        {
+            output.write(chunk, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
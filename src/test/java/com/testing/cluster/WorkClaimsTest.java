@@ -0,0 +1,237 @@
+package com.testing.cluster;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkClaimsTest
+{
+    private static final int NODES = 4;
+    private static final int FILES = 2000;
+    private static final long TIMEOUT = 60000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void everyFileIsClaimedByOneProcess() throws Exception
+    {
+        Path watch = temporaryFolder.newFolder("watch").toPath();
+        Path claims = temporaryFolder.newFolder("claims").toPath();
+        for (int i = 0; i < FILES; i++)
+        {
+            Files.createFile(watch.resolve("file" + i + ".xml"));
+        }
+        Path start = temporaryFolder.getRoot().toPath().resolve("start");
+
+        List<Process> processes = new ArrayList<>();
+        for (int node = 0; node < NODES; node++)
+        {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Node.class.getName(),
+                    claims.toString(), watch.toString(), "node" + node, start.toString()).redirectErrorStream(true).start());
+        }
+        Files.createFile(start);
+        int claimed = 0;
+        for (Process process : processes)
+        {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream())))
+            {
+                String line;
+                String last = null;
+                while ((line = reader.readLine()) != null)
+                {
+                    last = line;
+                }
+                assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+                assertEquals(last, 0, process.exitValue());
+                claimed += Integer.parseInt(last);
+            }
+        }
+
+        assertEquals(FILES, claimed);
+        assertEquals(FILES, countFiles(claims));
+        assertEquals(0, countFiles(watch));
+    }
+
+    @Test
+    public void claimsOfNodeWithoutHeartbeatAreRecovered() throws Exception
+    {
+        Path watch = temporaryFolder.newFolder("watch").toPath();
+        Path claims = temporaryFolder.newFolder("claims").toPath();
+        Files.createDirectories(watch.resolve("sub"));
+        Path first = Files.createFile(watch.resolve("first.xml"));
+        Path second = Files.createFile(watch.resolve("sub").resolve("second.xml"));
+
+        WorkClaims dead = new WorkClaims(claims, watch, "dead", TIMEOUT);
+        WorkClaims alive = new WorkClaims(claims, watch, "alive", TIMEOUT);
+        Path claimed = dead.claim(first);
+        assertEquals(claims.resolve("dead").resolve("first.xml"), claimed);
+        assertNull(alive.claim(first));
+        Path claimedSecond = dead.claim(second);
+        Files.createDirectories(claimedSecond.resolveSibling("not_recorded"));
+        Files.move(claimedSecond, claimedSecond.resolveSibling("not_recorded").resolve("second.xml"));
+
+        assertEquals(0, alive.recoverExpired());
+        Files.setLastModifiedTime(claims.resolve("dead.heartbeat"), FileTime.fromMillis(System.currentTimeMillis() - 2 * TIMEOUT));
+        assertEquals(2, alive.recoverExpired());
+        assertTrue(Files.exists(first));
+        assertTrue(Files.exists(second));
+        assertFalse(Files.exists(claims.resolve("dead")));
+        assertEquals(0, alive.recoverExpired());
+    }
+
+    @Test
+    public void nodeWithoutHeartbeatFencesItself() throws Exception
+    {
+        Path watch = temporaryFolder.newFolder("watch").toPath();
+        Path claims = temporaryFolder.newFolder("claims").toPath();
+        Path first = Files.createFile(watch.resolve("first.xml"));
+        Path second = Files.createFile(watch.resolve("second.xml"));
+
+        long timeout = 400;
+        WorkClaims node = new WorkClaims(claims, watch, "node", timeout);
+        Path claimed = node.claim(first);
+        assertFalse(node.isFenced());
+        assertTrue(node.holds(claimed));
+
+        Thread.sleep(timeout);
+        assertTrue(node.isFenced());
+        assertFalse(node.holds(claimed));
+        try
+        {
+            node.claim(second);
+            fail("Fenced node claimed a file.");
+        } catch (IOException expected)
+        {
+            assertTrue(Files.exists(second));
+        }
+
+        assertTrue(node.heartbeat());
+        assertFalse(node.isFenced());
+        assertTrue(node.holds(claimed));
+        assertFalse(node.heartbeat());
+    }
+
+    @Test
+    public void recoveredFileIsNotHeld() throws Exception
+    {
+        Path watch = temporaryFolder.newFolder("watch").toPath();
+        Path claims = temporaryFolder.newFolder("claims").toPath();
+        Path file = Files.createFile(watch.resolve("file.xml"));
+
+        WorkClaims node = new WorkClaims(claims, watch, "node", TIMEOUT);
+        Path claimed = node.claim(file);
+        Files.move(claimed, file);
+        assertFalse(node.holds(claimed));
+    }
+
+    @Test
+    public void claimAndRecoveryNeverReplaceFileWithTheSameName() throws Exception
+    {
+        Path watch = temporaryFolder.newFolder("watch").toPath();
+        Path claims = temporaryFolder.newFolder("claims").toPath();
+        Path file = watch.resolve("file.xml");
+
+        WorkClaims dead = new WorkClaims(claims, watch, "dead", TIMEOUT);
+        WorkClaims alive = new WorkClaims(claims, watch, "alive", TIMEOUT);
+        Files.write(file, "first".getBytes(StandardCharsets.UTF_8));
+        Path first = dead.claim(file);
+        Files.write(file, "second".getBytes(StandardCharsets.UTF_8));
+        Path second = dead.claim(file);
+        assertFalse(first.equals(second));
+        assertEquals("first", new String(Files.readAllBytes(first), StandardCharsets.UTF_8));
+        assertEquals("second", new String(Files.readAllBytes(second), StandardCharsets.UTF_8));
+
+        Files.write(file, "third".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(claims.resolve("dead.heartbeat"), FileTime.fromMillis(System.currentTimeMillis() - 2 * TIMEOUT));
+        assertEquals(2, alive.recoverExpired());
+        List<String> contents = new ArrayList<>();
+        try (Stream<Path> files = Files.list(watch))
+        {
+            for (Path recovered : files.collect(Collectors.toList()))
+            {
+                contents.add(new String(Files.readAllBytes(recovered), StandardCharsets.UTF_8));
+            }
+        }
+        Collections.sort(contents);
+        assertEquals(Arrays.asList("first", "second", "third"), contents);
+    }
+
+    @Test
+    public void interruptedClaimIsFinishedOnResume() throws Exception
+    {
+        Path watch = temporaryFolder.newFolder("watch").toPath();
+        Path claims = temporaryFolder.newFolder("claims").toPath();
+        Path file = Files.createFile(watch.resolve("file.xml"));
+
+        WorkClaims node = new WorkClaims(claims, watch, "node", TIMEOUT);
+        Path claimed = claims.resolve("node").resolve("file.xml");
+        Files.createLink(claimed, file);
+
+        assertEquals(Collections.singletonList(claimed), node.getClaimedFiles());
+        assertFalse(Files.exists(file));
+        assertTrue(Files.exists(claimed));
+    }
+
+    private static long countFiles(Path folder) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(folder))
+        {
+            return paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".xml")).count();
+        }
+    }
+
+    /**
+     * Process which claims all files of watch folder and prints number of files it claimed.
+     */
+    public static class Node
+    {
+        public static void main(String[] args) throws Exception
+        {
+            WorkClaims workClaims = new WorkClaims(Paths.get(args[0]), Paths.get(args[1]), args[2], TIMEOUT);
+            Path start = Paths.get(args[3]);
+            while (!Files.exists(start))
+            {
+                Thread.sleep(1);
+            }
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> paths = Files.list(Paths.get(args[1])))
+            {
+                paths.forEach(files::add);
+            }
+            int claimed = 0;
+            for (Path file : files)
+            {
+                if (workClaims.claim(file) != null)
+                {
+                    claimed++;
+                }
+            }
+            System.out.println(claimed);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.testing.db;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest
+{
+    private static final long OPEN_DURATION = 100;
+
+    @Test
+    public void opensAfterConsecutiveFailures()
+    {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(3, OPEN_DURATION);
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterOpenDuration() throws Exception
+    {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, OPEN_DURATION);
+        circuitBreaker.recordFailure();
+        assertFalse(circuitBreaker.allowRequest());
+        Thread.sleep(OPEN_DURATION + 20);
+
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+        Thread.sleep(OPEN_DURATION + 20);
+
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void recognizesConnectionFailures()
+    {
+        assertTrue(CircuitBreaker.isConnectionFailure(new SQLTransientConnectionException("timeout")));
+        assertTrue(CircuitBreaker.isConnectionFailure(new SQLException("refused", "08001")));
+        assertTrue(CircuitBreaker.isConnectionFailure(new SQLException("batch failed",
+                new SQLException("broken pipe", "08006"))));
+        assertFalse(CircuitBreaker.isConnectionFailure(new SQLIntegrityConstraintViolationException("duplicate", "23505")));
+        assertFalse(CircuitBreaker.isConnectionFailure(new SQLException("syntax", "42601")));
+    }
+}
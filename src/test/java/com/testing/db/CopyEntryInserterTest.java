@@ -0,0 +1,43 @@
+package com.testing.db;
+
+import com.testing.TestEnvironment;
+import com.testing.db.data.CustomXmlEntry;
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.ColumnMapping;
+import com.testing.mapping.EntryMapping;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class CopyEntryInserterTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void escapesDelimitersAndNulls() throws Exception
+    {
+        TestEnvironment.init(temporaryFolder.getRoot().toPath(), Collections.emptyMap());
+        ColumnMapping[] columns = EntryMapping.getInstance().getColumns().toArray(new ColumnMapping[0]);
+        CopyEntryInserter.CopyBuffer buffer = new CopyEntryInserter.CopyBuffer();
+
+        buffer.appendRow(columns, entry("tab\there\nnew line\r\\N", null));
+        buffer.appendRow(columns, entry("", "Запись 😀 \uD83D"));
+
+        assertEquals("tab\\there\\nnew line\\r\\\\N\t\\N\n\tЗапись 😀 ?\n",
+                new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static XmlEntry entry(String content, String creationDate)
+    {
+        XmlEntry entry = new CustomXmlEntry(2);
+        entry.setValue(0, content);
+        entry.setValue(1, creationDate);
+        return entry;
+    }
+}
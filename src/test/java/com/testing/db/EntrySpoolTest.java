@@ -0,0 +1,219 @@
+package com.testing.db;
+
+import com.testing.TestEnvironment;
+import com.testing.db.data.CustomXmlEntry;
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.EntryMapping;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EntrySpoolTest
+{
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private EntryMapping mapping;
+    private Path folder;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        TestEnvironment.init(temporaryFolder.getRoot().toPath(), Collections.emptyMap());
+        mapping = EntryMapping.getInstance();
+        folder = temporaryFolder.getRoot().toPath().resolve("spool");
+    }
+
+    @Test
+    public void replaysAppendedEntriesInOrder() throws Exception
+    {
+        EntrySpool spool = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        spool.append(Arrays.asList(entry("a", "1"), entry("b", null)));
+        spool.append(Collections.singletonList(entry("Запись", "3")));
+        assertEquals(3, spool.getPendingEntries());
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(3, spool.replay(batch -> collect(batch, replayed), 2));
+        assertEquals(Arrays.asList("a:1", "b:null", "Запись:3"), replayed);
+        assertTrue(spool.isEmpty());
+        assertEquals(0, spool.replay(batch -> fail("spool is empty"), 2));
+    }
+
+    @Test
+    public void keepsEntriesAfterReopen() throws Exception
+    {
+        EntrySpool spool = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        spool.append(Arrays.asList(entry("a", "1"), entry("b", "2")));
+
+        EntrySpool reopened = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        assertEquals(2, reopened.getPendingEntries());
+        reopened.append(Collections.singletonList(entry("c", "3")));
+        List<String> replayed = new ArrayList<>();
+        reopened.replay(batch -> collect(batch, replayed), 10);
+        assertEquals(Arrays.asList("a:1", "b:2", "c:3"), replayed);
+    }
+
+    @Test
+    public void resumesFromOffsetOfLastCommittedBatch() throws Exception
+    {
+        EntrySpool spool = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        spool.append(Collections.singletonList(entry("a", "1")));
+        spool.append(Collections.singletonList(entry("b", "2")));
+        spool.append(Collections.singletonList(entry("c", "3")));
+
+        List<String> replayed = new ArrayList<>();
+        try
+        {
+            spool.replay(batch ->
+            {
+                if (!replayed.isEmpty())
+                {
+                    throw new SQLException("connection lost", "08006");
+                }
+                collect(batch, replayed);
+            }, 1);
+            fail("replay should fail");
+        } catch (EntrySpool.SpoolReplayException e)
+        {
+            assertEquals("08006", e.getSQLState());
+        }
+        assertEquals(2, spool.getPendingEntries());
+
+        EntrySpool reopened = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        assertEquals(2, reopened.getPendingEntries());
+        reopened.replay(batch -> collect(batch, replayed), 1);
+        assertEquals(Arrays.asList("a:1", "b:2", "c:3"), replayed);
+        assertTrue(reopened.isEmpty());
+    }
+
+    @Test
+    public void skipsTornRecordAtEndOfSegment() throws Exception
+    {
+        EntrySpool spool = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        spool.append(Collections.singletonList(entry("a", "1")));
+        try (Stream<Path> segments = Files.list(folder))
+        {
+            Path segment = segments.filter(path -> path.toString().endsWith(".spool")).findFirst().get();
+            Files.write(segment, new byte[]{0, 0, 0, 20, 0, 0, 0, 1, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        EntrySpool reopened = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        assertEquals(1, reopened.getPendingEntries());
+        List<String> replayed = new ArrayList<>();
+        reopened.replay(batch -> collect(batch, replayed), 10);
+        assertEquals(Collections.singletonList("a:1"), replayed);
+        assertTrue(reopened.isEmpty());
+    }
+
+    @Test
+    public void movesRejectedSegmentAside() throws Exception
+    {
+        EntrySpool spool = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        spool.append(Collections.singletonList(entry("a", "1")));
+        try
+        {
+            spool.replay(batch ->
+            {
+                throw new SQLException("value too long", "22001");
+            }, 10);
+            fail("replay should fail");
+        } catch (EntrySpool.SpoolReplayException e)
+        {
+            spool.moveToFailed(e.getSequence());
+        }
+
+        assertTrue(spool.isEmpty());
+        assertTrue(new EntrySpool(folder, SEGMENT_SIZE, mapping).isEmpty());
+        try (Stream<Path> failed = Files.list(folder.resolve("failed")))
+        {
+            assertEquals(1, failed.count());
+        }
+    }
+
+    @Test
+    public void movesUnreadableSegmentAside() throws Exception
+    {
+        EntrySpool spool = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        spool.append(Collections.singletonList(entry("a", "1")));
+        try (Stream<Path> segments = Files.list(folder))
+        {
+            Path segment = segments.filter(path -> path.toString().endsWith(".spool")).findFirst().get();
+            Files.write(segment, record(3), StandardOpenOption.APPEND);
+        }
+
+        EntrySpool reopened = new EntrySpool(folder, SEGMENT_SIZE, mapping);
+        assertEquals(2, reopened.getPendingEntries());
+        List<String> replayed = new ArrayList<>();
+        try
+        {
+            reopened.replay(batch -> collect(batch, replayed), 10);
+            fail("replay should fail");
+        } catch (EntrySpool.SpoolReadException e)
+        {
+            reopened.moveToFailed(e.getSequence());
+        }
+
+        assertTrue(replayed.isEmpty());
+        assertTrue(reopened.isEmpty());
+        try (Stream<Path> failed = Files.list(folder.resolve("failed")))
+        {
+            assertEquals(1, failed.count());
+        }
+    }
+
+    /**
+     * Builds record of one entry with empty values written by mapping with other number of columns.
+     */
+    private static byte[] record(int columnCount)
+    {
+        ByteBuffer payload = ByteBuffer.allocate(4 + 4 * columnCount);
+        payload.putInt(columnCount);
+        for (int i = 0; i < columnCount; i++)
+        {
+            payload.putInt(0);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.capacity() + 4);
+        record.putInt(payload.capacity());
+        record.putInt(1);
+        record.put(payload.array());
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    private static void collect(List<XmlEntry> batch, List<String> replayed)
+    {
+        for (XmlEntry xmlEntry : batch)
+        {
+            replayed.add(xmlEntry.getValue(0) + ":" + xmlEntry.getValue(1));
+        }
+    }
+
+    private static XmlEntry entry(String content, String creationDate)
+    {
+        XmlEntry entry = new CustomXmlEntry(2);
+        entry.setValue(0, content);
+        entry.setValue(1, creationDate);
+        return entry;
+    }
+}
@@ -0,0 +1,149 @@
+package com.testing.db;
+
+import com.testing.TestEnvironment;
+import com.testing.db.connection.ConnectionPool;
+import com.testing.db.data.CustomXmlEntry;
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.EntryMapping;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupCommitWriterTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String dbUrl;
+    private ConnectionPool connectionPool;
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dbUrl = TestEnvironment.init(temporaryFolder.getRoot().toPath(), Collections.emptyMap());
+        connectionPool = new ConnectionPool(1, 2);
+    }
+
+    @After
+    public void tearDown()
+    {
+        connectionPool.close();
+    }
+
+    @Test
+    public void collectsEntriesUntilLingerIsOver() throws Exception
+    {
+        GroupCommitWriter writer = newWriter(100, 300);
+        long start = System.nanoTime();
+        CompletableFuture<Void> first = writer.submit(entries("first", 3));
+        CompletableFuture<Void> second = writer.submit(entries("second", 2));
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(Collections.singletonList(5), batchSizes);
+        assertEquals(5, TestEnvironment.countRows(dbUrl));
+    }
+
+    @Test
+    public void flushesFullBatchWithoutLinger() throws Exception
+    {
+        GroupCommitWriter writer = newWriter(4, TimeUnit.MINUTES.toMillis(1));
+        writer.write(entries("full", 4));
+
+        assertEquals(Collections.singletonList(4), batchSizes);
+        assertEquals(4, TestEnvironment.countRows(dbUrl));
+    }
+
+    @Test
+    public void failsOnlyPartWithRejectedEntry() throws Exception
+    {
+        GroupCommitWriter writer = newWriter(100, 300);
+        List<XmlEntry> rejected = entries("rejected", 2);
+        rejected.get(1).setValue(0, new String(new char[2000]).replace('\0', 'x'));
+        CompletableFuture<Void> before = writer.submit(entries("before", 3));
+        CompletableFuture<Void> failed = writer.submit(rejected);
+        CompletableFuture<Void> after = writer.submit(entries("after", 2));
+
+        before.get(5, TimeUnit.SECONDS);
+        after.get(5, TimeUnit.SECONDS);
+        assertFailed(failed, SQLException.class);
+        assertEquals(5, TestEnvironment.countRows(dbUrl));
+    }
+
+    @Test
+    public void keepsWritingAfterRuntimeException() throws Exception
+    {
+        GroupCommitWriter writer = new GroupCommitWriter(connectionPool, (conn, table, entries) ->
+        {
+            if ("boom".equals(entries.get(0).getValue(0)))
+            {
+                throw new IllegalStateException("Entry cannot be bound.");
+            }
+            new BatchEntryInserter(connectionPool, EntryMapping.getInstance()).insert(conn, table, entries);
+        }, "table_ilogos", 100, 0, 1, 16);
+
+        assertFailed(writer.submit(entries("boom", 1)), IllegalStateException.class);
+        try
+        {
+            writer.write(entries("boom", 1));
+            fail("Entry was written.");
+        } catch (SQLException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        writer.write(entries("next", 2));
+        assertEquals(2, TestEnvironment.countRows(dbUrl));
+    }
+
+    private GroupCommitWriter newWriter(int batchSize, long lingerMillis)
+    {
+        BatchEntryInserter inserter = new BatchEntryInserter(connectionPool, EntryMapping.getInstance());
+        return new GroupCommitWriter(connectionPool, (conn, table, entries) ->
+        {
+            inserter.insert(conn, table, entries);
+            batchSizes.add(entries.size());
+        }, "table_ilogos", batchSize, lingerMillis, 1, 16);
+    }
+
+    private static List<XmlEntry> entries(String content, int count)
+    {
+        List<XmlEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            XmlEntry entry = new CustomXmlEntry(2);
+            entry.setValue(0, content);
+            entry.setValue(1, "2014-01-01 00:00:00");
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static void assertFailed(CompletableFuture<Void> future, Class<? extends Exception> failureClass) throws Exception
+    {
+        try
+        {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Entries were committed.");
+        } catch (ExecutionException e)
+        {
+            assertTrue(String.valueOf(e.getCause()), failureClass.isInstance(e.getCause()));
+        }
+    }
+}
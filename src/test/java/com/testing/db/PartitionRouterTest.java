@@ -0,0 +1,180 @@
+package com.testing.db;
+
+import com.testing.TestEnvironment;
+import com.testing.config.Configuration;
+import com.testing.config.PartitionPeriod;
+import com.testing.db.connection.ConnectionPool;
+import com.testing.db.connection.DBConnection;
+import com.testing.db.data.CustomXmlEntry;
+import com.testing.db.data.XmlEntry;
+import com.testing.mapping.EntryMapping;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionRouterTest
+{
+    private static final DateTimeFormatter DAY_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private String dbUrl;
+    private ConnectionPool connectionPool;
+    private PartitionRouter router;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("PARTITION_PERIOD", "DAY");
+        dbUrl = TestEnvironment.init(temporaryFolder.newFolder().toPath(), properties);
+        EntryMapping.initMapping("");
+        EntryMapping mapping = EntryMapping.getInstance();
+        connectionPool = new ConnectionPool(1, 2);
+        router = new PartitionRouter(mapping, mapping.indexOf("creation_date"), PartitionPeriod.DAY, 1, 3,
+                new BatchEntryInserter(connectionPool, mapping), new DBConnection("org.h2.Driver", dbUrl, "sa", ""));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        connectionPool.close();
+        TestEnvironment.init(temporaryFolder.newFolder().toPath(), Collections.emptyMap());
+        EntryMapping.initMapping("");
+    }
+
+    @Test
+    public void acceptsOnlyMappedTimestampColumnAndZeroPartitionsAhead() throws Exception
+    {
+        EntryMapping mapping = EntryMapping.getInstance();
+        assertEquals(mapping.indexOf("creation_date"), mapping.indexOfTimestamp("creation_date"));
+        assertRejected(mapping, "content");
+        assertRejected(mapping, "missing");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("PARTITION_PERIOD", "DAY");
+        properties.put("PARTITION_COLUMN", "content");
+        properties.put("PARTITIONS_AHEAD", "0");
+        TestEnvironment.init(temporaryFolder.newFolder().toPath(), properties);
+        assertFalse(EntryMapping.initMapping(""));
+        assertEquals(0, Configuration.getPartitionsAhead());
+    }
+
+    @Test
+    public void routesEntriesOutOfKeptPartitionsToOverflow() throws Exception
+    {
+        LocalDate today = LocalDate.now();
+        insert(Arrays.asList(entry(today), entry(today.minusDays(2)), entry(today.plusDays(1)),
+                entry(today.minusDays(3)), entry(today.plusDays(2)), entry(today.plusYears(10))));
+
+        assertEquals(1, countRows(partition(today)));
+        assertEquals(1, countRows(partition(today.minusDays(2))));
+        assertEquals(1, countRows(partition(today.plusDays(1))));
+        assertEquals(3, countRows("table_ilogos_overflow"));
+        assertFalse(tableExists(partition(today.minusDays(3))));
+        assertFalse(tableExists(partition(today.plusDays(2))));
+    }
+
+    @Test
+    public void keepsPartitionCreatedForRolledBackEntries() throws Exception
+    {
+        LocalDate today = LocalDate.now();
+        Connection conn = connectionPool.getConnectionFromPool();
+        try
+        {
+            conn.setAutoCommit(false);
+            router.insert(conn, "table_ilogos", Collections.singletonList(entry(today)));
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } finally
+        {
+            connectionPool.returnConnectionToPool(conn);
+        }
+
+        assertTrue(tableExists(partition(today)));
+        assertEquals(0, countRows(partition(today)));
+        insert(Collections.singletonList(entry(today)));
+        assertEquals(1, countRows(partition(today)));
+    }
+
+    private static void assertRejected(EntryMapping mapping, String column)
+    {
+        try
+        {
+            mapping.indexOfTimestamp(column);
+        } catch (IllegalArgumentException e)
+        {
+            return;
+        }
+        throw new AssertionError("Column " + column + " was accepted as partition column.");
+    }
+
+    private void insert(List<XmlEntry> entries) throws SQLException
+    {
+        Connection conn = connectionPool.getConnectionFromPool();
+        try
+        {
+            conn.setAutoCommit(false);
+            router.insert(conn, "table_ilogos", entries);
+            conn.commit();
+            conn.setAutoCommit(true);
+        } finally
+        {
+            connectionPool.returnConnectionToPool(conn);
+        }
+    }
+
+    private static XmlEntry entry(LocalDate day)
+    {
+        XmlEntry entry = new CustomXmlEntry(2);
+        entry.setValue(0, "content of " + day);
+        entry.setValue(1, Timestamp.valueOf(day.atTime(12, 0)));
+        return entry;
+    }
+
+    private static String partition(LocalDate day)
+    {
+        return "table_ilogos_p" + DAY_SUFFIX.format(day);
+    }
+
+    private int countRows(String table) throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(dbUrl, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table))
+        {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private boolean tableExists(String table) throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(dbUrl, "sa", "");
+             ResultSet tables = connection.getMetaData().getTables(null, null, table.toUpperCase(), null))
+        {
+            return tables.next();
+        }
+    }
+}
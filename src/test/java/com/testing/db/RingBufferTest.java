@@ -0,0 +1,126 @@
+package com.testing.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest
+{
+    @Test
+    public void keepsOrderUpToCapacity() throws Exception
+    {
+        RingBuffer<Integer> buffer = new RingBuffer<>(5);
+        assertEquals(8, buffer.capacity());
+        for (int lap = 0; lap < 3; lap++)
+        {
+            for (int i = 0; i < 8; i++)
+            {
+                assertTrue(buffer.offer(i));
+            }
+            assertFalse(buffer.offer(8));
+            assertEquals(8, buffer.size());
+            for (int i = 0; i < 8; i++)
+            {
+                assertEquals(Integer.valueOf(i), buffer.poll());
+            }
+            assertNull(buffer.poll());
+            assertNull(buffer.poll(1, TimeUnit.MILLISECONDS));
+            assertEquals(0, buffer.size());
+        }
+    }
+
+    @Test
+    public void wakesParkedProducerAndConsumer() throws Exception
+    {
+        RingBuffer<Integer> buffer = new RingBuffer<>(1);
+        assertEquals(2, buffer.capacity());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Integer> taken = executor.submit(buffer::take);
+            Thread.sleep(50);
+            assertFalse(taken.isDone());
+            buffer.put(1);
+            assertEquals(Integer.valueOf(1), taken.get(10, TimeUnit.SECONDS));
+
+            buffer.put(2);
+            buffer.put(3);
+            Future<?> put = executor.submit(() ->
+            {
+                buffer.put(4);
+                return null;
+            });
+            Thread.sleep(50);
+            assertFalse(put.isDone());
+            assertEquals(Integer.valueOf(2), buffer.take());
+            put.get(10, TimeUnit.SECONDS);
+            assertEquals(Integer.valueOf(3), buffer.poll());
+            assertEquals(Integer.valueOf(4), buffer.poll());
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void passesEveryElementOnceBetweenThreads() throws Exception
+    {
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 50000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        AtomicIntegerArray received = new AtomicIntegerArray(producers * perProducer);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++)
+            {
+                int first = p * perProducer;
+                futures.add(executor.submit(() ->
+                {
+                    for (int i = first; i < first + perProducer; i++)
+                    {
+                        buffer.put(i);
+                    }
+                    return null;
+                }));
+            }
+            for (int c = 0; c < consumers; c++)
+            {
+                futures.add(executor.submit(() ->
+                {
+                    for (int i = 0; i < perProducer * producers / consumers; i++)
+                    {
+                        Integer element = buffer.poll(10, TimeUnit.SECONDS);
+                        received.incrementAndGet(element);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally
+        {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < received.length(); i++)
+        {
+            assertEquals("element " + i, 1, received.get(i));
+        }
+        assertEquals(0, buffer.size());
+    }
+}
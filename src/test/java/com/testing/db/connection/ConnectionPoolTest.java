@@ -0,0 +1,133 @@
+package com.testing.db.connection;
+
+import com.testing.TestEnvironment;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConnectionPoolTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ConnectionPool connectionPool;
+
+    @After
+    public void tearDown()
+    {
+        if (connectionPool != null)
+        {
+            connectionPool.close();
+        }
+    }
+
+    @Test
+    public void warmUpOpensMinimumConnections() throws Exception
+    {
+        connectionPool = newPool(2, 4, new HashMap<>());
+        assertEquals(0, connectionPool.getIdleCount());
+        connectionPool.warmUp();
+        assertEquals(2, connectionPool.getIdleCount());
+        assertEquals(0, connectionPool.getBorrowedCount());
+    }
+
+    @Test
+    public void reusesLastReturnedConnection() throws Exception
+    {
+        connectionPool = newPool(0, 2, new HashMap<>());
+        Connection first = connectionPool.getConnectionFromPool();
+        Connection second = connectionPool.getConnectionFromPool();
+        connectionPool.returnConnectionToPool(first);
+        connectionPool.returnConnectionToPool(second);
+
+        Connection reused = connectionPool.getConnectionFromPool();
+        assertSame(second, reused);
+        connectionPool.returnConnectionToPool(reused);
+        assertEquals(2, connectionPool.getIdleCount());
+    }
+
+    @Test
+    public void waitsForReturnedConnectionUpToBorrowTimeout() throws Exception
+    {
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("DB_POOL_BORROW_TIMEOUT", "300 milliseconds");
+        connectionPool = newPool(0, 2, overrides);
+        Connection first = connectionPool.getConnectionFromPool();
+        Connection second = connectionPool.getConnectionFromPool();
+        assertEquals(2, connectionPool.getBorrowedCount());
+
+        long start = System.nanoTime();
+        try
+        {
+            connectionPool.getConnectionFromPool();
+            fail("Pool gave out more than maximum connections.");
+        } catch (SQLTransientConnectionException e)
+        {
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+        }
+
+        Thread returning = new Thread(() ->
+        {
+            try
+            {
+                Thread.sleep(100);
+                connectionPool.returnConnectionToPool(first);
+            } catch (Exception e)
+            {
+                throw new IllegalStateException(e);
+            }
+        });
+        returning.start();
+        assertSame(first, connectionPool.getConnectionFromPool());
+        returning.join();
+        connectionPool.returnConnectionToPool(first);
+        connectionPool.returnConnectionToPool(second);
+    }
+
+    @Test
+    public void closesIdleConnectionsAboveMinimum() throws Exception
+    {
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("DB_POOL_IDLE_TIMEOUT", "500 milliseconds");
+        connectionPool = newPool(1, 3, overrides);
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            connections.add(connectionPool.getConnectionFromPool());
+        }
+        for (Connection connection : connections)
+        {
+            connectionPool.returnConnectionToPool(connection);
+        }
+        assertEquals(3, connectionPool.getIdleCount());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (connectionPool.getIdleCount() > 1 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(50);
+        }
+        assertEquals(1, connectionPool.getIdleCount());
+        Thread.sleep(1500);
+        assertEquals(1, connectionPool.getIdleCount());
+    }
+
+    private ConnectionPool newPool(int minSize, int maxSize, Map<String, String> overrides) throws Exception
+    {
+        TestEnvironment.init(temporaryFolder.getRoot().toPath(), overrides);
+        return new ConnectionPool(minSize, maxSize);
+    }
+}
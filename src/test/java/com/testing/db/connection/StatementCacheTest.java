@@ -0,0 +1,85 @@
+package com.testing.db.connection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StatementCacheTest
+{
+    private static final String FIRST = "SELECT 1";
+    private static final String SECOND = "SELECT 2";
+    private static final String THIRD = "SELECT 3";
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        connection = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        connection.close();
+    }
+
+    @Test
+    public void preparesStatementOnce() throws Exception
+    {
+        StatementCache statementCache = new StatementCache(connection, 2);
+        assertFalse(statementCache.contains(FIRST));
+        PreparedStatement statement = statementCache.get(FIRST);
+        assertTrue(statementCache.contains(FIRST));
+        assertSame(statement, statementCache.get(FIRST));
+    }
+
+    @Test
+    public void evictsAndClosesLeastRecentlyUsedStatement() throws Exception
+    {
+        StatementCache statementCache = new StatementCache(connection, 2);
+        PreparedStatement first = statementCache.get(FIRST);
+        PreparedStatement second = statementCache.get(SECOND);
+        statementCache.get(FIRST);
+        statementCache.get(THIRD);
+
+        assertTrue(statementCache.contains(FIRST));
+        assertFalse(statementCache.contains(SECOND));
+        assertTrue(statementCache.contains(THIRD));
+        assertTrue(second.isClosed());
+        assertFalse(first.isClosed());
+    }
+
+    @Test
+    public void preparesClosedStatementAgain() throws Exception
+    {
+        StatementCache statementCache = new StatementCache(connection, 2);
+        PreparedStatement statement = statementCache.get(FIRST);
+        statement.close();
+        PreparedStatement prepared = statementCache.get(FIRST);
+        assertNotSame(statement, prepared);
+        assertFalse(prepared.isClosed());
+    }
+
+    @Test
+    public void clearClosesAllStatements() throws Exception
+    {
+        StatementCache statementCache = new StatementCache(connection, 2);
+        PreparedStatement first = statementCache.get(FIRST);
+        PreparedStatement second = statementCache.get(SECOND);
+        statementCache.clear();
+
+        assertTrue(first.isClosed());
+        assertTrue(second.isClosed());
+        assertFalse(statementCache.contains(FIRST));
+    }
+}
@@ -0,0 +1,119 @@
+package com.testing.dedup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DedupIndexTest
+{
+    private static final int CAPACITY = 16;
+    private static final int GENERATION = CAPACITY / 2;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void remembersAtLeastOneGenerationAfterRotation() throws Exception
+    {
+        DedupIndex index = new DedupIndex(path(), CAPACITY);
+        addFiles(index, 0, GENERATION);
+        addFiles(index, GENERATION, GENERATION);
+        assertKnown(index, 0, 2 * GENERATION);
+
+        addFiles(index, 2 * GENERATION, 1);
+        assertKnown(index, GENERATION, GENERATION + 1);
+        for (int file = 0; file < GENERATION; file++)
+        {
+            assertFalse(contains(index, file));
+        }
+    }
+
+    @Test
+    public void forgottenFilesDoNotBreakLookupInReusedTable() throws Exception
+    {
+        DedupIndex index = new DedupIndex(path(), CAPACITY);
+        for (int round = 0; round < 10; round++)
+        {
+            addFiles(index, round * GENERATION, GENERATION);
+            assertKnown(index, round * GENERATION, GENERATION);
+        }
+        for (int file = 0; file < 8 * GENERATION; file++)
+        {
+            assertFalse(contains(index, file));
+        }
+    }
+
+    @Test
+    public void requiresEqualLengthAndChecksum() throws Exception
+    {
+        DedupIndex index = new DedupIndex(path(), CAPACITY);
+        index.add(42, 100, 7);
+        assertTrue(index.contains(42, 100, 7));
+        assertFalse(index.contains(42, 101, 7));
+        assertFalse(index.contains(42, 100, 8));
+        assertFalse(index.contains(43, 100, 7));
+    }
+
+    @Test
+    public void keepsFilesAfterReopen() throws Exception
+    {
+        Path path = path();
+        DedupIndex index = new DedupIndex(path, CAPACITY);
+        addFiles(index, 0, GENERATION + 3);
+        index.force();
+
+        DedupIndex reopened = new DedupIndex(path, CAPACITY);
+        assertKnown(reopened, 0, GENERATION + 3);
+        addFiles(reopened, GENERATION + 3, GENERATION);
+        assertKnown(reopened, GENERATION, GENERATION + 3);
+    }
+
+    @Test
+    public void storesZeroHash() throws Exception
+    {
+        DedupIndex index = new DedupIndex(path(), CAPACITY);
+        index.add(0, 0, 0);
+        assertTrue(index.contains(0, 0, 0));
+    }
+
+    private Path path()
+    {
+        return temporaryFolder.getRoot().toPath().resolve("dedup");
+    }
+
+    private static void addFiles(DedupIndex index, int first, int count)
+    {
+        for (int file = first; file < first + count; file++)
+        {
+            index.add(hash(file), file, checksum(file));
+        }
+    }
+
+    private static void assertKnown(DedupIndex index, int first, int count)
+    {
+        for (int file = first; file < first + count; file++)
+        {
+            assertTrue("file " + file, contains(index, file));
+        }
+    }
+
+    private static boolean contains(DedupIndex index, int file)
+    {
+        return index.contains(hash(file), file, checksum(file));
+    }
+
+    private static long hash(int file)
+    {
+        return file * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int checksum(int file)
+    {
+        return file * 31 + 17;
+    }
+}
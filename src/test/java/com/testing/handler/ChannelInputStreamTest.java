@@ -0,0 +1,155 @@
+package com.testing.handler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChannelInputStreamTest
+{
+    private static final int PAGE = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsSmallFileBySystemCalls() throws Exception
+    {
+        byte[] content = content(100_000);
+        Path file = write(content);
+
+        try (ChannelInputStream stream = ChannelInputStream.open(file, content.length + 1))
+        {
+            assertFalse(stream.isMapped());
+            assertArrayEquals(content, readAll(stream));
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void readsLargeFileByMappedWindows() throws Exception
+    {
+        byte[] content = content(10 * PAGE + 123);
+        Path file = write(content);
+
+        try (ChannelInputStream stream = ChannelInputStream.open(file, 0, PAGE))
+        {
+            assertTrue(stream.isMapped());
+            assertArrayEquals(content, readAll(stream));
+            assertTrue(stream.isMapped());
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void skipsAcrossMappedWindows() throws Exception
+    {
+        byte[] content = content(10 * PAGE);
+        Path file = write(content);
+
+        try (ChannelInputStream stream = ChannelInputStream.open(file, 0, PAGE))
+        {
+            assertEquals(content[0] & 0xff, stream.read());
+            assertEquals(3 * PAGE + 10, stream.skip(3 * PAGE + 10));
+            assertEquals(content[3 * PAGE + 11] & 0xff, stream.read());
+            assertEquals(PAGE, stream.skip(PAGE));
+            assertEquals(content[4 * PAGE + 12] & 0xff, stream.read());
+            assertEquals(content.length - 4 * PAGE - 13, stream.skip(content.length));
+            assertEquals(0, stream.skip(1));
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void fallsBackToSystemCallsWhenMappingsAreExhausted() throws Exception
+    {
+        byte[] content = content(10 * PAGE + 123);
+        Path file = write(content);
+        int reserved = 0;
+        try (ChannelInputStream stream = ChannelInputStream.open(file, 0, PAGE))
+        {
+            byte[] read = new byte[content.length];
+            int length = stream.read(read, 0, 2 * PAGE);
+            assertTrue(stream.isMapped());
+            while (ChannelInputStream.reserveMapping())
+            {
+                reserved++;
+            }
+            while (length < read.length)
+            {
+                length += stream.read(read, length, read.length - length);
+            }
+
+            assertFalse(stream.isMapped());
+            assertArrayEquals(content, read);
+            assertEquals(-1, stream.read());
+        } finally
+        {
+            for (int i = 0; i < reserved; i++)
+            {
+                ChannelInputStream.releaseMapping();
+            }
+        }
+    }
+
+    @Test
+    public void reportsTruncationOfMappedFileAsIOException() throws Exception
+    {
+        byte[] content = content(16 * PAGE);
+        Path file = write(content);
+
+        try (ChannelInputStream stream = ChannelInputStream.open(file, 0))
+        {
+            assertEquals(content[0] & 0xff, stream.read());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                channel.truncate(0);
+            }
+            stream.skip(8 * PAGE);
+            stream.read(new byte[PAGE], 0, PAGE);
+            fail("Read of truncated mapping must fail.");
+        } catch (IOException e)
+        {
+            assertEquals("Mapped file was truncated before it was read.", e.getMessage());
+        }
+    }
+
+    private Path write(byte[] content) throws IOException
+    {
+        return Files.write(temporaryFolder.newFile().toPath(), content);
+    }
+
+    private static byte[] content(int length)
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            content[i] = (byte) (i * 31 + i / 251);
+        }
+        return content;
+    }
+
+    private static byte[] readAll(ChannelInputStream stream) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1000];
+        int read;
+        while ((read = stream.read(chunk, 0, chunk.length)) != -1)
+        {
+            output.write(chunk, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
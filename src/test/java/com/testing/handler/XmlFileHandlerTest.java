@@ -0,0 +1,95 @@
+package com.testing.handler;
+
+import com.testing.TestEnvironment;
+import com.testing.config.InputMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XmlFileHandlerTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void finishesMoveInterruptedAfterLink() throws Exception
+    {
+        Path root = temporaryFolder.getRoot().toPath();
+        TestEnvironment.init(root, Collections.emptyMap());
+        Path processed = Files.createDirectories(root.resolve("processed"));
+        Path file = Files.write(root.resolve("monitoring").resolve("entries.xml"),
+                "<Entry/>".getBytes(StandardCharsets.UTF_8));
+        Files.createLink(processed.resolve("entries.xml"), file);
+
+        new XmlFileHandler(null, file.toString(), processed.toString(), root.resolve("corrupted").toString()).run();
+
+        assertFalse(Files.exists(file));
+        assertTrue(Files.exists(processed.resolve("entries.xml")));
+        try (Stream<Path> files = Files.list(processed))
+        {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void retriesFileWhichCannotBeRead() throws Exception
+    {
+        Path root = temporaryFolder.getRoot().toPath();
+        TestEnvironment.init(root, Collections.emptyMap());
+        Path processed = Files.createDirectories(root.resolve("processed"));
+        Path unreadable = Files.createDirectories(root.resolve("monitoring").resolve("entries.xml"));
+        List<Integer> attempts = new ArrayList<>();
+
+        new XmlFileHandler(null, unreadable.toString(), processed.toString(), root.resolve("corrupted").toString(),
+                (filePath, attempt) -> attempts.add(attempt), 1).run();
+
+        assertEquals(Collections.singletonList(2), attempts);
+        assertTrue(Files.isDirectory(unreadable));
+        try (Stream<Path> files = Files.list(processed))
+        {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void movesAsideFileTruncatedWhileItWasMapped() throws Exception
+    {
+        Path root = temporaryFolder.getRoot().toPath();
+        TestEnvironment.init(root, Collections.emptyMap());
+        Path processed = Files.createDirectories(root.resolve("processed"));
+        Path file = Files.write(root.resolve("monitoring").resolve("entries.xml"), new byte[16 * 4096]);
+        XmlParser truncatingParser = (input, handler) ->
+        {
+            input.read();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                channel.truncate(0);
+            }
+            input.skip(8 * 4096);
+            while (input.read() != -1)
+            {
+                // reads until the fault of the lost page is reported
+            }
+        };
+
+        new XmlFileHandler(null, file.toString(), processed.toString(), root.resolve("corrupted").toString(),
+                truncatingParser, InputMode.CHANNEL, 0).run();
+
+        assertFalse(Files.exists(file));
+        assertTrue(Files.exists(file.resolveSibling(XmlFileHandler.NOT_RECORDED_FILES_FOLDER).resolve("entries.xml")));
+    }
+}
@@ -0,0 +1,65 @@
+package com.testing.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+
+public class IngestJournalTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void keepsCommittedEntriesOfTheSameFileWithoutJournalFile() throws Exception
+    {
+        Path file = write("entries.xml", "first");
+        IngestJournal journal = new IngestJournal(null);
+        journal.seen(file.toString());
+        journal.committed(file.toString(), 5);
+
+        assertEquals(5, journal.seen(file.toString()).getCommittedEntries());
+        assertEquals(5, journal.getCommittedEntries(file.toString()));
+    }
+
+    @Test
+    public void resetsRecordOfFileWhichReusedThePath() throws Exception
+    {
+        Path path = temporaryFolder.getRoot().toPath().resolve("journal");
+        Path file = write("entries.xml", "first");
+        IngestJournal journal = new IngestJournal(new JournalFile(path));
+        journal.seen(file.toString());
+        journal.committed(file.toString(), 5);
+
+        Files.delete(file);
+        write("entries.xml", "second file");
+        IngestJournal reopened = new IngestJournal(new JournalFile(path));
+        assertEquals(5, reopened.getCommittedEntries(file.toString()));
+        assertEquals(0, reopened.seen(file.toString()).getCommittedEntries());
+        assertEquals(0, reopened.getCommittedEntries(file.toString()));
+    }
+
+    @Test
+    public void resetsRecordOfFileRewrittenInPlace() throws Exception
+    {
+        Path file = write("entries.xml", "first");
+        IngestJournal journal = new IngestJournal(null);
+        journal.seen(file.toString());
+        journal.committed(file.toString(), 5);
+
+        Files.write(file, "other".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        assertEquals(0, journal.seen(file.toString()).getCommittedEntries());
+    }
+
+    private Path write(String name, String content) throws Exception
+    {
+        return Files.write(temporaryFolder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
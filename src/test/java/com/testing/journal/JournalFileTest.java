@@ -0,0 +1,131 @@
+package com.testing.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JournalFileTest
+{
+    private static final int HEADER_SIZE = 16;
+    private static final String FILE = "a.xml";
+    private static final int RECORD_SIZE = 4 + 1 + 8 + FILE.length() + 4;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void replaysAppendedRecordsAfterCrash() throws Exception
+    {
+        Path path = temporaryFolder.getRoot().toPath().resolve("journal");
+        JournalFile journalFile = open(path, new ArrayList<>());
+        assertTrue(journalFile.append(JournalState.SEEN, FILE, 0));
+        assertTrue(journalFile.append(JournalState.COMMITTED, FILE, 100));
+        assertTrue(journalFile.append(JournalState.PARSED, FILE, 250));
+
+        List<String> records = new ArrayList<>();
+        open(path, records);
+        assertEquals(Arrays.asList("SEEN a.xml 0", "COMMITTED a.xml 100", "PARSED a.xml 250"), records);
+    }
+
+    @Test
+    public void stopsAtRecordWithWrongChecksum() throws Exception
+    {
+        Path path = temporaryFolder.getRoot().toPath().resolve("journal");
+        JournalFile journalFile = open(path, new ArrayList<>());
+        journalFile.append(JournalState.SEEN, FILE, 0);
+        journalFile.append(JournalState.COMMITTED, FILE, 100);
+        journalFile.append(JournalState.COMMITTED, FILE, 200);
+        journalFile.force();
+        writeInt(slot(path, 0), HEADER_SIZE + RECORD_SIZE + 5, 999);
+
+        List<String> records = new ArrayList<>();
+        JournalFile reopened = open(path, records);
+        assertEquals(Collections.singletonList("SEEN a.xml 0"), records);
+
+        assertTrue(reopened.append(JournalState.COMMITTED, FILE, 300));
+        records.clear();
+        open(path, records);
+        assertEquals(Arrays.asList("SEEN a.xml 0", "COMMITTED a.xml 300"), records);
+    }
+
+    @Test
+    public void stopsAtTornRecordLength() throws Exception
+    {
+        Path path = temporaryFolder.getRoot().toPath().resolve("journal");
+        JournalFile journalFile = open(path, new ArrayList<>());
+        journalFile.append(JournalState.SEEN, FILE, 0);
+        journalFile.force();
+        writeInt(slot(path, 0), HEADER_SIZE + RECORD_SIZE, Integer.MAX_VALUE);
+
+        List<String> records = new ArrayList<>();
+        open(path, records);
+        assertEquals(Collections.singletonList("SEEN a.xml 0"), records);
+    }
+
+    @Test
+    public void compactionKeepsLiveRecordsOnly() throws Exception
+    {
+        Path path = temporaryFolder.getRoot().toPath().resolve("journal");
+        JournalFile journalFile = open(path, new ArrayList<>());
+        journalFile.append(JournalState.SEEN, FILE, 0);
+        journalFile.append(JournalState.SEEN, "b.xml", 0);
+        journalFile.append(JournalState.MOVED, "b.xml", 0);
+        journalFile.compact(Collections.singletonList(new JournalRecord(FILE, 7, 250, 100)));
+        journalFile.append(JournalState.COMMITTED, FILE, 200);
+
+        List<String> records = new ArrayList<>();
+        open(path, records);
+        assertEquals(Arrays.asList("SEEN a.xml 7", "COMMITTED a.xml 100", "PARSED a.xml 250", "COMMITTED a.xml 200"),
+                records);
+    }
+
+    @Test
+    public void crashDuringCompactionKeepsPreviousFile() throws Exception
+    {
+        Path path = temporaryFolder.getRoot().toPath().resolve("journal");
+        JournalFile journalFile = open(path, new ArrayList<>());
+        journalFile.append(JournalState.SEEN, FILE, 0);
+        journalFile.append(JournalState.COMMITTED, FILE, 100);
+        journalFile.compact(Collections.singletonList(new JournalRecord(FILE, 7, -1, 100)));
+        writeInt(slot(path, 1), 0, 0);
+
+        List<String> records = new ArrayList<>();
+        open(path, records);
+        assertEquals(Arrays.asList("SEEN a.xml 0", "COMMITTED a.xml 100"), records);
+    }
+
+    private static JournalFile open(Path path, List<String> records) throws Exception
+    {
+        JournalFile journalFile = new JournalFile(path);
+        journalFile.replay((state, filePath, value) -> records.add(state + " " + filePath + " " + value));
+        return journalFile;
+    }
+
+    private static Path slot(Path path, int slot)
+    {
+        return Paths.get(path + "." + slot);
+    }
+
+    private static void writeInt(Path file, long position, int value) throws Exception
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            buffer.putInt(0, value);
+            channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.testing.listener;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControlTest
+{
+    @Test
+    public void limitsNumberOfFiles()
+    {
+        AdmissionControl admissionControl = new AdmissionControl(2, 1000);
+        assertTrue(admissionControl.tryAcquire(10));
+        assertTrue(admissionControl.tryAcquire(10));
+        assertFalse(admissionControl.tryAcquire(10));
+        assertEquals(2, admissionControl.getQueuedFiles());
+        assertEquals(20, admissionControl.getQueuedBytes());
+
+        admissionControl.release(10);
+        assertTrue(admissionControl.tryAcquire(10));
+    }
+
+    @Test
+    public void limitsTotalSize()
+    {
+        AdmissionControl admissionControl = new AdmissionControl(10, 100);
+        assertTrue(admissionControl.tryAcquire(60));
+        assertFalse(admissionControl.tryAcquire(41));
+        assertTrue(admissionControl.tryAcquire(40));
+        assertFalse(admissionControl.tryAcquire(1));
+        assertEquals(100, admissionControl.getQueuedBytes());
+
+        admissionControl.release(60);
+        admissionControl.release(40);
+        assertEquals(0, admissionControl.getQueuedFiles());
+        assertEquals(0, admissionControl.getQueuedBytes());
+    }
+
+    @Test
+    public void admitsFileBiggerThanLimitIntoEmptyQueue()
+    {
+        AdmissionControl admissionControl = new AdmissionControl(1, 100);
+        assertTrue(admissionControl.tryAcquire(1000));
+        assertFalse(admissionControl.tryAcquire(1));
+        admissionControl.release(1000);
+        assertTrue(admissionControl.tryAcquire(1));
+    }
+
+    @Test
+    public void acquireWaitsForRelease() throws Exception
+    {
+        AdmissionControl admissionControl = new AdmissionControl(1, 100);
+        admissionControl.acquire(50);
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiting = new Thread(() ->
+        {
+            try
+            {
+                admissionControl.acquire(50);
+                admitted.countDown();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+
+        assertFalse(admitted.await(100, TimeUnit.MILLISECONDS));
+        admissionControl.release(50);
+        assertTrue(admitted.await(10, TimeUnit.SECONDS));
+        assertEquals(1, admissionControl.getQueuedFiles());
+        waiting.join();
+    }
+}
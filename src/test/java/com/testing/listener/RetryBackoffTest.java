@@ -0,0 +1,62 @@
+package com.testing.listener;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryBackoffTest
+{
+    private static final int SAMPLES = 1000;
+
+    @Test
+    public void doublesDelayForEveryAttempt()
+    {
+        RetryBackoff backoff = new RetryBackoff(100, 100000);
+        assertDelayBetween(backoff, 2, 50, 100);
+        assertDelayBetween(backoff, 3, 100, 200);
+        assertDelayBetween(backoff, 4, 200, 400);
+        assertDelayBetween(backoff, 11, 25600, 51200);
+    }
+
+    @Test
+    public void capsDelayAtMaximum()
+    {
+        RetryBackoff backoff = new RetryBackoff(100, 1000);
+        assertDelayBetween(backoff, 6, 500, 1000);
+        assertDelayBetween(backoff, 40, 500, 1000);
+    }
+
+    @Test
+    public void largeAttemptDoesNotOverflow()
+    {
+        RetryBackoff backoff = new RetryBackoff(Long.MAX_VALUE / 4, Long.MAX_VALUE);
+        assertDelayBetween(backoff, 64, Long.MAX_VALUE / 2, Long.MAX_VALUE);
+        assertDelayBetween(backoff, Integer.MAX_VALUE, Long.MAX_VALUE / 2, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void zeroInitialDelayRetriesImmediately()
+    {
+        RetryBackoff backoff = new RetryBackoff(0, 1000);
+        assertEquals(0, backoff.delay(2));
+        assertEquals(0, backoff.delay(50));
+    }
+
+    @Test
+    public void firstAttemptsUseInitialDelay()
+    {
+        RetryBackoff backoff = new RetryBackoff(100, 1000);
+        assertDelayBetween(backoff, 0, 50, 100);
+        assertDelayBetween(backoff, 1, 50, 100);
+    }
+
+    private static void assertDelayBetween(RetryBackoff backoff, int attempt, long min, long max)
+    {
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            long delay = backoff.delay(attempt);
+            assertTrue("attempt " + attempt + " -> " + delay, delay >= min && delay <= max);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.testing.listener;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StabilizationWheelTest
+{
+    private static final long PERIOD = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    private final BlockingQueue<String> stableFiles = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> missingFiles = new LinkedBlockingQueue<>();
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void handsOffFileAfterStabilizationPeriod() throws Exception
+    {
+        StabilizationWheel wheel = newWheel((filePath, size) -> stableFiles.add(filePath + ":" + size));
+        Path file = temporaryFolder.newFile("stable.xml").toPath();
+        Files.write(file, new byte[10]);
+        long start = System.nanoTime();
+        add(wheel, file);
+        assertEquals(1, wheel.getPendingFiles());
+
+        assertEquals(file + ":10", stableFiles.poll(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(PERIOD - 20));
+        awaitNoPendingFiles(wheel);
+    }
+
+    @Test
+    public void holdsFileWhileItGrows() throws Exception
+    {
+        StabilizationWheel wheel = newWheel((filePath, size) -> stableFiles.add(filePath + ":" + size));
+        Path file = temporaryFolder.newFile("growing.xml").toPath();
+        add(wheel, file);
+        for (int i = 0; i < 5; i++)
+        {
+            Files.write(file, new byte[1], StandardOpenOption.APPEND);
+            assertNull(stableFiles.poll(PERIOD / 2, TimeUnit.MILLISECONDS));
+        }
+
+        assertEquals(file + ":5", stableFiles.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void reportsRemovedFile() throws Exception
+    {
+        StabilizationWheel wheel = newWheel((filePath, size) -> stableFiles.add(filePath));
+        Path file = temporaryFolder.newFile("removed.xml").toPath();
+        add(wheel, file);
+        Files.delete(file);
+
+        assertEquals(file.toString(), missingFiles.poll(5, TimeUnit.SECONDS));
+        awaitNoPendingFiles(wheel);
+        assertTrue(stableFiles.isEmpty());
+    }
+
+    @Test
+    public void keepsFileWhichConsumerCannotTakeYet() throws Exception
+    {
+        AtomicInteger offers = new AtomicInteger();
+        StabilizationWheel wheel = newWheel((filePath, size) ->
+        {
+            if (offers.incrementAndGet() < 3)
+            {
+                return false;
+            }
+            stableFiles.add(filePath);
+            return true;
+        });
+        Path file = temporaryFolder.newFile("waiting.xml").toPath();
+        add(wheel, file);
+
+        assertEquals(file.toString(), stableFiles.poll(5, TimeUnit.SECONDS));
+        awaitNoPendingFiles(wheel);
+        assertEquals(3, offers.get());
+    }
+
+    private StabilizationWheel newWheel(BiPredicate<String, Long> stableFileConsumer)
+    {
+        return new StabilizationWheel(executor, PERIOD, stableFileConsumer, missingFiles::add);
+    }
+
+    /**
+     * Waits for the wheel to count the file out, consumers are called before it does.
+     */
+    private static void awaitNoPendingFiles(StabilizationWheel wheel) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (wheel.getPendingFiles() > 0 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(0, wheel.getPendingFiles());
+    }
+
+    private static void add(StabilizationWheel wheel, Path file) throws Exception
+    {
+        wheel.add(file.toString(), Files.size(file), Files.getLastModifiedTime(file).toMillis());
+    }
+}
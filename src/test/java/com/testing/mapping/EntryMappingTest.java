@@ -0,0 +1,66 @@
+package com.testing.mapping;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EntryMappingTest
+{
+    @Test
+    public void compilesPathsToColumns()
+    {
+        EntryMapping mapping = EntryMapping.parse(Arrays.asList(
+                "# orders feed",
+                "TABLE=orders",
+                "Order/id=order_id BIGINT REQUIRED",
+                "Order/customer/name=customer TEXT MAX_LENGTH 64",
+                "Order/customer/vip=vip BOOLEAN",
+                "Order/created=created_at timestamp REQUIRED"), "table_ilogos");
+
+        assertEquals("INSERT INTO orders(order_id, customer, vip, created_at) VALUES(?,?,?,?)", mapping.getInsertSQL());
+        assertEquals("COPY orders(order_id, customer, vip, created_at) FROM STDIN", mapping.getCopySQL());
+        assertEquals(0b1001, mapping.getRequiredColumns());
+
+        assertTrue(mapping.isRecord("ORDER"));
+        assertFalse(mapping.isRecord("customer"));
+        int customer = mapping.childNode(EntryMapping.RECORD_NODE, "Customer");
+        assertEquals(-1, mapping.columnOf(customer));
+        assertEquals(1, mapping.columnOf(mapping.childNode(customer, "name")));
+        assertEquals(2, mapping.columnOf(mapping.childNode(customer, "VIP")));
+        assertEquals(0, mapping.columnOf(mapping.childNode(EntryMapping.RECORD_NODE, "id")));
+        assertEquals(-1, mapping.childNode(EntryMapping.RECORD_NODE, "name"));
+        assertEquals(-1, mapping.childNode(EntryMapping.RECORD_NODE, "unknown"));
+
+        char[] chars = " -42 ".toCharArray();
+        assertEquals(-42L, ColumnType.BIGINT.parse(chars, chars.length));
+    }
+
+    @Test
+    public void rejectsInvalidMapping()
+    {
+        assertInvalid("Entry=content TEXT");
+        assertInvalid("Entry/content=content VARCHAR");
+        assertInvalid("Entry/content=content; TEXT");
+        assertInvalid("Entry/content=content TEXT MAX_LENGTH 0");
+        assertInvalid("Entry/content=content TEXT", "Item/date=creation_date TEXT");
+        assertInvalid("Entry/content=content TEXT", "Entry/content/text=text TEXT");
+        assertInvalid("Entry/content=content TEXT", "Entry/date=CONTENT TEXT");
+        assertInvalid("TABLE=orders");
+    }
+
+    private static void assertInvalid(String... lines)
+    {
+        try
+        {
+            EntryMapping.parse(Arrays.asList(lines), "table_ilogos");
+        } catch (IllegalArgumentException e)
+        {
+            return;
+        }
+        throw new AssertionError("Mapping " + Arrays.toString(lines) + " was accepted.");
+    }
+}
@@ -0,0 +1,96 @@
+package com.testing.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void reportsUpperBoundOfPercentileBucket()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++)
+        {
+            histogram.record(1000);
+        }
+        for (int i = 0; i < 9; i++)
+        {
+            histogram.record(100000);
+        }
+        histogram.record(10000000);
+
+        assertEquals(1023, histogram.getPercentileNanos(0.5));
+        assertEquals(1023, histogram.getPercentileNanos(0.9));
+        assertEquals(131071, histogram.getPercentileNanos(0.95));
+        assertEquals(131071, histogram.getPercentileNanos(0.99));
+        assertEquals(10000000, histogram.getPercentileNanos(1.0));
+        assertEquals(100, histogram.getCount());
+        assertEquals(90 * 1000L + 9 * 100000L + 10000000L, histogram.getTotalNanos());
+        assertEquals(10000000, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void percentileIsWithinFactorOfTwo()
+    {
+        for (long nanos = 1; nanos < Long.MAX_VALUE / 3; nanos = nanos * 3 + 1)
+        {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(nanos * 2);
+            long median = histogram.getPercentileNanos(0.5);
+            assertTrue(nanos + " -> " + median, median >= nanos && median < nanos * 2);
+        }
+    }
+
+    @Test
+    public void emptyAndResetHistogramReportsZero()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.99));
+        histogram.record(-5);
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(1, histogram.getCount());
+
+        histogram.record(5000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotalNanos());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+    }
+
+    @Test
+    public void countsRecordsOfAllThreads() throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 4;
+        int perThread = 100000;
+        List<Thread> recorders = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            long nanos = 1000L << t;
+            Thread recorder = new Thread(() ->
+            {
+                for (int i = 0; i < perThread; i++)
+                {
+                    histogram.record(nanos);
+                }
+            });
+            recorders.add(recorder);
+            recorder.start();
+        }
+        for (Thread recorder : recorders)
+        {
+            recorder.join();
+        }
+
+        assertEquals(threads * perThread, histogram.getCount());
+        assertEquals(1000L << (threads - 1), histogram.getMaxNanos());
+        assertEquals(perThread * 1000L * ((1 << threads) - 1), histogram.getTotalNanos());
+    }
+}